@@ -38,6 +38,7 @@ import org.slf4j.LoggerFactory;
 
 import com.dell.doradus.common.ConfigurationException;
 import com.dell.doradus.common.Utils;
+import com.dell.doradus.search.util.HyperLogLog;
 import com.dell.doradus.service.Service;
 import com.dell.doradus.service.StorageService;
 import com.dell.doradus.service.rest.RESTCallback;
@@ -354,6 +355,8 @@ public final class DoradusServer {
                 m_logger.warn("'DoradusServer.super_user' parameter is not defined. " +
                               "Privileged commands will be available without authentication.");
             }
+            // validated here rather than by the first DISTINCT_APPROX query
+            HyperLogLog.getDefaultPrecision();
         } catch (ConfigurationException e) {
             throw new RuntimeException("Failed to initialize server configuration", e);
         }
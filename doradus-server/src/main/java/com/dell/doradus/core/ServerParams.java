@@ -78,6 +78,7 @@ public class ServerParams {
     static {
         setLegacy("DoradusServer",
             "default_services",
+            "distinct_approx_precision",
             "l2r_enable",
             "search_default_page_size",
             "storage_services",
@@ -141,14 +142,24 @@ public class ServerParams {
         setLegacy("OLAPService",
             "olap_cache_size_mb",
             "olap_cf_defaults",
+            "olap_column_storage",
+            "olap_compression_codec",
             "olap_compression_level",
             "olap_compression_threads",
+            "olap_delta_percent",
+            "olap_file_cache_offheap",
             "olap_file_cache_size_mb",
             "olap_internal_compression",
+            "olap_lazy_field_loading",
             "olap_loaded_segments",
+            "olap_max_deltas",
             "olap_merge_threads",
+            "olap_offheap_cache_size_mb",
             "olap_query_cache_size_mb",
-            "olap_search_threads"
+            "olap_range_docs",
+            "olap_range_threads",
+            "olap_search_threads",
+            "olap_spill_directory"
         );
         
         setLegacy("SpiderService", "batch_mutation_threshold");
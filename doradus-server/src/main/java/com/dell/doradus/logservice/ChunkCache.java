@@ -0,0 +1,174 @@
+package com.dell.doradus.logservice;
+
+import java.nio.ByteBuffer;
+
+import com.dell.doradus.olap.io.BSTR;
+import com.dell.doradus.search.util.SegmentedLRUCache;
+import com.dell.doradus.service.db.Tenant;
+
+/**
+ * Cache of log chunks shared by all log queries: the chunk data, so that hot chunks are not
+ * fetched again, and the decoded columns (timestamps, field dictionaries and value indexes),
+ * so that they are not decompressed again. Chunks never change once written (merges write
+ * new chunk ids), so entries are never invalidated; they are evicted in LRU order of a
+ * {@link SegmentedLRUCache}, so that concurrent queries do not contend on a single lock.
+ * If chunk_cache_offheap is set, entries are kept in direct buffers and copied to heap on hit:
+ * chunk readers and filters work on byte and int arrays, and the copy is still much cheaper
+ * than fetching or decompressing the chunk again. The option trades that copy for a smaller GC heap.
+ */
+public class ChunkCache {
+    private static final int SEGMENTS = 16;
+    private static ChunkCache INSTANCE;
+    
+    private SegmentedLRUCache<String, Object> m_cache;
+    private boolean m_offHeap;
+
+    public static synchronized ChunkCache instance() {
+        if(INSTANCE == null) INSTANCE = new ChunkCache();
+        return INSTANCE;
+    }
+    
+    private ChunkCache() {
+        int cacheSize = LoggingService.instance().getParamInt("chunk_cache_size_mb", 0);
+        m_offHeap = LoggingService.instance().getParamBoolean("chunk_cache_offheap");
+        if(cacheSize > 0) {
+            m_cache = new SegmentedLRUCache<String, Object>(cacheSize * 1024L * 1024L, SEGMENTS);
+        }
+    }
+    
+    /**
+     * Returns the key of the chunk, or null if the cache is disabled
+     */
+    public String getKey(Tenant tenant, String application, String table, ChunkInfo info) {
+        if(m_cache == null) return null;
+        return tenant.getName() + "/" + application + "_" + table + "/" + info.getPartition() + "/" + info.getChunkId();
+    }
+
+    public boolean useCache() { return m_cache != null; }
+    
+    public long getHits() { return m_cache == null ? 0 : m_cache.getHits(); }
+    public long getMisses() { return m_cache == null ? 0 : m_cache.getMisses(); }
+    public long getEvictions() { return m_cache == null ? 0 : m_cache.getEvictions(); }
+    public long getSize() { return m_cache == null ? 0 : m_cache.getSize(); }
+    
+    @Override public String toString() {
+        return String.format("ChunkCache: size=%d, hits=%d, misses=%d, evictions=%d",
+                getSize(), getHits(), getMisses(), getEvictions());
+    }
+    
+    public byte[] getData(String key) {
+        Object cached = get(key);
+        if(cached == null || cached instanceof byte[]) return (byte[])cached;
+        ByteBuffer buffer = duplicate(cached);
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+    
+    public void putData(String key, byte[] data) {
+        if(!m_offHeap) {
+            put(key, data, data.length);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        put(key, buffer, data.length);
+    }
+    
+    public long[] getTimestamps(String key) {
+        key += "/";
+        Object cached = get(key);
+        if(cached == null || cached instanceof long[]) return (long[])cached;
+        ByteBuffer buffer = duplicate(cached);
+        long[] timestamps = new long[buffer.remaining() / 8];
+        buffer.asLongBuffer().get(timestamps);
+        return timestamps;
+    }
+    
+    public void putTimestamps(String key, long[] timestamps) {
+        key += "/";
+        if(!m_offHeap) {
+            put(key, timestamps, 8L * timestamps.length);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8 * timestamps.length);
+        buffer.asLongBuffer().put(timestamps);
+        put(key, buffer, 8L * timestamps.length);
+    }
+    
+    public int[] getIndexes(String key, BSTR field) {
+        key += "/i/" + field;
+        Object cached = get(key);
+        if(cached == null || cached instanceof int[]) return (int[])cached;
+        return readInts(duplicate(cached));
+    }
+    
+    public void putIndexes(String key, BSTR field, int[] indexes) {
+        key += "/i/" + field;
+        if(!m_offHeap) {
+            put(key, indexes, 4L * indexes.length);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4 + 4 * indexes.length);
+        writeInts(buffer, indexes);
+        put(key, buffer, 4L * indexes.length);
+    }
+    
+    public ChunkValues getValues(String key, BSTR field) {
+        key += "/v/" + field;
+        Object cached = get(key);
+        if(cached == null || cached instanceof ChunkValues) return (ChunkValues)cached;
+        ByteBuffer buffer = duplicate(cached);
+        int[] offsets = readInts(buffer);
+        int[] lengths = readInts(buffer);
+        int[] prefixes = readInts(buffer);
+        int[] suffixes = readInts(buffer);
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new ChunkValues(data, offsets, lengths, prefixes, suffixes);
+    }
+    
+    public void putValues(String key, BSTR field, ChunkValues values) {
+        key += "/v/" + field;
+        if(!m_offHeap) {
+            put(key, values, values.getSize());
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(16 + 16 * values.offsets.length + values.buffer.length);
+        writeInts(buffer, values.offsets);
+        writeInts(buffer, values.lengths);
+        writeInts(buffer, values.prefixes);
+        writeInts(buffer, values.suffixes);
+        buffer.put(values.buffer);
+        put(key, buffer, values.getSize());
+    }
+    
+    private static ByteBuffer duplicate(Object cached) {
+        ByteBuffer buffer = ((ByteBuffer)cached).duplicate();
+        buffer.clear();
+        return buffer;
+    }
+    
+    private static void writeInts(ByteBuffer buffer, int[] values) {
+        buffer.putInt(values.length);
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + 4 * values.length);
+    }
+    
+    private static int[] readInts(ByteBuffer buffer) {
+        int[] values = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * values.length);
+        return values;
+    }
+    
+    private Object get(String key) {
+        if(m_cache == null || key == null) return null;
+        return m_cache.get(key);
+    }
+    
+    private void put(String key, Object value, long size) {
+        if(m_cache == null || key == null) return;
+        m_cache.put(key, value, size + 2 * key.length() + 16);
+    }
+}
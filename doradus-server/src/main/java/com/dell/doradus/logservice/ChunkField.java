@@ -5,16 +5,20 @@ import com.dell.doradus.logservice.search.StrRef;
 import com.dell.doradus.logservice.store.Temp;
 import com.dell.doradus.olap.collections.MemoryStream;
 import com.dell.doradus.olap.io.BSTR;
+import com.dell.doradus.olap.store.BitVector;
 
 public class ChunkField {
     private int m_size;
     private int m_fieldIndex;
     private MemoryStream m_input;
-    private MemoryStream m_data;
+    private String m_cacheKey;
+    private byte[] m_buffer;
     private BSTR m_fieldName;
     private int m_valuesOffset;
     private int m_valuesCount;
     private int m_indexesOffset;
+    // -1 if the field has no postings
+    private int m_postingsOffset = -1;
     private int[] m_offsets;
     private int[] m_lengths;
     private int[] m_prefixes;
@@ -24,13 +28,14 @@ public class ChunkField {
     
     private int m_CmpValuesSize;
     private int m_CmpIndexesSize;
+    private int m_CmpPostingsSize;
     private int m_CmpTotalSize;
     
-    public ChunkField(int size, int fieldIndex, MemoryStream input, MemoryStream data) {
+    public ChunkField(int size, int fieldIndex, MemoryStream input, String cacheKey, int version) {
         m_size = size;
         m_fieldIndex = fieldIndex;
         m_input = input;
-        m_data = data;
+        m_cacheKey = cacheKey;
         
         m_fieldName = m_input.readString();
         m_valuesCount = m_input.readVInt();
@@ -51,13 +56,18 @@ public class ChunkField {
         
         m_CmpValuesSize = m_indexesOffset - m_valuesOffset;
         m_CmpIndexesSize = m_input.position() - m_indexesOffset;
-        m_CmpTotalSize = m_CmpValuesSize + m_CmpIndexesSize;
+        
+        if(version >= 2 && m_input.readBoolean()) {
+            m_CmpPostingsSize = m_input.readVInt();
+            m_postingsOffset = m_input.position();
+            m_input.skip(m_CmpPostingsSize);
+        }
+        m_CmpTotalSize = m_CmpValuesSize + m_CmpIndexesSize + m_CmpPostingsSize;
     }
 
-    public ChunkField(SyntheticFields synth, BSTR fieldName, int fieldIndex, MemoryStream data) {
+    public ChunkField(SyntheticFields synth, BSTR fieldName, int fieldIndex) {
         m_synth = synth;
         m_fieldIndex = fieldIndex;
-        m_data = data;
         m_fieldName = fieldName;
     }
     
@@ -70,38 +80,57 @@ public class ChunkField {
             return;
         }
         
-        m_data.seek(m_data.length());
+        if(m_cacheKey != null) {
+            ChunkValues values = ChunkCache.instance().getValues(m_cacheKey, m_fieldName);
+            if(values != null) {
+                setValues(values);
+                return;
+            }
+        }
+        
         m_input.seek(m_valuesOffset);
-        m_offsets = new int[m_valuesCount];
-        m_lengths = new int[m_valuesCount];
-        m_prefixes = new int[m_valuesCount];
-        m_suffixes = new int[m_valuesCount];
+        int[] offsets = new int[m_valuesCount];
+        int[] lengths = new int[m_valuesCount];
+        int[] prefixes = new int[m_valuesCount];
+        int[] suffixes = new int[m_valuesCount];
         
         MemoryStream s_pfx = Temp.readCompressed(m_input);
         MemoryStream s_sfx = Temp.readCompressed(m_input);
         MemoryStream s_len = Temp.readCompressed(m_input);
         MemoryStream s_dat = Temp.readCompressed(m_input);
+        MemoryStream data = new MemoryStream(Math.max(16, s_dat.length()));
         
-        int lastPos = m_data.position();
+        int lastPos = 0;
         int lastLen = 0;
         for(int i = 0; i < m_valuesCount; i++) {
             int pfx = s_pfx.readVInt();
             int sfx = s_sfx.readVInt();
             int len = s_len.readVInt();
-            m_offsets[i] = m_data.position();
-            m_lengths[i] = len;
-            m_prefixes[i] = pfx;
-            m_suffixes[i] = sfx;
+            offsets[i] = data.position();
+            lengths[i] = len;
+            prefixes[i] = pfx;
+            suffixes[i] = sfx;
             int ifx = len - sfx - pfx;
-            if(pfx > 0) m_data.write(m_data.getBuffer(), lastPos, pfx);
+            if(pfx > 0) data.write(data.getBuffer(), lastPos, pfx);
             if(ifx > 0) {
-                m_data.write(s_dat.getBuffer(), s_dat.position(), ifx);
+                data.write(s_dat.getBuffer(), s_dat.position(), ifx);
                 s_dat.skip(ifx);
             }
-            if(sfx > 0) m_data.write(m_data.getBuffer(), lastPos + lastLen - sfx, sfx);
-            lastPos = m_offsets[i];
+            if(sfx > 0) data.write(data.getBuffer(), lastPos + lastLen - sfx, sfx);
+            lastPos = offsets[i];
             lastLen = len;
         }
+        ChunkValues values = new ChunkValues(data.toArray(), offsets, lengths, prefixes, suffixes);
+        if(m_cacheKey != null) ChunkCache.instance().putValues(m_cacheKey, m_fieldName, values);
+        setValues(values);
+    }
+    
+    private void setValues(ChunkValues values) {
+        m_buffer = values.buffer;
+        m_offsets = values.offsets;
+        m_lengths = values.lengths;
+        m_prefixes = values.prefixes;
+        m_suffixes = values.suffixes;
     }
     
     public void readIndexes() {
@@ -112,28 +141,36 @@ public class ChunkField {
             return;
         }
         
-        m_indexes = new int[m_size];
+        if(m_cacheKey != null) {
+            m_indexes = ChunkCache.instance().getIndexes(m_cacheKey, m_fieldName);
+            if(m_indexes != null) return;
+        }
+        
+        int[] indexes = new int[m_size];
         m_input.seek(m_indexesOffset);
         if(m_valuesCount >= 256) {
             MemoryStream s_lst = Temp.readCompressed(m_input);
             MemoryStream s_fst = Temp.readCompressed(m_input);
             for(int i = 0; i < m_size; i++) {
                 int n = (s_fst.readVInt() << 8) + s_lst.readByte();
-                m_indexes[i] = n;
+                indexes[i] = n;
             }
         } else {
             MemoryStream s_lst = Temp.readCompressed(m_input);
             for(int i = 0; i < m_size; i++) {
                 int n = s_lst.readByte();
-                m_indexes[i] = n;
+                indexes[i] = n;
             }
         }
+        if(m_cacheKey != null) ChunkCache.instance().putIndexes(m_cacheKey, m_fieldName, indexes);
+        m_indexes = indexes;
     }
     
 
     //for synthetic fields
-    public void set(int[] indexes, int[] offsets, int[] lengths) {
+    public void set(int[] indexes, byte[] buffer, int[] offsets, int[] lengths) {
         m_size = indexes.length;
+        m_buffer = buffer;
         m_valuesCount = offsets.length;
         m_offsets = offsets;
         m_lengths = lengths;
@@ -145,7 +182,13 @@ public class ChunkField {
     
     public int size() { return m_size; }
     
-    public byte[] getBuffer() { return m_data.getBuffer(); }
+    // values of stored fields are sorted; values of synthetic fields follow the values of their base field
+    public boolean isSorted() { return m_synth == null; }
+    
+    public byte[] getBuffer() {
+        readValues();
+        return m_buffer;
+    }
     
     public BSTR getFieldName() { return m_fieldName; }
     
@@ -182,15 +225,40 @@ public class ChunkField {
     }
     
     
+    public boolean hasPostings() { return m_postingsOffset >= 0; }
+    
+    /**
+     * Returns the encoded size of the documents list of the value, roughly the number of its documents
+     */
+    public int getPostingsSize(int valueNumber) {
+        m_input.seek(m_postingsOffset + valueNumber * 4);
+        int start = m_input.readInt();
+        return m_input.readInt() - start;
+    }
+    
+    /**
+     * Sets the documents having the value; the field must have postings
+     */
+    public void getPostings(int valueNumber, BitVector docs) {
+        m_input.seek(m_postingsOffset + valueNumber * 4);
+        int start = m_input.readInt();
+        int end = m_input.readInt();
+        int listsOffset = m_postingsOffset + (m_valuesCount + 1) * 4;
+        m_input.seek(listsOffset + start);
+        int doc = 0;
+        while(m_input.position() < listsOffset + end) {
+            doc += m_input.readVInt();
+            docs.set(doc);
+        }
+    }
+    
     public void getFieldValue(int doc, BSTR value) {
         readValues();
         readIndexes();
         int index = m_indexes[doc];
-        value.length = 0;
-        m_data.seek(m_offsets[index]);
         int len = m_lengths[index];
         value.assertLength(len);
-        m_data.read(value.buffer, 0, len);
+        System.arraycopy(m_buffer, m_offsets[index], value.buffer, 0, len);
         value.length = len;
     }
 
@@ -198,23 +266,23 @@ public class ChunkField {
         readValues();
         readIndexes();
         int index = m_indexes[doc];
-        return Utils.toString(m_data.getBuffer(), m_offsets[index], m_lengths[index]);
+        return Utils.toString(m_buffer, m_offsets[index], m_lengths[index]);
     }
 
     public void getFieldValue(int doc, StrRef value) {
         readValues();
         readIndexes();
         int index = m_indexes[doc];
-        value.set(m_data.getBuffer(), m_offsets[index], m_lengths[index]);
+        value.set(m_buffer, m_offsets[index], m_lengths[index]);
     }
 
     public void getValue(int valueNumber, StrRef value) {
         readValues();
-        value.set(m_data.getBuffer(), m_offsets[valueNumber], m_lengths[valueNumber]);
+        value.set(m_buffer, m_offsets[valueNumber], m_lengths[valueNumber]);
     }
     
     public void printSize(StringBuilder sb) {
-    	sb.append("Field: " + m_fieldName.toString() + "; Total: " + m_CmpTotalSize + "; Values: " + m_CmpValuesSize + "; Indexes: " + m_CmpIndexesSize + "\n");
+    	sb.append("Field: " + m_fieldName.toString() + "; Total: " + m_CmpTotalSize + "; Values: " + m_CmpValuesSize + "; Indexes: " + m_CmpIndexesSize + "; Postings: " + m_CmpPostingsSize + "\n");
     }
 }
 
@@ -0,0 +1,155 @@
+package com.dell.doradus.logservice;
+
+import com.dell.doradus.olap.collections.MemoryStream;
+import com.dell.doradus.olap.io.BSTR;
+
+/**
+ * Summary of the values of one field in a chunk, stored in ChunkInfo so that
+ * filters can skip chunks without reading them: number of distinct values,
+ * smallest and largest value, and a bloom filter on the values.
+ * Values are matched case-insensitively, so the bloom filter contains values
+ * with ASCII letters converted to lower case.
+ */
+public class ChunkFieldSummary {
+    // min and max values are truncated to this length
+    public static final int MAX_VALUE_LENGTH = 64;
+    public static final int BITS_PER_VALUE = 10;
+    // summaries are read for every chunk of a query, so the bloom filter is kept small;
+    // fields with more than MAX_BLOOM_BITS / 4 distinct values get no bloom filter
+    public static final int MAX_BLOOM_BITS = 8 * 1024;
+
+    private BSTR m_field;
+    private int m_distinctCount;
+    private BSTR m_min;
+    private BSTR m_max;
+    // max value was truncated, so it is not an upper bound
+    private boolean m_maxTruncated;
+    // 0 if there is no bloom filter
+    private int m_hashes;
+    private long[] m_bloom;
+    // number of values added so far
+    private int m_added;
+
+    private ChunkFieldSummary() {}
+
+    /**
+     * Creates an empty summary; values should then be added with {@link #add(BSTR)}
+     * 
+     * @param field     field name
+     * @param count     number of distinct non-empty values that will be added
+     */
+    public ChunkFieldSummary(BSTR field, int count) {
+        m_field = field;
+        m_distinctCount = count;
+        m_min = BSTR.EMPTY;
+        m_max = BSTR.EMPTY;
+        if(count == 0 || count > MAX_BLOOM_BITS / 4) {
+            m_bloom = new long[0];
+            return;
+        }
+        long bits = Math.min(MAX_BLOOM_BITS, (long)count * BITS_PER_VALUE);
+        m_bloom = new long[(int)((bits + 63) / 64)];
+        m_hashes = (int)Math.round(m_bloom.length * 64.0 / count * Math.log(2));
+        m_hashes = Math.max(1, Math.min(7, m_hashes));
+    }
+
+    /**
+     * Adds a value; values should be added in ascending order. The value is not referenced afterwards.
+     */
+    public void add(BSTR value) {
+        if(m_added == 0) m_min = truncate(value);
+        if(m_added == m_distinctCount - 1) {
+            m_max = truncate(value);
+            m_maxTruncated = m_max.length < value.length;
+        }
+        m_added++;
+        if(m_hashes == 0) return;
+        long hash = hash(value.buffer, 0, value.length);
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32);
+        long size = m_bloom.length * 64L;
+        for(int h = 0; h < m_hashes; h++) {
+            long bit = ((h1 + h * h2) & 0x7fffffffL) % size;
+            m_bloom[(int)(bit >>> 6)] |= 1L << (bit & 63);
+        }
+    }
+
+    private static BSTR truncate(BSTR value) {
+        if(value.length <= MAX_VALUE_LENGTH) return new BSTR(value);
+        return new BSTR(value.buffer, 0, MAX_VALUE_LENGTH);
+    }
+
+    public BSTR getField() { return m_field; }
+    public int getDistinctCount() { return m_distinctCount; }
+    public BSTR getMin() { return m_min; }
+    public BSTR getMax() { return m_max; }
+
+    /**
+     * Returns false if no value in the chunk equals, ignoring ASCII case, the given value
+     */
+    public boolean mightContain(byte[] value) {
+        if(m_distinctCount == 0) return false;
+        if(m_hashes == 0) return true;
+        long hash = hash(value, 0, value.length);
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32);
+        long size = m_bloom.length * 64L;
+        for(int h = 0; h < m_hashes; h++) {
+            long bit = ((h1 + h * h2) & 0x7fffffffL) % size;
+            if((m_bloom[(int)(bit >>> 6)] & (1L << (bit & 63))) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns false if no value in the chunk can be within [min, max];
+     * null bounds are unlimited
+     */
+    public boolean mightContainRange(BSTR min, BSTR max) {
+        if(m_distinctCount == 0) return false;
+        if(min != null && !m_maxTruncated && BSTR.compare(m_max, min) < 0) return false;
+        if(max != null && BSTR.compare(m_min, max) > 0) return false;
+        return true;
+    }
+
+    // 64-bit FNV-1a on ASCII lower-cased bytes followed by the murmur3 finalizer
+    private static long hash(byte[] data, int offset, int length) {
+        long h = 0xcbf29ce484222325L;
+        for(int i = offset; i < offset + length; i++) {
+            int b = data[i] & 0xff;
+            if(b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public void write(MemoryStream stream) {
+        stream.writeString(m_field);
+        stream.writeVInt(m_distinctCount);
+        stream.writeString(m_min);
+        stream.writeString(m_max);
+        stream.writeBoolean(m_maxTruncated);
+        stream.writeVInt(m_hashes);
+        stream.writeVInt(m_bloom.length);
+        for(long word: m_bloom) stream.writeLong(word);
+    }
+
+    public static ChunkFieldSummary read(MemoryStream stream) {
+        ChunkFieldSummary summary = new ChunkFieldSummary();
+        summary.m_field = stream.readString();
+        summary.m_distinctCount = stream.readVInt();
+        summary.m_min = stream.readString();
+        summary.m_max = stream.readString();
+        summary.m_maxTruncated = stream.readBoolean();
+        summary.m_hashes = stream.readVInt();
+        summary.m_bloom = new long[stream.readVInt()];
+        for(int i = 0; i < summary.m_bloom.length; i++) summary.m_bloom[i] = stream.readLong();
+        return summary;
+    }
+}
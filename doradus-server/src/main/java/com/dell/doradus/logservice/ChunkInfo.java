@@ -1,7 +1,12 @@
 package com.dell.doradus.logservice;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import com.dell.doradus.logservice.store.ChunkWriter;
 import com.dell.doradus.olap.collections.MemoryStream;
+import com.dell.doradus.olap.io.BSTR;
 
 
 public class ChunkInfo {
@@ -10,6 +15,10 @@ public class ChunkInfo {
     private int m_eventsCount;
     private long m_minTimestamp;
     private long m_maxTimestamp;
+    // field summaries (version 2) are parsed on the first call to getFieldSummary
+    private byte[] m_data;
+    private int m_summariesOffset;
+    private Map<BSTR, ChunkFieldSummary> m_summaries;
 
     public ChunkInfo() { }
 
@@ -19,6 +28,9 @@ public class ChunkInfo {
         m_eventsCount = other.m_eventsCount;
         m_minTimestamp = other.m_minTimestamp;
         m_maxTimestamp = other.m_maxTimestamp;
+        m_data = other.m_data;
+        m_summariesOffset = other.m_summariesOffset;
+        m_summaries = other.m_summaries;
     }
     
     public String getPartition() { return m_partition; }
@@ -27,12 +39,43 @@ public class ChunkInfo {
     public long getMinTimestamp() { return m_minTimestamp; }
     public long getMaxTimestamp() { return m_maxTimestamp; }
     
+    public boolean hasFieldSummaries() {
+        return m_summaries != null || m_summariesOffset > 0;
+    }
+    
+    /**
+     * Returns the summary of the field values, or null if the chunk has no summaries
+     * (it was written before they were introduced) or does not contain the field.
+     */
+    public ChunkFieldSummary getFieldSummary(BSTR field) {
+        if(m_summaries == null) {
+            if(m_summariesOffset == 0) return null;
+            Map<BSTR, ChunkFieldSummary> summaries = new HashMap<>();
+            MemoryStream ms = new MemoryStream(m_data);
+            ms.seek(m_summariesOffset);
+            int count = ms.readVInt();
+            for(int i = 0; i < count; i++) {
+                ChunkFieldSummary summary = ChunkFieldSummary.read(ms);
+                summaries.put(summary.getField(), summary);
+            }
+            m_summaries = summaries;
+        }
+        return m_summaries.get(field);
+    }
+    
     public void set(String partition, String chunkId, ChunkWriter writer) {
         m_partition = partition;
         m_chunkId = chunkId;
         m_eventsCount = writer.getSize();
         m_minTimestamp = writer.getMinTimestamp();
         m_maxTimestamp = writer.getMaxTimestamp();
+        m_data = null;
+        m_summariesOffset = 0;
+        m_summaries = new HashMap<>();
+        List<ChunkFieldSummary> summaries = writer.getFieldSummaries();
+        for(ChunkFieldSummary summary: summaries) {
+            m_summaries.put(summary.getField(), summary);
+        }
     }
 
     public void set(String partition, String chunkId, byte[] data) {
@@ -40,20 +83,30 @@ public class ChunkInfo {
         m_chunkId = chunkId;
         MemoryStream ms = new MemoryStream(data);
         int version = ms.readByte();
-        if(version != 1) throw new RuntimeException("Unknown version");
+        if(version != 1 && version != 2) throw new RuntimeException("Unknown version");
         m_eventsCount = ms.readInt();
         m_minTimestamp = ms.readLong();
         m_maxTimestamp = ms.readLong();
+        m_data = data;
+        m_summariesOffset = version == 2 ? ms.position() : 0;
+        m_summaries = null;
     }
     
     public byte[] getByteData() {
-        byte[] data = new byte[21];
-        MemoryStream ms = new MemoryStream(data);
-        ms.writeByte((byte)1); // version
+        MemoryStream ms = new MemoryStream();
+        ms.writeByte((byte)(hasFieldSummaries() ? 2 : 1)); // version
         ms.writeInt(m_eventsCount);
         ms.writeLong(m_minTimestamp);
         ms.writeLong(m_maxTimestamp);
-        return data;
+        if(m_summaries != null) {
+            ms.writeVInt(m_summaries.size());
+            for(ChunkFieldSummary summary: m_summaries.values()) {
+                summary.write(ms);
+            }
+        } else if(m_summariesOffset > 0) {
+            ms.write(m_data, m_summariesOffset, m_data.length - m_summariesOffset);
+        }
+        return ms.toArray();
     }
     
 }
@@ -11,7 +11,6 @@ import com.dell.doradus.olap.io.BSTR;
 public class ChunkReader {
     private int m_size;
     private int m_fieldsCount;
-    private MemoryStream m_data = new MemoryStream();
     private MemoryStream m_input = new MemoryStream();
     private ChunkTimestampField m_timestamps;
     private ArrayList<ChunkField> m_fields = new ArrayList<>(); 
@@ -25,20 +24,27 @@ public class ChunkReader {
     }
     
     public void read(byte[] data) {
+        read(data, null);
+    }
+    
+    /**
+     * @param data      chunk data
+     * @param cacheKey  key of the chunk in {@link ChunkCache}, or null if decoded columns should not be cached
+     */
+    public void read(byte[] data, String cacheKey) {
         m_size = 0;
         m_fieldsCount = 0;
-        m_data.clear();
         m_input = new MemoryStream(data);
         m_timestamps = null;
         m_fields.clear();
         m_fieldsMap.clear();
         byte version = (byte)m_input.readByte();
-        if(version != 1) throw new RuntimeException("Unknown format");
+        if(version != 1 && version != 2) throw new RuntimeException("Unknown format");
         m_size = m_input.readVInt();
         m_fieldsCount = m_input.readVInt();
-        m_timestamps = new ChunkTimestampField(m_size, m_input);
+        m_timestamps = new ChunkTimestampField(m_size, m_input, cacheKey);
         for(int f = 0; f < m_fieldsCount; f++) {
-            ChunkField field = new ChunkField(m_size, f, m_input, m_data);
+            ChunkField field = new ChunkField(m_size, f, m_input, cacheKey, version);
             m_fields.add(field);
             m_fieldsMap.put(field.getFieldName(), new Integer(f));
         }
@@ -102,7 +108,7 @@ public class ChunkReader {
             if(fieldIndex > 0) field = getField(fieldIndex);
             else {
                 int f = m_fieldsCount;
-                field = new ChunkField(m_synth, fieldName, f, m_data);
+                field = new ChunkField(m_synth, fieldName, f);
                 m_fields.add(field);
                 m_fieldsMap.put(field.getFieldName(), new Integer(f));
                 m_fieldsCount++;
@@ -0,0 +1,164 @@
+package com.dell.doradus.logservice;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.dell.doradus.olap.collections.MemoryStream;
+import com.dell.doradus.olap.io.BSTR;
+
+/**
+ * Pre-aggregated counts of one chunk: number of events per hour and, for the configured
+ * rollup fields, number of events per field value. Rollups are stored in the
+ * "rollups_&lt;partition&gt;" row, one column per chunk, so that aggregate queries can
+ * count chunks whose events all match the query without reading them.
+ */
+public class ChunkRollup {
+    public static final long BUCKET = 3600 * 1000;
+
+    private int m_eventsCount;
+    // timestamp / BUCKET, ascending
+    private long[] m_buckets;
+    private int[] m_bucketCounts;
+    // fields that are not in the chunk have no values
+    private BSTR[] m_fields;
+    private BSTR[][] m_values;
+    private int[][] m_valueCounts;
+
+    private ChunkRollup() {}
+
+    public static ChunkRollup create(ChunkReader reader, List<BSTR> fields) {
+        ChunkRollup rollup = new ChunkRollup();
+        int size = reader.size();
+        rollup.m_eventsCount = size;
+
+        long[] buckets = new long[size];
+        for(int i = 0; i < size; i++) {
+            buckets[i] = reader.getTimestamp(i) / BUCKET;
+        }
+        Arrays.sort(buckets);
+        int count = 0;
+        for(int i = 0; i < size; i++) {
+            if(i == 0 || buckets[i] != buckets[i - 1]) count++;
+        }
+        rollup.m_buckets = new long[count];
+        rollup.m_bucketCounts = new int[count];
+        int pos = -1;
+        for(int i = 0; i < size; i++) {
+            if(i == 0 || buckets[i] != buckets[i - 1]) rollup.m_buckets[++pos] = buckets[i];
+            rollup.m_bucketCounts[pos]++;
+        }
+
+        rollup.m_fields = new BSTR[fields.size()];
+        rollup.m_values = new BSTR[fields.size()][];
+        rollup.m_valueCounts = new int[fields.size()][];
+        for(int f = 0; f < fields.size(); f++) {
+            rollup.m_fields[f] = new BSTR(fields.get(f));
+            int fieldIndex = reader.getFieldIndex(fields.get(f));
+            if(fieldIndex < 0) {
+                rollup.m_values[f] = new BSTR[0];
+                rollup.m_valueCounts[f] = new int[0];
+                continue;
+            }
+            ChunkField field = reader.getField(fieldIndex);
+            int[] counts = new int[field.getValuesCount()];
+            for(int index: field.getIndexes()) counts[index]++;
+            int valuesCount = 0;
+            for(int c: counts) {
+                if(c > 0) valuesCount++;
+            }
+            BSTR[] values = new BSTR[valuesCount];
+            int[] valueCounts = new int[valuesCount];
+            byte[] buffer = field.getBuffer();
+            int[] offsets = field.getOffsets();
+            int[] lengths = field.getLengths();
+            pos = 0;
+            for(int i = 0; i < counts.length; i++) {
+                if(counts[i] == 0) continue;
+                values[pos] = new BSTR(buffer, offsets[i], lengths[i]);
+                valueCounts[pos] = counts[i];
+                pos++;
+            }
+            rollup.m_values[f] = values;
+            rollup.m_valueCounts[f] = valueCounts;
+        }
+        return rollup;
+    }
+
+    public int getEventsCount() { return m_eventsCount; }
+
+    public int getBucketsCount() { return m_buckets.length; }
+    public long getBucket(int index) { return m_buckets[index]; }
+    public int getBucketCount(int index) { return m_bucketCounts[index]; }
+
+    // returns -1 if the field was not rolled up
+    public int getFieldIndex(BSTR field) {
+        for(int i = 0; i < m_fields.length; i++) {
+            if(m_fields[i].equals(field)) return i;
+        }
+        return -1;
+    }
+
+    public int getValuesCount(int fieldIndex) { return m_values[fieldIndex].length; }
+    public BSTR getValue(int fieldIndex, int index) { return m_values[fieldIndex][index]; }
+    public int getValueCount(int fieldIndex, int index) { return m_valueCounts[fieldIndex][index]; }
+
+    // true if the rollup contains all the fields
+    public boolean hasFields(List<BSTR> fields) {
+        for(BSTR field: fields) {
+            if(getFieldIndex(field) < 0) return false;
+        }
+        return true;
+    }
+
+    public byte[] getByteData() {
+        MemoryStream stream = new MemoryStream();
+        stream.writeVInt(m_eventsCount);
+        stream.writeVInt(m_buckets.length);
+        long last = 0;
+        for(int i = 0; i < m_buckets.length; i++) {
+            stream.writeVLong(m_buckets[i] - last);
+            stream.writeVInt(m_bucketCounts[i]);
+            last = m_buckets[i];
+        }
+        stream.writeVInt(m_fields.length);
+        for(int f = 0; f < m_fields.length; f++) {
+            stream.writeString(m_fields[f]);
+            stream.writeVInt(m_values[f].length);
+            for(int i = 0; i < m_values[f].length; i++) {
+                stream.writeString(m_values[f][i]);
+                stream.writeVInt(m_valueCounts[f][i]);
+            }
+        }
+        return stream.toArray();
+    }
+
+    public static ChunkRollup read(byte[] data) {
+        MemoryStream stream = new MemoryStream(data);
+        ChunkRollup rollup = new ChunkRollup();
+        rollup.m_eventsCount = stream.readVInt();
+        int bucketsCount = stream.readVInt();
+        rollup.m_buckets = new long[bucketsCount];
+        rollup.m_bucketCounts = new int[bucketsCount];
+        long last = 0;
+        for(int i = 0; i < bucketsCount; i++) {
+            last += stream.readVLong();
+            rollup.m_buckets[i] = last;
+            rollup.m_bucketCounts[i] = stream.readVInt();
+        }
+        int fieldsCount = stream.readVInt();
+        rollup.m_fields = new BSTR[fieldsCount];
+        rollup.m_values = new BSTR[fieldsCount][];
+        rollup.m_valueCounts = new int[fieldsCount][];
+        for(int f = 0; f < fieldsCount; f++) {
+            rollup.m_fields[f] = stream.readString();
+            int valuesCount = stream.readVInt();
+            rollup.m_values[f] = new BSTR[valuesCount];
+            rollup.m_valueCounts[f] = new int[valuesCount];
+            for(int i = 0; i < valuesCount; i++) {
+                rollup.m_values[f][i] = stream.readString();
+                rollup.m_valueCounts[f][i] = stream.readVInt();
+            }
+        }
+        return rollup;
+    }
+}
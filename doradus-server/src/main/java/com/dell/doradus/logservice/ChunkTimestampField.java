@@ -8,11 +8,13 @@ public class ChunkTimestampField {
     private int m_offset;
     private long[] m_timestamps;
     private MemoryStream m_input;
+    private String m_cacheKey;
     
     private int m_CmpSize;
     
-    public ChunkTimestampField(int size, MemoryStream input) {
+    public ChunkTimestampField(int size, MemoryStream input, String cacheKey) {
         m_size = size;
+        m_cacheKey = cacheKey;
         m_offset = input.position();
         m_input = input;
         Temp.skipCompressed(input);
@@ -22,6 +24,11 @@ public class ChunkTimestampField {
     public void readField() {
         if(m_timestamps != null) return;
         
+        if(m_cacheKey != null) {
+            m_timestamps = ChunkCache.instance().getTimestamps(m_cacheKey);
+            if(m_timestamps != null) return;
+        }
+        
         m_input.seek(m_offset);
         m_timestamps = new long[m_size];
         MemoryStream s_ts = Temp.readCompressed(m_input);
@@ -30,6 +37,7 @@ public class ChunkTimestampField {
             last += s_ts.readVLong();
             m_timestamps[i] = last;
         }
+        if(m_cacheKey != null) ChunkCache.instance().putTimestamps(m_cacheKey, m_timestamps);
     }
     
     public int size() { return m_size; }
@@ -0,0 +1,26 @@
+package com.dell.doradus.logservice;
+
+/**
+ * Decoded dictionary of a chunk field: value i is buffer[offsets[i]..offsets[i] + lengths[i]),
+ * and prefixes/suffixes are the lengths it shares with value i - 1. Immutable once created,
+ * so it can be shared through {@link ChunkCache}.
+ */
+public class ChunkValues {
+    public final byte[] buffer;
+    public final int[] offsets;
+    public final int[] lengths;
+    public final int[] prefixes;
+    public final int[] suffixes;
+    
+    public ChunkValues(byte[] buffer, int[] offsets, int[] lengths, int[] prefixes, int[] suffixes) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.prefixes = prefixes;
+        this.suffixes = suffixes;
+    }
+    
+    public long getSize() {
+        return buffer.length + 16L * offsets.length;
+    }
+}
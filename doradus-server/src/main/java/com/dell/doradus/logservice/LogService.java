@@ -1,16 +1,30 @@
 package com.dell.doradus.logservice;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.dell.doradus.common.Utils;
 import com.dell.doradus.logservice.search.Searcher;
 import com.dell.doradus.logservice.store.BatchWriter;
 import com.dell.doradus.logservice.store.ChunkMerger;
+import com.dell.doradus.logservice.store.TieredMergePolicy;
 import com.dell.doradus.olap.OlapBatch;
 import com.dell.doradus.olap.aggregate.AggregationResult;
 import com.dell.doradus.olap.io.BSTR;
 import com.dell.doradus.search.SearchResultList;
+import com.dell.doradus.search.SearchResultWriter;
 import com.dell.doradus.service.db.DBService;
 import com.dell.doradus.service.db.DBTransaction;
 import com.dell.doradus.service.db.DColumn;
@@ -18,8 +32,54 @@ import com.dell.doradus.service.db.DRow;
 import com.dell.doradus.service.db.Tenant;
 
 public class LogService {
+    // null if rollups are disabled
+    private List<BSTR> m_rollupFields;
+    private Set<BSTR> m_postingsFields = new HashSet<>();
+    private TieredMergePolicy m_mergePolicy = new TieredMergePolicy();
+    // null if partitions are merged on the merging thread
+    private ExecutorService m_mergeExecutor;
+    // stores whose partitions were all checked for merging since the start
+    private Set<String> m_mergedStores = ConcurrentHashMap.newKeySet();
+    private Logger m_log = LoggerFactory.getLogger(getClass());
+    
     public LogService() { }
 
+    /**
+     * Sets the merge policy and the number of partitions merged concurrently;
+     * 0 threads merges partitions one by one on the calling thread.
+     */
+    public void setMergeOptions(TieredMergePolicy policy, int threads) {
+        m_mergePolicy = policy;
+        if(m_mergeExecutor != null) m_mergeExecutor.shutdown();
+        m_mergeExecutor = threads == 0 ? null : Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Enables rollups: new and merged chunks get a {@link ChunkRollup} with the event counts
+     * per hour and per value of the given fields. Null disables rollups.
+     */
+    public void setRollupFields(List<String> fields) {
+        if(fields == null) {
+            m_rollupFields = null;
+            return;
+        }
+        List<BSTR> rollupFields = new ArrayList<>(fields.size());
+        for(String field: fields) rollupFields.add(new BSTR(field));
+        m_rollupFields = rollupFields;
+    }
+    
+    public boolean hasRollups() { return m_rollupFields != null; }
+
+    /**
+     * Sets the fields whose chunks store the documents of every value,
+     * for fast lookups of values that only a few documents have.
+     */
+    public void setPostingsFields(List<String> fields) {
+        Set<BSTR> postingsFields = new HashSet<>();
+        for(String field: fields) postingsFields.add(new BSTR(field));
+        m_postingsFields = postingsFields;
+    }
+
     public void createTable(Tenant tenant, String application, String table) {
         String store = application + "_" + table;
         DBService.instance(tenant).createStoreIfAbsent(store, true);
@@ -48,6 +108,7 @@ public class LogService {
         if(size == 0) return;
         int start = 0;
         BatchWriter writer = new BatchWriter();
+        writer.getWriter().setPostingsFields(m_postingsFields);
         DBTransaction transaction = DBService.instance(tenant).startTransaction();
         while(start < size) {
             String dateStr = batch.get(start).getId();
@@ -65,12 +126,15 @@ public class LogService {
             ChunkInfo chunkInfo = new ChunkInfo();
             chunkInfo.set(partition, uuid, writer.getWriter());
             transaction.addColumn(store, "partitions", partition, "");
+            transaction.addColumn(store, "partitions_to_merge", partition, "");
             transaction.addColumn(store, "partitions_" + partition, uuid, chunkInfo.getByteData());
             for(BSTR field: writer.getFields()) {
                 transaction.addColumn(store, "fields", field.toString(), "");
             }
             transaction.addColumn(store, partition, uuid, data);
-            
+            if(m_rollupFields != null) {
+                transaction.addColumn(store, "rollups_" + partition, uuid, createRollup(data));
+            }
             
             start = end;
         }
@@ -86,42 +150,175 @@ public class LogService {
             if(partition.compareTo(partitionToCompare) >= 0) continue;
             if(transaction == null) transaction = DBService.instance(tenant).startTransaction();
             transaction.deleteColumn(store, "partitions", partition);
+            transaction.deleteColumn(store, "partitions_to_merge", partition);
             transaction.deleteRow(store, partition);
             transaction.deleteRow(store, "partitions_" + partition);
+            transaction.deleteRow(store, "rollups_" + partition);
         }
         if(transaction != null) DBService.instance(tenant).commit(transaction);
     }
     
 
-    public void mergePartition(Tenant tenant, String application, String table, String partition) {
-        final int MERGE_SEGMENTS = 8192;
-        final int MIN_MERGE_DOCS = 8192;
-        final int MAX_MERGE_DOCS = 65536;
+    /**
+     * Merges the partitions of the table that got new chunks since the last merge.
+     * The first merge of a table after the start checks all its partitions.
+     * Groups of chunks, of the same or of different partitions, are merged
+     * concurrently on the merge threads.
+     */
+    public void mergeTable(final Tenant tenant, final String application, final String table) {
+        String store = application + "_" + table;
+        String key = tenant.getName() + "/" + store;
+        List<String> partitions = new ArrayList<>();
+        boolean bFullPass = !m_mergedStores.contains(key);
+        if(bFullPass) partitions = getPartitions(tenant, application, table);
+        else {
+            for(DColumn c: DBService.instance(tenant).getAllColumns(store, "partitions_to_merge")) {
+                partitions.add(c.getName());
+            }
+        }
+        if(partitions.size() == 0) return;
+        // batches added during the merge mark their partitions again
+        DBTransaction transaction = DBService.instance(tenant).startTransaction();
+        for(String partition: partitions) {
+            transaction.deleteColumn(store, "partitions_to_merge", partition);
+        }
+        DBService.instance(tenant).commit(transaction);
         
+        List<String> failed = new ArrayList<>();
+        boolean bCompleted = false;
+        try {
+            ExecutorService executor = m_mergeExecutor;
+            if(executor == null) {
+                for(String partition: partitions) {
+                    try {
+                        mergePartition(tenant, application, table, partition);
+                    } catch(RuntimeException e) {
+                        m_log.error("Failed to merge partition " + partition + " of " + key, e);
+                        failed.add(partition);
+                    }
+                }
+            } else {
+                // every group of chunks is merged by a separate task
+                List<Future<?>> futures = new ArrayList<>();
+                List<String> futurePartitions = new ArrayList<>();
+                for(String partition: partitions) {
+                    List<List<ChunkInfo>> merges;
+                    try {
+                        merges = selectMerges(tenant, application, table, partition);
+                    } catch(RuntimeException e) {
+                        m_log.error("Failed to merge partition " + partition + " of " + key, e);
+                        failed.add(partition);
+                        continue;
+                    }
+                    for(final List<ChunkInfo> merge: merges) {
+                        futures.add(executor.submit(new Runnable() {
+                            @Override public void run() { mergeChunks(merge, createMerger(tenant, application, table)); }
+                        }));
+                        futurePartitions.add(partition);
+                    }
+                }
+                for(int i = 0; i < futures.size(); i++) {
+                    String partition = futurePartitions.get(i);
+                    try {
+                        futures.get(i).get();
+                    } catch (InterruptedException e) {
+                        for(Future<?> future: futures) future.cancel(true);
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    } catch (ExecutionException e) {
+                        m_log.error("Failed to merge partition " + partition + " of " + key, e.getCause());
+                        if(!failed.contains(partition)) failed.add(partition);
+                    }
+                }
+                for(String partition: partitions) {
+                    if(m_rollupFields == null || failed.contains(partition)) continue;
+                    try {
+                        updateRollups(tenant, application, table, partition);
+                    } catch(RuntimeException e) {
+                        m_log.error("Failed to update rollups of partition " + partition + " of " + key, e);
+                        failed.add(partition);
+                    }
+                }
+            }
+            bCompleted = true;
+        } finally {
+            // if the merge did not complete, e.g. it was interrupted, all of its partitions are marked again
+            List<String> unmerged = bCompleted ? failed : partitions;
+            if(unmerged.size() > 0) {
+                transaction = DBService.instance(tenant).startTransaction();
+                for(String partition: unmerged) {
+                    transaction.addColumn(store, "partitions_to_merge", partition, "");
+                }
+                DBService.instance(tenant).commit(transaction);
+            }
+        }
+        if(failed.size() > 0) {
+            throw new RuntimeException("Failed to merge partitions " + failed + " of " + key);
+        }
+        if(bFullPass) m_mergedStores.add(key);
+    }
+    
+    public void mergePartition(Tenant tenant, String application, String table, String partition) {
+        List<List<ChunkInfo>> merges = selectMerges(tenant, application, table, partition);
+        if(merges.size() > 0) {
+            ChunkMerger merger = createMerger(tenant, application, table);
+            for(List<ChunkInfo> merge: merges) {
+                mergeChunks(merge, merger);
+            }
+        }
+        if(m_rollupFields != null) updateRollups(tenant, application, table, partition);
+    }
+    
+    // groups of chunks of the partition to be merged according to the merge policy
+    private List<List<ChunkInfo>> selectMerges(Tenant tenant, String application, String table, String partition) {
         String store = application + "_" + table;
-        List<ChunkInfo> infos = new ArrayList<ChunkInfo>(MERGE_SEGMENTS);
-        int totalSize = 0;
+        List<ChunkInfo> infos = new ArrayList<ChunkInfo>();
         ChunkInfo info = new ChunkInfo();
-        ChunkMerger merger = null;
         for(DColumn c: DBService.instance(tenant).getAllColumns(store, "partitions_" + partition)) {
             info.set(partition, c.getName(), c.getRawValue());
-            int eventsCount = info.getEventsCount();
-            if(eventsCount > MIN_MERGE_DOCS) continue;
-            if(totalSize + eventsCount > MAX_MERGE_DOCS || infos.size() == MAX_MERGE_DOCS) {
-                if(merger == null) merger = new ChunkMerger(this, tenant, application, table);
-                mergeChunks(infos, merger);
-                infos.clear();
-                totalSize = 0;
-            }
+            if(m_mergePolicy.getTier(info.getEventsCount()) < 0) continue;
+            infos.add(new ChunkInfo(info));
+        }
+        return m_mergePolicy.select(infos);
+    }
+    
+    private ChunkMerger createMerger(Tenant tenant, String application, String table) {
+        ChunkMerger merger = new ChunkMerger(this, tenant, application, table);
+        merger.getWriter().setPostingsFields(m_postingsFields);
+        return merger;
+    }
+    
+    // creates rollups of the chunks that were written before rollups were enabled
+    // or whose rollups do not contain all the rollup fields
+    private void updateRollups(Tenant tenant, String application, String table, String partition) {
+        List<BSTR> rollupFields = m_rollupFields;
+        Map<String, byte[]> rollups = getRollups(tenant, application, table, partition);
+        List<ChunkInfo> infos = new ArrayList<>();
+        for(ChunkInfo info: getChunks(tenant, application, table, partition)) {
+            byte[] rollup = rollups.get(info.getChunkId());
+            if(rollup != null && ChunkRollup.read(rollup).hasFields(rollupFields)) continue;
             infos.add(new ChunkInfo(info));
-            totalSize += eventsCount;
         }
-        if(totalSize >= MIN_MERGE_DOCS) {
-            if(merger == null) merger = new ChunkMerger(this, tenant, application, table);
-            mergeChunks(infos, merger);
-            infos.clear();
-            totalSize = 0;
+        if(infos.size() == 0) return;
+        String store = application + "_" + table;
+        DBTransaction transaction = DBService.instance(tenant).startTransaction();
+        for(ChunkInfo info: infos) {
+            byte[] data = readChunkData(tenant, application, table, info);
+            // merged in the meantime
+            if(data == null) continue;
+            transaction.addColumn(store, "rollups_" + partition, info.getChunkId(), createRollup(data, rollupFields));
         }
+        DBService.instance(tenant).commit(transaction);
+    }
+    
+    private byte[] createRollup(byte[] data) {
+        return createRollup(data, m_rollupFields);
+    }
+    
+    private byte[] createRollup(byte[] data, List<BSTR> rollupFields) {
+        ChunkReader reader = new ChunkReader();
+        reader.read(data);
+        return ChunkRollup.create(reader, rollupFields).getByteData();
     }
     
     private void mergeChunks(List<ChunkInfo> infos, ChunkMerger merger) {
@@ -134,9 +331,13 @@ public class LogService {
         DBTransaction transaction = DBService.instance(merger.getTenant()).startTransaction();
         transaction.addColumn(store, "partitions_" + partition, uuid, chunkInfo.getByteData());
         transaction.addColumn(store, partition, uuid, data);
+        if(m_rollupFields != null) {
+            transaction.addColumn(store, "rollups_" + partition, uuid, createRollup(data));
+        }
         for(ChunkInfo info: infos) {
             transaction.deleteColumn(store, "partitions_" + partition, info.getChunkId());
             transaction.deleteColumn(store, partition, info.getChunkId());
+            transaction.deleteColumn(store, "rollups_" + partition, info.getChunkId());
         }
         DBService.instance(merger.getTenant()).commit(transaction);
     }
@@ -166,6 +367,16 @@ public class LogService {
         return partitions;
     }
     
+    // rollups of the chunks of the partition by chunk id
+    public Map<String, byte[]> getRollups(Tenant tenant, String application, String table, String partition) {
+        String store = application + "_" + table;
+        Map<String, byte[]> rollups = new HashMap<>();
+        for(DColumn c: DBService.instance(tenant).getAllColumns(store, "rollups_" + partition)) {
+            rollups.put(c.getName(), c.getRawValue());
+        }
+        return rollups;
+    }
+    
     public void readChunk(Tenant tenant, String application, String table, ChunkInfo chunkInfo, ChunkReader chunkReader) {
         byte[] data = readChunkData(tenant, application, table, chunkInfo);
         if(data == null) throw new RuntimeException("Data was deleted");
@@ -183,12 +394,18 @@ public class LogService {
         String store = application + "_" + table;
         List<String> chunkIds = new ArrayList<>(infos.size());
         for(ChunkInfo info: infos) chunkIds.add(info.getChunkId());
-        List<byte[]> data = new ArrayList<>(infos.size());
         DRow row = DBService.instance(tenant).getRow(store, infos.get(0).getPartition());
+        // columns are not necessarily returned in the order of the infos
+        Map<String, byte[]> columns = new HashMap<>(infos.size() * 2);
         for(DColumn c: row.getColumns(chunkIds, 100)) {
-            data.add(c.getRawValue());
+            columns.put(c.getName(), c.getRawValue());
+        }
+        List<byte[]> data = new ArrayList<>(infos.size());
+        for(String chunkId: chunkIds) {
+            byte[] value = columns.get(chunkId);
+            if(value == null) throw new RuntimeException("Error reading data");
+            data.add(value);
         }
-        if(data.size() != infos.size()) throw new RuntimeException("Error reading data");
         return data;
     }
     
@@ -197,6 +414,10 @@ public class LogService {
         return Searcher.search(this, tenant, application, table, logQuery);
     }
     
+    public void search(Tenant tenant, String application, String table, LogQuery logQuery, SearchResultWriter writer) {
+        Searcher.search(this, tenant, application, table, logQuery, writer);
+    }
+    
     public AggregationResult aggregate(Tenant tenant, String application, String table, LogAggregate logAggregate) {
         return Searcher.aggregate(this, tenant, application, table, logAggregate);
     }
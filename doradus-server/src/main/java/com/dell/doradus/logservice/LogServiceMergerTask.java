@@ -16,8 +16,6 @@
 
 package com.dell.doradus.logservice;
 
-import java.util.List;
-
 import org.slf4j.Logger;
 
 import com.dell.doradus.common.ApplicationDefinition;
@@ -46,10 +44,7 @@ public class LogServiceMergerTask extends Task {
         for(TableDefinition tableDef: appDef.getTableDefinitions().values()) {
             boolean mergeDisabled = "false".equals(tableDef.getOption("merge"));
             if(mergeDisabled) continue;
-            List<String> partitions = logService.getPartitions(tenant, application, tableDef.getTableName());
-            for(String partition: partitions) {
-                logService.mergePartition(tenant, application, tableDef.getTableName(), partition);
-            }
+            logService.mergeTable(tenant, application, tableDef.getTableName());
             logger.info("Processed table {}",tableDef.getTableName());
         }
     }
@@ -16,6 +16,7 @@
 
 package com.dell.doradus.logservice;
 
+import java.io.OutputStream;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -37,15 +38,17 @@ import com.dell.doradus.common.TableDefinition;
 import com.dell.doradus.common.UNode;
 import com.dell.doradus.common.Utils;
 import com.dell.doradus.common.rest.RESTParameter;
+import com.dell.doradus.logservice.store.TieredMergePolicy;
 import com.dell.doradus.olap.OlapBatch;
 import com.dell.doradus.olap.aggregate.AggregateResultConverter;
 import com.dell.doradus.olap.aggregate.AggregationResult;
-import com.dell.doradus.search.SearchResultList;
+import com.dell.doradus.search.SearchResultWriter;
 import com.dell.doradus.service.StorageService;
 import com.dell.doradus.service.db.Tenant;
 import com.dell.doradus.service.rest.RESTCallback;
 import com.dell.doradus.service.rest.RESTService;
 import com.dell.doradus.service.rest.ReaderCallback;
+import com.dell.doradus.service.rest.StreamOutCallback;
 import com.dell.doradus.service.rest.UNodeOutCallback;
 import com.dell.doradus.service.rest.annotation.Description;
 import com.dell.doradus.service.rest.annotation.ParamDescription;
@@ -124,7 +127,7 @@ public class LoggingService extends StorageService {
         uri = "/{application}/{table}/_query?{params}",
         outputEntity = "results"
     )
-    public static class QueryCmd extends UNodeOutCallback {
+    public static class QueryCmd extends StreamOutCallback {
         @ParamDescription
         public static RESTParameter describeParams() {
             return new RESTParameter("params")
@@ -138,14 +141,14 @@ public class LoggingService extends StorageService {
                         .add("skipCount", "boolean");
         }
         
-        @Override public UNode invokeUNodeOut() {
+        @Override public void invokeStreamOut(OutputStream stream) {
             ApplicationDefinition appDef = m_request.getAppDef();
             TableDefinition tableDef = m_request.getTableDef(appDef);
             Tenant tenant = m_request.getTenant();
             String params = m_request.getVariable("params");    // leave encoded
             LogQuery logQuery = new LogQuery(params);
-            SearchResultList searchResult = LoggingService.instance().m_logService.search(tenant, appDef.getAppName(), tableDef.getTableName(), logQuery);
-            return searchResult.toDoc();
+            SearchResultWriter writer = new SearchResultWriter(stream, m_request.getOutputContentType());
+            LoggingService.instance().m_logService.search(tenant, appDef.getAppName(), tableDef.getTableName(), logQuery, writer);
         }
     }
 
@@ -207,6 +210,22 @@ public class LoggingService extends StorageService {
     
     @Override
     protected void initService() {
+        if(getParamBoolean("rollups", false)) {
+            List<String> rollupFields = getParamList("rollup_fields");
+            m_logService.setRollupFields(rollupFields == null ? new ArrayList<String>() : rollupFields);
+        }
+        List<String> postingsFields = getParamList("postings_fields");
+        if(postingsFields != null) m_logService.setPostingsFields(postingsFields);
+        List<String> mergeTiers = getParamList("merge_tiers");
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        if(mergeTiers != null) {
+            int[] tiers = new int[mergeTiers.size()];
+            for(int i = 0; i < tiers.length; i++) {
+                tiers[i] = Integer.parseInt(String.valueOf(mergeTiers.get(i)));
+            }
+            mergePolicy = new TieredMergePolicy(tiers, getParamInt("merge_min_chunks", 4), getParamInt("merge_max_events", 65536));
+        }
+        m_logService.setMergeOptions(mergePolicy, getParamInt("merge_threads", 2));
         RESTService.instance().registerCommands(Arrays.asList(LogServiceAppCmd.class));
         RESTService.instance().registerCommands(cmdClasses, this);
     }
@@ -98,7 +98,7 @@ public class SyntheticFields {
         }
         
         for(int i = 0; i < m_fields.size(); i++) {
-            m_chunkFields.get(i).set(m_baseField.getIndexes(), fieldOffsets.get(i), fieldLengths.get(i));
+            m_chunkFields.get(i).set(m_baseField.getIndexes(), data, fieldOffsets.get(i), fieldLengths.get(i));
         }
         
     }
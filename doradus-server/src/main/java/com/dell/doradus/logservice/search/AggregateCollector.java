@@ -1,12 +1,14 @@
 package com.dell.doradus.logservice.search;
 
+import com.dell.doradus.logservice.ChunkCache;
 import com.dell.doradus.logservice.ChunkInfo;
 import com.dell.doradus.logservice.ChunkReader;
+import com.dell.doradus.logservice.ChunkRollup;
 import com.dell.doradus.logservice.LogService;
 import com.dell.doradus.olap.aggregate.AggregationResult;
 import com.dell.doradus.service.db.Tenant;
 
-public abstract class AggregateCollector {
+public abstract class AggregateCollector implements IChunkCollector {
     protected LogService m_logService;
     protected Tenant m_tenant;
     protected String m_application;
@@ -16,8 +18,20 @@ public abstract class AggregateCollector {
     
     public AggregateCollector() {}
 
-    abstract public void addChunk(ChunkInfo info);
+    @Override abstract public void addChunk(ChunkInfo info, byte[] data);
     abstract public AggregationResult getResult();
+    // adds results of the collector of the same query that processed other chunks
+    abstract public void merge(AggregateCollector other);
+    
+    // returns false if a chunk for which the filter returned {filterResult} can be added without data
+    public boolean needsData(int filterResult) { return true; }
+    
+    // returns true if chunks can be added with addRollup
+    public boolean supportsRollups() { return false; }
+    
+    // adds a chunk all of whose events match the filter; returns false if the rollup
+    // does not have the counts needed, and the chunk has to be read instead
+    public boolean addRollup(ChunkRollup rollup) { return false; }
     
     public void setContext(LogService logService, Tenant tenant, String application, String table, String pattern) {
         m_logService = logService;
@@ -29,12 +43,12 @@ public abstract class AggregateCollector {
     
     //public void 
     
-    protected void read(ChunkInfo info) {
+    protected void read(ChunkInfo info, byte[] data) {
         if(m_reader == null) {
             m_reader = new ChunkReader();
             if(m_pattern != null) m_reader.setSyntheticFields(m_pattern);
         }
-        m_logService.readChunk(m_tenant, m_application, m_table, info, m_reader);
+        m_reader.read(data, ChunkCache.instance().getKey(m_tenant, m_application, m_table, info));
     }
     
     
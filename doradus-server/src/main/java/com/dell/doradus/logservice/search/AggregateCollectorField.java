@@ -3,6 +3,7 @@ package com.dell.doradus.logservice.search;
 import java.util.Collections;
 
 import com.dell.doradus.logservice.ChunkInfo;
+import com.dell.doradus.logservice.ChunkRollup;
 import com.dell.doradus.logservice.search.filter.IFilter;
 import com.dell.doradus.olap.aggregate.AggregationResult;
 import com.dell.doradus.olap.aggregate.MetricValueCount;
@@ -26,11 +27,11 @@ public class AggregateCollectorField extends AggregateCollector {
         m_field = new BSTR(field);
     }
 
-    @Override public void addChunk(ChunkInfo info) {
+    @Override public void addChunk(ChunkInfo info, byte[] data) {
         int c = m_filter.check(info);
         if(c == -1) return;
         BitVector bv = new BitVector(info.getEventsCount());
-        super.read(info);
+        super.read(info, data);
         
         if(c == 1) {
             bv.setAll();
@@ -51,6 +52,32 @@ public class AggregateCollectorField extends AggregateCollector {
         }
     }
 
+    @Override public boolean supportsRollups() { return true; }
+    
+    @Override public boolean addRollup(ChunkRollup rollup) {
+        int fieldIndex = rollup.getFieldIndex(m_field);
+        if(fieldIndex < 0) return false;
+        for(int i = 0; i < rollup.getValuesCount(fieldIndex); i++) {
+            int count = rollup.getValueCount(fieldIndex, i);
+            int pos = m_fields.add(rollup.getValue(fieldIndex, i));
+            if(pos == m_list.size()) m_list.add(count);
+            else m_list.set(pos, m_list.get(pos) + count);
+            m_documents += count;
+        }
+        return true;
+    }
+
+    @Override public void merge(AggregateCollector other) {
+        AggregateCollectorField collector = (AggregateCollectorField)other;
+        m_documents += collector.m_documents;
+        for(int i = 0; i < collector.m_fields.size(); i++) {
+            int pos = m_fields.add(collector.m_fields.get(i));
+            int count = collector.m_list.get(i);
+            if(pos == m_list.size()) m_list.add(count);
+            else m_list.set(pos, m_list.get(pos) + count);
+        }
+    }
+
     @Override public AggregationResult getResult() {
         int count = (int)m_documents;
         AggregationResult result = new AggregationResult();
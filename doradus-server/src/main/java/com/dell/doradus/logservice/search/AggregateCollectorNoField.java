@@ -15,7 +15,7 @@ public class AggregateCollectorNoField extends AggregateCollector {
         m_filter = filter;
     }
 
-    @Override public void addChunk(ChunkInfo info) {
+    @Override public void addChunk(ChunkInfo info, byte[] data) {
         int c = m_filter.check(info);
         if(c == -1) return;
         if(c == 1) {
@@ -23,11 +23,17 @@ public class AggregateCollectorNoField extends AggregateCollector {
             return;
         }
         BitVector bv = new BitVector(info.getEventsCount());
-        super.read(info);
+        super.read(info, data);
         m_filter.check(m_reader, bv);
         m_documents += bv.bitsSet();
     }
 
+    @Override public boolean needsData(int filterResult) { return filterResult != 1; }
+
+    @Override public void merge(AggregateCollector other) {
+        m_documents += ((AggregateCollectorNoField)other).m_documents;
+    }
+
     @Override public AggregationResult getResult() {
         int count = (int)m_documents;
         AggregationResult result = new AggregationResult();
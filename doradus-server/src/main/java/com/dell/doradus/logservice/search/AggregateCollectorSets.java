@@ -30,10 +30,10 @@ public class AggregateCollectorSets extends AggregateCollector {
         m_counts = new int[m_filters.size()];
     }
     
-    @Override public void addChunk(ChunkInfo info) {
+    @Override public void addChunk(ChunkInfo info, byte[] data) {
         int c = m_filter.check(info);
         if(c == -1) return;
-        super.read(info);
+        super.read(info, data);
         BitVector bv = new BitVector(info.getEventsCount());
         if(c == 1) bv.setAll();
         else m_filter.check(m_reader, bv);
@@ -51,6 +51,14 @@ public class AggregateCollectorSets extends AggregateCollector {
         bv.clearAll();
     }
 
+    @Override public void merge(AggregateCollector other) {
+        AggregateCollectorSets collector = (AggregateCollectorSets)other;
+        m_documents += collector.m_documents;
+        for(int i = 0; i < m_counts.length; i++) {
+            m_counts[i] += collector.m_counts[i];
+        }
+    }
+
     @Override public AggregationResult getResult() {
         int count = (int)m_documents;
         AggregationResult result = new AggregationResult();
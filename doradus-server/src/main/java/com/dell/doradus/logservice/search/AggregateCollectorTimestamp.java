@@ -3,10 +3,13 @@ package com.dell.doradus.logservice.search;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.TimeZone;
 
 import com.dell.doradus.common.Utils;
 import com.dell.doradus.logservice.ChunkInfo;
+import com.dell.doradus.logservice.ChunkRollup;
 import com.dell.doradus.logservice.search.filter.IFilter;
 import com.dell.doradus.olap.aggregate.AggregationResult;
 import com.dell.doradus.olap.aggregate.MetricValueCount;
@@ -41,16 +44,15 @@ public class AggregateCollectorTimestamp extends AggregateCollector {
         m_Calendar = (GregorianCalendar)GregorianCalendar.getInstance(m_zone);
     }
     
-    @Override public void addChunk(ChunkInfo info) {
+    @Override public void addChunk(ChunkInfo info, byte[] data) {
         int c = m_filter.check(info);
         if(c == -1) return;
-        super.read(info);
+        super.read(info, data);
         BitVector bv = new BitVector(info.getEventsCount());
         if(c == 1) bv.setAll();
         else m_filter.check(m_reader, bv);
         m_documents += bv.bitsSet();
         
-        super.read(info);
         for(int i = 0; i < m_reader.size(); i++) {
             if(!bv.get(i)) continue;
             long timestamp = m_reader.getTimestamp(i);
@@ -58,10 +60,34 @@ public class AggregateCollectorTimestamp extends AggregateCollector {
             int pos = m_fields.add(value);
             if(pos == m_list.size()) m_list.add(1);
             else m_list.set(pos, m_list.get(pos) + 1);
-            m_documents++;
         }
     }
+    
+    // rollups have hourly counts
+    @Override public boolean supportsRollups() { return m_divisor % ChunkRollup.BUCKET == 0; }
+    
+    @Override public boolean addRollup(ChunkRollup rollup) {
+        for(int i = 0; i < rollup.getBucketsCount(); i++) {
+            long value = rollup.getBucket(i) * ChunkRollup.BUCKET / m_divisor;
+            int count = rollup.getBucketCount(i);
+            int pos = m_fields.add(value);
+            if(pos == m_list.size()) m_list.add(count);
+            else m_list.set(pos, m_list.get(pos) + count);
+        }
+        m_documents += rollup.getEventsCount();
+        return true;
+    }
 
+    @Override public void merge(AggregateCollector other) {
+        AggregateCollectorTimestamp collector = (AggregateCollectorTimestamp)other;
+        m_documents += collector.m_documents;
+        for(int i = 0; i < collector.m_fields.size(); i++) {
+            int pos = m_fields.add(collector.m_fields.get(i));
+            int count = collector.m_list.get(i);
+            if(pos == m_list.size()) m_list.add(count);
+            else m_list.set(pos, m_list.get(pos) + count);
+        }
+    }
     
     private String getField(long value) {
         m_Calendar.setTimeInMillis(value * m_divisor);
@@ -101,15 +127,16 @@ public class AggregateCollectorTimestamp extends AggregateCollector {
         MetricValueCount c = new MetricValueCount();
         c.metric = count;
         result.summary.metricSet.values[0] = c;
-        String lastGroup = "";
-        MetricValueCount cc = null;
+        // values are in the order they were first seen, which is not sorted when chunks
+        // were processed in parallel, so values of one group are not necessarily adjacent
+        Map<String, MetricValueCount> groups = new HashMap<>();
         for(int i = 0; i < m_fields.size(); i++) {
             String group = getField(m_fields.get(i));
-            if(group.equals(lastGroup)) {
+            MetricValueCount cc = groups.get(group);
+            if(cc != null) {
                 cc.metric += m_list.get(i);
                 continue;
             }
-            lastGroup = group;
             AggregationResult.AggregationGroup g = new AggregationResult.AggregationGroup();
             g.id = group;
             g.name = group;
@@ -117,6 +144,7 @@ public class AggregateCollectorTimestamp extends AggregateCollector {
             cc = new MetricValueCount();
             cc.metric = m_list.get(i);
             g.metricSet.values[0] = cc;
+            groups.put(group, cc);
             result.groups.add(g);
         }
         result.groupsCount = result.groups.size();
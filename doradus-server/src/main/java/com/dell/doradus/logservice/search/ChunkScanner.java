@@ -0,0 +1,280 @@
+package com.dell.doradus.logservice.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.dell.doradus.logservice.ChunkCache;
+import com.dell.doradus.logservice.ChunkInfo;
+import com.dell.doradus.logservice.LogService;
+import com.dell.doradus.service.db.Tenant;
+
+/**
+ * Fans chunks of a log query out to worker threads. The calling thread adds chunks in
+ * the order they should be processed; each worker takes the next batch of chunks from
+ * a bounded queue and passes them to its own collector. {@link #finish()} waits until
+ * all chunks have been processed; the collectors can then be merged by the caller.
+ * If there is no executor, chunks are processed by the first collector on the calling thread.
+ * The caller should call {@link #close()} in a finally block, so that the workers stop
+ * even if adding chunks fails before {@link #finish()}.
+ * 
+ * If there is a prefetch executor, the data of each batch of PREFETCH_BATCH chunks of one
+ * partition is read with one multi-column read as soon as the batch is complete, so that
+ * up to {prefetchChunks} chunks are being fetched while the current chunks are decoded.
+ * A search bound set with {@link #setBound(SearchBound)} is checked again right before
+ * chunks are read, because it may have tightened since the chunks were added.
+ */
+public class ChunkScanner {
+    public static final int QUEUE_SIZE = 1024;
+    public static final int PREFETCH_BATCH = 16;
+    // marks the end of the chunks for one worker
+    private static final ChunkBatch END = new ChunkBatch();
+    
+    private LogService m_logService;
+    private Tenant m_tenant;
+    private String m_application;
+    private String m_table;
+    private List<? extends IChunkCollector> m_collectors;
+    private ExecutorService m_prefetchExecutor;
+    private SearchBound m_bound;
+    private int m_batchSize;
+    // batches waiting to be processed on the calling thread
+    private int m_maxPending;
+    private ArrayDeque<ChunkBatch> m_pending = new ArrayDeque<>();
+    private ChunkBatch m_batch = new ChunkBatch();
+    private BlockingQueue<ChunkBatch> m_queue;
+    private List<Future<?>> m_futures;
+    private volatile Throwable m_error;
+    private boolean m_bFinished;
+    private volatile boolean m_bCancelled;
+    
+    /**
+     * @param executor          executor of the workers, or null to process chunks on the calling thread
+     * @param collectors        collectors of the workers; one collector if there is no executor
+     * @param prefetchExecutor  executor reading chunk data ahead of the workers, or null
+     * @param prefetchChunks    number of chunks to read ahead
+     */
+    public ChunkScanner(LogService logService, Tenant tenant, String application, String table,
+            ExecutorService executor, List<? extends IChunkCollector> collectors,
+            ExecutorService prefetchExecutor, int prefetchChunks) {
+        m_logService = logService;
+        m_tenant = tenant;
+        m_application = application;
+        m_table = table;
+        m_collectors = collectors;
+        if(prefetchChunks > 0) m_prefetchExecutor = prefetchExecutor;
+        m_batchSize = m_prefetchExecutor == null ? 1 : Math.min(PREFETCH_BATCH, prefetchChunks);
+        m_maxPending = m_prefetchExecutor == null ? 0 : prefetchChunks / m_batchSize;
+        if(executor == null) return;
+        m_queue = new ArrayBlockingQueue<>(Math.max(1, m_prefetchExecutor == null ? QUEUE_SIZE : m_maxPending));
+        m_futures = new ArrayList<>(collectors.size());
+        for(final IChunkCollector collector: collectors) {
+            m_futures.add(executor.submit(new Runnable() {
+                @Override public void run() { scan(collector); }
+            }));
+        }
+    }
+    
+    /**
+     * Sets the bound of a sorted search: chunks it excludes by the time they are read
+     * are neither read nor passed to the collectors. Should be called before adding chunks.
+     */
+    public void setBound(SearchBound bound) {
+        m_bound = bound;
+    }
+    
+    /**
+     * Adds the chunk to be processed. The chunk info is copied, so it can be reused by the caller.
+     * 
+     * @param needsData false if the collectors can process the chunk without its data
+     */
+    public void add(ChunkInfo info, boolean needsData) {
+        if(m_batch.infos.size() > 0) {
+            if(m_batch.infos.size() == m_batchSize || !m_batch.infos.get(0).getPartition().equals(info.getPartition())) {
+                flush();
+            }
+        }
+        m_batch.infos.add(new ChunkInfo(info));
+        m_batch.needsData.add(needsData);
+    }
+
+    /**
+     * Waits until all added chunks have been processed
+     */
+    public void finish() {
+        if(m_batch.infos.size() > 0) flush();
+        if(m_queue == null) {
+            while(m_pending.size() > 0) process(m_collectors.get(0), m_pending.removeFirst());
+            return;
+        }
+        for(int i = 0; i < m_futures.size(); i++) put(END);
+        for(Future<?> future: m_futures) {
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        m_bFinished = true;
+        if(m_error instanceof RuntimeException) throw (RuntimeException)m_error;
+        if(m_error != null) throw new RuntimeException(m_error);
+    }
+    
+    /**
+     * Stops the workers and cancels the reads ahead if {@link #finish()} has not completed;
+     * does nothing otherwise
+     */
+    public void close() {
+        if(m_bFinished) return;
+        m_bFinished = true;
+        if(m_futures != null) {
+            // set before interrupting, as a worker may consume the interrupt while reading a chunk
+            m_bCancelled = true;
+            for(Future<?> future: m_futures) future.cancel(true);
+            List<ChunkBatch> queued = new ArrayList<>();
+            m_queue.drainTo(queued);
+            for(ChunkBatch batch: queued) cancel(batch);
+        }
+        for(ChunkBatch batch: m_pending) cancel(batch);
+        m_pending.clear();
+        cancel(m_batch);
+    }
+    
+    private static void cancel(ChunkBatch batch) {
+        if(batch.data != null) batch.data.cancel(false);
+    }
+    
+    private void flush() {
+        final ChunkBatch batch = m_batch;
+        m_batch = new ChunkBatch();
+        if(m_prefetchExecutor != null) {
+            batch.data = m_prefetchExecutor.submit(new Callable<List<byte[]>>() {
+                @Override public List<byte[]> call() { return read(batch); }
+            });
+        }
+        if(m_queue != null) {
+            put(batch);
+            return;
+        }
+        m_pending.addLast(batch);
+        while(m_pending.size() > m_maxPending) process(m_collectors.get(0), m_pending.removeFirst());
+    }
+    
+    private void put(ChunkBatch batch) {
+        try {
+            m_queue.put(batch);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    // reads data of the chunks that need it; other positions are null
+    private List<byte[]> read(ChunkBatch batch) {
+        ChunkCache cache = ChunkCache.instance();
+        List<byte[]> data = new ArrayList<>(batch.infos.size());
+        List<ChunkInfo> infos = new ArrayList<>(batch.infos.size());
+        for(int i = 0; i < batch.infos.size(); i++) {
+            byte[] cached = null;
+            if(isNeeded(batch, i)) {
+                cached = cache.getData(cache.getKey(m_tenant, m_application, m_table, batch.infos.get(i)));
+                if(cached == null) infos.add(batch.infos.get(i));
+            }
+            data.add(cached);
+        }
+        if(infos.size() == 0) return data;
+        List<byte[]> read = infos.size() == 1 ?
+                null : m_logService.readChunks(m_tenant, m_application, m_table, infos);
+        int index = 0;
+        for(int i = 0; i < batch.infos.size(); i++) {
+            if(!isNeeded(batch, i) || data.get(i) != null) continue;
+            byte[] value = read != null ? read.get(index++) :
+                m_logService.readChunkData(m_tenant, m_application, m_table, batch.infos.get(i));
+            if(value == null) throw new RuntimeException("Data was deleted");
+            data.set(i, value);
+            cache.putData(cache.getKey(m_tenant, m_application, m_table, batch.infos.get(i)), value);
+        }
+        return data;
+    }
+    
+    // the data is needed if the chunk is not excluded by the search bound
+    private boolean isNeeded(ChunkBatch batch, int index) {
+        return batch.needsData.get(index) && !isExcluded(batch.infos.get(index));
+    }
+    
+    private boolean isExcluded(ChunkInfo info) {
+        return m_bound != null && !m_bound.checkInRange(info.getMinTimestamp(), info.getMaxTimestamp());
+    }
+    
+    private byte[] readChunk(ChunkInfo info) {
+        ChunkCache cache = ChunkCache.instance();
+        String key = cache.getKey(m_tenant, m_application, m_table, info);
+        byte[] data = cache.getData(key);
+        if(data != null) return data;
+        data = m_logService.readChunkData(m_tenant, m_application, m_table, info);
+        if(data == null) throw new RuntimeException("Data was deleted");
+        cache.putData(key, data);
+        return data;
+    }
+    
+    private void process(IChunkCollector collector, ChunkBatch batch) {
+        // a batch the bound now excludes is skipped, and its read is cancelled if it has not started
+        boolean excluded = true;
+        for(ChunkInfo info: batch.infos) {
+            if(!isExcluded(info)) {
+                excluded = false;
+                break;
+            }
+        }
+        if(excluded) {
+            cancel(batch);
+            return;
+        }
+        List<byte[]> data = null;
+        if(batch.data != null) {
+            try {
+                data = batch.data.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        for(int i = 0; i < batch.infos.size(); i++) {
+            ChunkInfo info = batch.infos.get(i);
+            if(isExcluded(info)) continue;
+            if(data != null) collector.addChunk(info, data.get(i));
+            else collector.addChunk(info, batch.needsData.get(i) ? readChunk(info) : null);
+        }
+    }
+    
+    private void scan(IChunkCollector collector) {
+        while(true) {
+            ChunkBatch batch;
+            try {
+                batch = m_queue.take();
+            } catch (InterruptedException e) {
+                // the scan was cancelled by close()
+                return;
+            }
+            if(batch == END || m_bCancelled) return;
+            // after a failure the remaining chunks are drained so that the caller does not block
+            if(m_error != null) continue;
+            try {
+                process(collector, batch);
+            } catch(Throwable e) {
+                if(m_bCancelled) return;
+                m_error = e;
+            }
+        }
+    }
+    
+    private static class ChunkBatch {
+        List<ChunkInfo> infos = new ArrayList<>(PREFETCH_BATCH);
+        List<Boolean> needsData = new ArrayList<>(PREFETCH_BATCH);
+        Future<List<byte[]>> data;
+    }
+}
@@ -0,0 +1,14 @@
+package com.dell.doradus.logservice.search;
+
+import com.dell.doradus.logservice.ChunkInfo;
+
+/**
+ * Processes chunks of a log query. An instance is used by one thread at a time;
+ * parallel queries use one instance per worker and merge them afterwards.
+ */
+public interface IChunkCollector {
+    
+    //data is the content of the chunk, or null if the chunk was added without data 
+    public void addChunk(ChunkInfo info, byte[] data);
+    
+}
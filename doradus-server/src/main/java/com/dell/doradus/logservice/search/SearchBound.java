@@ -0,0 +1,61 @@
+package com.dell.doradus.logservice.search;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timestamp bound of a sorted log search shared by its workers. When any worker has
+ * collected {count} entries, entries that do not sort before the worst of them cannot
+ * get into the merged result, so the other workers can skip them, and with skipCount
+ * skip whole chunks and partitions.
+ */
+public class SearchBound {
+    private SearchRequest m_request;
+    // for descending sort: entries should be newer than the bound; for ascending: older
+    private AtomicLong m_bound;
+    
+    public SearchBound(SearchRequest request) {
+        m_request = request;
+        m_bound = new AtomicLong(request.getSortDescending() ? -1 : Long.MAX_VALUE);
+    }
+    
+    public void update(SearchCollector collector) {
+        if(collector.size() < m_request.getCount()) return;
+        if(m_request.getSortDescending()) {
+            long timestamp = collector.getMinTimestamp();
+            while(true) {
+                long bound = m_bound.get();
+                if(timestamp <= bound || m_bound.compareAndSet(bound, timestamp)) break;
+            }
+        } else {
+            long timestamp = collector.getMaxTimestamp();
+            while(true) {
+                long bound = m_bound.get();
+                if(timestamp >= bound || m_bound.compareAndSet(bound, timestamp)) break;
+            }
+        }
+    }
+    
+    /**
+     * Returns false if no entry in [minTimestamp, maxTimestamp] can get into the results
+     */
+    public boolean checkInRange(long minTimestamp, long maxTimestamp) {
+        if(maxTimestamp < m_request.getMinTimestamp()) return false;
+        if(minTimestamp >= m_request.getMaxTimestamp()) return false;
+        if(m_request.getSkipCount()) {
+            if(m_request.getSortDescending()) {
+                if(maxTimestamp <= m_bound.get()) return false;
+            } else {
+                if(minTimestamp >= m_bound.get()) return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns false if the entry with the timestamp cannot get into the results
+     */
+    public boolean accept(long timestamp) {
+        if(m_request.getSortDescending()) return timestamp > m_bound.get();
+        else return timestamp < m_bound.get();
+    }
+}
@@ -58,10 +58,13 @@ public class SearchCollector {
         }
     }
     
+    // entries in the sort order of the results
+    public LogEntry[] getSortedEntries() { return m_heap.GetValues(LogEntry.class); }
+    
     public SearchResultList getSearchResult(FieldSet fieldSet, SortOrder[] orders) {
         SearchResultList list = new SearchResultList();
         list.fieldSet = fieldSet;
-        LogEntry[] entries = m_heap.GetValues(LogEntry.class);
+        LogEntry[] entries = getSortedEntries();
         for(LogEntry e: entries) {
             list.results.add(e.createSearchResult(fieldSet, orders));
         }
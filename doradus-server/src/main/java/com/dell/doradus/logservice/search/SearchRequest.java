@@ -20,6 +20,8 @@ import com.dell.doradus.service.db.Tenant;
 public class SearchRequest {
     private LogQuery m_logQuery;
     private Tenant m_tenant;
+    private String m_application;
+    private String m_table;
     private TableDefinition m_tableDef;
     private Query m_query;
     private int m_count;
@@ -35,12 +37,16 @@ public class SearchRequest {
     public SearchRequest(Tenant tenant, String application, String table, LogQuery logQuery) {
         m_logQuery = logQuery;
         m_tenant = tenant;
+        m_application = application;
+        m_table = table;
         m_tableDef = Searcher.getTableDef(tenant, application, table, logQuery.getPattern());
         fillRequest();
     }
 
     public LogQuery getLogQuery() { return m_logQuery; }
     public Tenant getTenant() { return m_tenant; }
+    public String getApplication() { return m_application; }
+    public String getTable() { return m_table; }
     public TableDefinition getTableDef() { return m_tableDef; }
     public Query getQuery() { return m_query; }
     public int getCount() { return m_count; }
@@ -0,0 +1,77 @@
+package com.dell.doradus.logservice.search;
+
+import com.dell.doradus.logservice.ChunkCache;
+import com.dell.doradus.logservice.ChunkInfo;
+import com.dell.doradus.logservice.ChunkReader;
+import com.dell.doradus.logservice.LogEntry;
+import com.dell.doradus.logservice.search.filter.FilterBuilder;
+import com.dell.doradus.logservice.search.filter.IFilter;
+import com.dell.doradus.olap.store.BitVector;
+
+/**
+ * Searches chunks of a log query into its own collector. Filters and readers keep
+ * state, so every worker builds its own.
+ */
+public class SearchWorker implements IChunkCollector {
+    private SearchRequest m_request;
+    private SearchBound m_bound;
+    private IFilter m_filter;
+    private ChunkReader m_reader;
+    private SearchCollector m_collector;
+    private LogEntry m_current;
+    private int m_documentsCount;
+    
+    public SearchWorker(SearchRequest request, SearchBound bound) {
+        m_request = request;
+        m_bound = bound;
+        m_filter = FilterBuilder.build(request.getQuery());
+        m_reader = new ChunkReader();
+        String pattern = request.getLogQuery().getPattern();
+        if(pattern != null) m_reader.setSyntheticFields(pattern);
+        m_collector = new SearchCollector(request.getCount());
+    }
+    
+    public SearchCollector getCollector() { return m_collector; }
+    public int getDocumentsCount() { return m_documentsCount; }
+    
+    @Override public void addChunk(ChunkInfo chunkInfo, byte[] data) {
+        if(!m_bound.checkInRange(chunkInfo.getMinTimestamp(), chunkInfo.getMaxTimestamp())) return;
+        int c = m_filter.check(chunkInfo);
+        if(c == -1) return;
+        BitVector bv = new BitVector(chunkInfo.getEventsCount());
+        m_reader.read(data, ChunkCache.instance().getKey(m_request.getTenant(), m_request.getApplication(), m_request.getTable(), chunkInfo));
+        if(c == 1) bv.setAll();
+        else m_filter.check(m_reader, bv);
+        
+        if(m_request.getSortDescending()) {
+            for(int i = m_reader.size() - 1; i >= 0; i--) {
+                if(!bv.get(i)) continue;
+                long timestamp = m_reader.getTimestamp(i);
+                if(timestamp < m_request.getMinTimestamp()) continue;
+                if(timestamp >= m_request.getMaxTimestamp()) continue;
+                //optimization: avoid instantiating LogEntry if it won't go to the results
+                if((m_collector.size() < m_request.getCount() || timestamp > m_collector.getMinTimestamp()) && m_bound.accept(timestamp)) {
+                    if(m_current == null) m_current = new LogEntry(m_request.getFields(), m_request.getSortDescending());
+                    m_current.set(m_reader, i);
+                    m_current = m_collector.add(m_current);
+                }
+                m_documentsCount++;
+            }
+        } else {
+            for(int i = 0; i < m_reader.size(); i++) {
+                if(!bv.get(i)) continue;
+                long timestamp = m_reader.getTimestamp(i);
+                if(timestamp < m_request.getMinTimestamp()) continue;
+                if(timestamp >= m_request.getMaxTimestamp()) continue;
+                //optimization: avoid instantiating LogEntry if it won't go to the results
+                if((m_collector.size() < m_request.getCount() || timestamp < m_collector.getMaxTimestamp()) && m_bound.accept(timestamp)) {
+                    if(m_current == null) m_current = new LogEntry(m_request.getFields(), m_request.getSortDescending());
+                    m_current.set(m_reader, i);
+                    m_current = m_collector.add(m_current);
+                }
+                m_documentsCount++;
+            }
+        }
+        m_bound.update(m_collector);
+    }
+}
@@ -4,24 +4,29 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import com.dell.doradus.common.ApplicationDefinition;
 import com.dell.doradus.common.FieldDefinition;
 import com.dell.doradus.common.FieldType;
 import com.dell.doradus.common.TableDefinition;
 import com.dell.doradus.logservice.ChunkInfo;
-import com.dell.doradus.logservice.ChunkReader;
+import com.dell.doradus.logservice.ChunkRollup;
 import com.dell.doradus.logservice.LogAggregate;
 import com.dell.doradus.logservice.LogEntry;
 import com.dell.doradus.logservice.LogQuery;
 import com.dell.doradus.logservice.LogService;
+import com.dell.doradus.logservice.LoggingService;
 import com.dell.doradus.logservice.SyntheticFields;
 import com.dell.doradus.logservice.search.filter.FilterBuilder;
 import com.dell.doradus.logservice.search.filter.IFilter;
 import com.dell.doradus.olap.aggregate.AggregationResult;
 import com.dell.doradus.olap.io.BSTR;
-import com.dell.doradus.olap.store.BitVector;
 import com.dell.doradus.search.SearchResultList;
+import com.dell.doradus.search.SearchResultWriter;
 import com.dell.doradus.search.aggregate.AggregationGroup;
 import com.dell.doradus.search.parser.DoradusQueryBuilder;
 import com.dell.doradus.search.query.Query;
@@ -30,70 +35,31 @@ import com.dell.doradus.service.db.DColumn;
 import com.dell.doradus.service.db.Tenant;
 
 public class Searcher {
+    private static final int search_threads = LoggingService.instance().getParamInt("search_threads", 0);
+    private static ExecutorService search_executor =
+            search_threads == 0 ? null : Executors.newFixedThreadPool(search_threads, daemonThreads("Log search"));
+    private static final int prefetch_chunks = LoggingService.instance().getParamInt("prefetch_chunks", 64);
+    private static final int prefetch_threads = LoggingService.instance().getParamInt("prefetch_threads", 2);
+    private static ExecutorService prefetch_executor =
+            prefetch_chunks == 0 || prefetch_threads == 0 ? null : Executors.newFixedThreadPool(prefetch_threads, daemonThreads("Log prefetch"));
+    
+    // pool threads should not keep the server process alive
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            @Override public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
     
     public static SearchResultList search(LogService ls, Tenant tenant, String application, String table, LogQuery logQuery) {
         SearchRequest request = new SearchRequest(tenant, application, table, logQuery);
-        SearchCollector collector = new SearchCollector(request.getCount());
-        LogEntry current = null;
-        List<String> partitions = ls.getPartitions(tenant, application, table, request.getMinTimestamp(), request.getMaxTimestamp());
-        //optimization: inverse partitions
-        if(request.getSkipCount() && request.getSortDescending()) {
-            Collections.reverse(partitions);
-        }
-        IFilter filter = FilterBuilder.build(request.getQuery());
-        ChunkReader chunkReader = new ChunkReader();
-        if(logQuery.getPattern() != null) chunkReader.setSyntheticFields(logQuery.getPattern());
-        
-        int documentsCount = 0;
-        for(String partition: partitions) {
-            long minPartitionTimestamp = ls.getTimestamp(partition);
-            long maxPartitionTimestamp = minPartitionTimestamp + 1000 * 3600 * 24;
-            if(!checkInRange(minPartitionTimestamp, maxPartitionTimestamp, request, collector)) continue;
-            Iterable<ChunkInfo> chunks = ls.getChunks(tenant, application, table, partition);
-            chunks = new SortedChunkIterable(chunks, request.getSortDescending());
-            for(ChunkInfo chunkInfo: chunks) {
-                if(!checkInRange(chunkInfo.getMinTimestamp(), chunkInfo.getMaxTimestamp(), request, collector)) continue;
-                int c = filter.check(chunkInfo);
-                if(c == -1) continue;
-                BitVector bv = new BitVector(chunkInfo.getEventsCount());
-                ls.readChunk(tenant, application, table, chunkInfo, chunkReader);
-                if(c == 1) bv.setAll();
-                else filter.check(chunkReader, bv);
-                
-                if(request.getSortDescending()) {
-                    for(int i = chunkReader.size() - 1; i >= 0; i--) {
-                        if(!bv.get(i)) continue;
-                        long timestamp = chunkReader.getTimestamp(i);
-                        if(timestamp < request.getMinTimestamp()) continue;
-                        if(timestamp >= request.getMaxTimestamp()) continue;
-                        //optimization: avoid instantiating LogEntry if it won't go to the results
-                        if(collector.size() < request.getCount() || timestamp > collector.getMinTimestamp()) {
-                            if(current == null) current = new LogEntry(request.getFields(), request.getSortDescending());
-                            current.set(chunkReader, i);
-                            current = collector.add(current);
-                        }
-                        documentsCount++;
-                    }
-                } else {
-                    for(int i = 0; i < chunkReader.size(); i++) {
-                        if(!bv.get(i)) continue;
-                        long timestamp = chunkReader.getTimestamp(i);
-                        if(timestamp < request.getMinTimestamp()) continue;
-                        if(timestamp >= request.getMaxTimestamp()) continue;
-                        //optimization: avoid instantiating LogEntry if it won't go to the results
-                        if(collector.size() < request.getCount() || timestamp < collector.getMaxTimestamp()) {
-                            if(current == null) current = new LogEntry(request.getFields(), request.getSortDescending());
-                            current.set(chunkReader, i);
-                            current = collector.add(current);
-                        }
-                        documentsCount++;
-                    }
-                }
-            }
-        }
-        
+        List<SearchWorker> workers = scan(ls, request);
+        SearchCollector collector = merge(workers);
         SearchResultList list = collector.getSearchResult(request.getFieldSet(), request.getSortOrders());
-        if(!request.getSkipCount()) list.documentsCount = documentsCount;
+        if(!request.getSkipCount()) list.documentsCount = getDocumentsCount(workers);
         if(list.results.size() == request.getCount()) list.continuation_token = list.results.get(list.results.size() - 1).id();
         if(request.getSkip() > 0) {
             int size = list.results.size();
@@ -103,48 +69,131 @@ public class Searcher {
         return list;
     }
     
-    private static boolean checkInRange(long minTimestamp, long maxTimestamp, SearchRequest request, SearchCollector collector) {
-        if(maxTimestamp < request.getMinTimestamp()) return false;
-        if(minTimestamp >= request.getMaxTimestamp()) return false;
-        if(request.getSkipCount() && collector.size() >= request.getCount()) {
-            if(request.getSortDescending()) {
-                if(maxTimestamp <= collector.getMinTimestamp()) return false;
-            } else {
-                if(minTimestamp >= collector.getMaxTimestamp()) return false;
+    /**
+     * Same as {@link #search(LogService, Tenant, String, String, LogQuery)} but writes the results
+     * to the writer one by one instead of building the result list
+     */
+    public static void search(LogService ls, Tenant tenant, String application, String table, LogQuery logQuery, SearchResultWriter writer) {
+        SearchRequest request = new SearchRequest(tenant, application, table, logQuery);
+        List<SearchWorker> workers = scan(ls, request);
+        LogEntry[] entries = merge(workers).getSortedEntries();
+        writer.start(request.getSkipCount() ? -1 : getDocumentsCount(workers));
+        for(int i = request.getSkip(); i < entries.length; i++) {
+            writer.add(entries[i].createSearchResult(request.getFieldSet(), request.getSortOrders()));
+        }
+        String continuationToken = null;
+        if(entries.length == request.getCount()) {
+            continuationToken = entries[entries.length - 1].createSearchResult(request.getFieldSet(), request.getSortOrders()).id();
+        }
+        writer.end(continuationToken);
+    }
+    
+    private static List<SearchWorker> scan(LogService ls, SearchRequest request) {
+        Tenant tenant = request.getTenant();
+        String application = request.getApplication();
+        String table = request.getTable();
+        SearchBound bound = new SearchBound(request);
+        List<SearchWorker> workers = new ArrayList<>();
+        for(int i = 0; i < Math.max(1, search_threads); i++) {
+            workers.add(new SearchWorker(request, bound));
+        }
+        ChunkScanner scanner = new ChunkScanner(ls, tenant, application, table,
+                search_executor, workers, prefetch_executor, prefetch_chunks);
+        scanner.setBound(bound);
+        try {
+            //chunks that cannot match are not fetched
+            IFilter filter = FilterBuilder.build(request.getQuery());
+            List<String> partitions = ls.getPartitions(tenant, application, table, request.getMinTimestamp(), request.getMaxTimestamp());
+            //optimization: inverse partitions
+            if(request.getSkipCount() && request.getSortDescending()) {
+                Collections.reverse(partitions);
+            }
+            
+            for(String partition: partitions) {
+                long minPartitionTimestamp = ls.getTimestamp(partition);
+                long maxPartitionTimestamp = minPartitionTimestamp + 1000 * 3600 * 24;
+                if(!bound.checkInRange(minPartitionTimestamp, maxPartitionTimestamp)) continue;
+                Iterable<ChunkInfo> chunks = ls.getChunks(tenant, application, table, partition);
+                chunks = new SortedChunkIterable(chunks, request.getSortDescending());
+                for(ChunkInfo chunkInfo: chunks) {
+                    if(!bound.checkInRange(chunkInfo.getMinTimestamp(), chunkInfo.getMaxTimestamp())) continue;
+                    if(filter.check(chunkInfo) == -1) continue;
+                    scanner.add(chunkInfo, true);
+                }
             }
+            scanner.finish();
+        } finally {
+            scanner.close();
         }
-        return true;
+        return workers;
     }
     
+    private static SearchCollector merge(List<SearchWorker> workers) {
+        SearchCollector collector = workers.get(0).getCollector();
+        for(int i = 1; i < workers.size(); i++) {
+            for(LogEntry entry: workers.get(i).getCollector().getEntries()) {
+                collector.add(entry);
+            }
+        }
+        return collector;
+    }
+    
+    private static int getDocumentsCount(List<SearchWorker> workers) {
+        int documentsCount = 0;
+        for(SearchWorker worker: workers) {
+            documentsCount += worker.getDocumentsCount();
+        }
+        return documentsCount;
+    }
     
     public static AggregationResult aggregate(LogService ls, Tenant tenant, String application, String table, LogAggregate logAggregate) {
         TableDefinition tableDef = Searcher.getTableDef(tenant, application, table, logAggregate.getPattern());
         Query query = DoradusQueryBuilder.Build(logAggregate.getQuery(), tableDef);
         AggregationGroup group = Aggregate.getAggregationGroup(tableDef, logAggregate.getFields());
         String field = Aggregate.getAggregateField(group);
-        IFilter filter = FilterBuilder.build(query);
-        AggregateCollector collector = null;
-        if(group != null && group.batchexFilters != null) {
-            collector = new AggregateCollectorSets(filter, group.batchexFilters, group.batchexAliases);
-        }
-        else if(field == null) {
-            collector = new AggregateCollectorNoField(filter);
-        }
-        else if("Timestamp".equals(field)) {
-            collector = new AggregateCollectorTimestamp(filter, group.truncate, group.timeZone); 
+        List<AggregateCollector> collectors = new ArrayList<>();
+        for(int i = 0; i < Math.max(1, search_threads); i++) {
+            AggregateCollector collector = createCollector(group, field, query);
+            collector.setContext(ls, tenant, application, table, logAggregate.getPattern());
+            collectors.add(collector);
         }
-        else {
-            collector = new AggregateCollectorField(filter, field);
+        //chunks that cannot match are not fetched
+        IFilter filter = FilterBuilder.build(query);
+        //chunks whose events all match are counted from their rollups if possible;
+        //synthetic fields are not rolled up
+        AggregateCollector rollupCollector = null;
+        if(ls.hasRollups() && logAggregate.getPattern() == null && collectors.get(0).supportsRollups()) {
+            rollupCollector = createCollector(group, field, query);
         }
-        collector.setContext(ls, tenant, application, table, logAggregate.getPattern());
         
-        List<String> partitions = ls.getPartitions(tenant, application, table);
-        for(String partition: partitions) {
-            for(ChunkInfo chunkInfo: ls.getChunks(tenant, application, table, partition)) {
-                collector.addChunk(chunkInfo);
+        ChunkScanner scanner = new ChunkScanner(ls, tenant, application, table,
+                search_executor, collectors, prefetch_executor, prefetch_chunks);
+        try {
+            List<String> partitions = ls.getPartitions(tenant, application, table);
+            for(String partition: partitions) {
+                Map<String, byte[]> rollups = null;
+                for(ChunkInfo chunkInfo: ls.getChunks(tenant, application, table, partition)) {
+                    int c = filter.check(chunkInfo);
+                    if(c == -1) continue;
+                    if(c == 1 && rollupCollector != null) {
+                        if(rollups == null) rollups = ls.getRollups(tenant, application, table, partition);
+                        byte[] rollup = rollups.get(chunkInfo.getChunkId());
+                        if(rollup != null && rollupCollector.addRollup(ChunkRollup.read(rollup))) continue;
+                    }
+                    scanner.add(chunkInfo, collectors.get(0).needsData(c));
+                }
             }
+            scanner.finish();
+        } finally {
+            scanner.close();
         }
-            
+        
+        AggregateCollector collector = collectors.get(0);
+        for(int i = 1; i < collectors.size(); i++) {
+            collector.merge(collectors.get(i));
+        }
+        if(rollupCollector != null) collector.merge(rollupCollector);
+        
         AggregationResult result = collector.getResult();
 
         if(group != null) {
@@ -160,6 +209,23 @@ public class Searcher {
     
     
     
+    // filters keep state, so every collector gets its own
+    private static AggregateCollector createCollector(AggregationGroup group, String field, Query query) {
+        IFilter filter = FilterBuilder.build(query);
+        if(group != null && group.batchexFilters != null) {
+            return new AggregateCollectorSets(filter, group.batchexFilters, group.batchexAliases);
+        }
+        else if(field == null) {
+            return new AggregateCollectorNoField(filter);
+        }
+        else if("Timestamp".equals(field)) {
+            return new AggregateCollectorTimestamp(filter, group.truncate, group.timeZone); 
+        }
+        else {
+            return new AggregateCollectorField(filter, field);
+        }
+    }
+    
     public static TableDefinition getTableDef(Tenant tenant, String application, String table, String pattern) {
         String store = application + "_" + table;
         ApplicationDefinition appDef = new ApplicationDefinition();
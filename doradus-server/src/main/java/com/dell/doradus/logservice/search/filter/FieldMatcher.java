@@ -0,0 +1,98 @@
+package com.dell.doradus.logservice.search.filter;
+
+import java.util.Arrays;
+
+import com.dell.doradus.logservice.ChunkField;
+import com.dell.doradus.olap.store.BitVector;
+
+/**
+ * Evaluates a values filter on the dictionary of a field and sets the documents
+ * having one of the matched values, from the postings of the field if it has them
+ * and only a few documents match. Scratch buffers are reused between chunks,
+ * so an instance belongs to one filter and must not be shared between threads.
+ */
+class FieldMatcher {
+    private IValuesFilter m_valuesFilter;
+    // matched dictionary values; may be larger than the current dictionary
+    private BitVector m_values = new BitVector(0);
+    // 1 for the matched dictionary values, 0 for the others
+    private byte[] m_matches = new byte[0];
+
+    public FieldMatcher(IValuesFilter valuesFilter) {
+        m_valuesFilter = valuesFilter;
+    }
+
+    public void check(ChunkField field, BitVector docs) {
+        int count = field.getValuesCount();
+        if(m_values.size() < count) {
+            m_values = new BitVector(Math.max(count, m_values.size() * 2));
+            m_matches = new byte[m_values.size()];
+        } else {
+            Arrays.fill(m_values.getBuffer(), 0, (count + 7) >>> 3, (byte)0);
+        }
+        m_valuesFilter.check(field, m_values);
+
+        // values that can match an exact pattern are a slice of the sorted dictionary
+        int from = 0;
+        int to = count;
+        if(m_valuesFilter instanceof FilterPattern) {
+            int[] range = ((FilterPattern)m_valuesFilter).getRange(field);
+            if(range != null) {
+                from = range[0];
+                to = range[1];
+                Arrays.fill(m_matches, 0, count, (byte)0);
+            }
+        }
+        byte[] bits = m_values.getBuffer();
+        byte[] matches = m_matches;
+        int matched = 0;
+        for(int i = from; i < to; i++) {
+            int m = (bits[i >>> 3] >>> (i & 7)) & 1;
+            matches[i] = (byte)m;
+            matched += m;
+        }
+        if(matched == 0) return;
+        if(matched == count) {
+            docs.setAll();
+            return;
+        }
+
+        if(field.hasPostings() && setPostings(field, docs, from, to)) return;
+
+        // build eight documents at a time and store them as one byte of the bit vector
+        int[] indexes = field.getIndexes();
+        byte[] buffer = docs.getBuffer();
+        int full = indexes.length & ~7;
+        for(int i = 0; i < full; i += 8) {
+            int b = matches[indexes[i]]
+                  | matches[indexes[i + 1]] << 1
+                  | matches[indexes[i + 2]] << 2
+                  | matches[indexes[i + 3]] << 3
+                  | matches[indexes[i + 4]] << 4
+                  | matches[indexes[i + 5]] << 5
+                  | matches[indexes[i + 6]] << 6
+                  | matches[indexes[i + 7]] << 7;
+            buffer[i >>> 3] |= b;
+        }
+        for(int i = full; i < indexes.length; i++) {
+            if(matches[indexes[i]] != 0) docs.set(i);
+        }
+    }
+
+    // sets the documents of the matched values from the postings if they are
+    // much smaller than the indexes; returns false if the indexes should be scanned
+    private boolean setPostings(ChunkField field, BitVector docs, int from, int to) {
+        int limit = field.size() / 8;
+        int postingsSize = 0;
+        for(int i = from; i < to; i++) {
+            if(m_matches[i] == 0) continue;
+            postingsSize += field.getPostingsSize(i);
+            if(postingsSize > limit) return false;
+        }
+        for(int i = from; i < to; i++) {
+            if(m_matches[i] != 0) field.getPostings(i, docs);
+        }
+        return true;
+    }
+
+}
@@ -6,24 +6,16 @@ import com.dell.doradus.logservice.ChunkReader;
 import com.dell.doradus.olap.store.BitVector;
 
 public class FilterAnyField implements IFilter {
-    private IValuesFilter m_valuesFilter; 
+    private FieldMatcher m_matcher;
     
     public FilterAnyField(IValuesFilter valuesFilter) {
-        m_valuesFilter = valuesFilter;
+        m_matcher = new FieldMatcher(valuesFilter);
     }
     
     @Override public void check(ChunkReader reader, BitVector docs) {
         for(int fieldIndex = 0; fieldIndex < reader.fieldsCount(); fieldIndex++) {
             ChunkField field = reader.getField(fieldIndex);
-            BitVector values = new BitVector(field.getValuesCount());
-            m_valuesFilter.check(field, values);
-            if(values.isAllBitsCleared()) continue;
-            int[] indexes = field.getIndexes();
-            for(int i = 0; i < indexes.length; i++) {
-                if(values.get(indexes[i])) {
-                    docs.set(i);
-                }
-            }
+            m_matcher.check(field, docs);
             if(docs.isAllBitsSet()) break;
         }
     }
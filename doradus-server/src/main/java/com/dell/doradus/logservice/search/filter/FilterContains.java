@@ -1,6 +1,7 @@
 package com.dell.doradus.logservice.search.filter;
 
 import com.dell.doradus.logservice.ChunkField;
+import com.dell.doradus.logservice.ChunkFieldSummary;
 import com.dell.doradus.logservice.pattern.Substr;
 import com.dell.doradus.olap.store.BitVector;
 
@@ -58,4 +59,6 @@ public class FilterContains implements IValuesFilter {
         }
     }
     
+    @Override public int check(ChunkFieldSummary summary) { return 0; }
+    
 }
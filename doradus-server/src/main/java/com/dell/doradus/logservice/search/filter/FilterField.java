@@ -1,6 +1,7 @@
 package com.dell.doradus.logservice.search.filter;
 
 import com.dell.doradus.logservice.ChunkField;
+import com.dell.doradus.logservice.ChunkFieldSummary;
 import com.dell.doradus.logservice.ChunkInfo;
 import com.dell.doradus.logservice.ChunkReader;
 import com.dell.doradus.olap.io.BSTR;
@@ -9,27 +10,27 @@ import com.dell.doradus.olap.store.BitVector;
 public class FilterField implements IFilter {
     private BSTR m_fieldName;
     private IValuesFilter m_valuesFilter; 
+    private FieldMatcher m_matcher;
     
     public FilterField(String field, IValuesFilter valuesFilter) {
         m_fieldName = new BSTR(field);
         m_valuesFilter = valuesFilter;
+        m_matcher = new FieldMatcher(valuesFilter);
     }
     
     @Override public void check(ChunkReader reader, BitVector docs) {
         int fieldIndex = reader.getFieldIndex(m_fieldName);
         if(fieldIndex < 0) return;
         ChunkField field = reader.getField(fieldIndex);
-        BitVector values = new BitVector(field.getValuesCount());
-        m_valuesFilter.check(field, values);
-        if(values.isAllBitsCleared()) return;
-        int[] indexes = field.getIndexes();
-        for(int i = 0; i < indexes.length; i++) {
-            if(values.get(indexes[i])) {
-                docs.set(i);
-            }
-        }
+        m_matcher.check(field, docs);
     }
     
-    @Override public int check(ChunkInfo info) { return 0; }
+    @Override public int check(ChunkInfo info) {
+        // no summary if the chunk was written without summaries or does not have the field;
+        // in the latter case all documents have empty value, which may still satisfy the filter
+        ChunkFieldSummary summary = info.getFieldSummary(m_fieldName);
+        if(summary == null) return 0;
+        return m_valuesFilter.check(summary);
+    }
     
 }
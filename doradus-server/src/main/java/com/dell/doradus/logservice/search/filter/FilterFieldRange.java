@@ -1,6 +1,7 @@
 package com.dell.doradus.logservice.search.filter;
 
 import com.dell.doradus.logservice.ChunkField;
+import com.dell.doradus.logservice.ChunkFieldSummary;
 import com.dell.doradus.logservice.search.StrRef;
 import com.dell.doradus.olap.io.BSTR;
 import com.dell.doradus.olap.store.BitVector;
@@ -39,6 +40,14 @@ public class FilterFieldRange implements IValuesFilter {
         }
     }
     
+    @Override public int check(ChunkFieldSummary summary) {
+        // empty value of documents without the field
+        m_value.set(BSTR.EMPTY.buffer, 0, 0);
+        if(check(m_value)) return 0;
+        if(!summary.mightContainRange(m_min, m_max)) return -1;
+        return 0;
+    }
+    
     private boolean check(StrRef value) {
         if(m_min != null) {
             int c = m_value.compare(m_min);
@@ -1,25 +1,80 @@
 package com.dell.doradus.logservice.search.filter;
 
+import java.util.Locale;
+
+import com.dell.doradus.common.Utils;
 import com.dell.doradus.logservice.ChunkField;
+import com.dell.doradus.logservice.ChunkFieldSummary;
 import com.dell.doradus.logservice.pattern.Pattern;
+import com.dell.doradus.olap.collections.ArrayOperations;
+import com.dell.doradus.olap.io.BSTR;
 import com.dell.doradus.olap.store.BitVector;
 
 public class FilterPattern implements IValuesFilter {
     private Pattern m_pattern;
+    // for patterns without wildcards: the value in upper and in lower case
+    private BSTR m_upper;
+    private BSTR m_lower;
     
     public FilterPattern(String pattern) {
         m_pattern = new Pattern(pattern);
+        // case-insensitive matching is byte-wise, so summaries can only be used for ASCII values
+        if(pattern.length() == 0) return;
+        for(int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if(c == '*' || c == '?' || c >= 128) return;
+        }
+        m_upper = new BSTR(Utils.toBytes(pattern.toUpperCase(Locale.ROOT)));
+        m_lower = new BSTR(Utils.toBytes(pattern.toLowerCase(Locale.ROOT)));
     }
 
     public void check(ChunkField field, BitVector values) {
         int[] offsets = field.getOffsets();
         int[] lengths = field.getLengths();
         byte[] buffer = field.getBuffer();
-        for(int i = 0; i < offsets.length; i++) {
+        int[] range = getRange(field);
+        int from = range == null ? 0 : range[0];
+        int to = range == null ? offsets.length : range[1];
+        for(int i = from; i < to; i++) {
             if(m_pattern.match(buffer, offsets[i], offsets[i] + lengths[i])) {
                 values.set(i);
             }
         }
     }
     
+    /**
+     * For patterns without wildcards, returns the [from, to) slice of the sorted dictionary
+     * of the field between the upper and the lower case variants of the value:
+     * values outside of it do not match. Returns null if all values should be checked.
+     */
+    int[] getRange(ChunkField field) {
+        if(m_upper == null || !field.isSorted()) return null;
+        int[] offsets = field.getOffsets();
+        int[] lengths = field.getLengths();
+        byte[] buffer = field.getBuffer();
+        int from = search(buffer, offsets, lengths, 0, m_upper, false);
+        int to = search(buffer, offsets, lengths, from, m_lower, true);
+        return new int[] { from, to };
+    }
+    
+    // first value not less than {value}, or greater than {value} if {after} is set
+    private static int search(byte[] buffer, int[] offsets, int[] lengths, int from, BSTR value, boolean after) {
+        int to = offsets.length;
+        while(from < to) {
+            int mid = (from + to) >>> 1;
+            int c = ArrayOperations.compare(buffer, offsets[mid], lengths[mid], value.buffer, 0, value.length);
+            if(c < 0 || (after && c == 0)) from = mid + 1;
+            else to = mid;
+        }
+        return from;
+    }
+    
+    @Override public int check(ChunkFieldSummary summary) {
+        if(m_upper == null) return 0;
+        // all case variants of the value are between upper case and lower case variants
+        if(!summary.mightContainRange(m_upper, m_lower)) return -1;
+        if(!summary.mightContain(m_lower.buffer)) return -1;
+        return 0;
+    }
+    
 }
@@ -1,11 +1,16 @@
 package com.dell.doradus.logservice.search.filter;
 
+import java.util.HashMap;
+
 import com.dell.doradus.common.Utils;
 import com.dell.doradus.logservice.ChunkField;
+import com.dell.doradus.logservice.ChunkFieldSummary;
 import com.dell.doradus.olap.store.BitVector;
 
 public class FilterPatternSlow implements IValuesFilter {
     private String m_pattern;
+    // the same values are repeated in the dictionaries of many chunks
+    private HashMap<String, Boolean> m_cache = new HashMap<>();
     
     public FilterPatternSlow(String pattern) {
         m_pattern = pattern;
@@ -17,10 +22,17 @@ public class FilterPatternSlow implements IValuesFilter {
         byte[] buffer = field.getBuffer();
         for(int i = 0; i < offsets.length; i++) {
             String value = Utils.toString(buffer, offsets[i], lengths[i]);
-            if(Utils.matchesPattern(value, m_pattern)) {
+            Boolean matches = m_cache.get(value);
+            if(matches == null) {
+                matches = Utils.matchesPattern(value, m_pattern);
+                if(m_cache.size() < FilterRegex.MAX_CACHED_VALUES) m_cache.put(value, matches);
+            }
+            if(matches) {
                 values.set(i);
             }
         }
     }
     
+    @Override public int check(ChunkFieldSummary summary) { return 0; }
+    
 }
@@ -1,16 +1,24 @@
 package com.dell.doradus.logservice.search.filter;
 
+import java.util.HashMap;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.dell.doradus.common.Utils;
 import com.dell.doradus.logservice.ChunkField;
+import com.dell.doradus.logservice.ChunkFieldSummary;
 import com.dell.doradus.olap.store.BitVector;
 
 public class FilterRegex implements IValuesFilter {
-    private String m_regex;
+    // upper bound of the values whose match results are remembered
+    public static final int MAX_CACHED_VALUES = 16 * 1024;
+    
+    private Matcher m_matcher;
+    // the same values are repeated in the dictionaries of many chunks
+    private HashMap<String, Boolean> m_cache = new HashMap<>();
     
     public FilterRegex(String regex) {
-        m_regex = regex;
+        m_matcher = Pattern.compile(regex).matcher("");
     }
 
     public void check(ChunkField field, BitVector values) {
@@ -19,10 +27,17 @@ public class FilterRegex implements IValuesFilter {
         byte[] buffer = field.getBuffer();
         for(int i = 0; i < offsets.length; i++) {
             String value = Utils.toString(buffer, offsets[i], lengths[i]);
-            if(Pattern.matches(m_regex, value)) {
+            Boolean matches = m_cache.get(value);
+            if(matches == null) {
+                matches = m_matcher.reset(value).matches();
+                if(m_cache.size() < MAX_CACHED_VALUES) m_cache.put(value, matches);
+            }
+            if(matches) {
                 values.set(i);
             }
         }
     }
     
+    @Override public int check(ChunkFieldSummary summary) { return 0; }
+    
 }
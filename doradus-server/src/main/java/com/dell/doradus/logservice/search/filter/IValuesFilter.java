@@ -1,10 +1,15 @@
 package com.dell.doradus.logservice.search.filter;
 
 import com.dell.doradus.logservice.ChunkField;
+import com.dell.doradus.logservice.ChunkFieldSummary;
 import com.dell.doradus.olap.store.BitVector;
 
 public interface IValuesFilter {
     
     public void check(ChunkField field, BitVector values);
     
+    //returns -1 if no value summarized by {summary} satisfies the filter, or 0 if unknown.
+    //Note that documents without the field have empty value, which is not in the summary.
+    public int check(ChunkFieldSummary summary);
+    
 }
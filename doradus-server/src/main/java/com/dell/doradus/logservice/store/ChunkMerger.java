@@ -5,15 +5,17 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.dell.doradus.logservice.ChunkField;
 import com.dell.doradus.logservice.ChunkInfo;
 import com.dell.doradus.logservice.ChunkReader;
 import com.dell.doradus.logservice.LogService;
-import com.dell.doradus.olap.io.BSTR;
 import com.dell.doradus.service.db.Tenant;
 import com.dell.doradus.utilities.Timer;
 
 public class ChunkMerger {
     private static Logger LOG = LoggerFactory.getLogger("logservice.store.ChunkMerger");
+    // number of source chunks read from the database at once
+    public static final int READ_CHUNKS = 16;
     
     private LogService m_logService;
     private Tenant m_tenant;
@@ -35,41 +37,38 @@ public class ChunkMerger {
     
     public ChunkWriter getWriter() { return m_writer; }
     
+    /**
+     * Merges the chunks into one chunk. Source chunks are read READ_CHUNKS at a time
+     * and their fields are copied value by value, so that the memory used does not
+     * depend on the number of chunks merged but only on the size of the merged chunk.
+     */
     public byte[] mergeChunks(List<ChunkInfo> infos) {
         Timer t = new Timer();
         int size = 0;
-        int[] docOffsets = new int[infos.size()];
-        for(int i = 0; i < infos.size(); i++) {
-            ChunkInfo info = infos.get(i);
-            docOffsets[i] = size;
-            size += info.getEventsCount();
-        }
+        for(ChunkInfo info: infos) size += info.getEventsCount();
         ChunkReader reader = new ChunkReader();
-        BSTR value = new BSTR();
         
         m_writer.create(size);
         
-        List<byte[]> datas = m_logService.readChunks(m_tenant, m_application, m_table, infos);
-        
-        for(int segment = 0; segment < infos.size(); segment++) {
-            int docOffset = docOffsets[segment];
-            reader.read(datas.get(segment));
-            for(int doc = 0; doc < reader.size(); doc++) {
-                m_writer.setTimestamp(docOffset + doc, reader.getTimestamp(doc));
-            }
-            
-            List<BSTR> fields = reader.getFieldNames();
-            
-            for(int fieldIndex = 0; fieldIndex < fields.size(); fieldIndex++) {
-                FieldBuilder fb = m_writer.getFieldBulider(fields.get(fieldIndex));
+        int docOffset = 0;
+        for(int start = 0; start < infos.size(); start += READ_CHUNKS) {
+            List<ChunkInfo> batch = infos.subList(start, Math.min(infos.size(), start + READ_CHUNKS));
+            List<byte[]> datas = m_logService.readChunks(m_tenant, m_application, m_table, batch);
+            for(int segment = 0; segment < batch.size(); segment++) {
+                reader.read(datas.get(segment));
+                // release the data as soon as the chunk is copied
+                datas.set(segment, null);
                 for(int doc = 0; doc < reader.size(); doc++) {
-                    reader.getFieldValue(doc, fieldIndex, value);
-                    if(value.length <= 0) continue;
-                    fb.add(docOffset + doc, value);
+                    m_writer.setTimestamp(docOffset + doc, reader.getTimestamp(doc));
+                }
+                for(int fieldIndex = 0; fieldIndex < reader.fieldsCount(); fieldIndex++) {
+                    ChunkField field = reader.getField(fieldIndex);
+                    m_writer.getFieldBulider(field.getFieldName()).add(docOffset, field);
                 }
+                docOffset += reader.size();
             }
-            
         }
+        if(docOffset != size) throw new RuntimeException("Merged " + docOffset + " events instead of " + size);
 
         byte[] data = m_writer.getData();
         LOG.info("Merged {} chunks ({} records) in {}/{}/{} in {}",
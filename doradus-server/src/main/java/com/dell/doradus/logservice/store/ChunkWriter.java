@@ -1,11 +1,15 @@
 package com.dell.doradus.logservice.store;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import com.dell.doradus.common.FieldDefinition;
 import com.dell.doradus.common.Utils;
+import com.dell.doradus.logservice.ChunkFieldSummary;
 import com.dell.doradus.logservice.DateParser;
 import com.dell.doradus.olap.collections.MemoryStream;
 import com.dell.doradus.olap.io.BSTR;
@@ -16,6 +20,8 @@ public class ChunkWriter {
     private TimestampBuilder m_timestamps;
     private MemoryStream m_output;
     private DateParser m_dateParser = new DateParser();
+    // fields whose postings are written
+    private Set<BSTR> m_postingsFields = new HashSet<>();
     
     public ChunkWriter() {
         m_temp = new Temp();
@@ -28,6 +34,15 @@ public class ChunkWriter {
     public long getMinTimestamp() { return m_timestamps.getMinTimestamp(); }
     public long getMaxTimestamp() { return m_timestamps.getMaxTimestamp(); }
     
+    public void setPostingsFields(Set<BSTR> fields) { m_postingsFields = fields; }
+    
+    // valid after getData()
+    public List<ChunkFieldSummary> getFieldSummaries() {
+        List<ChunkFieldSummary> summaries = new ArrayList<>(m_fields.size());
+        for(FieldBuilder fb: m_fields.values()) summaries.add(fb.getSummary());
+        return summaries;
+    }
+    
     public void create(int size) {
         m_fields.clear();
         m_timestamps = new TimestampBuilder(size);
@@ -50,6 +65,7 @@ public class ChunkWriter {
             Utils.require(FieldDefinition.isValidFieldName(field.toString()), "Field " + field + " is not valid");
             field = new BSTR(field);
             fb = new FieldBuilder(field, getSize());
+            fb.setPostings(m_postingsFields.contains(field));
             m_fields.put(field, fb);
         }
         return fb;
@@ -58,12 +74,14 @@ public class ChunkWriter {
     public byte[] getData() {
         int size = getSize();
         m_output.clear();
-        m_output.writeByte((byte)1); // version
+        // version 2 has postings
+        int version = m_postingsFields.isEmpty() ? 1 : 2;
+        m_output.writeByte((byte)version);
         m_output.writeVInt(size);
         m_output.writeVInt(m_fields.size());
         m_timestamps.flush(m_output, m_temp);
         for(FieldBuilder fb: m_fields.values()) {
-            fb.flush(m_output, m_temp);
+            fb.flush(m_output, m_temp, version);
         }
         return m_output.toArray();
     }
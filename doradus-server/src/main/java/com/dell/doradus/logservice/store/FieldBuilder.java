@@ -16,6 +16,8 @@
 
 package com.dell.doradus.logservice.store;
 
+import com.dell.doradus.logservice.ChunkField;
+import com.dell.doradus.logservice.ChunkFieldSummary;
 import com.dell.doradus.olap.collections.MemoryStream;
 import com.dell.doradus.olap.collections.strings.BstrSet;
 import com.dell.doradus.olap.io.BSTR;
@@ -24,6 +26,9 @@ public class FieldBuilder {
     private BSTR m_field;
     private BstrSet m_values;
 	private int[] m_docs;
+	private ChunkFieldSummary m_summary;
+	// write the list of documents of every value
+	private boolean m_postings;
 	
 	public FieldBuilder(BSTR field, int size) {
 	    m_field = field;
@@ -33,12 +38,45 @@ public class FieldBuilder {
 		if(index != 0) throw new RuntimeException("Error insertin empty string");
 	}
 	
+	public ChunkFieldSummary getSummary() { return m_summary; }
+	
+	public void setPostings(boolean postings) { m_postings = postings; }
+	
 	public void add(int doc, BSTR value) {
 	    int index = m_values.add(value);
 		m_docs[doc] = index;
 	}
 
-	public void flush(MemoryStream output, Temp temp) {
+	/**
+	 * Adds all documents of a field of another chunk, starting at docOffset.
+	 * Every distinct value is added once and documents are mapped by their value indexes.
+	 */
+	public void add(int docOffset, ChunkField field) {
+	    int count = field.getValuesCount();
+	    byte[] buffer = field.getBuffer();
+	    int[] offsets = field.getOffsets();
+	    int[] lengths = field.getLengths();
+	    int[] remap = new int[count];
+	    BSTR value = new BSTR();
+	    for(int i = 0; i < count; i++) {
+	        value.assertLength(lengths[i]);
+	        System.arraycopy(buffer, offsets[i], value.buffer, 0, lengths[i]);
+	        value.length = lengths[i];
+	        remap[i] = m_values.add(value);
+	    }
+	    int[] indexes = field.getIndexes();
+	    for(int doc = 0; doc < indexes.length; doc++) {
+	        m_docs[docOffset + doc] = remap[indexes[doc]];
+	    }
+	}
+
+	/**
+	 * Chunk format version 2 follows the indexes with a flag and, if it is set,
+	 * with the postings of the field: the byte offsets of the document lists of
+	 * all values as fixed-size integers, followed by the delta-encoded lists,
+	 * so that the documents of a value can be read without decoding the indexes.
+	 */
+	public void flush(MemoryStream output, Temp temp, int version) {
         output.writeString(m_field);
         int fields_count = m_values.size();
         output.writeVInt(fields_count);
@@ -51,6 +89,8 @@ public class FieldBuilder {
         BSTR last = temp.getBSTR();
 
         int[] m_doc_to_val = new int[remap.length];
+        //empty value of documents without the field is the first and is not summarized
+        m_summary = new ChunkFieldSummary(m_field, fields_count - 1);
         
         for(int i = 0; i < fields_count; i++) {
             m_doc_to_val[remap[i]] = i;
@@ -65,6 +105,7 @@ public class FieldBuilder {
             s_len.writeVInt(next.length);
             s_dat.write(next.buffer, pfx, next.length - sfx - pfx);
             last.set(next);
+            if(i > 0) m_summary.add(next);
         }
         
         Temp.writeCompressed(output, s_pfx);
@@ -87,6 +128,36 @@ public class FieldBuilder {
         if(fields_count >= 256) {
             Temp.writeCompressed(output, s_fst);
         }
+        if(version < 2) return;
+        
+        //3. Write postings
+        output.writeBoolean(m_postings);
+        if(!m_postings) return;
+        int[] starts = new int[fields_count + 1];
+        for(int i = 0; i < m_docs.length; i++) {
+            starts[m_doc_to_val[m_docs[i]] + 1]++;
+        }
+        for(int i = 0; i < fields_count; i++) starts[i + 1] += starts[i];
+        int[] postings = new int[m_docs.length];
+        int[] positions = new int[fields_count];
+        System.arraycopy(starts, 0, positions, 0, fields_count);
+        for(int i = 0; i < m_docs.length; i++) {
+            postings[positions[m_doc_to_val[m_docs[i]]]++] = i;
+        }
+        MemoryStream s_off = temp.getStream(2);
+        MemoryStream s_pst = temp.getStream(3);
+        for(int i = 0; i < fields_count; i++) {
+            s_off.writeInt(s_pst.length());
+            int lastDoc = 0;
+            for(int j = starts[i]; j < starts[i + 1]; j++) {
+                s_pst.writeVInt(postings[j] - lastDoc);
+                lastDoc = postings[j];
+            }
+        }
+        s_off.writeInt(s_pst.length());
+        output.writeVInt(s_off.length() + s_pst.length());
+        output.write(s_off.getBuffer(), 0, s_off.length());
+        output.write(s_pst.getBuffer(), 0, s_pst.length());
 	}
 
 }
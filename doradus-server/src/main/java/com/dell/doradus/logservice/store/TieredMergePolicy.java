@@ -0,0 +1,83 @@
+package com.dell.doradus.logservice.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.dell.doradus.logservice.ChunkInfo;
+
+/**
+ * Size-tiered merge policy for the chunks of a partition. Chunks are assigned to tiers
+ * by their number of events: tier i holds the chunks smaller than tiers[i] and not
+ * smaller than tiers[i - 1]; chunks with at least tiers[tiers.length - 1] events are
+ * not merged any more. A tier is merged once it has minChunks chunks, so small chunks
+ * are merged often and cheaply, and larger chunks are rewritten only after enough of
+ * them have accumulated. Chunks are merged in timestamp order into chunks of at most
+ * maxEvents events, so that merged chunks cover adjacent time ranges.
+ */
+public class TieredMergePolicy {
+    private int[] m_tiers;
+    private int m_minChunks;
+    private int m_maxEvents;
+
+    public TieredMergePolicy() {
+        this(new int[] { 1024, 8192 }, 4, 65536);
+    }
+
+    public TieredMergePolicy(int[] tiers, int minChunks, int maxEvents) {
+        if(tiers.length == 0) throw new IllegalArgumentException("At least one merge tier is required");
+        for(int i = 1; i < tiers.length; i++) {
+            if(tiers[i] <= tiers[i - 1]) throw new IllegalArgumentException("Merge tiers must be ascending");
+        }
+        if(minChunks < 2) throw new IllegalArgumentException("At least two chunks must be merged");
+        if(maxEvents < tiers[tiers.length - 1]) throw new IllegalArgumentException("Merged chunks must be larger than the last tier");
+        m_tiers = tiers;
+        m_minChunks = minChunks;
+        m_maxEvents = maxEvents;
+    }
+
+    // returns -1 if the chunk is not merged
+    public int getTier(int eventsCount) {
+        for(int i = 0; i < m_tiers.length; i++) {
+            if(eventsCount < m_tiers[i]) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns groups of chunks each of which should be merged into one chunk
+     */
+    public List<List<ChunkInfo>> select(List<ChunkInfo> infos) {
+        List<List<ChunkInfo>> tiers = new ArrayList<>(m_tiers.length);
+        for(int i = 0; i < m_tiers.length; i++) tiers.add(new ArrayList<ChunkInfo>());
+        for(ChunkInfo info: infos) {
+            int tier = getTier(info.getEventsCount());
+            if(tier >= 0) tiers.get(tier).add(info);
+        }
+
+        List<List<ChunkInfo>> merges = new ArrayList<>();
+        for(List<ChunkInfo> tier: tiers) {
+            if(tier.size() < m_minChunks) continue;
+            Collections.sort(tier, new Comparator<ChunkInfo>() {
+                @Override public int compare(ChunkInfo x, ChunkInfo y) {
+                    return Long.compare(x.getMinTimestamp(), y.getMinTimestamp());
+                }
+            });
+            List<ChunkInfo> merge = new ArrayList<>();
+            int totalSize = 0;
+            for(ChunkInfo info: tier) {
+                if(totalSize + info.getEventsCount() > m_maxEvents) {
+                    if(merge.size() > 1) merges.add(merge);
+                    merge = new ArrayList<>();
+                    totalSize = 0;
+                }
+                merge.add(info);
+                totalSize += info.getEventsCount();
+            }
+            if(merge.size() > 1) merges.add(merge);
+        }
+        return merges;
+    }
+
+}
@@ -16,26 +16,100 @@
 
 package com.dell.doradus.olap;
 
-import com.dell.doradus.search.util.LRUSizeCache;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
+/**
+ * LRU cache of loaded field searchers. Heap and off-heap (olap_column_storage = offheap or mmap)
+ * parts of the cached values are counted against separate limits, and the least recently used
+ * values are evicted until both fit.
+ */
 public class FieldsCache {
-	private LRUSizeCache<String, Object> m_FieldsCache;
+	private LinkedHashMap<String, Entry> m_FieldsCache = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private PendingLoads<Object> m_pendingLoads = new PendingLoads<Object>();
+	private long m_maxSize;
+	private long m_maxOffHeapSize;
+	private long m_size;
+	private long m_offHeapSize;
 	
 	public FieldsCache(long totalSizeInBytes) {
-		m_FieldsCache = new LRUSizeCache<String, Object>(0, totalSizeInBytes);
+		this(totalSizeInBytes, totalSizeInBytes);
+	}
+	
+	public FieldsCache(long totalSizeInBytes, long totalOffHeapSizeInBytes) {
+		m_maxSize = totalSizeInBytes;
+		m_maxOffHeapSize = totalOffHeapSizeInBytes;
 	}
 	
 	public Object get(String key) {
 		synchronized (m_FieldsCache) {
-			return m_FieldsCache.get(key);
+			Entry entry = m_FieldsCache.get(key);
+			return entry == null ? null : entry.value;
 		}
 	}
 
 	public void put(String key, Object value, long size) {
+		put(key, value, size, 0);
+	}
+	
+	public void put(String key, Object value, long size, long offHeapSize) {
+		synchronized (m_FieldsCache) {
+			Entry oldEntry = m_FieldsCache.put(key, new Entry(value, size, offHeapSize));
+			if(oldEntry != null) {
+				m_size -= oldEntry.size;
+				m_offHeapSize -= oldEntry.offHeapSize;
+			}
+			m_size += size;
+			m_offHeapSize += offHeapSize;
+			Iterator<Map.Entry<String, Entry>> iterator = m_FieldsCache.entrySet().iterator();
+			while((m_size > m_maxSize || m_offHeapSize > m_maxOffHeapSize) && iterator.hasNext()) {
+				Entry evicted = iterator.next().getValue();
+				iterator.remove();
+				m_size -= evicted.size;
+				m_offHeapSize -= evicted.offHeapSize;
+			}
+		}
+	}
+	
+	public long getSize() {
 		synchronized (m_FieldsCache) {
-			m_FieldsCache.put(key, value, size);
+			return m_size;
+		}
+	}
+	
+	public long getOffHeapSize() {
+		synchronized (m_FieldsCache) {
+			return m_offHeapSize;
 		}
 	}
 
+	/**
+	 * Returns the cached value or loads it; the loader should put the value to the cache.
+	 * Only requests for the same key wait for the load.
+	 */
+	public Object get(final String key, final Callable<Object> loader) {
+		Object value = get(key);
+		if(value != null) return value;
+		return m_pendingLoads.load(key, new Callable<Object>() {
+			@Override public Object call() throws Exception {
+				// may have been loaded just before this load was started
+				Object value = get(key);
+				return value != null ? value : loader.call();
+			}});
+	}
+
+	private static class Entry {
+		public Object value;
+		public long size;
+		public long offHeapSize;
+		
+		public Entry(Object value, long size, long offHeapSize) {
+			this.value = value;
+			this.size = size;
+			this.offHeapSize = offHeapSize;
+		}
+	}
 	
 }
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -31,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.dell.doradus.common.ApplicationDefinition;
+import com.dell.doradus.common.FieldDefinition;
 import com.dell.doradus.common.TableDefinition;
 import com.dell.doradus.common.Utils;
 import com.dell.doradus.olap.aggregate.AggregationRequest;
@@ -42,6 +44,8 @@ import com.dell.doradus.olap.io.VDirectory;
 import com.dell.doradus.olap.merge.Merger;
 import com.dell.doradus.olap.search.Searcher;
 import com.dell.doradus.olap.store.CubeSearcher;
+import com.dell.doradus.olap.store.IdReader;
+import com.dell.doradus.olap.store.IdSearcher;
 import com.dell.doradus.olap.store.SegmentStats;
 import com.dell.doradus.search.SearchResultList;
 import com.dell.doradus.search.util.LRUCache;
@@ -59,8 +63,8 @@ import com.dell.doradus.utilities.Timer;
  * $root/applications/
  *  - app1/
  *  	- shard1/
- *  		- .cube.txt
- *  		- .cube_N/
+ *  		- .cube.txt      base cube, optionally followed by delta cubes: .cube.<guid>[,.cube.<guid>...]
+ *  		- .cube.<guid>/
  *  		- timestamp-guid/
  *  		- timestamp-guid/
  *  		- timestamp-guid/
@@ -76,17 +80,41 @@ public class Olap {
     private static final int olap_search_threads = OLAPService.instance().getParamInt("olap_search_threads", 0);
     private static ExecutorService search_executor =
             olap_search_threads == 0 ? null : Executors.newFixedThreadPool(olap_search_threads);
+    // threads scanning doc ranges of one cube; 0 = a cube is scanned by the thread that queries the shard
+    private static int olap_range_threads = OLAPService.instance().getParamInt("olap_range_threads", 0);
+    private static ExecutorService range_executor =
+            olap_range_threads == 0 ? null : Executors.newFixedThreadPool(olap_range_threads);
+    // cubes are split into ranges of at least this number of documents
+    private static int olap_range_docs = OLAPService.instance().getParamInt("olap_range_docs", 65536);
+    // delta cubes kept next to the base cube of a shard; 0 (default) = every merge rewrites the shard
+    private static final int olap_max_deltas = OLAPService.instance().getParamInt("olap_max_deltas", 0);
+    // deltas are merged into the base cube once they have this percent of its objects
+    private static final int olap_delta_percent = OLAPService.instance().getParamInt("olap_delta_percent", 10);
 	
     private Map<String, Map<String, VDirectory>> m_tenantAppRoots = new HashMap<>();
-	private FieldsCache m_fieldsCache =
-	        new FieldsCache(OLAPService.instance().getParamInt("olap_cache_size_mb", 100) * 1024L * 1024);
+	private FieldsCache m_fieldsCache = new FieldsCache(
+	        OLAPService.instance().getParamInt("olap_cache_size_mb", 100) * 1024L * 1024,
+	        OLAPService.instance().getParamInt("olap_offheap_cache_size_mb",
+	                OLAPService.instance().getParamInt("olap_cache_size_mb", 100)) * 1024L * 1024);
 	private LRUCache<String, CubeSearcher> m_cachedSearchers =
 	        new LRUCache<>(Math.min(8192, OLAPService.instance().getParamInt("olap_loaded_segments", 8192)));
+	private PendingLoads<CubeSearcher> m_loadingSearchers = new PendingLoads<CubeSearcher>();
 	private Set<String> m_mergedCubes = new HashSet<String>();
 	
 	public Olap() { }
 	
 	public static ExecutorService getSearchThreadPool() { return search_executor; }
+	public static ExecutorService getRangeThreadPool() { return range_executor; }
+	public static int getRangeThreadsCount() { return olap_range_threads; }
+	public static int getRangeMinDocs() { return olap_range_docs; }
+	
+	// used by tests
+	static synchronized void setRangeThreads(int threads, int minDocs) {
+		if(range_executor != null) range_executor.shutdown();
+		range_executor = threads == 0 ? null : Executors.newFixedThreadPool(threads);
+		olap_range_threads = threads;
+		olap_range_docs = minDocs;
+	}
 	
 	/**
 	 * Danger: only works for default keyspace
@@ -134,12 +162,15 @@ public class Olap {
 	    return root;
 	}
 
-	public VDirectory getDirectory(ApplicationDefinition appDef, String shard) {
-        VDirectory appDir = getRoot(appDef);
-        VDirectory shardDir = appDir.getDirectory(shard);
-        String segment = getCubeSegment(appDef, shard);
-        VDirectory segmentDir = shardDir.getDirectory(segment);
-        return segmentDir;
+	// directories of the base cube and the delta cubes of the shard
+	public List<VDirectory> getCubeDirectories(ApplicationDefinition appDef, String shard) {
+        VDirectory shardDir = getRoot(appDef).getDirectory(shard);
+        List<String> cubes = getCubeSegments(appDef, shard);
+        List<VDirectory> dirs = new ArrayList<VDirectory>(cubes.size());
+        for(String cube : cubes) {
+            dirs.add(shardDir.getDirectory(cube));
+        }
+        return dirs;
 	}
 	
 	/**
@@ -176,16 +207,30 @@ public class Olap {
 		return shardDir.listDirectories();
 	}
 	
+	// base cube of the shard
 	public String getCubeSegment(ApplicationDefinition appDef, String shard) {
+		List<String> cubes = getCubeSegments(appDef, shard);
+		return cubes.size() == 0 ? null : cubes.get(0);
+	}
+	
+	// base cube followed by the delta cubes; the objects of the cubes are disjoint
+	public List<String> getCubeSegments(ApplicationDefinition appDef, String shard) {
 		VDirectory shardDir = getRoot(appDef).getDirectory(shard);
-		return shardDir.getProperty(".cube.txt");
+		String cubes = shardDir.getProperty(".cube.txt");
+		if(cubes == null) return new ArrayList<String>();
+		return Utils.split(cubes, ',');
 	}
 	
 	public SegmentStats getStats(ApplicationDefinition appDef, String shard) {
-		String cube = getCubeSegment(appDef, shard);
-		if(cube == null) throw new IllegalArgumentException("Application does not exist or does not have merges yet");
-		CubeSearcher s = getSearcher(appDef, shard, cube);
-		return s.getStats();
+		List<String> cubes = getCubeSegments(appDef, shard);
+		if(cubes.size() == 0) throw new IllegalArgumentException("Application does not exist or does not have merges yet");
+		if(cubes.size() == 1) return getSearcher(appDef, shard, cubes.get(0)).getStats();
+		// sum into a new object: the stats of the cached searchers must stay per cube
+		SegmentStats stats = new SegmentStats();
+		for(String cube : cubes) {
+			stats.add(getSearcher(appDef, shard, cube).getStats());
+		}
+		return stats;
 	}
 
 	public String addSegment(ApplicationDefinition appDef, String shard, OlapBatch batch) {
@@ -241,29 +286,46 @@ public class Olap {
 			}
 			
 			List<String> segments = shardDir.listDirectories();
+			List<String> cubes = getCubeSegments(appDef, shard);
+			List<String> newSegments = new ArrayList<String>(segments);
+			newSegments.removeAll(cubes);
 			if(segments.size() == 0) {
 				LOG.debug("No segments in {}/{}", appDef.getAppName(), shard);
 				return;
-			} else if(segments.size() == 1 && segments.get(0).startsWith(".cube.") && !options.getForceMerge()) {
+			} else if(newSegments.size() == 0 && cubes.size() == 1 && !options.getForceMerge()) {
 				LOG.debug("Shard {}/{} was not modified", appDef.getAppName(), shard);
 				return;
 			}
 			
-			List<VDirectory> sources = new ArrayList<VDirectory>();
-			for(String segment : segments) {
-				sources.add(shardDir.getDirectory(segment));
+			// segments deleted after the merge
+			List<String> obsolete = new ArrayList<String>(segments);
+			String cubesProperty = null;
+			if(!options.getForceMerge() && newSegments.size() > 0 && canMergeDelta(appDef, shard, cubes, newSegments)) {
+				String delta = mergeSegments(appDef, shardDir, newSegments);
+				obsolete = new ArrayList<String>(newSegments);
+				List<String> deltas = new ArrayList<String>(cubes.subList(1, cubes.size()));
+				deltas.add(delta);
+				int baseObjects = getSearcher(appDef, shard, cubes.get(0)).getStats().totalObjects();
+				long deltaObjects = 0;
+				for(String d : deltas) deltaObjects += getSearcher(appDef, shard, d).getStats().totalObjects();
+				int action = deltaAction(baseObjects, deltaObjects, deltas.size(), olap_max_deltas, olap_delta_percent);
+				if(action == DELTA_REWRITE) {
+					List<String> sources = new ArrayList<String>(cubes);
+					sources.add(delta);
+					cubesProperty = mergeSegments(appDef, shardDir, sources);
+					obsolete.addAll(sources);
+				} else if(action == DELTA_COMBINE) {
+					cubesProperty = cubes.get(0) + "," + mergeSegments(appDef, shardDir, deltas);
+					obsolete.addAll(deltas);
+				} else {
+					cubesProperty = cubes.get(0) + "," + Utils.concatenate(deltas, ",");
+				}
 			}
+			if(cubesProperty == null) cubesProperty = mergeSegments(appDef, shardDir, segments);
 			
-			String guid = ".cube." + UUID.randomUUID().toString();
-			VDirectory destination = shardDir.getDirectory(guid);
-			
-			Merger.mergeApplication(appDef, sources, destination);
-			
-			shardDir.putProperty(".cube.txt", guid);
+			shardDir.putProperty(".cube.txt", cubesProperty);
 			
-			destination.create();
-			
-			LOG.debug("finished merging {} segments to {}/{} in {}", new Object[]{ segments.size(), appDef.getAppName(), shard, t} );
+			LOG.debug("finished merging {} segments to {}/{} in {}", new Object[]{ newSegments.size(), appDef.getAppName(), shard, t} );
 			
 			if(options.getTimeout() > 0) {
 				try {
@@ -271,11 +333,11 @@ public class Olap {
 				} catch (InterruptedException e) { LOG.warn("sleep interrupted", e); }
 			}
 			
-			for(String segment : segments) {
+			for(String segment : obsolete) {
 				shardDir.getDirectory(segment).delete();
 			}
 			
-			LOG.debug("merge {} segments to {}/{} in {}", new Object[]{ segments.size(), appDef.getAppName(), shard, t} );
+			LOG.debug("merge {} segments to {}/{} in {}", new Object[]{ newSegments.size(), appDef.getAppName(), shard, t} );
 		} finally {
 			synchronized(m_mergedCubes) {
 				m_mergedCubes.remove(key);
@@ -283,6 +345,72 @@ public class Olap {
 		}
 	}
 	
+	// merges the segments into a new cube and returns its name
+	private String mergeSegments(ApplicationDefinition appDef, VDirectory shardDir, List<String> segments) {
+		List<VDirectory> sources = new ArrayList<VDirectory>();
+		for(String segment : segments) {
+			sources.add(shardDir.getDirectory(segment));
+		}
+		String guid = ".cube." + UUID.randomUUID().toString();
+		VDirectory destination = shardDir.getDirectory(guid);
+		Merger.mergeApplication(appDef, sources, destination);
+		destination.create();
+		return guid;
+	}
+	
+	// new segments can be merged into a delta cube if they only add objects, so that the shard
+	// can be searched as the union of its cubes. Ids are checked before anything is merged:
+	// segments that update, delete or link to existing objects go straight to a shard rewrite.
+	// Applications with xlinks, which are resolved on the base cubes only, always rewrite.
+	private boolean canMergeDelta(ApplicationDefinition appDef, String shard, List<String> cubes, List<String> newSegments) {
+		if(olap_max_deltas == 0 || cubes.size() == 0) return false;
+		for(TableDefinition tableDef : appDef.getTableDefinitions().values()) {
+			for(FieldDefinition fieldDef : tableDef.getFieldDefinitions()) {
+				if(fieldDef.isXLinkField()) return false;
+			}
+		}
+		VDirectory shardDir = getRoot(appDef).getDirectory(shard);
+		for(String table : appDef.getTableDefinitions().keySet()) {
+			List<IdSearcher> searchers = null;
+			for(String segment : newSegments) {
+				IdReader reader = new IdReader(shardDir.getDirectory(segment), table);
+				if(reader.end()) continue;
+				if(searchers == null) {
+					searchers = new ArrayList<IdSearcher>(cubes.size());
+					for(String cube : cubes) {
+						searchers.add(getSearcher(appDef, shard, cube).getIdSearcher(table));
+					}
+				}
+				if(!addsObjectsOnly(reader, searchers)) return false;
+			}
+		}
+		return true;
+	}
+	
+	// true if no id of the segment is deleted or already in one of the cubes
+	static boolean addsObjectsOnly(IdReader segmentIds, List<IdSearcher> cubeIds) {
+		while(segmentIds.next()) {
+			if(segmentIds.is_deleted) return false;
+			for(IdSearcher searcher : cubeIds) {
+				if(searcher.find(segmentIds.cur_id, true) >= 0) return false;
+			}
+		}
+		return true;
+	}
+	
+	static final int DELTA_KEEP = 0;
+	static final int DELTA_COMBINE = 1;
+	static final int DELTA_REWRITE = 2;
+	
+	// what a merge does once a new delta cube is built; deltaObjects and deltas include the new one:
+	// deltas that grew large relative to the base are merged with it into a new base cube,
+	// too many deltas are combined into one, otherwise the new delta is kept next to the others
+	static int deltaAction(long baseObjects, long deltaObjects, int deltas, int maxDeltas, int deltaPercent) {
+		if(deltaObjects * 100 > baseObjects * deltaPercent) return DELTA_REWRITE;
+		else if(deltas > maxDeltas) return DELTA_COMBINE;
+		else return DELTA_KEEP;
+	}
+	
 	public void setExpirationDate(ApplicationDefinition appDef, String shard, String expDate) {
         VDirectory shardDir = getRoot(appDef).getDirectory(shard);
         if(expDate != null) {
@@ -300,20 +428,29 @@ public class Olap {
 		else return Utils.dateFromString(expDateStr);
 	}
 	
-	public CubeSearcher getSearcher(ApplicationDefinition appDef, String shard, String segment) {
+	public CubeSearcher getSearcher(final ApplicationDefinition appDef, final String shard, final String segment) {
+		final String key = appDef.getAppName() + "/" + shard + "/" + segment;
 		synchronized(m_cachedSearchers) {
-			String key = appDef.getAppName() + "/" + shard + "/" + segment;
 			CubeSearcher s = m_cachedSearchers.get(key);
-			if(s == null) {
+			if(s != null) return s;
+		}
+		// segment stats are read outside of the lock; only requests for the same segment wait
+		return m_loadingSearchers.load(key, new Callable<CubeSearcher>() {
+			@Override public CubeSearcher call() {
+				synchronized(m_cachedSearchers) {
+					CubeSearcher s = m_cachedSearchers.get(key);
+					if(s != null) return s;
+				}
 				VDirectory dir = getRoot(appDef);
 				dir = dir.getDirectory(shard);
 				dir = dir.getDirectory(segment);
-				s = new CubeSearcher(dir, m_fieldsCache);
-				//m_cachedSearchers.put(key, s, s.getStats().memory() + 2 * key.length() + 16);
-				m_cachedSearchers.put(key, s);
-			}
-			return s;
-		}
+				CubeSearcher s = new CubeSearcher(dir, m_fieldsCache);
+				synchronized(m_cachedSearchers) {
+					//m_cachedSearchers.put(key, s, s.getStats().memory() + 2 * key.length() + 16);
+					m_cachedSearchers.put(key, s);
+				}
+				return s;
+			}});
 	}
 
 	public SearchResultList getDuplicateIDs(ApplicationDefinition appDef, String table, String shardsRange) {
@@ -333,11 +470,23 @@ public class Olap {
 		return result;
 	}
 	
+	// searcher of the base cube only; cross-application links use it, and applications
+	// with xlinks never keep delta cubes
 	public CubeSearcher getSearcher(ApplicationDefinition appDef, String shard) {
 		String segment = getCubeSegment(appDef, shard);
 		return getSearcher(appDef, shard, segment);
 	}
 	
+	// searchers of the base cube and the delta cubes of the shard
+	public List<CubeSearcher> getSearchers(ApplicationDefinition appDef, String shard) {
+		List<String> cubes = getCubeSegments(appDef, shard);
+		List<CubeSearcher> searchers = new ArrayList<CubeSearcher>(cubes.size());
+		for(String cube : cubes) {
+			searchers.add(getSearcher(appDef, shard, cube));
+		}
+		return searchers;
+	}
+	
 	public List<String> getShardsList(ApplicationDefinition appDef, String shards, String shardsRange) {
     	if(shards != null && shardsRange != null) throw new IllegalArgumentException("Both shards and range parameters cannot be set");
     	if(shards == null && shardsRange == null) throw new IllegalArgumentException("shards or range parameter not set");
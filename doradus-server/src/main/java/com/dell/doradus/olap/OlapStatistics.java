@@ -19,6 +19,7 @@ package com.dell.doradus.olap;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 
 import com.dell.doradus.common.UNode;
 import com.dell.doradus.olap.io.FileInfo;
@@ -34,8 +35,25 @@ import com.dell.doradus.olap.store.ValueSearcher;
 public class OlapStatistics {
 	
 	public static UNode getStatistics(CubeSearcher searcher, String sort, boolean memoryStats) {
-		//searcher.get
 		UNode unode = UNode.createMapNode("statistics");
+		addStatistics(unode, searcher, sort, memoryStats);
+		return unode;
+	}
+	
+	// statistics of a shard with delta cubes are listed per cube, base cube first
+	public static UNode getStatistics(List<CubeSearcher> searchers, String sort, boolean memoryStats) {
+		if(searchers.size() == 1) return getStatistics(searchers.get(0), sort, memoryStats);
+		UNode unode = UNode.createMapNode("statistics");
+		UNode cubesNode = unode.addArrayNode("cubes");
+		for(CubeSearcher searcher : searchers) {
+			UNode cubeNode = cubesNode.addMapNode("cube");
+			cubeNode.addValueNode("name", searcher.getDirectory().getName(), true);
+			addStatistics(cubeNode, searcher, sort, memoryStats);
+		}
+		return unode;
+	}
+	
+	private static void addStatistics(UNode unode, CubeSearcher searcher, String sort, boolean memoryStats) {
 		UNode fnode = unode.addArrayNode("files");
 		VDirectory dir = searcher.getDirectory();
 		long total_cl = 0;
@@ -80,7 +98,7 @@ public class OlapStatistics {
 		fnode.addValueNode("cmp", fmt(total_cl), true);
 		fnode.addValueNode("unc", fmt(total_ul), true);
 		
-		if(!memoryStats) return unode;
+		if(!memoryStats) return;
 		
 		SegmentStats stats = searcher.getStats();
 		UNode tablesNode = unode.addArrayNode("tables");
@@ -108,7 +126,7 @@ public class OlapStatistics {
 			for(SegmentStats.Table.NumField numField: table.numFields.values()) {
 				UNode numNode = numsNode.addMapNode("num");
 				NumSearcherMV num = searcher.getNumSearcher(table.name, numField.name);
-				long size = num.cacheSize();
+				long size = num.cacheSize() + num.offHeapSize();
 				total_num_mem += size;
 				numNode.addValueNode("name", numField.name, true);
 				numNode.addValueNode("mem", fmt(size), true);
@@ -123,7 +141,7 @@ public class OlapStatistics {
 				UNode fldNode = fldsNode.addMapNode("fld");
 				UNode valNode = valsNode.addMapNode("val");
 				FieldSearcher fld = searcher.getFieldSearcher(table.name, txtField.name);
-				long size = fld.cacheSize();
+				long size = fld.cacheSize() + fld.offHeapSize();
 				total_fld_mem += size;
 				fldNode.addValueNode("name", txtField.name, true);
 				fldNode.addValueNode("mem", fmt(size), true);
@@ -143,7 +161,7 @@ public class OlapStatistics {
 			for(SegmentStats.Table.LinkField lnkField: table.linkFields.values()) {
 				UNode lnkNode = lnksNode.addMapNode("lnk");
 				FieldSearcher lnk = searcher.getFieldSearcher(table.name, lnkField.name);
-				long size = lnk.cacheSize();
+				long size = lnk.cacheSize() + lnk.offHeapSize();
 				total_lnk_mem += size;
 				lnkNode.addValueNode("name", lnkField.name, true);
 				lnkNode.addValueNode("mem", fmt(size), true);
@@ -163,9 +181,6 @@ public class OlapStatistics {
 		tablesNode.addValueNode("docs", fmt(total_docs), true);
 		tablesNode.addValueNode("memory", fmt(total_memory), true);
 		tablesNode.addValueNode("fields", fmt(total_fields_count), true);
-		
-		
-		return unode;
 	}
 
 	public static UNode getFileData(CubeSearcher searcher, String file) {
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2014 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Loads values by key so that concurrent requests for the same key wait for one load,
+ * while loads of different keys run in parallel. Loaded values are not kept here:
+ * loaders should check and fill their cache themselves.
+ */
+public class PendingLoads<T> {
+	private ConcurrentHashMap<String, FutureTask<T>> m_loads = new ConcurrentHashMap<>();
+	
+	public T load(String key, Callable<T> loader) {
+		FutureTask<T> task = new FutureTask<T>(loader);
+		FutureTask<T> pending = m_loads.putIfAbsent(key, task);
+		if(pending == null) {
+			pending = task;
+			try {
+				task.run();
+			} finally {
+				m_loads.remove(key, task);
+			}
+		}
+		try {
+			return pending.get();
+		}catch(ExecutionException ee) {
+			// keep FileDeletedException so that queries are retried
+			if(ee.getCause() instanceof RuntimeException) throw (RuntimeException)ee.getCause();
+			if(ee.getCause() instanceof Error) throw (Error)ee.getCause();
+			throw new RuntimeException(ee.getCause());
+		}catch(InterruptedException ee) {
+			throw new RuntimeException(ee);
+		}
+	}
+	
+}
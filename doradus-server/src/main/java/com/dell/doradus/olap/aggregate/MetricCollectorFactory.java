@@ -34,7 +34,7 @@ public class MetricCollectorFactory {
 	private static Map<String, Class<? extends IMetricValue>> m_map = new HashMap<>();
 	
 	static {
-		// metric: COUNT, SUM, MIN, MAX, AVG, DISTINCT
+		// metric: COUNT, SUM, MIN, MAX, AVG, DISTINCT, DISTINCT_APPROX, PERCENTILE
 		// f_type: LINK, TEXT, BOOLEAN, INTEGER, LONG, TIMESTAMP, FLOAT, DOUBLE
 		
 		m_map.put("COUNT/LINK", MetricValueSum.class);
@@ -114,6 +114,21 @@ public class MetricCollectorFactory {
 		m_map.put("DISTINCT/TIMESTAMP", MetricValueDistinct.class);
 		m_map.put("DISTINCT/FLOAT", MetricValueDistinct.class);
 		m_map.put("DISTINCT/DOUBLE", MetricValueDistinct.class);
+
+		m_map.put("DISTINCT_APPROX/LINK", MetricValueDistinctApprox.Id.class);
+		m_map.put("DISTINCT_APPROX/TEXT", MetricValueDistinctApprox.Text.class);
+		m_map.put("DISTINCT_APPROX/BOOLEAN", MetricValueDistinctApprox.class);
+		m_map.put("DISTINCT_APPROX/INTEGER", MetricValueDistinctApprox.class);
+		m_map.put("DISTINCT_APPROX/LONG", MetricValueDistinctApprox.class);
+		m_map.put("DISTINCT_APPROX/TIMESTAMP", MetricValueDistinctApprox.class);
+		m_map.put("DISTINCT_APPROX/FLOAT", MetricValueDistinctApprox.class);
+		m_map.put("DISTINCT_APPROX/DOUBLE", MetricValueDistinctApprox.class);
+
+		m_map.put("PERCENTILE/INTEGER", MetricValuePercentile.Num.class);
+		m_map.put("PERCENTILE/LONG", MetricValuePercentile.Num.class);
+		m_map.put("PERCENTILE/TIMESTAMP", MetricValuePercentile.DateValue.class);
+		m_map.put("PERCENTILE/FLOAT", MetricValuePercentile.FloatValue.class);
+		m_map.put("PERCENTILE/DOUBLE", MetricValuePercentile.DoubleValue.class);
 		
 	}
 
@@ -154,7 +169,20 @@ public class MetricCollectorFactory {
 		if(metric.items != null && metric.items.size() > 0) {
 			fieldDef = metric.items.get(metric.items.size() - 1).fieldDef;
 		}
-		return create(searcher, metric.function, fieldDef);
+		MetricCollector collector = create(searcher, metric.function, fieldDef);
+		if("PERCENTILE".equalsIgnoreCase(metric.function)) {
+			Utils.require(metric.functionParameters != null && metric.functionParameters.size() == 1, "PERCENTILE requires field and percentile");
+			double percentile;
+			try {
+				percentile = Double.parseDouble(metric.functionParameters.get(0));
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid percentile: " + metric.functionParameters.get(0));
+			}
+			MetricValuePercentile value = (MetricValuePercentile)collector.get();
+			value.setPercentile(percentile);
+			collector = new MetricCollector(value, searcher, fieldDef);
+		}
+		return collector;
 	}
 	
 	public static MetricCollector create(CubeSearcher searcher, String metricFunction, FieldDefinition fieldDef) {
@@ -173,6 +201,11 @@ public class MetricCollectorFactory {
 		if(clazz == null) throw new IllegalArgumentException("Unsupported combination " + key);
 		try {
 			IMetricValue value = clazz.newInstance();
+			if(value instanceof MetricValueDistinctApprox.Text) {
+				((MetricValueDistinctApprox.Text)value).setHashes(searcher.getValueHashes(fieldDef.getTableName(), fieldDef.getName()));
+			} else if(value instanceof MetricValueDistinctApprox.Id) {
+				((MetricValueDistinctApprox.Id)value).setHashes(searcher.getIdHashes(fieldDef.getLinkExtent()));
+			}
 			return new MetricCollector(value, searcher, fieldDef);
 		} catch (Exception e) { throw new RuntimeException(e.getMessage(), e); }
 	}
@@ -101,7 +101,7 @@ public class MetricCounterFactory {
 			} else if(item.fieldDef.isXLinkInverse()) {
 				return new InverseXLinkMetricCounter(searcher, item.fieldDef, (XMetrics)item.xlinkContext);
 			} else {
-				if("MIN".equals(metric.function) || "MAX".equals(metric.function) || "DISTINCT".equals(metric.function)) {
+				if("MIN".equals(metric.function) || "MAX".equals(metric.function) || "DISTINCT".equals(metric.function) || "DISTINCT_APPROX".equals(metric.function)) {
 					if(item.isTransitive) return new MetricCounterTransitive.TransitiveLinkValue(filter, item.fieldDef, item.transitiveDepth, searcher);
 					else return new MetricCounter.FieldValue(filter, item.fieldDef, searcher);
 				}
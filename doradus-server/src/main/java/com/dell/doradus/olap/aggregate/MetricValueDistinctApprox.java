@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.aggregate;
+
+import com.dell.doradus.olap.collections.BdLongSet;
+import com.dell.doradus.search.util.HyperLogLog;
+
+/**
+ * DISTINCT_APPROX: number of distinct values estimated with a HyperLogLog sketch.
+ * Values are added to the sketch as they are merged into groups, so groups keep
+ * only the sketch, also when they are merged across segments and shards.
+ */
+public class MetricValueDistinctApprox implements IMetricValue {
+	// values of the current document
+	protected BdLongSet m_LongValues = new BdLongSet(2);
+	// created on first use so that per-document values do not allocate the registers
+	protected HyperLogLog m_sketch;
+
+	public MetricValueDistinctApprox() {
+		m_LongValues.enableClearBuffer();
+	}
+	
+	protected HyperLogLog getSketch() {
+		if(m_sketch == null) m_sketch = new HyperLogLog();
+		return m_sketch;
+	}
+	
+	public long getValue() { return m_sketch == null ? 0 : m_sketch.cardinality(); }
+	
+	@Override public int compareTo(IMetricValue o) {
+		MetricValueDistinctApprox other = (MetricValueDistinctApprox)o;
+		return Long.compare(getValue(), other.getValue());
+	}
+
+	@Override public String toString() { return "" + getValue(); }
+	
+	@Override public void reset() {
+		m_LongValues.clear();
+		if(m_sketch != null) m_sketch.clear();
+	}
+
+	@Override public void add(IMetricValue value) {
+		MetricValueDistinctApprox other = (MetricValueDistinctApprox)value;
+		addValues(other.m_LongValues);
+		if(other.m_sketch != null) getSketch().merge(other.m_sketch);
+	}
+
+	protected void addValues(BdLongSet values) {
+		if(values.size() == 0) return;
+		HyperLogLog sketch = getSketch();
+		for(int i = 0; i < values.size(); i++) sketch.add(values.get(i));
+	}
+	
+	@Override public void add(long value) {
+		m_LongValues.add(value);
+	}
+
+	@Override public boolean isDegenerate() { return false; } 
+
+	@Override public IMetricValue newInstance() { return new MetricValueDistinctApprox(); }
+	@Override public IMetricValue convert(MetricCollector collector) { return this; }
+	
+	/**
+	 * Text values and links: segment-local ids of the current document. When they are
+	 * added to a group, the hashes of their values, cached per cube, are added to its sketch.
+	 */
+	public static abstract class ValueHashes extends MetricValueDistinctApprox {
+		// hashes of the values indexed by id, see CubeSearcher.getValueHashes
+		protected long[] m_hashes;
+		
+		public void setHashes(long[] hashes) { m_hashes = hashes; }
+		
+		protected abstract ValueHashes create();
+		
+		@Override public IMetricValue newInstance() {
+			ValueHashes value = create();
+			value.m_hashes = m_hashes;
+			return value;
+		}
+		
+		@Override protected void addValues(BdLongSet values) {
+			if(values.size() == 0) return;
+			HyperLogLog sketch = getSketch();
+			for(int i = 0; i < values.size(); i++) {
+				long l = values.get(i);
+				if(l < 0) continue;
+				sketch.add(m_hashes[(int)l]);
+			}
+		}
+	}
+	
+	public static class Text extends ValueHashes {
+		@Override protected ValueHashes create() { return new Text(); }
+	}
+	
+	public static class Id extends ValueHashes {
+		@Override protected ValueHashes create() { return new Id(); }
+	}
+	
+}
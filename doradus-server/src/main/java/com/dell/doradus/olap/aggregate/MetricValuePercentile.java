@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.aggregate;
+
+import java.util.Date;
+
+import com.dell.doradus.olap.XType;
+import com.dell.doradus.search.util.QuantileSketch;
+
+/**
+ * PERCENTILE(field, p): value below which p percent of the field values fall,
+ * estimated with a QuantileSketch within its relative accuracy.
+ */
+public abstract class MetricValuePercentile extends MetricValueExpr {
+	// 0 to 100
+	protected double m_percentile;
+	// values of the current document
+	protected long[] m_values = new long[1];
+	protected int m_valuesCount;
+	// created on first use so that per-document values do not allocate buckets
+	protected QuantileSketch m_sketch;
+	
+	public void setPercentile(double percentile) {
+		if(percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+		m_percentile = percentile;
+	}
+	
+	protected abstract double toDouble(long value);
+	protected abstract MetricValuePercentile create();
+	
+	@Override public double getValue() {
+		if(m_sketch == null || m_sketch.count() == 0) return Double.NEGATIVE_INFINITY;
+		return m_sketch.quantile(m_percentile / 100);
+	}
+	
+	@Override public void reset() {
+		m_valuesCount = 0;
+		if(m_sketch != null) m_sketch.clear();
+	}
+	
+	@Override public void add(long value) {
+		if(m_valuesCount == m_values.length) {
+			long[] values = new long[m_values.length * 2];
+			System.arraycopy(m_values, 0, values, 0, m_valuesCount);
+			m_values = values;
+		}
+		m_values[m_valuesCount++] = value;
+	}
+	
+	@Override public void add(IMetricValue value) {
+		MetricValuePercentile other = (MetricValuePercentile)value;
+		if(other.m_valuesCount == 0 && other.m_sketch == null) return;
+		if(m_sketch == null) m_sketch = new QuantileSketch();
+		for(int i = 0; i < other.m_valuesCount; i++) {
+			m_sketch.add(toDouble(other.m_values[i]));
+		}
+		if(other.m_sketch != null) m_sketch.merge(other.m_sketch);
+	}
+	
+	@Override public IMetricValue newInstance() {
+		MetricValuePercentile value = create();
+		value.m_percentile = m_percentile;
+		return value;
+	}
+	
+	@Override public IMetricValue convert(MetricCollector collector) { return this; }
+	
+	public static class Num extends MetricValuePercentile {
+		@Override protected double toDouble(long value) { return value; }
+		@Override protected MetricValuePercentile create() { return new Num(); }
+		@Override public String toString() {
+			double value = getValue();
+			if(value == Double.NEGATIVE_INFINITY) return null;
+			return "" + Math.round(value);
+		}
+	}
+	
+	public static class DoubleValue extends MetricValuePercentile {
+		@Override protected double toDouble(long value) { return Double.longBitsToDouble(value); }
+		@Override protected MetricValuePercentile create() { return new DoubleValue(); }
+	}
+	
+	public static class FloatValue extends MetricValuePercentile {
+		@Override protected double toDouble(long value) { return Float.intBitsToFloat((int)value); }
+		@Override protected MetricValuePercentile create() { return new FloatValue(); }
+	}
+	
+	public static class DateValue extends MetricValuePercentile {
+		@Override protected double toDouble(long value) { return value; }
+		@Override protected MetricValuePercentile create() { return new DateValue(); }
+		@Override public String toString() {
+			double value = getValue();
+			if(value == Double.NEGATIVE_INFINITY) return null;
+			return XType.toString(new Date(Math.round(value)));
+		}
+	}
+	
+}
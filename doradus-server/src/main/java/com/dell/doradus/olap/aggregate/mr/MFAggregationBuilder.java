@@ -35,6 +35,7 @@ import com.dell.doradus.olap.aggregate.MetricCounterSet;
 import com.dell.doradus.olap.aggregate.MetricValueSet;
 import com.dell.doradus.olap.collections.BdLongSet;
 import com.dell.doradus.olap.io.FileDeletedException;
+import com.dell.doradus.olap.search.DocRanges;
 import com.dell.doradus.olap.search.Result;
 import com.dell.doradus.olap.search.ResultBuilder;
 import com.dell.doradus.olap.store.CubeSearcher;
@@ -147,12 +148,15 @@ public class MFAggregationBuilder {
 	}
 	
     private static AggregationCollector aggregateInternal(Olap olap, ApplicationDefinition appDef, String shard, AggregationRequest request) {
-        if(!request.uncommitted) {
-            CubeSearcher searcher = olap.getSearcher(appDef, shard);
+        List<String> segments = request.uncommitted ?
+                olap.listSegments(appDef, shard) : olap.getCubeSegments(appDef, shard);
+        if(!request.uncommitted && segments.size() <= 1) {
+            CubeSearcher searcher = segments.size() == 0 ? olap.getSearcher(appDef, shard) : olap.getSearcher(appDef, shard, segments.get(0));
             return aggregate(searcher, request);
         } else {
+            // base and delta cubes, or all segments if uncommitted
             AggregationCollector collector = null;
-            for(String segment: olap.listSegments(appDef, shard)) {
+            for(String segment: segments) {
                 CubeSearcher searcher = olap.getSearcher(appDef, shard, segment);
                 AggregationCollector agg = aggregate(searcher, request);
                 if(collector == null) collector = agg;
@@ -163,24 +167,17 @@ public class MFAggregationBuilder {
     }
 	
 	
-	public static AggregationCollector aggregate(CubeSearcher searcher, AggregationRequest request) {
+	public static AggregationCollector aggregate(final CubeSearcher searcher, final AggregationRequest request) {
 		for(AggregationRequest.Part p : request.parts) {
 			if(p.groups == null) {
 				p.groups = new ArrayList<AggregationGroup>();
 			}
 		}
-		int groupsCount = request.parts[0].groups.size();
 		int partsCount = request.parts.length;
 		
-		Result[] filters = new Result[partsCount];
-		MFCollectorSet[] fieldCollectors = new MFCollectorSet[partsCount];
-		MetricCollectorSet[] collectorSets = new MetricCollectorSet[partsCount];
-		MetricCounterSet[] counterSets = new MetricCounterSet[partsCount];
+		final Result[] filters = new Result[partsCount];
 		for(int i = 0; i < filters.length; i++) {
 			filters[i] = ResultBuilder.search(request.tableDef, request.parts[i].query, searcher);
-			fieldCollectors[i] = new MFCollectorSet(searcher, request.parts[i].groups, filters.length == 1); 
-			collectorSets[i] = MetricCollectorFactory.create(searcher, request.parts[i].metrics);
-			counterSets[i] = MetricCounterFactory.create(searcher, request.parts[i].metrics);
 		}
 		
 		if(request.isOnlyCountStar()) {
@@ -192,6 +189,39 @@ public class MFAggregationBuilder {
 			AggregationCollector collector = new AggregationCollector(r.countSet());
 			return collector;
 		}
+		
+		final int[] bounds = DocRanges.split(filters[0].size());
+		if(bounds.length == 2) return collect(searcher, request, filters, 0, bounds[1]);
+		
+		// filters are shared; documents are collected per range and the groups are merged
+		final AggregationCollector[] results = new AggregationCollector[bounds.length - 1];
+		List<Runnable> tasks = new ArrayList<>(results.length);
+		for(int r = 0; r < results.length; r++) {
+			final int f_range = r;
+			tasks.add(new Runnable() {
+				@Override public void run() {
+					results[f_range] = collect(searcher, request, filters, bounds[f_range], bounds[f_range + 1]);
+				}});
+		}
+		DocRanges.run(tasks);
+		AggregationCollector collector = results[0];
+		for(int r = 1; r < results.length; r++) {
+			collector.merge(results[r]);
+		}
+		return collector;
+	}
+
+	// collects documents in [start, end)
+	private static AggregationCollector collect(CubeSearcher searcher, AggregationRequest request, Result[] filters, int start, int end) {
+		int groupsCount = request.parts[0].groups.size();
+		MFCollectorSet[] fieldCollectors = new MFCollectorSet[filters.length];
+		MetricCollectorSet[] collectorSets = new MetricCollectorSet[filters.length];
+		MetricCounterSet[] counterSets = new MetricCounterSet[filters.length];
+		for(int i = 0; i < filters.length; i++) {
+			fieldCollectors[i] = new MFCollectorSet(searcher, request.parts[i].groups, filters.length == 1); 
+			collectorSets[i] = MetricCollectorFactory.create(searcher, request.parts[i].metrics);
+			counterSets[i] = MetricCounterFactory.create(searcher, request.parts[i].metrics);
+		}
 
 		BdLongSet[] sets = new BdLongSet[groupsCount];
 		for(int i = 0; i < groupsCount; i++) {
@@ -202,6 +232,7 @@ public class MFAggregationBuilder {
 		
 		MetricValueSet valueSet = collectorSets[0].get();
 		//collect empty groups: only for top group
+		//every range collects them because groups of ranges without documents are dropped
 		if(groupsCount > 0 && fieldCollectors[0].collectors.length > 0) {
 			fieldCollectors[0].collectors[0].collectEmptyGroups(sets[0]);
 			if(sets[0].size() > 0) {
@@ -217,7 +248,7 @@ public class MFAggregationBuilder {
 			BdLongSet commonSet = new BdLongSet(1024);
 			commonSet.enableClearBuffer();
 			
-			for(int doc = 0; doc < count; doc++) {
+			for(int doc = start; doc < end; doc++) {
 				for(int i = 0; i < filters.length; i++) {
 					if(!filters[i].get(doc)) continue;
 					valueSet.reset();
@@ -236,7 +267,7 @@ public class MFAggregationBuilder {
 			}
 		}
 		else {
-			for(int doc = 0; doc < count; doc++) {
+			for(int doc = start; doc < end; doc++) {
 				for(int i = 0; i < filters.length; i++) {
 					if(!filters[i].get(doc)) continue;
 					valueSet.reset();
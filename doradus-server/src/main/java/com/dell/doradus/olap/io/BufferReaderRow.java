@@ -30,18 +30,26 @@ public class BufferReaderRow implements IBufferReader {
     }
     
 	@Override public byte[] readBuffer(int bufferNumber) {
-		byte[] buffer = null;
+		String key = null;
+		String column = null;
 		if(m_info.getSingleRow()) {
-			buffer = m_helper.readFileChunk(m_app, m_row, "Data/" + m_info.getName() + "/" + bufferNumber);
+			key = m_row;
+			column = "Data/" + m_info.getName() + "/" + bufferNumber;
 		} else if(m_info.getSharesRow()) {
-			buffer = m_helper.readFileChunk(m_app, m_row + "/_share", m_info.getName() + "/" + bufferNumber);
+			key = m_row + "/_share";
+			column = m_info.getName() + "/" + bufferNumber;
 		} else {
-			buffer = m_helper.readFileChunk(m_app, m_row + "/" + m_info.getName(), "" + bufferNumber);
+			key = m_row + "/" + m_info.getName();
+			column = "" + bufferNumber;
 		}
+		byte[] buffer = m_helper.getCachedChunk(m_app, key, column);
+		if(buffer != null) return buffer;
+		buffer = m_helper.readFileChunk(m_app, key, column);
 		if(!m_info.getUncompressed()) {
-			buffer = Compressor.uncompress(buffer);
+			buffer = Compressor.uncompress(buffer, Compressor.getCodec(m_info.getCodec()));
 		}
         if(buffer == null) throw new RuntimeException("End of stream");
+        m_helper.cacheChunk(m_app, key, column, buffer);
         return buffer;
 	}
 
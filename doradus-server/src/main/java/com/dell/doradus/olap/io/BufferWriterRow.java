@@ -25,6 +25,8 @@ public class BufferWriterRow implements IBufferWriter {
     private Object m_syncRoot = new Object();
     
     private FileInfo m_info;
+    // lz4 and lz4hc share a codec id, so keep the configured instance for writing
+    private ICodec m_codec = Compressor.getDefaultCodec();
     
     public BufferWriterRow(DataCache dataCache, StorageHelper helper, String app, String row, String name) {
     	m_dataCache = dataCache;
@@ -33,11 +35,15 @@ public class BufferWriterRow implements IBufferWriter {
     	m_row = row;
     	m_info = new FileInfo(name);
     	m_info.setSingleRow(true);
+    	m_info.setCodec(m_codec.getId());
     }
     
     @Override public void writeBuffer(int bufferNumber, byte[] buffer, int length) {
     	if(bufferNumber == 0 && length < buffer.length) {
-    		if(length < 512) m_info.setUncompressed(true);
+    		if(length < 512) {
+    			m_info.setUncompressed(true);
+    			m_info.setCodec(GZipCodec.ID);
+    		}
     		if(length < 65536 && !m_info.getSingleRow()) m_info.setSharesRow(true);
     	}
 
@@ -63,7 +69,7 @@ public class BufferWriterRow implements IBufferWriter {
 	}
     
     private void write(int bufferNumber, byte[] buf) {
-    	if(m_info.isCompressed()) buf = Compressor.compress(buf);
+    	if(m_info.isCompressed()) buf = Compressor.compress(buf, m_codec);
     	synchronized(m_syncRoot) {
     		m_info.setCompressedLength(m_info.getCompressedLength() + buf.length);
     	}
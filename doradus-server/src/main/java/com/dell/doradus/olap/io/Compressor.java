@@ -16,50 +16,59 @@
 
 package com.dell.doradus.olap.io;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-
 import com.dell.doradus.service.olap.OLAPService;
 
 public class Compressor {
     private static boolean m_bCompress = OLAPService.instance().getParamBoolean("olap_internal_compression", true);
     private static int m_compressionLevel = OLAPService.instance().getParamInt("olap_compression_level", -1);
+    private static String m_codecName = OLAPService.instance().getParamString("olap_compression_codec");
+    
+    private static ICodec m_gzipCodec = new GZipCodec(m_compressionLevel);
+    private static ICodec m_lz4Codec = new LZ4Codec(false);
+    private static ICodec m_lz4hcCodec = new LZ4Codec(true);
+    private static ICodec m_defaultCodec = getCodec(m_codecName);
+    
+    /**
+     * Returns codec by its name as specified in olap_compression_codec parameter:
+     * gzip (default), lz4 or lz4hc
+     */
+    public static ICodec getCodec(String name) {
+    	if(name == null || name.length() == 0 || "gzip".equals(name)) return m_gzipCodec;
+    	else if("lz4".equals(name)) return m_lz4Codec;
+    	else if("lz4hc".equals(name)) return m_lz4hcCodec;
+    	else throw new IllegalArgumentException("Unknown compression codec: " + name);
+    }
+    
+    /**
+     * Returns codec by the id stored in {@link FileInfo}
+     */
+    public static ICodec getCodec(int id) {
+    	switch(id) {
+    	case GZipCodec.ID: return m_gzipCodec;
+    	case LZ4Codec.ID: return m_lz4Codec;
+    	default: throw new IllegalArgumentException("Unknown compression codec id: " + id);
+    	}
+    }
+    
+    public static ICodec getDefaultCodec() { return m_defaultCodec; }
 	
 	public static byte[] compress(byte[] data) {
-		if(data.length == 0) return data;
-		if(!m_bCompress) return data;
-		try{
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			GZIPOutputStream gos = new GZIPOutputStream(baos){{def.setLevel(m_compressionLevel);}};
-			gos.write(data, 0, data.length);
-			gos.close();
-			byte[] output = baos.toByteArray();
-			return output;
-        } catch(IOException e) {
-            throw new RuntimeException(e.getMessage(), e);
-        }
+		return compress(data, m_gzipCodec);
 	}
 		
 	public static byte[] uncompress(byte[] data) {
+		return uncompress(data, m_gzipCodec);
+	}
+	
+	public static byte[] compress(byte[] data, ICodec codec) {
+		if(data.length == 0) return data;
+		if(!m_bCompress) return data;
+		return codec.compress(data);
+	}
+	
+	public static byte[] uncompress(byte[] data, ICodec codec) {
 		if(data.length == 0) return data;
 		if(!m_bCompress) return data;
-		try{
-			ByteArrayInputStream bais = new ByteArrayInputStream(data);
-			GZIPInputStream gis = new GZIPInputStream(bais);
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			byte[] buffer = new byte[4096];
-			while(true) {
-				int read = gis.read(buffer, 0, buffer.length);
-				if(read < 0) break;
-				baos.write(buffer, 0, read);
-			}
-			byte[] output = baos.toByteArray();
-			return output;
-        } catch(IOException e) {
-            throw new RuntimeException(e.getMessage(), e);
-        }
+		return codec.uncompress(data);
 	}
 }
@@ -16,32 +16,74 @@
 
 package com.dell.doradus.olap.io;
 
-import com.dell.doradus.search.util.LRUSizeCache;
+import java.nio.ByteBuffer;
+
+import com.dell.doradus.search.util.SegmentedLRUCache;
 import com.dell.doradus.service.olap.OLAPService;
 
+/**
+ * Cache of decompressed OLAP file chunks, shared by all tenants and applications;
+ * keys include the tenant name since store and row names repeat across tenants.
+ * Chunks are kept in a {@link SegmentedLRUCache} so that concurrent searches
+ * do not contend on a single lock.
+ * If olap_file_cache_offheap is set, chunks are kept in direct buffers and copied to heap on hit:
+ * readers decode chunks from byte arrays (MemoryStream), and the copy is still much cheaper
+ * than decompressing the chunk again. The option trades that copy for a smaller GC heap.
+ */
 public class FileCache {
-    private LRUSizeCache<String, byte[]> m_chunkCache;
+	private static final int SEGMENTS = 16;
+	private static FileCache INSTANCE;
+	
+    private SegmentedLRUCache<String, Object> m_cache;
+    private boolean m_offHeap;
 
-    public FileCache() {
+    public static synchronized FileCache instance() {
+    	if(INSTANCE == null) INSTANCE = new FileCache();
+    	return INSTANCE;
+    }
+    
+    private FileCache() {
 		int cacheSize = OLAPService.instance().getParamInt("olap_file_cache_size_mb", 0);  
+		m_offHeap = OLAPService.instance().getParamBoolean("olap_file_cache_offheap", false);
 		if(cacheSize > 0) {
-			m_chunkCache = new LRUSizeCache<String, byte[]>(0, cacheSize * 1024L * 1024L);
+			m_cache = new SegmentedLRUCache<String, Object>(cacheSize * 1024L * 1024L, SEGMENTS);
 		}
     }
 
-    public boolean useCache() { return m_chunkCache != null; }
+    public boolean useCache() { return m_cache != null; }
     
-	public void put(String app, String key, String columnName, byte[] value) {
-		if(m_chunkCache == null) return;
-		String cacheKey = app + "/" + key + "/" + columnName;
-		m_chunkCache.put(cacheKey, value, value.length + 2 * cacheKey.length() + 16);
+    public long getHits() { return m_cache == null ? 0 : m_cache.getHits(); }
+    public long getMisses() { return m_cache == null ? 0 : m_cache.getMisses(); }
+    public long getEvictions() { return m_cache == null ? 0 : m_cache.getEvictions(); }
+    public long getSize() { return m_cache == null ? 0 : m_cache.getSize(); }
+    
+    @Override public String toString() {
+    	return String.format("FileCache: size=%d, hits=%d, misses=%d, evictions=%d",
+    			getSize(), getHits(), getMisses(), getEvictions());
+    }
+    
+	public void put(String tenantName, String app, String key, String columnName, byte[] value) {
+		if(m_cache == null) return;
+		String cacheKey = tenantName + "/" + app + "/" + key + "/" + columnName;
+		Object cached = value;
+		if(m_offHeap) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(value.length);
+			buffer.put(value);
+			cached = buffer;
+		}
+		m_cache.put(cacheKey, cached, value.length + 2 * cacheKey.length() + 16);
 	}
 
-	public byte[] get(String app, String key, String columnName) {
-		if(m_chunkCache == null) return null;
-		byte[] cached = m_chunkCache.get(app + "/" + key + "/" + columnName);
-		return cached;
+	public byte[] get(String tenantName, String app, String key, String columnName) {
+		if(m_cache == null) return null;
+		String cacheKey = tenantName + "/" + app + "/" + key + "/" + columnName;
+		Object cached = m_cache.get(cacheKey);
+		if(cached == null || cached instanceof byte[]) return (byte[])cached;
+		ByteBuffer buffer = ((ByteBuffer)cached).duplicate();
+		buffer.clear();
+		byte[] value = new byte[buffer.remaining()];
+		buffer.get(value);
+		return value;
 	}
 	
 }
-
@@ -7,6 +7,7 @@ public class FileInfo implements Comparable<FileInfo> {
 	private long m_length;
 	private boolean m_singleRow;
 	private long m_compressedLength;
+	private int m_codec = GZipCodec.ID;
 
 	public FileInfo(String name) {
 		m_name = name;
@@ -34,6 +35,12 @@ public class FileInfo implements Comparable<FileInfo> {
 			m_singleRow = true;
 			info = info.substring(idx + 1);
 		}
+		if(info.charAt(0) == 'z') {
+			info = info.substring(1);
+			int idx = info.indexOf('z');
+			m_codec = Integer.parseInt(info.substring(0, idx));
+			info = info.substring(idx + 1);
+		}
 		m_length = Long.parseLong(info);
 	}
 
@@ -44,6 +51,7 @@ public class FileInfo implements Comparable<FileInfo> {
 	public boolean getSharesRow() { return m_sharesRow; }
 	public boolean getSingleRow() { return m_singleRow; }
 	public long getCompressedLength() { return m_compressedLength; }
+	public int getCodec() { return m_codec; }
 	
 	public void setName(String name) { m_name = name; }
 	public void setLength(long length) { m_length = length; }
@@ -51,6 +59,7 @@ public class FileInfo implements Comparable<FileInfo> {
 	public void setSharesRow(boolean sharesRow) { m_sharesRow = sharesRow; }
 	public void setSingleRow(boolean singleRow) { m_singleRow = singleRow; }
 	public void setCompressedLength(long compressedLength) { m_compressedLength = compressedLength; }
+	public void setCodec(int codec) { m_codec = codec; }
 	
 	public String asString() {
 		StringBuilder sb = new StringBuilder(16);
@@ -62,6 +71,11 @@ public class FileInfo implements Comparable<FileInfo> {
 			sb.append(m_compressedLength);
 			sb.append('c');
 		}
+		if(m_codec != GZipCodec.ID) {
+			sb.append('z');
+			sb.append(m_codec);
+			sb.append('z');
+		}
 		sb.append(m_length);
 		String result = sb.toString();
 		return result;
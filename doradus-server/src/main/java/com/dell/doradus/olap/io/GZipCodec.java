@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GZIP codec. This is the original OLAP compression format; files that have no codec id
+ * in their {@link FileInfo} are GZIP-compressed.
+ */
+public class GZipCodec implements ICodec {
+	public static final int ID = 0;
+	
+	private int m_compressionLevel;
+	
+	public GZipCodec(int compressionLevel) {
+		m_compressionLevel = compressionLevel;
+	}
+	
+	@Override public int getId() { return ID; }
+	@Override public String getName() { return "gzip"; }
+	
+	@Override public byte[] compress(byte[] data) {
+		try{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			GZIPOutputStream gos = new GZIPOutputStream(baos){{def.setLevel(m_compressionLevel);}};
+			gos.write(data, 0, data.length);
+			gos.close();
+			byte[] output = baos.toByteArray();
+			return output;
+        } catch(IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+	}
+	
+	@Override public byte[] uncompress(byte[] data) {
+		try{
+			// GZIP trailer holds the uncompressed length (mod 2^32), so we can inflate
+			// directly into the output array without intermediate buffers
+			int length = 
+				(data[data.length - 4] & 0xFF) |
+				(data[data.length - 3] & 0xFF) << 8 |
+				(data[data.length - 2] & 0xFF) << 16 |
+				(data[data.length - 1] & 0xFF) << 24;
+			if(length < 0) return uncompressStream(data);
+			byte[] output = new byte[length];
+			GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(data), 4096);
+			int offset = 0;
+			while(offset < length) {
+				int read = gis.read(output, offset, length - offset);
+				if(read < 0) throw new IOException("Unexpected end of GZIP stream");
+				offset += read;
+			}
+			gis.close();
+			return output;
+        } catch(IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+	}
+	
+	private byte[] uncompressStream(byte[] data) throws IOException {
+		ByteArrayInputStream bais = new ByteArrayInputStream(data);
+		GZIPInputStream gis = new GZIPInputStream(bais);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		while(true) {
+			int read = gis.read(buffer, 0, buffer.length);
+			if(read < 0) break;
+			baos.write(buffer, 0, read);
+		}
+		byte[] output = baos.toByteArray();
+		return output;
+	}
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2015 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.io;
+
+/**
+ * Block codec used to compress OLAP file chunks. Each codec has a persistent id that is
+ * stored in {@link FileInfo}, so files written with one codec remain readable after the
+ * default codec is changed.
+ */
+public interface ICodec {
+	public int getId();
+	public String getName();
+	public byte[] compress(byte[] data);
+	public byte[] uncompress(byte[] data);
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.io;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * LZ4 block codec. Compressed buffer is the uncompressed length (4 bytes, little-endian)
+ * followed by the LZ4 block, so decompression allocates the output array once and
+ * decodes straight into it. High-compression mode produces the same format and
+ * is decoded by the same fast decompressor.
+ */
+public class LZ4Codec implements ICodec {
+	public static final int ID = 1;
+	private static final LZ4Factory m_factory = LZ4Factory.fastestInstance();
+	
+	private boolean m_highCompression;
+	
+	public LZ4Codec(boolean highCompression) {
+		m_highCompression = highCompression;
+	}
+	
+	@Override public int getId() { return ID; }
+	@Override public String getName() { return m_highCompression ? "lz4hc" : "lz4"; }
+	
+	@Override public byte[] compress(byte[] data) {
+		LZ4Compressor compressor = m_highCompression ? m_factory.highCompressor() : m_factory.fastCompressor();
+		byte[] output = new byte[4 + compressor.maxCompressedLength(data.length)];
+		output[0] = (byte)data.length;
+		output[1] = (byte)(data.length >>> 8);
+		output[2] = (byte)(data.length >>> 16);
+		output[3] = (byte)(data.length >>> 24);
+		int length = compressor.compress(data, 0, data.length, output, 4, output.length - 4);
+		byte[] result = new byte[4 + length];
+		System.arraycopy(output, 0, result, 0, result.length);
+		return result;
+	}
+	
+	@Override public byte[] uncompress(byte[] data) {
+		int length =
+			(data[0] & 0xFF) |
+			(data[1] & 0xFF) << 8 |
+			(data[2] & 0xFF) << 16 |
+			(data[3] & 0xFF) << 24;
+		byte[] output = new byte[length];
+		LZ4FastDecompressor decompressor = m_factory.fastDecompressor();
+		decompressor.decompress(data, 4, output, 0, length);
+		return output;
+	}
+}
@@ -22,34 +22,37 @@ import java.util.List;
 public class StorageHelper {
 	private FileCache m_fileCache;
     private IO m_io;
+    private String m_tenantName;
 
-    public StorageHelper(IO io) {
+    public StorageHelper(IO io, String tenantName) {
     	m_io = io;
-    	m_fileCache = new FileCache();
+    	m_tenantName = tenantName;
+    	m_fileCache = FileCache.instance();
     }
 
 	public void writeFileChunk(String app, String key, String columnName, byte[] value) {
 		write(app, key, columnName, value);
-		m_fileCache.put(app, key, columnName, value);
 	}
 	
 	public void writeFileChunks(String app, String key, List<ColumnValue> columns) {
 		write(app, key, columns);
-		for(ColumnValue cv: columns) {
-			m_fileCache.put(app, key, cv.columnName, cv.columnValue);
-		}
 	}
 	
 	public byte[] readFileChunk(String app, String key, String columnName) {
-		byte[] value = m_fileCache.get(app, key, columnName);
-		if(value == null) {
-			value = getValue(app, key, columnName);
-			if(value == null) throw new FileDeletedException();
-			m_fileCache.put(app, key, columnName, value);
-		}
+		byte[] value = getValue(app, key, columnName);
+		if(value == null) throw new FileDeletedException();
 		return value;
 	}
 	
+	// decompressed chunks are cached, so a cache hit skips both the read and the decompression
+	public byte[] getCachedChunk(String app, String key, String columnName) {
+		return m_fileCache.get(m_tenantName, app, key, columnName);
+	}
+	
+	public void cacheChunk(String app, String key, String columnName, byte[] value) {
+		m_fileCache.put(m_tenantName, app, key, columnName, value);
+	}
+	
 	public void write(String app, String key, String columnName, byte[] value) {
 		ColumnValue v = new ColumnValue(columnName);
 		v.columnValue = value;
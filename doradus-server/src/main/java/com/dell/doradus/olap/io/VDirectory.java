@@ -44,9 +44,12 @@ public class VDirectory {
 	private Object m_syncRoot = new Object();
 	
 	public VDirectory(Tenant tenant, String storeName) {
+		this(new CassandraIO(tenant), tenant.getName(), storeName);
+	}
+	
+	public VDirectory(IO io, String tenantName, String storeName) {
 		m_parent = null;
-		IO io = new CassandraIO(tenant);
-		m_helper = new StorageHelper(io);
+		m_helper = new StorageHelper(io, tenantName);
 		m_storeName = storeName;
 		m_name = "$root";
 		m_helper.createCF(m_storeName);
@@ -54,7 +54,7 @@ public class IxVal implements Comparable<IxVal> {
     	}
     	
     	nxt_val = 0;
-    	iter.setup(null, 0, 0);
+    	iter.setup((int[])null, 0, 0);
     	
     	while(nxt_doc < searcher.size() && iter.count() == 0) {
 			int d = nxt_doc++;
@@ -16,19 +16,29 @@
 
 package com.dell.doradus.olap.merge;
 
+import java.util.List;
+
 import com.dell.doradus.common.TableDefinition;
 import com.dell.doradus.olap.Olap;
 import com.dell.doradus.olap.io.BSTR;
 import com.dell.doradus.olap.io.FileDeletedException;
+import com.dell.doradus.olap.io.VDirectory;
 import com.dell.doradus.olap.store.IdReader;
 import com.dell.doradus.service.olap.OLAPService;
 
+// Iterates the ids of a shard in sorted order, merging the base cube with the delta cubes.
+// If a cube is deleted by a concurrent merge, the cubes are opened again and the
+// iteration continues after the last returned id.
 public class RestorableIxDoc implements Comparable<RestorableIxDoc> {
     private Olap m_olap;
     private String m_shard;
     private TableDefinition m_tableDef;
+    private IdReader[] m_readers;
+    // true if the reader is positioned on an id not yet returned
+    private boolean[] m_hasId;
+    // reader whose current id was returned last
+    private int m_current;
     public int segment;
-	public IdReader reader;
     public BSTR id;
 
     public RestorableIxDoc(int segment, TableDefinition tableDef, String shard)
@@ -37,37 +47,53 @@ public class RestorableIxDoc implements Comparable<RestorableIxDoc> {
         m_shard = shard;
         m_tableDef = tableDef;
         this.segment = segment;
-        this.reader = new IdReader(m_olap.getDirectory(m_tableDef.getAppDef(), m_shard), m_tableDef.getTableName());
+        open();
     }
 
     public void next() {
         try {
             nextInternal();
         } catch(FileDeletedException e) {
-            this.reader = new IdReader(m_olap.getDirectory(m_tableDef.getAppDef(), m_shard), m_tableDef.getTableName());
+            open();
             scanToNext();
         }
     }
     
+    private void open() {
+        List<VDirectory> dirs = m_olap.getCubeDirectories(m_tableDef.getAppDef(), m_shard);
+        m_readers = new IdReader[dirs.size()];
+        m_hasId = new boolean[dirs.size()];
+        for(int i = 0; i < m_readers.length; i++) {
+            m_readers[i] = new IdReader(dirs.get(i), m_tableDef.getTableName());
+            m_hasId[i] = m_readers[i].next();
+        }
+        m_current = -1;
+    }
+    
     private void nextInternal() {
-        if(reader.next()) id = reader.cur_id;
-        else id = null;
+        if(m_current >= 0) m_hasId[m_current] = m_readers[m_current].next();
+        select();
     }
     
     private void scanToNext() {
-        if(id == null) {
-            if(reader.next()) id = reader.cur_id;
-            else id = null;
-            return;
-        }
-        while(reader.next()) {
-            if(reader.cur_id.compareTo(id) > 0) {
-                id = reader.cur_id;
-                return;
+        if(id != null) {
+            for(int i = 0; i < m_readers.length; i++) {
+                while(m_hasId[i] && m_readers[i].cur_id.compareTo(id) <= 0) {
+                    m_hasId[i] = m_readers[i].next();
+                }
             }
         }
-        id = null;
-        return;
+        select();
+    }
+    
+    // cubes hold disjoint objects, so the smallest current id is unique
+    private void select() {
+        m_current = -1;
+        for(int i = 0; i < m_readers.length; i++) {
+            if(!m_hasId[i]) continue;
+            if(m_current < 0 || m_readers[i].cur_id.compareTo(m_readers[m_current].cur_id) < 0) m_current = i;
+        }
+        id = m_current < 0 ? null : m_readers[m_current].cur_id;
     }
     
 	@Override
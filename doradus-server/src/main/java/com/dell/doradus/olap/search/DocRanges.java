@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.dell.doradus.olap.Olap;
+
+/**
+ * Splits the documents of a cube into ranges that are scanned in parallel
+ * by the range thread pool; per-range results are then merged by the caller.
+ */
+public class DocRanges {
+
+	/**
+	 * Returns range boundaries: range i is [bounds[i], bounds[i + 1]).
+	 * Returns one range if parallel scanning is disabled or the cube is small.
+	 */
+	public static int[] split(int count) {
+		int ranges = 1;
+		if(Olap.getRangeThreadPool() != null) {
+			// the calling thread scans one of the ranges
+			ranges = Math.min(Olap.getRangeThreadsCount() + 1, count / Math.max(1, Olap.getRangeMinDocs()));
+			ranges = Math.max(1, ranges);
+		}
+		int[] bounds = new int[ranges + 1];
+		for(int i = 1; i < ranges; i++) {
+			// align to 64 so that ranges do not share words of the result bit vectors
+			bounds[i] = (int)((long)count * i / ranges) & ~63;
+		}
+		bounds[ranges] = count;
+		return bounds;
+	}
+	
+	/**
+	 * Runs the tasks on the range thread pool, the last one in the calling thread,
+	 * and returns when all of them are completed.
+	 */
+	public static void run(List<Runnable> tasks) {
+		if(tasks.size() == 0) return;
+		List<Future<?>> futures = new ArrayList<>(tasks.size() - 1);
+		for(int i = 0; i < tasks.size() - 1; i++) {
+			futures.add(Olap.getRangeThreadPool().submit(tasks.get(i)));
+		}
+		RuntimeException error = null;
+		try {
+			tasks.get(tasks.size() - 1).run();
+		}catch(RuntimeException e) {
+			error = e;
+		}
+		for(Future<?> f: futures) {
+			try {
+				f.get();
+			}catch(ExecutionException ee) {
+				if(error != null) continue;
+				// keep FileDeletedException so that the query is retried
+				if(ee.getCause() instanceof RuntimeException) error = (RuntimeException)ee.getCause();
+				else error = new RuntimeException(ee.getCause());
+			}catch(InterruptedException ee) {
+				throw new RuntimeException(ee);
+			}
+		}
+		if(error != null) throw error;
+	}
+	
+}
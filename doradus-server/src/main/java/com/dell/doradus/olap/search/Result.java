@@ -17,40 +17,92 @@
 package com.dell.doradus.olap.search;
 
 import com.dell.doradus.olap.store.BitVector;
+import com.dell.doradus.olap.store.CompactBitVector;
 import com.dell.doradus.olap.store.IntIterator;
 import com.dell.doradus.olap.store.IntList;
 
 public class Result {
-	private BitVector m_bv;
+	// Results returned from the query cache share the cached immutable bitmap;
+	// it is inflated into a private BitVector when the result is modified or probed
+	// by get(), since per-document lookups in the compact form are much slower.
+	// Shared filters are probed from several range threads, so inflating is synchronized
+	// and m_compact is left in place: it is only read while m_bv is still null.
+	private volatile BitVector m_bv;
+	private CompactBitVector m_compact;
 	
 	public Result(int size) {
 		m_bv = new BitVector(size);
 	}
 
 	public Result(Result other) {
+		if(other.m_bv == null) {
+			m_compact = other.m_compact;
+			return;
+		}
 		m_bv = new BitVector(other.m_bv.size());
 		System.arraycopy(other.m_bv.getBuffer(), 0, m_bv.getBuffer(), 0, m_bv.getBuffer().length);
 	}
 	
-	public int size() { return m_bv.size(); }
-	public BitVector getBitVector() { return m_bv; }
+	public Result(CompactBitVector compact) {
+		m_compact = compact;
+	}
+	
+	public CompactBitVector compact() {
+		BitVector bv = m_bv;
+		if(bv == null) return m_compact;
+		return new CompactBitVector(bv);
+	}
+	
+	private BitVector inflate() {
+		BitVector bv = m_bv;
+		if(bv != null) return bv;
+		synchronized(this) {
+			if(m_bv == null) m_bv = m_compact.toBitVector();
+			return m_bv;
+		}
+	}
+	
+	public int size() {
+		BitVector bv = m_bv;
+		return bv == null ? m_compact.size() : bv.size();
+	}
+	public BitVector getBitVector() { return inflate(); }
 	
 	public int countSet() {
-		return m_bv.bitsSet();
+		BitVector bv = m_bv;
+		return bv == null ? m_compact.bitsSet() : bv.bitsSet();
+	}
+	public boolean get(int index) { return inflate().get(index); }
+	public void set(int index) { inflate().set(index); }
+	public void clear(int index) { inflate().clear(index); }
+	public void clear() {
+		BitVector bv = m_bv;
+		if(bv == null) m_bv = new BitVector(m_compact.size());
+		else bv.clearAll();
 	}
-	public boolean get(int index) { return m_bv.get(index); }
-	public void set(int index) { m_bv.set(index); }
-	public void clear(int index) { m_bv.clear(index); }
-	public void clear() { m_bv.clearAll(); }
 	
-	public void not() { m_bv.not(); }
+	public void not() { inflate().not(); }
 	
-	public void or(Result r2) { m_bv.or(r2.m_bv); }
-	public void and(Result r2) { m_bv.and(r2.m_bv); }
-	public void andNot(Result r2) { m_bv.andNot(r2.m_bv); }
+	public void or(Result r2) {
+		BitVector bv2 = r2.m_bv;
+		if(bv2 == null) r2.m_compact.orInto(inflate());
+		else inflate().or(bv2);
+	}
+	public void and(Result r2) {
+		BitVector bv2 = r2.m_bv;
+		if(bv2 == null) r2.m_compact.andInto(inflate());
+		else inflate().and(bv2);
+	}
+	public void andNot(Result r2) {
+		BitVector bv2 = r2.m_bv;
+		if(bv2 == null) r2.m_compact.andNotInto(inflate());
+		else inflate().andNot(bv2);
+	}
 	
+	// iterates the set bits without inflating a compact result
 	public IntIterator iterate() {
-		IntList array = m_bv.getList();
+		BitVector bv = m_bv;
+		IntList array = bv == null ? m_compact.getList() : bv.getList();
 		IntIterator iter = new IntIterator();
 		array.set(iter);
 		return iter;
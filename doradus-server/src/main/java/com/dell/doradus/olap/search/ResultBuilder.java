@@ -19,7 +19,9 @@ package com.dell.doradus.olap.search;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.regex.Pattern;
 
@@ -31,6 +33,7 @@ import com.dell.doradus.core.ServerConfig;
 import com.dell.doradus.olap.aggregate.mr.MFCollectorSet;
 import com.dell.doradus.olap.collections.BdLongSet;
 import com.dell.doradus.olap.io.BSTR;
+import com.dell.doradus.olap.store.CompactBitVector;
 import com.dell.doradus.olap.store.CubeSearcher;
 import com.dell.doradus.olap.store.FieldSearcher;
 import com.dell.doradus.olap.store.IdSearcher;
@@ -66,56 +69,83 @@ import com.dell.doradus.search.util.LRUSizeCache;
 
 public class ResultBuilder {
 	private static int queryCache = -1;
-	private static LRUSizeCache<String, Result> m_cache;
+	// cached results are kept compressed: selective filters take a fraction of the BitVector size
+	private static LRUSizeCache<String, CompactBitVector> m_cache;
 	
 	public static Result search(TableDefinition tableDef, Query query, CubeSearcher searcher) {
 		synchronized(ResultBuilder.class) {
 			if(queryCache == -1) {
 				queryCache = ServerConfig.getInstance().olap_query_cache_size_mb;
 				if(queryCache > 0) {
-					m_cache = new LRUSizeCache<String, Result>(0, queryCache * 1024L * 1024);
+					m_cache = new LRUSizeCache<String, CompactBitVector>(0, queryCache * 1024L * 1024);
 				}
 			}
 		}
-		boolean skipCache = m_cache == null || XLinkContext.isXLinkQuery(tableDef, query); 
-		if(skipCache) return searchInternal(tableDef, query, searcher);
+		// key text of the subqueries is built once per search; queries are mutable, so it is not kept on them
+		Map<Query, String> keys = m_cache == null ? null : new IdentityHashMap<Query, String>();
+		return search(tableDef, query, searcher, keys);
+	}
+	
+	private static Result search(TableDefinition tableDef, Query query, CubeSearcher searcher, Map<Query, String> keys) {
+		boolean skipCache = keys == null || XLinkContext.isXLinkQuery(tableDef, query); 
+		if(skipCache) return searchInternal(tableDef, query, searcher, keys);
 		
-		String key = searcher.getId() + "/" + tableDef.getTableName() + "/" + query.toString();
-		Result result = m_cache.get(key);
-		if(result != null) {
-			Result newResult = new Result(result);
-			return newResult;
+		String key = searcher.getId() + "/" + tableDef.getTableName() + "/" + getKey(query, keys);
+		CompactBitVector cached = m_cache.get(key);
+		// the cached bitmap is immutable and shared; the result inflates a copy when modified or probed
+		if(cached != null) return new Result(cached);
+		Result result = searchInternal(tableDef, query, searcher, keys);
+		CompactBitVector compact = result.compact();
+		m_cache.put(key, compact, compact.sizeInBytes() + 2 * key.length() + 16);
+		return result;
+	}
+	
+	// AND, OR and NOT are keyed by the keys of their subqueries, so that the text of each
+	// subquery is built once; lengths keep keys of different trees apart
+	private static String getKey(Query query, Map<Query, String> keys) {
+		String key = keys.get(query);
+		if(key != null) return key;
+		StringBuilder sb = new StringBuilder();
+		if(query instanceof AndQuery || query instanceof OrQuery) {
+			List<Query> subqueries = query instanceof AndQuery ? ((AndQuery)query).subqueries : ((OrQuery)query).subqueries;
+			sb.append(query instanceof AndQuery ? "AND" : "OR");
+			for(Query qu : subqueries) {
+				String subkey = getKey(qu, keys);
+				sb.append(subkey.length()).append(':').append(subkey);
+			}
+		} else if(query instanceof NotQuery) {
+			sb.append("NOT").append(getKey(((NotQuery)query).innerQuery, keys));
+		} else {
+			sb.append(query.getClass().getSimpleName()).append(':').append(query.toString());
 		}
-		result = searchInternal(tableDef, query, searcher);
-		m_cache.put(key, result, result.getBitVector().getBuffer().length + 2 * key.length() + 16);
-		//return result;
-		Result newResult = new Result(result);
-		return newResult;
+		key = sb.toString();
+		keys.put(query, key);
+		return key;
 	}
 	
 	
-	private static Result searchInternal(TableDefinition tableDef, Query query, CubeSearcher searcher) {
+	private static Result searchInternal(TableDefinition tableDef, Query query, CubeSearcher searcher, Map<Query, String> keys) {
 		Result r = new Result(searcher.getDocs(tableDef.getTableName()));
 		if(query instanceof AllQuery) {
 			r.not();
 		} else if(query instanceof AndQuery) {
 			r.not();
 			for(Query qu : ((AndQuery)query).subqueries) {
-				Result c = search(tableDef, qu, searcher);
+				Result c = search(tableDef, qu, searcher, keys);
 				r.and(c);
 				if(r.countSet() == 0) return r;
 			}
 		} else if(query instanceof NoneQuery) {
 		} else if(query instanceof OrQuery) {
 			IdInQuery iiq = IdInQuery.tryCreate((OrQuery)query);
-			if(iiq != null) return searchInternal(tableDef, iiq, searcher);
+			if(iiq != null) return searchInternal(tableDef, iiq, searcher, keys);
 			
 			for(Query qu : ((OrQuery)query).subqueries) {
-				Result c = search(tableDef, qu, searcher);
+				Result c = search(tableDef, qu, searcher, keys);
 				r.or(c);
 			}
 		} else if(query instanceof NotQuery) {
-			r = search(tableDef, ((NotQuery)query).innerQuery, searcher);
+			r = search(tableDef, ((NotQuery)query).innerQuery, searcher, keys);
 			r.not();
 		} else if(query instanceof IdInQuery) {
 			IdInQuery iiq = (IdInQuery)query;
@@ -362,15 +392,15 @@ public class ResultBuilder {
 				}
 				
 				if(LinkQuery.ANY.equals(mvs.quantifier)) {
-					return searchInternal(tableDef, mvs.innerQuery, searcher);
+					return searchInternal(tableDef, mvs.innerQuery, searcher, keys);
 				}
 				else if(LinkQuery.NONE.equals(mvs.quantifier)) {
-					Result result = searchInternal(tableDef, mvs.innerQuery, searcher);
+					Result result = searchInternal(tableDef, mvs.innerQuery, searcher, keys);
 					result.not();
 					return result;
 				}
 				else if(LinkQuery.ALL.equals(mvs.quantifier)) {
-					Result result = searchInternal(tableDef, mvs.innerQuery, searcher);
+					Result result = searchInternal(tableDef, mvs.innerQuery, searcher, keys);
 					NumSearcherMV ns = searcher.getNumSearcher(tableDef.getTableName(), field);
 					Result countOne = new Result(result.size());
 					ns.fillCount(1,2,countOne);
@@ -392,7 +422,7 @@ public class ResultBuilder {
 			Utils.require(!field.isGroupField(), "Group fields are not supported");
 			Utils.require(field.isLinkField(), lq.link + " is not a link field");
 			TableDefinition extent = tableDef.getAppDef().getTableDef(field.getLinkExtent());
-			Result inner = search(extent, lq.innerQuery, searcher);
+			Result inner = search(extent, lq.innerQuery, searcher, keys);
 			
             if(!LinkQuery.NONE.equals(lq.quantifier) && inner.countSet() == 0) {
                 return r;
@@ -401,7 +431,7 @@ public class ResultBuilder {
 			if(LinkQuery.ALL.equals(lq.quantifier)) inner.not();
 			Result filter = null;
 			if(lq.filter != null) {
-				filter = search(extent, lq.filter, searcher);
+				filter = search(extent, lq.filter, searcher, keys);
 				inner.and(filter);
 			}
 			
@@ -476,12 +506,12 @@ public class ResultBuilder {
 				negation.innerQuery = clauseEveryone;
 				q.subqueries.add(clauseExists);
 				q.subqueries.add(negation);
-				return searchInternal(tableDef, q, searcher);
+				return searchInternal(tableDef, q, searcher, keys);
 			}
 			FieldDefinition field = tableDef.getFieldDef(lq.link);
 			int depth = lq.depth == 0 ? 100 : lq.depth;
 			TableDefinition extent = tableDef.getAppDef().getTableDef(field.getLinkExtent());
-			Result inner = search(extent, lq.getInnerQuery(), searcher);
+			Result inner = search(extent, lq.getInnerQuery(), searcher, keys);
 			FieldSearcher field_searcher = searcher.getFieldSearcher(field.getLinkExtent(), field.getLinkInverse());
 			
 			
@@ -502,7 +532,7 @@ public class ResultBuilder {
 			}
 			
 			if(lq.filter != null) {
-				Result filter = ResultBuilder.search(extent, lq.filter, searcher);
+				Result filter = search(extent, lq.filter, searcher, keys);
 				r.and(filter);
 			}
 			return r;
@@ -541,7 +571,7 @@ public class ResultBuilder {
 				return r;
 			}
 			LinkQuery linkq = new LinkQuery(lq.quantifier, lq.link, new IdQuery(lq.id));
-			return search(tableDef, linkq, searcher);
+			return search(tableDef, linkq, searcher, keys);
 		} else if(query instanceof LinkCountQuery) {
 			LinkCountQuery q = (LinkCountQuery)query;
 			if(q.xlink != null) {
@@ -554,7 +584,7 @@ public class ResultBuilder {
 			FieldSearcher field_searcher = searcher.getFieldSearcher(f.getTableName(),f.getName());
 			if(q.filter != null) {
 				TableDefinition extent = tableDef.getAppDef().getTableDef(f.getLinkExtent());
-				Result filter = search(extent, q.filter, searcher);
+				Result filter = search(extent, q.filter, searcher, keys);
 				field_searcher.fillCount(q.count, q.count + 1, filter, r);
 			}
 			else field_searcher.fillCount(q.count, q.count + 1, r);
@@ -574,7 +604,7 @@ public class ResultBuilder {
 			if(q.range.maxInclusive) max++;
 			if(q.filter != null) {
 				TableDefinition extent = tableDef.getAppDef().getTableDef(f.getLinkExtent());
-				Result filter = search(extent, q.filter, searcher);
+				Result filter = search(extent, q.filter, searcher, keys);
 				field_searcher.fillCount(min, max, filter, r);
 			}
 			else field_searcher.fillCount(min, max, r);
@@ -41,6 +41,44 @@ public class SearchResultComparer {
 			return new IntIterator(res, 0, res.length);
 		}
 
+		final int[] bounds = DocRanges.split(result.size());
+		HeapList<SortKey> heap = null;
+		if(bounds.length == 2) heap = sort(searcher, result, orders, size, 0, bounds[1]);
+		else {
+			// top documents of each range, then top of them; ties are ordered by doc so the result does not depend on ranges
+			final List<HeapList<SortKey>> heaps = new ArrayList<HeapList<SortKey>>(bounds.length - 1);
+			List<Runnable> tasks = new ArrayList<>(bounds.length - 1);
+			for(int r = 0; r < bounds.length - 1; r++) {
+				heaps.add(null);
+				final int f_range = r;
+				final CubeSearcher f_searcher = searcher;
+				final Result f_result = result;
+				final SortOrder[] f_orders = orders;
+				final int f_size = size;
+				tasks.add(new Runnable() {
+					@Override public void run() {
+						HeapList<SortKey> h = sort(f_searcher, f_result, f_orders, f_size, bounds[f_range], bounds[f_range + 1]);
+						synchronized (heaps) {
+							heaps.set(f_range, h);
+						}
+					}});
+			}
+			DocRanges.run(tasks);
+			heap = new HeapList<SortKey>(size);
+			for(HeapList<SortKey> h: heaps) {
+				for(SortKey key: h.values()) heap.Add(key);
+			}
+		}
+		
+		SortKey[] keys = heap.GetValues(SortKey.class);
+		int[] res = new int[keys.length];
+		for(int i = 0; i < keys.length; i++) {
+			res[i] = keys[i].doc();
+		}
+		return new IntIterator(res, 0, res.length);
+	}
+	
+	private static HeapList<SortKey> sort(CubeSearcher searcher, Result result, SortOrder[] orders, int size, int start, int end) {
 		BdLongSet[] sets = new BdLongSet[orders.length];
 		for(int i = 0; i < orders.length; i++) {
 			sets[i] = new BdLongSet(1024);
@@ -54,7 +92,7 @@ public class SearchResultComparer {
 		HeapList<SortKey> heap = new HeapList<SortKey>(size);
 		SortKey cur = null;
 		
-		for(int doc = 0; doc < result.size(); doc++) {
+		for(int doc = start; doc < end; doc++) {
 			if(!result.get(doc)) continue;
 			collectorSet.collect(doc, sets);
 			if(cur == null) cur = new SortKey(orders);
@@ -62,13 +100,7 @@ public class SearchResultComparer {
 			cur = heap.AddEx(cur);
 			for(int i = 0; i < sets.length; i++) sets[i].clear();
 		}
-		
-		SortKey[] keys = heap.GetValues(SortKey.class);
-		int[] res = new int[keys.length];
-		for(int i = 0; i < keys.length; i++) {
-			res[i] = keys[i].doc();
-		}
-		return new IntIterator(res, 0, res.length);
+		return heap;
 	}
 	
 }
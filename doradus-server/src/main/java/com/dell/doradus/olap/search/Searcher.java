@@ -127,13 +127,16 @@ public class Searcher {
     
     private static SearchResultList searchInternal(Olap olap, String shard, OlapQueryRequest olapQuery) {
         ApplicationDefinition appDef = olapQuery.getTableDef().getAppDef();
-        if(!olapQuery.getUncommitted()) {
-            CubeSearcher s = olap.getSearcher(appDef, shard);
+        List<String> segments = olapQuery.getUncommitted() ?
+                olap.listSegments(appDef, shard) : olap.getCubeSegments(appDef, shard);
+        if(!olapQuery.getUncommitted() && segments.size() <= 1) {
+            CubeSearcher s = segments.size() == 0 ? olap.getSearcher(appDef, shard) : olap.getSearcher(appDef, shard, segments.get(0));
             SearchResultList result = search(s, olapQuery);
             return result;
         } else {
+            // base and delta cubes, or all segments if uncommitted
             List<SearchResultList> results = new ArrayList<SearchResultList>();
-            for(String segment: olap.listSegments(appDef, shard)) {
+            for(String segment: segments) {
                 CubeSearcher searcher = olap.getSearcher(appDef, shard, segment);
                 results.add(search(searcher, olapQuery));
             }
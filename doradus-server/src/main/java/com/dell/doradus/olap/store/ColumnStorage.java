@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dell.doradus.service.olap.OLAPService;
+
+/**
+ * Decides where loaded column data (doc/term arrays, positions, numeric values) live.
+ * olap_column_storage parameter:
+ * <ul>
+ * <li>heap (default): plain java arrays</li>
+ * <li>offheap: direct byte buffers outside of the java heap</li>
+ * <li>mmap: memory-mapped files in olap_spill_directory; the OS pages them in and out</li>
+ * </ul>
+ */
+public class ColumnStorage {
+	private static Logger LOG = LoggerFactory.getLogger("Olap.ColumnStorage");
+	// files created by map(); the spill directory may be shared with other files
+	private static final Pattern SPILL_FILE = Pattern.compile("col-\\d+\\.bin");
+	public static final int HEAP = 0;
+	public static final int OFFHEAP = 1;
+	public static final int MMAP = 2;
+	
+	private static int m_mode = parseMode(OLAPService.instance().getParamString("olap_column_storage"));
+	private static File m_spillDir;
+	private static long m_fileCounter;
+	
+	private static int parseMode(String mode) {
+		if(mode == null || mode.length() == 0 || "heap".equals(mode)) return HEAP;
+		else if("offheap".equals(mode)) return OFFHEAP;
+		else if("mmap".equals(mode)) return MMAP;
+		else throw new IllegalArgumentException("Invalid olap_column_storage: " + mode);
+	}
+	
+	public static boolean isHeap() { return m_mode == HEAP; }
+	
+	// switches the storage of arrays allocated from now on; used by tests
+	static synchronized void setMode(int mode, String spillDir) {
+		m_mode = mode;
+		m_spillDir = spillDir == null ? null : openSpillDir(spillDir);
+	}
+
+	/**
+	 * Allocates zero-filled buffer outside of the java heap. Must not be called in the heap mode.
+	 * Sizes are passed as long so that callers multiplying element counts cannot overflow silently.
+	 */
+	public static ByteBuffer allocate(long bytes) {
+		if(bytes > Integer.MAX_VALUE) throw new RuntimeException("Column buffer too large: " + bytes + " bytes");
+		ByteBuffer buffer = null;
+		if(m_mode == MMAP && bytes > 0) buffer = map((int)bytes);
+		else buffer = ByteBuffer.allocateDirect((int)bytes);
+		buffer.order(ByteOrder.nativeOrder());
+		return buffer;
+	}
+	
+	private static ByteBuffer map(int bytes) {
+		File file = null;
+		synchronized(ColumnStorage.class) {
+			if(m_spillDir == null) {
+				String dir = OLAPService.instance().getParamString("olap_spill_directory");
+				if(dir == null || dir.length() == 0) dir = "olap-spill";
+				m_spillDir = openSpillDir(dir);
+			}
+			file = new File(m_spillDir, "col-" + (m_fileCounter++) + ".bin");
+		}
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(bytes);
+			ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+			// the mapping stays valid after the file is deleted; where the OS does not allow
+			// deleting mapped files it is removed on exit or on the next start
+			if(!file.delete()) file.deleteOnExit();
+			return buffer;
+		} catch(IOException e) {
+			throw new RuntimeException("Cannot map " + file.getAbsolutePath(), e);
+		}
+	}
+	
+	private static File openSpillDir(String dir) {
+		File spillDir = new File(dir);
+		if(!spillDir.exists() && !spillDir.mkdirs()) {
+			throw new RuntimeException("Cannot create spill directory " + spillDir.getAbsolutePath());
+		}
+		// column files of the previous run are not referenced by anyone; other files are left alone
+		File[] oldFiles = spillDir.listFiles();
+		if(oldFiles != null) {
+			for(File oldFile: oldFiles) {
+				if(oldFile.isFile() && SPILL_FILE.matcher(oldFile.getName()).matches()) oldFile.delete();
+			}
+		}
+		LOG.info("Using {} for memory-mapped column storage", spillDir.getAbsolutePath());
+		return spillDir;
+	}
+	
+}
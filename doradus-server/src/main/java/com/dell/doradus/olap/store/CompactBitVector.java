@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable compressed form of a {@link BitVector}, similar to Roaring bitmaps.
+ * Bits are split into chunks of 65536; every non-empty chunk is kept as
+ * a sorted array of set positions, a list of runs or a plain bitmap, whichever is smaller.
+ * Empty chunks take no space at all, so selective results are much smaller than the BitVector.
+ */
+public class CompactBitVector {
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_BITS = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_BYTES = CHUNK_BITS / 8;
+	private static final byte ARRAY = 0;
+	private static final byte RUNS = 1;
+	private static final byte BITMAP = 2;
+	
+	private int m_size;
+	private int m_count;
+	private int[] m_keys;
+	private byte[] m_types;
+	// ARRAY: char[] positions; RUNS: char[] pairs of (start, length - 1); BITMAP: byte[] 
+	private Object[] m_containers;
+	
+	public CompactBitVector(BitVector bv) {
+		m_size = bv.size();
+		byte[] buffer = bv.getBuffer();
+		List<Integer> keys = new ArrayList<>();
+		List<Byte> types = new ArrayList<>();
+		List<Object> containers = new ArrayList<>();
+		for(int from = 0; from < buffer.length; from += CHUNK_BYTES) {
+			int to = Math.min(buffer.length, from + CHUNK_BYTES);
+			int count = 0;
+			int runs = 0;
+			int prev = 0;
+			for(int i = from; i < to; i++) {
+				int b = buffer[i] & 0xFF;
+				count += Integer.bitCount(b);
+				runs += Integer.bitCount(b & ~((b << 1) | prev) & 0xFF);
+				prev = b >>> 7;
+			}
+			if(count == 0) continue;
+			m_count += count;
+			keys.add(from / CHUNK_BYTES);
+			int arraySize = count * 2;
+			int runsSize = runs * 4;
+			int bitmapSize = to - from;
+			if(arraySize <= runsSize && arraySize < bitmapSize) {
+				types.add(ARRAY);
+				containers.add(toArray(buffer, from, to, count));
+			} else if(runsSize < bitmapSize) {
+				types.add(RUNS);
+				containers.add(toRuns(buffer, from, to, runs));
+			} else {
+				types.add(BITMAP);
+				containers.add(Arrays.copyOfRange(buffer, from, to));
+			}
+		}
+		m_keys = new int[keys.size()];
+		m_types = new byte[keys.size()];
+		m_containers = containers.toArray();
+		for(int i = 0; i < m_keys.length; i++) {
+			m_keys[i] = keys.get(i);
+			m_types[i] = types.get(i);
+		}
+	}
+	
+	private static char[] toArray(byte[] buffer, int from, int to, int count) {
+		char[] array = new char[count];
+		int pos = 0;
+		for(int i = from; i < to; i++) {
+			int b = buffer[i] & 0xFF;
+			while(b != 0) {
+				int bit = Integer.numberOfTrailingZeros(b);
+				array[pos++] = (char)((i - from) * 8 + bit);
+				b &= b - 1;
+			}
+		}
+		return array;
+	}
+	
+	private static char[] toRuns(byte[] buffer, int from, int to, int runs) {
+		char[] array = new char[runs * 2];
+		int pos = 0;
+		int start = -1;
+		int bits = (to - from) * 8;
+		for(int i = 0; i <= bits; i++) {
+			boolean set = i < bits && (buffer[from + i / 8] & (1 << (i % 8))) != 0;
+			if(set && start < 0) start = i;
+			else if(!set && start >= 0) {
+				array[pos++] = (char)start;
+				array[pos++] = (char)(i - start - 1);
+				start = -1;
+			}
+		}
+		return array;
+	}
+	
+	public int size() { return m_size; }
+	public int bitsSet() { return m_count; }
+	
+	public long sizeInBytes() {
+		long size = 32 + m_keys.length * 13L;
+		for(Object container: m_containers) {
+			if(container instanceof char[]) size += 16 + ((char[])container).length * 2;
+			else size += 16 + ((byte[])container).length;
+		}
+		return size;
+	}
+	
+	public boolean get(int index) {
+		int idx = Arrays.binarySearch(m_keys, index >>> CHUNK_SHIFT);
+		if(idx < 0) return false;
+		int low = index & (CHUNK_BITS - 1);
+		switch(m_types[idx]) {
+		case ARRAY:
+			return Arrays.binarySearch((char[])m_containers[idx], (char)low) >= 0;
+		case RUNS: {
+			char[] runs = (char[])m_containers[idx];
+			int lo = 0;
+			int hi = runs.length / 2 - 1;
+			while(lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				int start = runs[mid * 2];
+				if(low < start) hi = mid - 1;
+				else if(low > start + runs[mid * 2 + 1]) lo = mid + 1;
+				else return true;
+			}
+			return false;
+		}
+		default:
+			return (((byte[])m_containers[idx])[low / 8] & (1 << (low % 8))) != 0;
+		}
+	}
+	
+	// Sets bits of the chunk #idx in the buffer starting at the given byte offset  
+	private void setBits(int idx, byte[] dst, int offset) {
+		switch(m_types[idx]) {
+		case ARRAY:
+			for(char c: (char[])m_containers[idx]) dst[offset + c / 8] |= (1 << (c % 8));
+			break;
+		case RUNS: {
+			char[] runs = (char[])m_containers[idx];
+			for(int r = 0; r < runs.length; r += 2) {
+				int end = runs[r] + runs[r + 1];
+				for(int c = runs[r]; c <= end; c++) dst[offset + c / 8] |= (1 << (c % 8));
+			}
+			break;
+		}
+		default: {
+			byte[] bitmap = (byte[])m_containers[idx];
+			for(int i = 0; i < bitmap.length; i++) dst[offset + i] |= bitmap[i];
+		}
+		}
+	}
+	
+	public BitVector toBitVector() {
+		BitVector bv = new BitVector(m_size);
+		orInto(bv);
+		return bv;
+	}
+	
+	public void orInto(BitVector bv) {
+		byte[] dst = bv.getBuffer();
+		for(int idx = 0; idx < m_keys.length; idx++) {
+			setBits(idx, dst, m_keys[idx] * CHUNK_BYTES);
+		}
+	}
+	
+	public void andInto(BitVector bv) {
+		byte[] dst = bv.getBuffer();
+		byte[] mask = null;
+		int idx = 0;
+		for(int from = 0, chunk = 0; from < dst.length; from += CHUNK_BYTES, chunk++) {
+			int to = Math.min(dst.length, from + CHUNK_BYTES);
+			if(idx < m_keys.length && m_keys[idx] == chunk) {
+				byte[] bits = null;
+				if(m_types[idx] == BITMAP) bits = (byte[])m_containers[idx];
+				else {
+					if(mask == null) mask = new byte[CHUNK_BYTES];
+					else Arrays.fill(mask, (byte)0);
+					setBits(idx, mask, 0);
+					bits = mask;
+				}
+				for(int i = from; i < to; i++) dst[i] &= bits[i - from];
+				idx++;
+			} else {
+				Arrays.fill(dst, from, to, (byte)0);
+			}
+		}
+	}
+	
+	public void andNotInto(BitVector bv) {
+		byte[] dst = bv.getBuffer();
+		for(int idx = 0; idx < m_keys.length; idx++) {
+			int offset = m_keys[idx] * CHUNK_BYTES;
+			switch(m_types[idx]) {
+			case ARRAY:
+				for(char c: (char[])m_containers[idx]) dst[offset + c / 8] &= ~(1 << (c % 8));
+				break;
+			case RUNS: {
+				char[] runs = (char[])m_containers[idx];
+				for(int r = 0; r < runs.length; r += 2) {
+					int end = runs[r] + runs[r + 1];
+					for(int c = runs[r]; c <= end; c++) dst[offset + c / 8] &= ~(1 << (c % 8));
+				}
+				break;
+			}
+			default: {
+				byte[] bitmap = (byte[])m_containers[idx];
+				for(int i = 0; i < bitmap.length; i++) dst[offset + i] &= ~bitmap[i];
+			}
+			}
+		}
+	}
+	
+	public IntList getList() {
+		IntList list = new IntList(Math.max(m_count, 1));
+		for(int idx = 0; idx < m_keys.length; idx++) {
+			int base = m_keys[idx] << CHUNK_SHIFT;
+			switch(m_types[idx]) {
+			case ARRAY:
+				for(char c: (char[])m_containers[idx]) list.add(base + c);
+				break;
+			case RUNS: {
+				char[] runs = (char[])m_containers[idx];
+				for(int r = 0; r < runs.length; r += 2) {
+					int end = runs[r] + runs[r + 1];
+					for(int c = runs[r]; c <= end; c++) list.add(base + c);
+				}
+				break;
+			}
+			default: {
+				byte[] bitmap = (byte[])m_containers[idx];
+				for(int i = 0; i < bitmap.length; i++) {
+					int b = bitmap[i] & 0xFF;
+					while(b != 0) {
+						list.add(base + i * 8 + Integer.numberOfTrailingZeros(b));
+						b &= b - 1;
+					}
+				}
+			}
+			}
+		}
+		return list;
+	}
+}
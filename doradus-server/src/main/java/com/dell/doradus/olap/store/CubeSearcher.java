@@ -16,8 +16,12 @@
 
 package com.dell.doradus.olap.store;
 
+import java.util.concurrent.Callable;
+
 import com.dell.doradus.olap.FieldsCache;
+import com.dell.doradus.olap.io.BSTR;
 import com.dell.doradus.olap.io.VDirectory;
+import com.dell.doradus.search.util.HyperLogLog;
 
 public class CubeSearcher {
 	private VDirectory m_directory;
@@ -39,52 +43,79 @@ public class CubeSearcher {
 		return t == null ? 0 : t.documents;
 	}
 	
-	public IdSearcher getIdSearcher(String table) {
-		String key = getId() + "/id/" + table;
-		synchronized(this) {
-			IdSearcher s = (IdSearcher)m_fieldsCache.get(key);
-			if(s == null) {
-				s = new IdSearcher(m_directory, m_stats.getTable(table));
+	// field files are decoded outside of any lock; only requests for the same file wait for its load
+	public IdSearcher getIdSearcher(final String table) {
+		final String key = getId() + "/id/" + table;
+		IdSearcher s = (IdSearcher)m_fieldsCache.get(key, new Callable<Object>() {
+			@Override public Object call() {
+				IdSearcher s = new IdSearcher(m_directory, m_stats.getTable(table));
 				m_fieldsCache.put(key, s, s.cacheSize() + 2 * key.length());
-			}
-			return new IdSearcher(s);
-		}
+				return s;
+			}});
+		return new IdSearcher(s);
 	}
 	
-	public FieldSearcher getFieldSearcher(String table, String field) {
-		String key = getId() + "/fld/" + table + "/" + field;
-		synchronized(this) {
-			FieldSearcher s = (FieldSearcher)m_fieldsCache.get(key);
-			if(s == null) {
-				s = new FieldSearcher(m_directory, table, field);
-				m_fieldsCache.put(key, s, s.cacheSize() + 2 * key.length());
-			}
-			return s;
-		}
+	public FieldSearcher getFieldSearcher(final String table, final String field) {
+		final String key = getId() + "/fld/" + table + "/" + field;
+		return (FieldSearcher)m_fieldsCache.get(key, new Callable<Object>() {
+			@Override public Object call() {
+				FieldSearcher s = new FieldSearcher(m_directory, table, field);
+				m_fieldsCache.put(key, s, s.cacheSize() + 2 * key.length(), s.offHeapSize());
+				return s;
+			}});
 	}
 
-	public NumSearcherMV getNumSearcher(String table, String field) {
-		String key = getId() + "/num/" + table + "/" + field;
-		synchronized(this) {
-			NumSearcherMV s = (NumSearcherMV)m_fieldsCache.get(key);
-			if(s == null) {
-				s = new NumSearcherMV(m_directory, table, field);
-				m_fieldsCache.put(key, s, s.cacheSize() + 2 * key.length());
-			}
-			return s;
-		}
+	public NumSearcherMV getNumSearcher(final String table, final String field) {
+		final String key = getId() + "/num/" + table + "/" + field;
+		return (NumSearcherMV)m_fieldsCache.get(key, new Callable<Object>() {
+			@Override public Object call() {
+				NumSearcherMV s = new NumSearcherMV(m_directory, table, field);
+				m_fieldsCache.put(key, s, s.cacheSize() + 2 * key.length(), s.offHeapSize());
+				return s;
+			}});
 	}
 
-	public ValueSearcher getValueSearcher(String table, String field) {
-		String key = getId() + "/val/" + table + "/" + field;
-		synchronized(this) {
-			ValueSearcher s = (ValueSearcher)m_fieldsCache.get(key);
-			if(s == null) {
-				s = new ValueSearcher(m_directory, m_stats.getTextField(table, field));
+	public ValueSearcher getValueSearcher(final String table, final String field) {
+		final String key = getId() + "/val/" + table + "/" + field;
+		ValueSearcher s = (ValueSearcher)m_fieldsCache.get(key, new Callable<Object>() {
+			@Override public Object call() {
+				ValueSearcher s = new ValueSearcher(m_directory, m_stats.getTextField(table, field));
 				m_fieldsCache.put(key, s, s.cacheSize() + 2 * key.length());
-			}
-			return new ValueSearcher(s);
-		}
+				return s;
+			}});
+		return new ValueSearcher(s);
+	}
+	
+	// hashes of the values of a text field indexed by value id, for DISTINCT_APPROX
+	public long[] getValueHashes(final String table, final String field) {
+		final String key = getId() + "/vhash/" + table + "/" + field;
+		return (long[])m_fieldsCache.get(key, new Callable<Object>() {
+			@Override public Object call() {
+				ValueSearcher vs = getValueSearcher(table, field);
+				long[] hashes = new long[vs.size()];
+				for(int i = 0; i < hashes.length; i++) {
+					BSTR value = vs.getValue(i);
+					hashes[i] = HyperLogLog.hash(value.buffer, 0, value.length);
+				}
+				m_fieldsCache.put(key, hashes, 8L * hashes.length + 2 * key.length());
+				return hashes;
+			}});
+	}
+	
+	// hashes of the ids of a table indexed by doc, for DISTINCT_APPROX of links
+	public long[] getIdHashes(final String table) {
+		final String key = getId() + "/idhash/" + table;
+		return (long[])m_fieldsCache.get(key, new Callable<Object>() {
+			@Override public Object call() {
+				IdSearcher ids = getIdSearcher(table);
+				long[] hashes = new long[ids.size()];
+				for(int i = 0; i < hashes.length; i++) {
+					BSTR id = ids.getId(i);
+					hashes[i] = HyperLogLog.hash(id.buffer, 0, id.length);
+				}
+				m_fieldsCache.put(key, hashes, 8L * hashes.length + 2 * key.length());
+				return hashes;
+			}});
 	}
 	
 	public VDirectory getDirectory() { return m_directory; }
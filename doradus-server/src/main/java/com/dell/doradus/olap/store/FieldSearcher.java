@@ -16,17 +16,32 @@
 
 package com.dell.doradus.olap.store;
 
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
 import com.dell.doradus.olap.io.VDirectory;
 import com.dell.doradus.olap.io.VInputStream;
 import com.dell.doradus.olap.search.Result;
+import com.dell.doradus.service.olap.OLAPService;
 
 public class FieldSearcher {
+	private static boolean m_lazyLoading = OLAPService.instance().getParamBoolean("olap_lazy_field_loading", true);
+	
 	private int m_documents;
 	private int m_fields;
 	private boolean m_bSingleValued;
 	
-	private int[] m_docterms;
-	private int[] m_positions;
+	private IntArray m_docterms;
+	private IntArray m_positions;
+	
+	// lazy loading state: documents are decoded in blocks of 2^m_blockShift on first access
+	private volatile boolean m_allLoaded = true;
+	private int m_blockShift;
+	private long[] m_docBlockPositions;
+	private long[] m_posBlockPositions;
+	private VInputStream m_docInput;
+	private VInputStream m_posInput;
+	private AtomicIntegerArray m_loadedBlocks;
+	private int m_blocksToLoad;
 	
 	public FieldSearcher(VDirectory dir, String table, String field) {
         if(dir.fileExists(table + "." + field + ".inverse")) {
@@ -54,30 +69,26 @@ public class FieldSearcher {
             if(m_bEmpty) return;
             
             if(m_bSingleValued) {
-                m_docterms = new int[m_documents];
-                for(int i = 0; i < m_docterms.length; i++) {
-                    m_docterms[i] = -1;
-                }
+                m_docterms = new IntArray(m_documents);
+                m_docterms.fill(-1);
 
                 for(int doc = 0; doc < searcher.size(); doc++) {
                     int len = searcher.fieldsCount(doc);
                     for(int j = 0; j < len; j++) {
                         int fld = searcher.getField(doc, j);
-                        m_docterms[fld] = doc;
+                        m_docterms.set(fld, doc);
                     }
                 }
                 
             }
             else {
-                m_positions = new int[m_documents + 1];
-                m_positions[0] = 0;
+                m_positions = new IntArray(m_documents + 1);
+                m_positions.set(0, 0);
                 for(int i = 0; i < m_documents; i++) {
-                    m_positions[i + 1] = m_positions[i] + lengths[i];
-                }
-                m_docterms = new int[m_positions[m_documents]];
-                for(int i = 0; i < m_docterms.length; i++) {
-                    m_docterms[i] = -1;
+                    m_positions.set(i + 1, m_positions.get(i) + lengths[i]);
                 }
+                m_docterms = new IntArray(m_positions.get(m_documents));
+                m_docterms.fill(-1);
                 for(int i = 0; i < m_documents; i++) {
                     lengths[i] = 0;
                 }
@@ -86,7 +97,7 @@ public class FieldSearcher {
                     int len = searcher.fieldsCount(doc);
                     for(int j = 0; j < len; j++) {
                         int fld = searcher.getField(doc, j);
-                        m_docterms[m_positions[fld] + lengths[fld]] = doc;
+                        m_docterms.set(m_positions.get(fld) + lengths[fld], doc);
                         lengths[fld]++;
                     }
                 }
@@ -97,71 +108,151 @@ public class FieldSearcher {
         }
 	    
 		if(!dir.fileExists(table + "." + field + ".doc")) return;
+		boolean lazy = m_lazyLoading && dir.fileExists(table + "." + field + ".idx");
 		
 		if(dir.fileExists(table + "." + field + ".pos")) {
 			m_bSingleValued = false;
 			VInputStream inp_pos = dir.open(table + "." + field + ".pos");
 			VInputStream inp_doc = dir.open(table + "." + field + ".doc");
 			m_documents = inp_pos.readVInt();
-			m_positions = new int[m_documents + 1];
+			m_positions = new IntArray(m_documents + 1);
 			int docsSize = inp_doc.readVInt();
-			m_docterms = new int[docsSize];
+			m_docterms = new IntArray(docsSize);
 			
-			m_positions[0] = 0;
-			for(int i = 0; i < m_documents; i++) {
-				int sz = inp_pos.readVInt();
-				m_positions[i + 1] = m_positions[i] + sz;
-				int term = 0;
-				for(int j = 0; j < sz; j++) {
-					term += inp_doc.readVInt();
-					if(m_fields < term + 1) m_fields = term + 1;
-					m_docterms[m_positions[i] + j] = term;
-				}
+			if(lazy) {
+				m_positions.set(m_documents, docsSize);
+				readIndex(dir.open(table + "." + field + ".idx"), inp_doc, inp_pos);
+				return;
 			}
+			m_positions.set(0, 0);
+			decodeMV(inp_doc, inp_pos, 0, m_documents);
 		} else {
 			m_bSingleValued = true;
 			VInputStream inp_doc = dir.open(table + "." + field + ".doc");
 			m_documents = inp_doc.readVInt();
-			m_docterms = new int[m_documents];
-			for(int i = 0; i < m_documents; i++) {
-				int term = inp_doc.readVInt() - 1;
-				m_docterms[i] = term;
+			m_docterms = new IntArray(m_documents);
+			if(lazy) {
+				readIndex(dir.open(table + "." + field + ".idx"), inp_doc, null);
+				return;
+			}
+			decodeSV(inp_doc, 0, m_documents);
+		}
+	}
+	
+	private void decodeSV(VInputStream inp_doc, int start, int end) {
+		for(int i = start; i < end; i++) {
+			int term = inp_doc.readVInt() - 1;
+			m_docterms.set(i, term);
+			if(m_fields < term + 1) m_fields = term + 1;
+		}
+	}
+	
+	private void decodeMV(VInputStream inp_doc, VInputStream inp_pos, int start, int end) {
+		for(int i = start; i < end; i++) {
+			int sz = inp_pos.readVInt();
+			m_positions.set(i + 1, m_positions.get(i) + sz);
+			int term = 0;
+			for(int j = 0; j < sz; j++) {
+				term += inp_doc.readVInt();
 				if(m_fields < term + 1) m_fields = term + 1;
+				m_docterms.set(m_positions.get(i) + j, term);
+			}
+		}
+	}
+	
+	// Block index written by FieldWriter: stream positions of every block of documents
+	// so that blocks can be decoded independently when a query first touches them
+	private void readIndex(VInputStream inp_idx, VInputStream inp_doc, VInputStream inp_pos) {
+		m_blockShift = inp_idx.readVInt();
+		m_fields = inp_idx.readVInt();
+		int blocks = inp_idx.readVInt();
+		m_docBlockPositions = new long[blocks];
+		if(inp_pos != null) m_posBlockPositions = new long[blocks];
+		for(int i = 0; i < blocks; i++) {
+			m_docBlockPositions[i] = inp_idx.readVLong();
+			if(inp_pos != null) {
+				m_posBlockPositions[i] = inp_idx.readVLong();
+				m_positions.set(i << m_blockShift, inp_idx.readVInt());
 			}
 		}
+		m_docInput = inp_doc;
+		m_posInput = inp_pos;
+		m_loadedBlocks = new AtomicIntegerArray(blocks);
+		m_blocksToLoad = blocks;
+		m_allLoaded = blocks == 0;
+	}
+	
+	private void loadBlock(int block) {
+		if(m_loadedBlocks.get(block) != 0) return;
+		synchronized(this) {
+			if(m_loadedBlocks.get(block) != 0) return;
+			int start = block << m_blockShift;
+			int end = Math.min(m_documents, start + (1 << m_blockShift));
+			VInputStream inp_doc = new VInputStream(m_docInput);
+			inp_doc.seek(m_docBlockPositions[block]);
+			if(m_bSingleValued) {
+				decodeSV(inp_doc, start, end);
+			} else {
+				VInputStream inp_pos = new VInputStream(m_posInput);
+				inp_pos.seek(m_posBlockPositions[block]);
+				decodeMV(inp_doc, inp_pos, start, end);
+			}
+			m_loadedBlocks.set(block, 1);
+			if(--m_blocksToLoad == 0) {
+				m_allLoaded = true;
+				m_docInput = null;
+				m_posInput = null;
+			}
+		}
+	}
+	
+	private void prepare(int doc) {
+		if(m_allLoaded) return;
+		loadBlock(doc >> m_blockShift);
+	}
+	
+	private void prepareAll() {
+		if(m_allLoaded) return;
+		for(int i = 0; i < m_docBlockPositions.length; i++) loadBlock(i);
 	}
 	
 	public int size() {
 		if(m_docterms == null) return 0;
-		else return m_bSingleValued ? m_docterms.length : m_positions.length - 1;
+		else return m_bSingleValued ? m_docterms.length() : m_positions.length() - 1;
 	}
 	public int fields() { return m_fields; }
 	public boolean isSingleValued() { return m_bSingleValued; }
 	
 	public int sv_get(int doc) {
 		if(m_docterms == null) return -1;
-		else if(m_bSingleValued) return m_docterms[doc];
-		else return m_positions[doc] == m_positions[doc + 1] ? -1 : m_docterms[m_positions[doc]];  
+		prepare(doc);
+		if(m_bSingleValued) return m_docterms.get(doc);
+		else return m_positions.get(doc) == m_positions.get(doc + 1) ? -1 : m_docterms.get(m_positions.get(doc));  
 	}
 
 	public int fieldsCount(int doc) {
 		if(m_docterms == null) return 0;
-		else if(m_bSingleValued) return m_docterms[doc] < 0 ? 0 : 1;
-		else return m_positions[doc + 1] - m_positions[doc];
+		prepare(doc);
+		if(m_bSingleValued) return m_docterms.get(doc) < 0 ? 0 : 1;
+		else return m_positions.get(doc + 1) - m_positions.get(doc);
 	}
 
 	public int getField(int doc, int index) {
-		if(m_bSingleValued) return m_docterms[doc];
-		else return m_docterms[m_positions[doc] + index];
+		prepare(doc);
+		if(m_bSingleValued) return m_docterms.get(doc);
+		else return m_docterms.get(m_positions.get(doc) + index);
 	}
 	
 	public void fields(int doc, IntIterator iter) {
 		if(m_docterms == null) {
-			iter.setup(null, 0, 0);
-		} else if(m_bSingleValued) {
-			iter.setup(m_docterms, doc, m_docterms[doc] < 0 ? 0 : 1);
+			iter.setup((IntArray)null, 0, 0);
+			return;
+		}
+		prepare(doc);
+		if(m_bSingleValued) {
+			iter.setup(m_docterms, doc, m_docterms.get(doc) < 0 ? 0 : 1);
 		} else {
-			iter.setup(m_docterms, m_positions[doc], m_positions[doc + 1] - m_positions[doc]);
+			iter.setup(m_docterms, m_positions.get(doc), m_positions.get(doc + 1) - m_positions.get(doc));
 		}
 	}
 	
@@ -171,15 +262,17 @@ public class FieldSearcher {
 		if(m_bSingleValued) {
 			for(int i = 0; i < m_documents; i++) {
 				if(!src.get(i)) continue;
-				if(m_docterms[i] != -1) dst.set(m_docterms[i]);
+				prepare(i);
+				if(m_docterms.get(i) != -1) dst.set(m_docterms.get(i));
 			}
 		} else {
 			for(int i = 0; i < m_documents; i++) {
 				if(!src.get(i)) continue;
-				int st = m_positions[i];
-				int fn = m_positions[i + 1];
+				prepare(i);
+				int st = m_positions.get(i);
+				int fn = m_positions.get(i + 1);
 				for(int j = st; j < fn; j++) {
-					dst.set(m_docterms[j]);
+					dst.set(m_docterms.get(j));
 				}
 			}
 		}
@@ -188,17 +281,18 @@ public class FieldSearcher {
 
 	public void fillDocs(Result valuesSet, Result docsSet) {
 		if(m_docterms == null) return;
+		prepareAll();
 		if(m_bSingleValued) {
 			for(int i = 0; i < m_documents; i++) {
-				int value = m_docterms[i];
+				int value = m_docterms.get(i);
 				if(value != -1 && valuesSet.get(value)) docsSet.set(i);
 			}
 		} else {
 			for(int i = 0; i < m_documents; i++) {
-				int st = m_positions[i];
-				int fn = m_positions[i + 1];
+				int st = m_positions.get(i);
+				int fn = m_positions.get(i + 1);
 				for(int j = st; j < fn; j++) {
-					int value = m_docterms[j];
+					int value = m_docterms.get(j);
 					if(value != -1 && valuesSet.get(value)) {
 						docsSet.set(i);
 						break;
@@ -213,16 +307,18 @@ public class FieldSearcher {
 		if(m_bSingleValued) {
 			for(int i = 0; i < m_documents; i++) {
 				if(!docsSet.get(i)) continue;
-				int value = m_docterms[i];
+				prepare(i);
+				int value = m_docterms.get(i);
 				if(value != -1) valuesSet.set(value);
 			}
 		} else {
 			for(int i = 0; i < m_documents; i++) {
 				if(!docsSet.get(i)) continue;
-				int st = m_positions[i];
-				int fn = m_positions[i + 1];
+				prepare(i);
+				int st = m_positions.get(i);
+				int fn = m_positions.get(i + 1);
 				for(int j = st; j < fn; j++) {
-					int value = m_docterms[j];
+					int value = m_docterms.get(j);
 					if(value != -1) valuesSet.set(value);
 				}
 			}
@@ -232,17 +328,18 @@ public class FieldSearcher {
 	
 	public void fill(int term, Result r) {
 		if(m_docterms == null) return;
+		prepareAll();
 		
 		if(m_bSingleValued) {
 			for(int i = 0; i < m_documents; i++) {
-				if(m_docterms[i] == term) r.set(i);
+				if(m_docterms.get(i) == term) r.set(i);
 			}
 		} else {
 			for(int i = 0; i < m_documents; i++) {
-				int st = m_positions[i];
-				int fn = m_positions[i + 1];
+				int st = m_positions.get(i);
+				int fn = m_positions.get(i + 1);
 				for(int j = st; j < fn; j++) {
-					if(m_docterms[j] == term) r.set(i);
+					if(m_docterms.get(j) == term) r.set(i);
 				}
 			}
 		}
@@ -250,19 +347,20 @@ public class FieldSearcher {
 	
 	public void fill(int min, int max, Result r) {
 		if(m_docterms == null) return;
+		prepareAll();
 		
 		if(m_bSingleValued) {
 			for(int i = 0; i < m_documents; i++) {
-				if(m_docterms[i] < min) continue; 
-				if(m_docterms[i] >= max) continue; 
-				if(m_docterms[i] != -1) r.set(i);
+				if(m_docterms.get(i) < min) continue; 
+				if(m_docterms.get(i) >= max) continue; 
+				if(m_docterms.get(i) != -1) r.set(i);
 			}
 		} else {
 			for(int i = 0; i < m_documents; i++) {
-				int st = m_positions[i];
-				int fn = m_positions[i + 1];
+				int st = m_positions.get(i);
+				int fn = m_positions.get(i + 1);
 				for(int j = st; j < fn; j++) {
-					if(m_docterms[j] >= min && m_docterms[j] < max) r.set(i);
+					if(m_docterms.get(j) >= min && m_docterms.get(j) < max) r.set(i);
 				}
 			}
 		}
@@ -274,14 +372,15 @@ public class FieldSearcher {
 			if(min <= 0 && max > 0) r.not();
 			return;
 		}
+		prepareAll();
 		if(m_bSingleValued) {
 			for(int i = 0; i < m_documents; i++) {
-				int count = m_docterms[i] == -1 ? 0 : 1; 
+				int count = m_docterms.get(i) == -1 ? 0 : 1; 
 				if(min <= count && max > count) r.set(i);
 			}
 		} else {
 			for(int i = 0; i < m_documents; i++) {
-				int count = m_positions[i + 1] - m_positions[i]; 
+				int count = m_positions.get(i + 1) - m_positions.get(i); 
 				if(min <= count && max > count) r.set(i);
 			}
 		}
@@ -307,7 +406,12 @@ public class FieldSearcher {
 	
 	public long cacheSize()
 	{
-		return 16L + (m_docterms == null ? 0 : m_docterms.length * 4) + (m_positions == null ? 0 : m_positions.length * 4);
+		return 16L + (m_docterms == null ? 0 : m_docterms.cacheSize()) + (m_positions == null ? 0 : m_positions.cacheSize());
+	}
+	
+	public long offHeapSize()
+	{
+		return (m_docterms == null ? 0 : m_docterms.offHeapSize()) + (m_positions == null ? 0 : m_positions.offHeapSize());
 	}
 	
 }
@@ -20,6 +20,9 @@ import com.dell.doradus.olap.io.VDirectory;
 import com.dell.doradus.olap.io.VOutputStream;
 
 public class FieldWriter {
+	// documents per block in the .idx file used for lazy loading: 2^BLOCK_SHIFT
+	public static final int BLOCK_SHIFT = 12;
+	
 	private IntList m_doc;
 	private int[] m_len;
 	private boolean m_isSingleValued = true;
@@ -59,8 +62,10 @@ public class FieldWriter {
 		if(m_isSingleValued) {
 			VOutputStream out_doc = dir.create(table + "." + field + ".doc");
 			out_doc.writeVInt(m_len.length);
+			LongList docBlocks = new LongList();
 			int start = 0;
 			for(int i = 0; i < m_len.length; i++) {
+				if((i & ((1 << BLOCK_SHIFT) - 1)) == 0) docBlocks.add(out_doc.position());
 				int len = m_len[i];
 				if(len == 0) out_doc.writeVInt(0);
 				else {
@@ -71,13 +76,22 @@ public class FieldWriter {
 			}
 			out_doc.close();
 			if(start != m_doc.size()) throw new RuntimeException("FieldWriter: inconsistency in sv mode");
+			writeIndex(dir, table, field, getValuesCount(), docBlocks, null, null);
 		}else {
 			VOutputStream out_doc = dir.create(table + "." + field + ".doc");
 			VOutputStream out_pos = dir.create(table + "." + field + ".pos");
 			out_pos.writeVInt(m_len.length);
 			out_doc.writeVInt(m_doc.size());
+			LongList docBlocks = new LongList();
+			LongList posBlocks = new LongList();
+			IntList entryBlocks = new IntList();
 			int start = 0;
 			for(int i = 0; i < m_len.length; i++) {
+				if((i & ((1 << BLOCK_SHIFT) - 1)) == 0) {
+					docBlocks.add(out_doc.position());
+					posBlocks.add(out_pos.position());
+					entryBlocks.add(start);
+				}
 				int len = m_len[i];
 				out_pos.writeVInt(len);
 				int doc = 0;
@@ -90,7 +104,24 @@ public class FieldWriter {
 			out_doc.close();
 			out_pos.close();
 			if(start != m_doc.size()) throw new RuntimeException("FieldWriter: inconsistency in mv mode");
+			writeIndex(dir, table, field, getValuesCount(), docBlocks, posBlocks, entryBlocks);
+		}
+	}
+	
+	static void writeIndex(VDirectory dir, String table, String field, int values,
+			LongList docBlocks, LongList posBlocks, IntList entryBlocks) {
+		VOutputStream out_idx = dir.create(table + "." + field + ".idx");
+		out_idx.writeVInt(BLOCK_SHIFT);
+		out_idx.writeVInt(values);
+		out_idx.writeVInt(docBlocks.size());
+		for(int i = 0; i < docBlocks.size(); i++) {
+			out_idx.writeVLong(docBlocks.get(i));
+			if(posBlocks != null) {
+				out_idx.writeVLong(posBlocks.get(i));
+				out_idx.writeVInt(entryBlocks.get(i));
+			}
 		}
+		out_idx.close();
 	}
 
 }
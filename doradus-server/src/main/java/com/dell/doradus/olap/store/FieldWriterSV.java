@@ -43,10 +43,13 @@ public class FieldWriterSV {
 		if(m_maxTerm == -1) return;
 		VOutputStream out_doc = dir.create(table + "." + field + ".doc");
 		out_doc.writeVInt(m_docsCount);
+		LongList docBlocks = new LongList();
 		for(int i = 0; i < m_docs.length; i++) {
+			if((i & ((1 << FieldWriter.BLOCK_SHIFT) - 1)) == 0) docBlocks.add(out_doc.position());
 			out_doc.writeVInt(m_docs[i] + 1);
 		}
 		out_doc.close();
+		FieldWriter.writeIndex(dir, table, field, getValuesCount(), docBlocks, null, null);
 	}
 
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.store;
+
+import java.nio.IntBuffer;
+
+/**
+ * Fixed-size int array that is kept either on the java heap or in a buffer
+ * allocated by {@link ColumnStorage}, depending on the olap_column_storage parameter.
+ */
+public class IntArray {
+	private int[] m_array;
+	private IntBuffer m_buffer;
+	private int m_length;
+	
+	public IntArray(int length) {
+		m_length = length;
+		if(ColumnStorage.isHeap()) m_array = new int[length];
+		else m_buffer = ColumnStorage.allocate(length * 4L).asIntBuffer();
+	}
+	
+	public int length() { return m_length; }
+	
+	// null if the array is not on the heap
+	public int[] getArray() { return m_array; }
+	
+	public int get(int index) {
+		return m_array != null ? m_array[index] : m_buffer.get(index);
+	}
+	
+	public void set(int index, int value) {
+		if(m_array != null) m_array[index] = value;
+		else m_buffer.put(index, value);
+	}
+	
+	public void fill(int value) {
+		for(int i = 0; i < m_length; i++) set(i, value);
+	}
+	
+	// heap and off-heap parts are accounted separately by FieldsCache
+	public long cacheSize() { return m_array != null ? 16L + m_length * 4L : 16L; }
+	public long offHeapSize() { return m_array != null ? 0 : m_length * 4L; }
+}
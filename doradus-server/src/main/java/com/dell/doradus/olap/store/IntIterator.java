@@ -18,6 +18,7 @@ package com.dell.doradus.olap.store;
 
 public class IntIterator {
 	private int[] m_ref;
+	private IntArray m_array;
 	private int m_start;
 	private int m_count;
 	
@@ -28,9 +29,18 @@ public class IntIterator {
 	}
 	
 	public int count() { return m_count; }
-	public int get(int index) { return m_ref[m_start + index]; }
+	public int get(int index) {
+		return m_ref != null ? m_ref[m_start + index] : m_array.get(m_start + index);
+	}
 	public void setup(int[] array, int start, int count) {
 		m_ref = array;
+		m_array = null;
+		m_start = start;
+		m_count = count;
+	}
+	public void setup(IntArray array, int start, int count) {
+		m_ref = array == null ? null : array.getArray();
+		m_array = m_ref == null ? array : null;
 		m_start = start;
 		m_count = count;
 	}
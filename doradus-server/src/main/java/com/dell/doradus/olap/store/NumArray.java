@@ -16,13 +16,15 @@
 
 package com.dell.doradus.olap.store;
 
+import java.nio.ByteBuffer;
+
 import com.dell.doradus.olap.io.VInputStream;
 import com.dell.doradus.olap.io.VOutputStream;
 
 //numbers packed into 1bit, 1/2/4/8 bytes
 public class NumArray {
  public static interface NumA {
-     public int cacheSize();
+     public long cacheSize();
      public int size();
      public long get(int index);
  }
@@ -30,7 +32,7 @@ public class NumArray {
  public static class ZeroA implements NumA {
      private int m_size;
      public ZeroA(int size, VInputStream input) { m_size = size; }
-     @Override public int cacheSize() { return 4; }
+     @Override public long cacheSize() { return 4; }
      @Override public int size() { return m_size; }
      @Override public long get(int index) { return 0; }
      
@@ -43,7 +45,7 @@ public class NumArray {
          m_bitArray = new BitVector(size);
          input.read(m_bitArray.getBuffer(), 0, m_bitArray.getBuffer().length);  
      }
-     @Override public int cacheSize() { return 4 + m_bitArray.getBuffer().length; }
+     @Override public long cacheSize() { return 4 + m_bitArray.getBuffer().length; }
      @Override public int size() { return m_bitArray.size(); }
      @Override public long get(int index) { return m_bitArray.get(index) ? 1 : 0; }
      
@@ -63,7 +65,7 @@ public class NumArray {
          m_array = new byte[size];
          input.read(m_array, 0, m_array.length);
      }
-     @Override public int cacheSize() { return 4 + m_array.length; }
+     @Override public long cacheSize() { return 4 + m_array.length; }
      @Override public int size() { return m_array.length; }
      @Override public long get(int index) { return m_array[index]; }
      
@@ -78,7 +80,7 @@ public class NumArray {
          m_array = new short[size];
          for(int i = 0; i < m_array.length; i++) m_array[i] = input.readShort();
      }
-     @Override public int cacheSize() { return 4 + m_array.length * 2; }
+     @Override public long cacheSize() { return 4 + m_array.length * 2L; }
      @Override public int size() { return m_array.length; }
      @Override public long get(int index) { return m_array[index]; }
 
@@ -93,7 +95,7 @@ public class NumArray {
          m_array = new int[size];
          for(int i = 0; i < m_array.length; i++) m_array[i] = input.readInt();
      }
-     @Override public int cacheSize() { return 4 + m_array.length * 4; }
+     @Override public long cacheSize() { return 4 + m_array.length * 4L; }
      @Override public int size() { return m_array.length; }
      @Override public long get(int index) { return m_array[index]; }
 
@@ -108,7 +110,7 @@ public class NumArray {
          m_array = new long[size];
          for(int i = 0; i < m_array.length; i++) m_array[i] = input.readLong();
      }
-     @Override public int cacheSize() { return 4 + m_array.length * 8; }
+     @Override public long cacheSize() { return 4 + m_array.length * 8L; }
      @Override public int size() { return m_array.length; }
      @Override public long get(int index) { return m_array[index]; }
 
@@ -117,6 +119,33 @@ public class NumArray {
      }
  }
  
+ // 1/2/4/8-byte values kept outside of the java heap, see ColumnStorage
+ public static class BufferA implements NumA {
+     private ByteBuffer m_buffer;
+     private int m_size;
+     private int m_bytes;
+     public BufferA(int size, int bits, VInputStream input) {
+         m_size = size;
+         m_bytes = bits / 8;
+         m_buffer = ColumnStorage.allocate((long)size * m_bytes);
+         for(int i = 0; i < size; i++) {
+             if(m_bytes == 1) m_buffer.put(i, (byte)input.readByte());
+             else if(m_bytes == 2) m_buffer.putShort(i * 2, input.readShort());
+             else if(m_bytes == 4) m_buffer.putInt(i * 4, input.readInt());
+             else m_buffer.putLong(i * 8, input.readLong());
+         }
+     }
+     @Override public long cacheSize() { return 16; }
+     public long offHeapSize() { return (long)m_size * m_bytes; }
+     @Override public int size() { return m_size; }
+     @Override public long get(int index) {
+         if(m_bytes == 1) return m_buffer.get(index);
+         else if(m_bytes == 2) return m_buffer.getShort(index * 2);
+         else if(m_bytes == 4) return m_buffer.getInt(index * 4);
+         else return m_buffer.getLong(index * 8);
+     }
+ }
+ 
  public static class MinA implements NumA {
      private long m_min;
      private NumA m_array;
@@ -130,7 +159,7 @@ public class NumArray {
          else if(bits == 32) m_array = new IntA(size, input);
          else throw new RuntimeException("Invalid bits in MinA: " + bits);
      }
-     @Override public int cacheSize() { return 4 + m_array.cacheSize(); }
+     @Override public long cacheSize() { return 4 + m_array.cacheSize(); }
      @Override public int size() { return m_array.size(); }
      @Override public long get(int index) { return m_array.get(index) + m_min; }
 
@@ -152,7 +181,10 @@ public class NumArray {
  public NumArray(VInputStream input) {
      int size = input.readVInt();
      m_bits = input.readByte();
-     if(m_bits == 0) {
+     if(!ColumnStorage.isHeap() && (m_bits == 8 || m_bits == 16 || m_bits == 32 || m_bits == 64)) {
+         m_array = new BufferA(size, m_bits, input);
+     }
+     else if(m_bits == 0) {
          m_array = new ZeroA(size, input);
      }
      else if(m_bits == 1) {
@@ -239,5 +271,6 @@ public class NumArray {
  }
  
  public long cacheSize() { return 8 + m_array.cacheSize(); }
+ public long offHeapSize() { return m_array instanceof BufferA ? ((BufferA)m_array).offHeapSize() : 0; }
  
 }
@@ -28,7 +28,7 @@ import com.dell.doradus.search.analyzer.DateTrie;
 public class NumSearcherMV {
 	private NumArray m_values;
 	private BitVector m_mask;
-	private int[] m_positions;
+	private IntArray m_positions;
 	private boolean m_bSingleValued = true;
 	private int m_documents;
 	
@@ -57,11 +57,11 @@ public class NumSearcherMV {
 			m_bSingleValued = false;
 			VInputStream inp_pos = dir.open(table + "." + field + ".pos");
 			m_documents = inp_pos.readVInt();
-			m_positions = new int[m_documents + 1];
-			m_positions[0] = 0;
+			m_positions = new IntArray(m_documents + 1);
+			m_positions.set(0, 0);
 			for(int i = 0; i < m_documents; i++) {
 				int sz = inp_pos.readVInt();
-				m_positions[i + 1] = m_positions[i] + sz;
+				m_positions.set(i + 1, m_positions.get(i) + sz);
 			}
 		} else m_documents = m_values.size();
 		
@@ -76,24 +76,24 @@ public class NumSearcherMV {
 	public int size(int doc) {
 		if(m_values == null) return 0;
 		if(m_bSingleValued) return m_mask == null ? 1 : m_mask.get(doc) ? 1 : 0;
-		else return m_positions[doc + 1] - m_positions[doc];
+		else return m_positions.get(doc + 1) - m_positions.get(doc);
 	}
 	public long get(int doc, int index) {
 		int sz = size(doc);
 		if(index < 0 || index >= sz) throw new RuntimeException("Index out of range: " + index);
 		if(m_bSingleValued) return m_values.get(doc);
-		else return m_values.get(m_positions[doc] + index);
+		else return m_values.get(m_positions.get(doc) + index);
 	}
 	
 	public boolean sv_isNull(int doc) {
 		if(m_values == null) return true;
 		else if(m_bSingleValued) return m_mask == null ? false : !m_mask.get(doc);
-		else return m_positions[doc + 1] == m_positions[doc]; 
+		else return m_positions.get(doc + 1) == m_positions.get(doc); 
 	}
 	public long sv_get(int doc) {
 		if(sv_isNull(doc)) throw new RuntimeException("sv_get: no value");
 		else if(m_bSingleValued) return m_values.get(doc);
-		else return m_values.get(m_positions[doc + 1] - 1); 
+		else return m_values.get(m_positions.get(doc + 1) - 1); 
 	}
 	
 	public boolean isNull(int doc) { return size(doc) == 0; }
@@ -192,7 +192,13 @@ public class NumSearcherMV {
 	
 	public long cacheSize()
 	{
-		return 16L + (m_values == null ? 0 : m_values.cacheSize()) + (m_mask == null ? 0 : m_mask.getBuffer().length);
+		return 16L + (m_values == null ? 0 : m_values.cacheSize()) + (m_mask == null ? 0 : m_mask.getBuffer().length) +
+				(m_positions == null ? 0 : m_positions.cacheSize());
+	}
+	
+	public long offHeapSize()
+	{
+		return (m_values == null ? 0 : m_values.offHeapSize()) + (m_positions == null ? 0 : m_positions.offHeapSize());
 	}
 	
 }
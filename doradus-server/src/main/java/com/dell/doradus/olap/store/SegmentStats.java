@@ -122,6 +122,61 @@ public class SegmentStats {
         t.linkFields.put(field.name, field);
     }
 	
+	// add statistics of another cube of the same shard. Cubes hold disjoint objects, so
+	// documents and doclists add up; a text value present in several cubes is counted in each
+	public void add(SegmentStats other) {
+		totalStoreSize += other.totalStoreSize;
+		for(Table ot : other.tables.values()) {
+			Table t = tables.get(ot.name);
+			if(t == null) {
+				addTable(ot.name, 0);
+				t = tables.get(ot.name);
+			}
+			t.documents += ot.documents;
+			for(Table.NumField of : ot.numFields.values()) {
+				Table.NumField f = t.numFields.get(of.name);
+				if(f == null) {
+					f = t.new NumField(of.name);
+					f.type = of.type;
+					f.min = of.min;
+					f.max = of.max;
+					f.min_pos = of.min_pos;
+					f.isSingleValued = of.isSingleValued;
+					t.numFields.put(f.name, f);
+				} else {
+					f.min = Math.min(f.min, of.min);
+					f.max = Math.max(f.max, of.max);
+					// min_pos is 0 if the cube has no positive values
+					if(f.min_pos == 0 || (of.min_pos != 0 && of.min_pos < f.min_pos)) f.min_pos = of.min_pos;
+					f.isSingleValued &= of.isSingleValued;
+				}
+				f.bits = Math.max(f.bits, of.bits);
+				f.doclistSize += of.doclistSize;
+			}
+			for(Table.TextField of : ot.textFields.values()) {
+				Table.TextField f = t.textFields.get(of.name);
+				if(f == null) {
+					f = t.new TextField(of.name);
+					f.isSingleValued = of.isSingleValued;
+					t.textFields.put(f.name, f);
+				} else f.isSingleValued &= of.isSingleValued;
+				f.valuesCount += of.valuesCount;
+				f.doclistSize += of.doclistSize;
+			}
+			for(Table.LinkField of : ot.linkFields.values()) {
+				Table.LinkField f = t.linkFields.get(of.name);
+				if(f == null) {
+					f = t.new LinkField(of.name);
+					f.linkedTableName = of.linkedTableName;
+					f.inverseLink = of.inverseLink;
+					f.isSingleValued = of.isSingleValued;
+					t.linkFields.put(f.name, f);
+				} else f.isSingleValued &= of.isSingleValued;
+				f.doclistSize += of.doclistSize;
+			}
+		}
+	}
+	
 	public long memory() {
 		long mem = 0;
 		for(Table t : tables.values()) mem += t.memory();
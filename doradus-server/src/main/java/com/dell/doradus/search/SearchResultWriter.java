@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.search;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import com.dell.doradus.common.ContentType;
+import com.dell.doradus.common.UNode;
+import com.dell.doradus.common.Utils;
+import com.dell.doradus.common.XMLBuilder;
+
+/**
+ * Writes query results to a stream in the same format as {@link SearchResultList#toDoc()},
+ * one document at a time, so that the whole result does not have to be converted to a
+ * UNode tree and a string before it is sent. Call {@link #start(int)}, then
+ * {@link #add(SearchResult)} for every document, then {@link #end(String)}.
+ */
+public class SearchResultWriter {
+	private Writer m_writer;
+	private boolean m_bJSON;
+	private boolean m_bFirst = true;
+	
+	public SearchResultWriter(OutputStream stream, ContentType contentType) {
+		Utils.require(contentType.isJSON() || contentType.isXML(), "Unsupported content-type: " + contentType);
+		m_writer = new BufferedWriter(new OutputStreamWriter(stream, Utils.UTF8_CHARSET));
+		m_bJSON = contentType.isJSON();
+	}
+	
+	// documentsCount is -1 if the count was not requested
+	public void start(int documentsCount) {
+		if(m_bJSON) {
+			write("{\"results\":{");
+			if(documentsCount >= 0) write("\"totalobjects\":\"" + documentsCount + "\",");
+			write("\"docs\":[");
+		} else {
+			write("<?xml version=\"1.0\" standalone=\"yes\"?>\n<results>");
+			if(documentsCount >= 0) write("<totalobjects>" + documentsCount + "</totalobjects>");
+			write("<docs>");
+		}
+	}
+	
+	public void add(SearchResult result) {
+		UNode docNode = result.toDoc();
+		if(m_bJSON) {
+			if(!m_bFirst) write(",");
+			write(docNode.toJSON());
+		} else {
+			write(toXML(docNode));
+		}
+		m_bFirst = false;
+	}
+	
+	// continuationToken is null if there are no more results
+	public void end(String continuationToken) {
+		if(m_bJSON) {
+			write("]");
+			if(continuationToken != null) {
+				// strip the braces of the enclosing object
+				String json = UNode.createValueNode("continue", continuationToken).toJSON();
+				write("," + json.substring(1, json.length() - 1));
+			}
+			write("}}");
+		} else {
+			write("</docs>");
+			if(continuationToken != null) {
+				write(toXML(UNode.createValueNode("continue", continuationToken)));
+			}
+			write("</results>\n");
+		}
+		try {
+			m_writer.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public void write(SearchResultList list) {
+		start(list.documentsCount);
+		for(SearchResult result: list.results) {
+			add(result);
+		}
+		end(list.continuation_token);
+	}
+	
+	private static String toXML(UNode node) {
+		XMLBuilder xml = new XMLBuilder();
+		node.toXML(xml);
+		return xml.toString();
+	}
+	
+	private void write(String text) {
+		try {
+			m_writer.write(text);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
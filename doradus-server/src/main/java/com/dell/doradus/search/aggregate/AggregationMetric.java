@@ -25,6 +25,8 @@ public class AggregationMetric implements MetricExpression {
     public String sourceText;
     // function name
     public String function;
+    // function parameters, i.e. the percentile of PERCENTILE(field, p)
+    public List<String> functionParameters;
 
     public TableDefinition tableDef;
     
@@ -29,6 +29,7 @@ import org.slf4j.Logger;
 
 import com.dell.doradus.common.FieldType;
 import com.dell.doradus.common.Utils;
+import com.dell.doradus.search.util.HyperLogLog;
 
 abstract class Group {
 	static Logger log = Aggregate.log;
@@ -95,6 +96,9 @@ abstract class Group {
 		else if (function.equals("DISTINCT")) {
 			return new DistinctGroup("");
 		}
+		else if (function.equals("DISTINCT_APPROX")) {
+			return new DistinctApproxGroup("");
+		}
 		else if (function.equals("MIN")) {
 			if (ft != null && (ft == FieldType.LONG || ft == FieldType.INTEGER)) {
 				return new LongMinGroup("");
@@ -243,6 +247,28 @@ class DistinctGroup extends Group {
 	}	
 }
 
+class DistinctApproxGroup extends Group {
+	DistinctApproxGroup(String key) {
+		super(key);
+	}
+	private HyperLogLog m_sketch;
+	@Override
+	void update(String value) {
+		if (m_sketch == null) {
+			m_sketch = new HyperLogLog();
+		}
+		byte[] bytes = value == null ? new byte[0] : Utils.toBytes(value);
+		m_sketch.add(bytes, 0, bytes.length);
+	}
+	@Override
+	Object getMetric() {
+		if (m_sketch == null) {
+			return 0L;
+		}
+		return m_sketch.cardinality();
+	}	
+}
+
 abstract class MathGroup extends Group {
 	MathGroup(String key) {
 		super(key);
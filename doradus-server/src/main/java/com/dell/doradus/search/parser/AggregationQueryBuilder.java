@@ -400,6 +400,11 @@ public class AggregationQueryBuilder {
                 metric.metricFunctionParameters.add(item.item.getValue());
                 continue;
             }
+            if (item.item.getType().equals("AggregationMetricParameter")) {
+                if(metric.functionParameters == null) metric.functionParameters = new ArrayList<>();
+                metric.functionParameters.add(item.item.getValue());
+                continue;
+            }
             
             if (item.item.getType().equals(SemanticNames.TRANSITIVE_VALUE) || item.item.getType().equals(SemanticNames.TRANSITIVE)) {
                 AggregationGroupItem agItem = metric.items.get(metric.items.size() - 1);
@@ -1525,7 +1530,8 @@ public class AggregationQueryBuilder {
                         type.equals("IncludeList") ||
                         type.equals("ExcludeList") ||
                         type.equals("MetricFunctionBinary") ||
-                        type.equals("MetricFunctionParameter")
+                        type.equals("MetricFunctionParameter") ||
+                        type.equals("AggregationMetricParameter")
                         ) {
                     Item item = new Item();
                     item.item = grammarItem;
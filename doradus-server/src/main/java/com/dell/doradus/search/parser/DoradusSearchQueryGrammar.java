@@ -339,6 +339,8 @@ public class DoradusSearchQueryGrammar {
         Keyword SUM = new Keyword("SUM", WORD, false);
         Keyword AVERAGE = new Keyword("AVERAGE", WORD, false);
         Keyword DISTINCT = new Keyword("DISTINCT", WORD, false);
+        Keyword DISTINCT_APPROX = new Keyword("DISTINCT_APPROX", WORD, false);
+        Keyword PERCENTILE = new Keyword("PERCENTILE", WORD, false);
         Keyword DATEDIFF = new Keyword("DATEDIFF", WORD, false);
         Keyword TERMS = new Keyword("TERMS", WORD, false);
         Keyword GROUP = new Keyword("GROUP", WORD, false);
@@ -1192,6 +1194,7 @@ public class DoradusSearchQueryGrammar {
                 MIN,
                 MAX,
                 DISTINCT,
+                DISTINCT_APPROX,
                 StatisticMetricFunctionName
         );
 
@@ -1263,9 +1266,19 @@ public class DoradusSearchQueryGrammar {
 
         Token DOUBLENUMBER = new Token(DoubleNumberLiteral);
 
+        // PERCENTILE(field, p)
+        GrammarRule AggregationMetricPercentileQuery = Grammar.Rule("AggregationMetricPercentileQuery",
+                OptWhiteSpaces, PERCENTILE, Grammar.SetType("AggregationMetricFunctionName"), Grammar.MustMatchAction,
+                OptWhiteSpaces, LEFTPAREN, OptWhiteSpaces,
+                AggregationFieldSubfieldPathWhere, OptWhiteSpaces,
+                COMMA, Grammar.SetType("MetricFunctionComma"), OptWhiteSpaces,
+                DOUBLENUMBER, Grammar.SetType("AggregationMetricParameter"), OptWhiteSpaces, RIGHTPAREN
+        );
+
         GrammarRule AggregationMetricQuery = new SwitchRule(SwitchRule.First, "AggregationMetricQuery",
                 AggregationMetricCountStarQuery,
                 DateDiffFunction,
+                AggregationMetricPercentileQuery,
                 AggregationMetricFunctionQuery,
                 Grammar.Rule(OptWhiteSpaces, FloatPointNumber, Grammar.SetType("number")),
                 Grammar.Rule(OptWhiteSpaces, DOUBLENUMBER, Grammar.SetType("number")),
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.search.util;
+
+import java.util.Arrays;
+
+import com.dell.doradus.core.ServerParams;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct values in fixed memory:
+ * 2^precision one-byte registers, with standard error about 1.04 / sqrt(2^precision).
+ * Sketches of the same precision are merged by taking the maximum of each register,
+ * so per-shard sketches can be combined without keeping the values.
+ */
+public class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+    // 4Kb per sketch, about 1.6% standard error
+    public static final int DEFAULT_PRECISION = 12;
+
+    private static int s_precision = -1;
+
+    private int m_precision;
+    private byte[] m_registers;
+
+    public HyperLogLog() {
+        this(getDefaultPrecision());
+    }
+
+    public HyperLogLog(int precision) {
+        if(precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+        m_precision = precision;
+        m_registers = new byte[1 << precision];
+    }
+
+    /**
+     * Precision set by the DoradusServer distinct_approx_precision parameter.
+     * It is read when the server starts, so that an invalid value fails the startup.
+     */
+    public static synchronized int getDefaultPrecision() {
+        if(s_precision < 0) {
+            int precision = ServerParams.instance().getModuleParamInt("DoradusServer", "distinct_approx_precision", DEFAULT_PRECISION);
+            if(precision < MIN_PRECISION || precision > MAX_PRECISION) {
+                throw new IllegalArgumentException("distinct_approx_precision must be between " +
+                        MIN_PRECISION + " and " + MAX_PRECISION + ": " + precision);
+            }
+            s_precision = precision;
+        }
+        return s_precision;
+    }
+
+    public int getPrecision() { return m_precision; }
+
+    public void add(long value) {
+        addHash(mix(value));
+    }
+
+    public void add(byte[] value, int offset, int length) {
+        add(hash(value, offset, length));
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the bytes; add(hash(value, offset, length)) is the same
+     * as add(value, offset, length), so the hashes of text values can be computed once and cached
+     */
+    public static long hash(byte[] value, int offset, int length) {
+        long h = 0xcbf29ce484222325L;
+        for(int i = offset; i < offset + length; i++) {
+            h ^= value[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private void addHash(long hash) {
+        int index = (int)(hash >>> (64 - m_precision));
+        // leading zeros of the remaining bits, capped so that the result fits into a register
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << m_precision), 64 - m_precision) + 1;
+        if(rank > m_registers[index]) m_registers[index] = (byte)rank;
+    }
+
+    public void merge(HyperLogLog other) {
+        if(other.m_precision != m_precision) {
+            throw new IllegalArgumentException("Cannot merge HyperLogLog sketches of different precision");
+        }
+        for(int i = 0; i < m_registers.length; i++) {
+            if(other.m_registers[i] > m_registers[i]) m_registers[i] = other.m_registers[i];
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(m_registers, (byte)0);
+    }
+
+    public long cardinality() {
+        int m = m_registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for(byte r: m_registers) {
+            sum += 1.0 / (1L << r);
+            if(r == 0) zeros++;
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // linear counting is more accurate for small cardinalities
+        if(estimate <= 2.5 * m && zeros > 0) estimate = m * Math.log((double)m / zeros);
+        return Math.round(estimate);
+    }
+
+    // murmur3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
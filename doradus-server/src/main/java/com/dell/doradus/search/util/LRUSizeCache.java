@@ -74,6 +74,13 @@ public class LRUSizeCache<K, T> {
 		}
 	}
 	
+	public void remove(K key) {
+		synchronized(this) {
+			ValueAndSize<T> value = m_map.remove(key);
+			if(value != null) m_currentSize -= value.size;
+		}
+	}
+	
 	public int size() {
 		synchronized(this) {
 			return m_map.size();
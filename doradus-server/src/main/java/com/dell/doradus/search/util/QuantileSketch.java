@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.search.util;
+
+/**
+ * Mergeable quantile sketch with relative accuracy: values are counted in buckets
+ * (gamma^(i-1), gamma^i] with gamma = (1 + ACCURACY) / (1 - ACCURACY), so a quantile
+ * is returned within ACCURACY of the true value. Merging adds bucket counts, so the
+ * result does not depend on the order in which shards and groups are merged.
+ * Memory is proportional to log(max / min) of the values, bounded by MAX_BUCKETS.
+ */
+public class QuantileSketch {
+    public static final double ACCURACY = 0.01;
+    // covers magnitudes from MIN_MAGNITUDE to beyond Long.MAX_VALUE without collapsing
+    public static final int MAX_BUCKETS = 4096;
+    // smaller magnitudes are counted as zero
+    public static final double MIN_MAGNITUDE = 1e-9;
+
+    private static final double GAMMA = (1 + ACCURACY) / (1 - ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private Buckets m_positive = new Buckets();
+    private Buckets m_negative = new Buckets();
+    private long m_zeroCount;
+    private long m_count;
+    private double m_min = Double.POSITIVE_INFINITY;
+    private double m_max = Double.NEGATIVE_INFINITY;
+
+    public long count() { return m_count; }
+
+    public void add(double value) {
+        if(Double.isNaN(value)) return;
+        if(value >= MIN_MAGNITUDE) m_positive.add(index(value), 1);
+        else if(value <= -MIN_MAGNITUDE) m_negative.add(index(-value), 1);
+        else m_zeroCount++;
+        m_count++;
+        if(value < m_min) m_min = value;
+        if(value > m_max) m_max = value;
+    }
+
+    public void merge(QuantileSketch other) {
+        if(other.m_count == 0) return;
+        m_positive.add(other.m_positive);
+        m_negative.add(other.m_negative);
+        m_zeroCount += other.m_zeroCount;
+        m_count += other.m_count;
+        if(other.m_min < m_min) m_min = other.m_min;
+        if(other.m_max > m_max) m_max = other.m_max;
+    }
+
+    public void clear() {
+        m_positive.clear();
+        m_negative.clear();
+        m_zeroCount = 0;
+        m_count = 0;
+        m_min = Double.POSITIVE_INFINITY;
+        m_max = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Returns the value at the given quantile, 0 to 1, or NaN if the sketch is empty
+     */
+    public double quantile(double q) {
+        if(m_count == 0) return Double.NaN;
+        if(q <= 0) return m_min;
+        if(q >= 1) return m_max;
+        long rank = (long)(q * (m_count - 1));
+        double value;
+        // negative values in ascending order are buckets of decreasing magnitude
+        long negativeCount = m_negative.total();
+        if(rank < negativeCount) value = -m_negative.value(negativeCount - 1 - rank);
+        else if(rank < negativeCount + m_zeroCount) value = 0;
+        else value = m_positive.value(rank - negativeCount - m_zeroCount);
+        return Math.max(m_min, Math.min(m_max, value));
+    }
+
+    private static int index(double magnitude) {
+        return (int)Math.ceil(Math.log(magnitude) / LOG_GAMMA);
+    }
+
+    // value that is within ACCURACY of every value of the bucket
+    private static double bucketValue(int index) {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    // counts of consecutive buckets starting from m_offset
+    private static class Buckets {
+        private int m_offset;
+        private long[] m_counts;
+        private long m_total;
+
+        long total() { return m_total; }
+
+        void clear() {
+            m_counts = null;
+            m_total = 0;
+        }
+
+        void add(int index, long count) {
+            if(m_counts == null) {
+                m_offset = index;
+                m_counts = new long[4];
+            } else if(index < m_offset || index >= m_offset + m_counts.length) {
+                int lo = Math.min(m_offset, index);
+                int hi = Math.max(m_offset + m_counts.length, index + 1);
+                // smallest magnitudes are collapsed into the lowest bucket
+                if(hi - lo > MAX_BUCKETS) lo = hi - MAX_BUCKETS;
+                // grow with some room in the direction of the new index
+                int size = Math.max(hi - lo, Math.min(2 * m_counts.length, MAX_BUCKETS));
+                if(index < m_offset) lo = hi - size;
+                long[] counts = new long[size];
+                for(int i = 0; i < m_counts.length; i++) {
+                    counts[Math.max(m_offset + i, lo) - lo] += m_counts[i];
+                }
+                m_offset = lo;
+                m_counts = counts;
+                index = Math.max(index, lo);
+            }
+            m_counts[index - m_offset] += count;
+            m_total += count;
+        }
+
+        void add(Buckets other) {
+            if(other.m_counts == null) return;
+            for(int i = 0; i < other.m_counts.length; i++) {
+                if(other.m_counts[i] != 0) add(other.m_offset + i, other.m_counts[i]);
+            }
+        }
+
+        // value of the rank-th smallest magnitude
+        double value(long rank) {
+            long seen = 0;
+            for(int i = 0; i < m_counts.length; i++) {
+                seen += m_counts[i];
+                if(seen > rank) return bucketValue(m_offset + i);
+            }
+            return bucketValue(m_offset + m_counts.length - 1);
+        }
+    }
+}
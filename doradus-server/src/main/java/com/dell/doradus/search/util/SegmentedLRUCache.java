@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.search.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded LRU cache like {@link LRUSizeCache}, for caches shared by concurrent searches.
+ * Keys are hashed to one of several independent LRU segments so that concurrent readers
+ * do not contend on a single lock; each segment holds 1/segments of the total capacity,
+ * so eviction order is LRU within a segment only.
+ * Values are stored as given; the caller supplies the size of each entry.
+ */
+public class SegmentedLRUCache<K, T> {
+    private List<Segment> m_segments;
+    private AtomicLong m_hits = new AtomicLong();
+    private AtomicLong m_misses = new AtomicLong();
+    private AtomicLong m_evictions = new AtomicLong();
+
+    /**
+     * @param capacity  total size of the entries, in the units of the sizes passed to {@link #put}
+     * @param segments  number of segments; should be a power of two
+     */
+    public SegmentedLRUCache(long capacity, int segments) {
+        if(Integer.bitCount(segments) != 1) throw new IllegalArgumentException("Segments count should be a power of two");
+        m_segments = new ArrayList<>(segments);
+        for(int i = 0; i < segments; i++) {
+            m_segments.add(new Segment(capacity / segments));
+        }
+    }
+
+    public long getHits() { return m_hits.get(); }
+    public long getMisses() { return m_misses.get(); }
+    public long getEvictions() { return m_evictions.get(); }
+
+    public long getSize() {
+        long size = 0;
+        for(Segment segment: m_segments) size += segment.getSize();
+        return size;
+    }
+
+    /**
+     * Returns the cached value, or null if there is none
+     */
+    public T get(K key) {
+        T cached = getSegment(key).get(key);
+        if(cached == null) m_misses.incrementAndGet();
+        else m_hits.incrementAndGet();
+        return cached;
+    }
+
+    /**
+     * Adds or replaces the value, then evicts the least recently used entries of its segment
+     * until the segment fits its capacity; an entry larger than the segment is not kept
+     */
+    public void put(K key, T value, long size) {
+        getSegment(key).put(key, value, size);
+    }
+
+    private Segment getSegment(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return m_segments.get(hash & (m_segments.size() - 1));
+    }
+
+    private static class Entry<T> {
+        public T value;
+        public long size;
+
+        public Entry(T value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    private class Segment {
+        private LinkedHashMap<K, Entry<T>> m_map = new LinkedHashMap<>(16, 0.75f, true);
+        private long m_capacity;
+        private long m_size;
+
+        public Segment(long capacity) {
+            m_capacity = capacity;
+        }
+
+        public synchronized long getSize() { return m_size; }
+
+        public synchronized T get(K key) {
+            Entry<T> entry = m_map.get(key);
+            return entry == null ? null : entry.value;
+        }
+
+        public synchronized void put(K key, T value, long size) {
+            Entry<T> oldEntry = m_map.put(key, new Entry<T>(value, size));
+            if(oldEntry != null) m_size -= oldEntry.size;
+            m_size += size;
+            Iterator<Map.Entry<K, Entry<T>>> iterator = m_map.entrySet().iterator();
+            while(m_size > m_capacity && iterator.hasNext()) {
+                Map.Entry<K, Entry<T>> evicted = iterator.next();
+                iterator.remove();
+                m_size -= evicted.getValue().size;
+                m_evictions.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.dell.doradus.service.db.fs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group-commit write-ahead log of a store. Transactions are queued to a writer thread
+ * that appends all queued transactions with one write, syncs the file according to
+ * the sync mode, and then applies them in log order. The committing thread waits
+ * until its transaction has been applied.
+ *
+ * Sync modes:
+ * "commit"   - the log is synced before the transactions of a batch are acknowledged
+ * "periodic" - the log is synced at most once per SYNC_INTERVAL milliseconds
+ * "none"     - syncing is left to the operating system
+ */
+public class FsCommitLog {
+    public static final String SYNC_COMMIT = "commit";
+    public static final String SYNC_PERIODIC = "periodic";
+    public static final String SYNC_NONE = "none";
+
+    public static String SYNC_MODE = SYNC_COMMIT;
+    public static int SYNC_INTERVAL = 1000; // ms
+    // upper bound of the data written by one batch
+    public static int MAX_BATCH_SIZE = 4 * 1024 * 1024; // 4Mb
+
+    private static final Entry CLOSE = new Entry(null, null);
+
+    private File m_logFile;
+    private String m_syncMode;
+    private FileOutputStream m_stream;
+    private boolean m_bDirty;
+    private long m_lastSync;
+    private Runnable m_afterBatch;
+    private LinkedBlockingQueue<Entry> m_queue = new LinkedBlockingQueue<>();
+    // set under m_queue lock, so no entry is queued after CLOSE
+    private boolean m_bClosed;
+    private Thread m_thread;
+    private Logger m_log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * @param logFile       log file; it is created on the first write
+     * @param name          name of the writer thread
+     * @param afterBatch    called by the writer thread after each batch has been applied
+     */
+    public FsCommitLog(File logFile, String name, Runnable afterBatch) {
+        m_logFile = logFile;
+        m_afterBatch = afterBatch;
+        m_syncMode = SYNC_MODE;
+        if(!SYNC_COMMIT.equals(m_syncMode) && !SYNC_PERIODIC.equals(m_syncMode) && !SYNC_NONE.equals(m_syncMode)) {
+            throw new IllegalArgumentException("Unknown commit log sync mode: " + m_syncMode);
+        }
+        m_thread = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    writeLoop();
+                } finally {
+                    failPending();
+                }
+            }
+        }, "FsCommitLog " + name);
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    public File getFile() { return m_logFile; }
+
+    public long getSize() { return m_logFile.length(); }
+
+    /**
+     * Appends the data to the log and runs apply on the writer thread, in log order.
+     * Returns after apply has completed.
+     */
+    public void commit(byte[] data, Runnable apply) {
+        Entry entry = new Entry(data, apply);
+        synchronized(m_queue) {
+            if(m_bClosed) throw new RuntimeException("Commit log " + m_logFile + " is closed");
+            m_queue.add(entry);
+        }
+        try {
+            entry.done.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        if(entry.error != null) throw new RuntimeException("Commit failed", entry.error);
+    }
+
+    /**
+     * Deletes the log after its content has been persisted elsewhere. Must be called
+     * from the writer thread, i.e. from apply or afterBatch.
+     */
+    public void reset() {
+        closeStream();
+        m_logFile.delete();
+    }
+
+    /**
+     * Writes and applies all pending transactions and stops the writer thread.
+     * Commits started after close fail.
+     */
+    public void close() {
+        synchronized(m_queue) {
+            if(!m_bClosed) {
+                m_bClosed = true;
+                m_queue.add(CLOSE);
+            }
+        }
+        try {
+            m_thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        while(true) {
+            Entry entry = null;
+            try {
+                entry = m_queue.poll(SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                entry = CLOSE;
+            }
+            if(entry == null) {
+                if(m_bDirty) {
+                    try {
+                        sync();
+                    } catch(RuntimeException e) {
+                        m_log.error("Failed to sync " + m_logFile, e);
+                    }
+                }
+                continue;
+            }
+            boolean bClose = false;
+            int size = 0;
+            while(entry != null) {
+                if(entry == CLOSE) {
+                    bClose = true;
+                    break;
+                }
+                batch.add(entry);
+                size += entry.data.length;
+                if(size >= MAX_BATCH_SIZE) break;
+                entry = m_queue.poll();
+            }
+            if(batch.size() > 0) writeBatch(batch, size);
+            batch.clear();
+            if(bClose) {
+                try {
+                    if(m_bDirty) sync();
+                    closeStream();
+                } catch(RuntimeException e) {
+                    m_log.error("Failed to close " + m_logFile, e);
+                }
+                return;
+            }
+        }
+    }
+
+    // Called when the writer thread exits: rejects new commits and fails the ones still queued,
+    // which only exist if the writer was interrupted or failed before reaching CLOSE
+    private void failPending() {
+        synchronized(m_queue) {
+            m_bClosed = true;
+        }
+        RuntimeException error = new RuntimeException("Commit log " + m_logFile + " is closed");
+        Entry entry = null;
+        while((entry = m_queue.poll()) != null) {
+            if(entry == CLOSE) continue;
+            entry.error = error;
+            entry.done.countDown();
+        }
+    }
+
+    private void writeBatch(List<Entry> batch, int size) {
+        Throwable error = null;
+        try {
+            byte[] data = new byte[size];
+            int offset = 0;
+            for(Entry entry: batch) {
+                System.arraycopy(entry.data, 0, data, offset, entry.data.length);
+                offset += entry.data.length;
+            }
+            if(m_stream == null) m_stream = new FileOutputStream(m_logFile, true);
+            m_stream.write(data);
+            m_bDirty = true;
+            if(SYNC_COMMIT.equals(m_syncMode)) sync();
+            else if(SYNC_PERIODIC.equals(m_syncMode) && System.currentTimeMillis() - m_lastSync >= SYNC_INTERVAL) sync();
+        } catch(Throwable e) {
+            m_log.error("Failed to write " + m_logFile, e);
+            error = e;
+        }
+        for(Entry entry: batch) {
+            if(error == null) {
+                try {
+                    entry.apply.run();
+                } catch(Throwable e) {
+                    entry.error = e;
+                }
+            } else entry.error = error;
+        }
+        try {
+            if(error == null) m_afterBatch.run();
+        } catch(Throwable e) {
+            m_log.error("Commit log " + m_logFile + " post-batch action failed", e);
+        }
+        for(Entry entry: batch) entry.done.countDown();
+    }
+
+    private void sync() {
+        try {
+            if(m_stream != null) m_stream.getChannel().force(true);
+            m_bDirty = false;
+            m_lastSync = System.currentTimeMillis();
+        } catch(IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void closeStream() {
+        if(m_stream == null) return;
+        try {
+            m_stream.close();
+        } catch(IOException e) {
+            throw new RuntimeException(e);
+        }
+        m_stream = null;
+        m_bDirty = false;
+    }
+
+    private static class Entry {
+        final byte[] data;
+        final Runnable apply;
+        final CountDownLatch done = new CountDownLatch(1);
+        Throwable error;
+
+        Entry(byte[] data, Runnable apply) {
+            this.data = data;
+            this.apply = apply;
+        }
+    }
+}
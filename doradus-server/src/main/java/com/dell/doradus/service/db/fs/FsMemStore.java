@@ -1,16 +1,18 @@
 package com.dell.doradus.service.db.fs;
 
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import com.dell.doradus.olap.io.BSTR;
 
+/**
+ * Sorted memtable. Only the commit log thread modifies it; readers do not lock it.
+ */
 public class FsMemStore {
     private String m_name;
-    private HashMap<BSTR, FsRow> m_rows = new HashMap<>();
+    private ConcurrentSkipListMap<BSTR, FsRow> m_rows = new ConcurrentSkipListMap<>();
 
     public FsMemStore(String name) {
         m_name = name;
@@ -20,7 +22,6 @@ public class FsMemStore {
     
     public FsRow getRow(BSTR row) {return m_rows.get(row); }
     
-    public int getRowsCount() { return m_rows.size(); }
     
     public FsRow getOrCreateRow(BSTR row) {
         FsRow r = m_rows.get(row);
@@ -42,9 +43,9 @@ public class FsMemStore {
         return createColumn(row, FsMutation.DELETE_COLUMN, column, FileUtils.EMPTY_BYTES);
     }
     
+    // readers that already hold the row keep seeing its columns
     public void deleteRow(BSTR row) {
-        FsRow r = getOrCreateRow(row);
-        r.deleteRow();
+        m_rows.put(row, new FsRow(row, true));
     }
     
     public void clear() {
@@ -85,25 +86,11 @@ public class FsMemStore {
 
     public static class ColumnSequence implements IColumnSequence {
         private FsRow m_row;
-        private List<FsColumn> m_currentList;
-        private int m_start;
-        private int m_end;
-        private int m_position;
+        private Iterator<FsColumn> m_iterator;
         
         public ColumnSequence(FsRow row, BSTR start, BSTR end) {
             m_row = row;
-            m_currentList = row.getColumns();
-            m_start = 0;
-            if(start != null) {
-                m_start = Collections.binarySearch(m_currentList, new FsColumn(-1, start, FileUtils.EMPTY_BYTES));
-                if(m_start < 0) m_start = -m_start - 1;
-            }
-            m_end = m_currentList.size();
-            if(end != null) {
-                m_end = Collections.binarySearch(m_currentList, new FsColumn(-1, end, FileUtils.EMPTY_BYTES));
-                if(m_end < 0) m_end = -m_end - 1;
-            }
-            m_position = m_start;
+            m_iterator = row.getColumns(start, end).iterator();
         }
         
         public boolean isRowDeleted() {
@@ -112,8 +99,8 @@ public class FsMemStore {
         
         @Override
         public FsColumn next() {
-            if(m_position == m_end) return null;
-            return m_currentList.get(m_position++);
+            if(!m_iterator.hasNext()) return null;
+            return m_iterator.next();
         }
         
     }
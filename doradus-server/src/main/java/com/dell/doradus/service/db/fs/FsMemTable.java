@@ -1,6 +1,8 @@
 package com.dell.doradus.service.db.fs;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import com.dell.doradus.olap.collections.MemoryStream;
@@ -61,8 +63,9 @@ public class FsMemTable {
             stream.writeVString(row.getName(), lastRow);
             lastRow = row.getName();
             stream.writeBoolean(row.isDeleted());
-            stream.writeVInt(row.getColumnsCount());
-            for(FsColumn col: row.getColumns()) {
+            List<FsColumn> columns = new ArrayList<>(row.getColumns());
+            stream.writeVInt(columns.size());
+            for(FsColumn col: columns) {
                 stream.writeVString(col.getName(), lastColumn);
                 lastColumn = col.getName();
                 stream.writeByte((byte)col.getOperation());
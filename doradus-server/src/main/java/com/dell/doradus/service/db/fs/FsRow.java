@@ -1,38 +1,53 @@
 package com.dell.doradus.service.db.fs;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import com.dell.doradus.olap.io.BSTR;
 
+/**
+ * Row of the memtable. Columns are kept in a skip list, so the row can be read
+ * while the commit log thread updates it. Column objects are never modified:
+ * an update replaces the column in the map.
+ */
 public class FsRow implements Comparable<FsRow> {
     private BSTR m_name;
-    private HashMap<BSTR, FsColumn> m_columnsMap = new HashMap<>();
-    private List<FsColumn> m_columnsList = new ArrayList<>();
-    private boolean m_bSorted = true;
-    private boolean m_bDeleted;
+    private ConcurrentSkipListMap<BSTR, FsColumn> m_columns = new ConcurrentSkipListMap<>();
+    private final boolean m_bDeleted;
 
     public FsRow(BSTR name) {
+        this(name, false);
+    }
+    
+    public FsRow(BSTR name, boolean isDeleted) {
         m_name = name;
+        m_bDeleted = isDeleted;
     }
     
     public BSTR getName() { return m_name; }
     
-    public List<FsColumn> getColumns() {
-        if(!m_bSorted) {
-            Collections.sort(m_columnsList);
-            m_bSorted = true;
+    public Collection<FsColumn> getColumns() {
+        return m_columns.values();
+    }
+    
+    // columns in [start, end); null means unbounded
+    public Collection<FsColumn> getColumns(BSTR start, BSTR end) {
+        ConcurrentNavigableMap<BSTR, FsColumn> columns = m_columns;
+        if(start != null && end != null) {
+            if(start.compareTo(end) >= 0) return Collections.emptyList();
+            columns = m_columns.subMap(start, true, end, false);
         }
-        return m_columnsList;
+        else if(start != null) columns = m_columns.tailMap(start, true);
+        else if(end != null) columns = m_columns.headMap(end, false);
+        return columns.values();
     }
     
     public void getColumns(FsReadColumns columns, Collection<BSTR> columnNames) {
         if(m_bDeleted) columns.setRowDeleted();
         for(BSTR columnName: columnNames) {
-            FsColumn c = m_columnsMap.get(columnName);
+            FsColumn c = m_columns.get(columnName);
             if(c == null || columns.containsColumn(c)) continue;
             columns.addColumn(c);
         }
@@ -41,25 +56,9 @@ public class FsRow implements Comparable<FsRow> {
     public void getColumns(FsReadColumns columns, FsColumn startColumn, FsColumn endColumn, int count) {
         if(m_bDeleted) columns.setRowDeleted();
         int columnsCount = 0;
-        
-        if(!m_bSorted) {
-            Collections.sort(m_columnsList);
-            m_bSorted = true;
-        }
-
-        int startIndex = 0;
-        int endIndex = m_columnsList.size();
-        if(startColumn != null) {
-            startIndex = Collections.binarySearch(m_columnsList, startColumn);
-            if(startIndex < 0) startIndex = -startIndex - 1; // see binarySearch return value
-        }
-        if(endColumn != null) {
-            endIndex = Collections.binarySearch(m_columnsList, endColumn);
-            if(endIndex < 0) endIndex = -endIndex - 1; // see binarySearch return value
-        }
-        
-        for(int i = startIndex; i < endIndex; i++) {
-            FsColumn c = m_columnsList.get(i);
+        BSTR start = startColumn == null ? null : startColumn.getName();
+        BSTR end = endColumn == null ? null : endColumn.getName();
+        for(FsColumn c: getColumns(start, end)) {
             if(columns.containsColumn(c)) continue;
             columns.addColumn(c);
             if(!c.isColumnDelete()) {
@@ -69,33 +68,19 @@ public class FsRow implements Comparable<FsRow> {
         }
     }
 
-    public int getColumnsCount() { return m_columnsMap.size(); }
+    public boolean hasColumns() { return !m_columns.isEmpty(); }
     
     public FsColumn createColumn(int operation, BSTR columnName, byte[] value) {
-        FsColumn c = m_columnsMap.get(columnName);
-        if(c == null) {
-            c = new FsColumn(operation, columnName, value);
-            m_columnsMap.put(columnName, c);
-            m_columnsList.add(c);
-            m_bSorted = false;
-        } else {
-            c.set(operation, columnName, value);
-        }
+        FsColumn c = new FsColumn(operation, columnName, value);
+        m_columns.put(columnName, c);
         return c;
     }
 
-    public void deleteRow() {
-        m_columnsMap.clear();
-        m_columnsList.clear();
-        m_bSorted = true;
-        m_bDeleted = true;
-    }
-    
     public boolean isDeleted() { return m_bDeleted; }
     
     @Override
     public String toString() {
-        return m_name.toString() + " (" + m_columnsMap.size() + ") columns";
+        return m_name.toString() + (m_bDeleted ? " (deleted)" : "");
     }
     
     @Override
@@ -105,7 +90,7 @@ public class FsRow implements Comparable<FsRow> {
     
     @Override
     public boolean equals(Object obj) {
-        return m_name.equals((FsRow)obj);
+        return m_name.equals(((FsRow)obj).m_name);
     }
 
     @Override
@@ -45,6 +45,11 @@ public class FsService extends DBService {
         
         ROOT = getParamString("db-path");
         if(ROOT == null) throw new RuntimeException("FsService: db-path not defined");
+        FsStore.COMPACTION_THRESHOLD = getParamInt("compaction-threshold", FsStore.COMPACTION_THRESHOLD);
+        String syncMode = getParamString("commitlog-sync");
+        if(syncMode != null) FsCommitLog.SYNC_MODE = syncMode;
+        FsCommitLog.SYNC_INTERVAL = getParamInt("commitlog-sync-interval-ms", FsCommitLog.SYNC_INTERVAL);
+        FsTable.RANGE_CACHE_SIZE = getParamInt("range-cache-mb", (int)(FsTable.RANGE_CACHE_SIZE / 1024 / 1024)) * 1024L * 1024;
         m_logger.info("Using FS API");
         File root = new File(ROOT);
         if(!root.exists()) root.mkdirs();
@@ -84,43 +89,49 @@ public class FsService extends DBService {
     }
     
     @Override public void commit(DBTransaction dbTran) {
-        synchronized(m_sync) {
-        	String keyspace = dbTran.getTenant().getName();
-        	Set<String> stores = new HashSet<String>();
-            Map<String, Map<String, List<DColumn>>> columnUpdates = dbTran.getColumnUpdatesMap();
-            Map<String, Map<String, List<String>>> columnDeletes = dbTran.getColumnDeletesMap();
-            Map<String, List<String>> rowDeletes = dbTran.getRowDeletesMap();
-            stores.addAll(columnUpdates.keySet());
-            stores.addAll(columnDeletes.keySet());
-            stores.addAll(rowDeletes.keySet());
-            
-            for(String storeName: stores) {
-                FsStore store = getStore(keyspace, storeName);
-                store.addMutations(columnUpdates.get(storeName), columnDeletes.get(storeName), rowDeletes.get(storeName));
+        String keyspace = dbTran.getTenant().getName();
+        Set<String> stores = new HashSet<String>();
+        Map<String, Map<String, List<DColumn>>> columnUpdates = dbTran.getColumnUpdatesMap();
+        Map<String, Map<String, List<String>>> columnDeletes = dbTran.getColumnDeletesMap();
+        Map<String, List<String>> rowDeletes = dbTran.getRowDeletesMap();
+        stores.addAll(columnUpdates.keySet());
+        stores.addAll(columnDeletes.keySet());
+        stores.addAll(rowDeletes.keySet());
+        
+        // stores group concurrent commits in their commit logs, so only the lookup is synchronized
+        for(String storeName: stores) {
+            FsStore store;
+            synchronized(m_sync) {
+                store = getStore(keyspace, storeName);
             }
+            store.addMutations(columnUpdates.get(storeName), columnDeletes.get(storeName), rowDeletes.get(storeName));
         }
     }
     
+    // stores are read without locking, so only the lookup is synchronized
     @Override public List<DColumn> getColumns(String storeName, String rowKey, String startColumn, String endColumn, int count) {
+        FsStore store;
         synchronized(m_sync) {
-            FsStore store = getStore(getTenant().getName(), storeName);
-            return store.getColumns(rowKey, startColumn, endColumn, count);
+            store = getStore(getTenant().getName(), storeName);
         }
+        return store.getColumns(rowKey, startColumn, endColumn, count);
     }
 
     @Override
     public List<DColumn> getColumns(String storeName, String rowKey, Collection<String> columnNames) {
+        FsStore store;
         synchronized(m_sync) {
-            FsStore store = getStore(getTenant().getName(), storeName);
-            return store.getColumns(rowKey, columnNames);
+            store = getStore(getTenant().getName(), storeName);
         }
+        return store.getColumns(rowKey, columnNames);
     }
 
     @Override public List<String> getRows(String storeName, String continuationToken, int count) {
+        FsStore store;
         synchronized (m_sync) {
-        	FsStore store = getStore(m_tenant.getName(), storeName);
-        	return store.getRows(continuationToken, count);
+        	store = getStore(m_tenant.getName(), storeName);
         }
+        return store.getRows(continuationToken, count);
     }
 
 
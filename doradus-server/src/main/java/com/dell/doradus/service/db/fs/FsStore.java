@@ -5,11 +5,16 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,13 +26,34 @@ import com.dell.doradus.utilities.Timer;
 
 public class FsStore {
     public static int LOGFILE_THRESHOLD = 25 * 1024 * 1024; // 25Mb
+    // minimum number of adjacent tables of similar size merged by a compaction
+    public static int COMPACTION_THRESHOLD = 4;
+    // an older table joins the compaction if it is at most this many times larger than the average
+    public static int COMPACTION_SIZE_RATIO = 2;
+    private static ExecutorService COMPACTION_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "FsStore compaction");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    
     private Object m_sync = new Object();
     private String m_name;
     private File m_root;
     private File m_logFile;
+    private FsCommitLog m_commitLog;
     private FsDataStore m_dataStore;
-    private FsMemTable m_memTable;
-    private List<FsTable> m_tables = new ArrayList<>();
+    // replaced by a new memtable when it is flushed; see getView()
+    private volatile FsMemTable m_memTable;
+    // immutable snapshot ordered from the oldest to the newest table. Flushes append to it
+    // under m_tablesSync, and compaction replaces merged tables without holding m_sync
+    private volatile List<FsTable> m_tables = Collections.emptyList();
+    private Object m_tablesSync = new Object();
+    private int m_nextGeneration;
+    private Object m_compactionSync = new Object();
+    private AtomicBoolean m_compactionScheduled = new AtomicBoolean();
+    private volatile boolean m_bClosed;
     private Logger m_log = LoggerFactory.getLogger(getClass());
 
     public FsStore(File tenant, String storeName) {
@@ -39,13 +65,12 @@ public class FsStore {
             m_logFile = new File(m_root, "Log");
             m_dataStore = new FsDataStore(m_root);
             m_memTable = new FsMemTable(storeName);
-            for(File f: m_root.listFiles()) {
-                if(f.getName().startsWith("table") && !f.getName().endsWith(".idx")) {
-                    m_tables.add(new FsTable(f, m_dataStore));
-                    m_log.info("Store {} opened table {}", m_name, f.getName());
-                }
-            }
+            openTables();
             replayLog();
+            m_commitLog = new FsCommitLog(m_logFile, storeName, new Runnable() {
+                @Override public void run() { checkFlush(); }
+            });
+            scheduleCompaction();
             m_log.info("Store {} initialized in {}", m_name, t);
         }catch(IOException e) {
             throw new RuntimeException(e);
@@ -54,68 +79,136 @@ public class FsStore {
     
     public String getStoreName() { return m_name; }
     
-    public void addMutations(Map<String, List<DColumn>> columnUpdates, Map<String, List<String>> columnDeletes, List<String> rowDeletes) {
-        try {
-            if(columnUpdates == null) columnUpdates = new HashMap<>();
-            if(columnDeletes == null) columnDeletes = new HashMap<>();
-            if(rowDeletes == null) rowDeletes = new ArrayList<>();
-            List<FsMutation> mutations = new ArrayList<>();
-            for(String row: columnUpdates.keySet()) {
-                for(DColumn column: columnUpdates.get(row)) {
-                    String columnName = column.getName();
-                    byte[] columnValue = column.getRawValue();
-                    if(columnValue.length > 1024) {
-                        synchronized(m_sync) {
-                            m_dataStore.save(row, columnName, columnValue);
-                        }
-                        FsMutation mutation = new FsMutation(FsMutation.UPDATE_LARGE_COLUMN, row, columnName, FileUtils.EMPTY_BYTES);
-                        mutations.add(mutation);
-                    } else {
-                        FsMutation mutation = new FsMutation(FsMutation.UPDATE_COLUMN, row, columnName, columnValue);
-                        mutations.add(mutation);
-                    }
+    private void openTables() {
+        List<FsTable> tables = new ArrayList<>();
+        for(File f: m_root.listFiles()) {
+            if(f.getName().startsWith("compact-")) {
+                // leftover of an interrupted compaction
+                f.delete();
+            } else if(f.getName().startsWith("table") && !f.getName().endsWith(".idx")) {
+                tables.add(new FsTable(f, m_dataStore));
+            }
+        }
+        // if the store stopped after a compacted table was written but before the merged
+        // tables were deleted, the merged tables are still on disk: drop them now
+        List<FsTable> opened = new ArrayList<>();
+        for(FsTable table: tables) {
+            boolean merged = false;
+            for(FsTable other: tables) {
+                if(other == table) continue;
+                if(other.getFirstGeneration() <= table.getFirstGeneration() && other.getLastGeneration() >= table.getLastGeneration()) {
+                    merged = true;
+                    break;
                 }
             }
-            for(String row: columnDeletes.keySet()) {
-                for(String columnName: columnDeletes.get(row)) {
-                    FsMutation mutation = new FsMutation(FsMutation.DELETE_COLUMN, row, columnName, FileUtils.EMPTY_BYTES);
+            if(merged) {
+                table.delete();
+                m_log.info("Store {} deleted compacted table {}", m_name, table.getFile().getName());
+            } else {
+                opened.add(table);
+                m_log.info("Store {} opened table {}", m_name, table.getFile().getName());
+            }
+        }
+        Collections.sort(opened, new Comparator<FsTable>() {
+            @Override public int compare(FsTable x, FsTable y) {
+                return Integer.compare(x.getLastGeneration(), y.getLastGeneration());
+            }
+        });
+        m_nextGeneration = opened.size() == 0 ? 0 : opened.get(opened.size() - 1).getLastGeneration() + 1;
+        m_tables = Collections.unmodifiableList(opened);
+    }
+    
+    // Returns the current tables, acquired so that compaction does not delete them while they are read
+    private List<FsTable> acquireTables() {
+        while(true) {
+            List<FsTable> tables = m_tables;
+            int acquired = 0;
+            while(acquired < tables.size() && tables.get(acquired).acquire()) acquired++;
+            if(acquired == tables.size()) return tables;
+            // a compaction has just replaced the list
+            for(int i = 0; i < acquired; i++) tables.get(i).release();
+        }
+    }
+    
+    private void releaseTables(List<FsTable> tables) {
+        for(FsTable table: tables) table.release();
+    }
+    
+    public void addMutations(Map<String, List<DColumn>> columnUpdates, Map<String, List<String>> columnDeletes, List<String> rowDeletes) {
+        if(columnUpdates == null) columnUpdates = new HashMap<>();
+        if(columnDeletes == null) columnDeletes = new HashMap<>();
+        if(rowDeletes == null) rowDeletes = new ArrayList<>();
+        List<FsMutation> mutations = new ArrayList<>();
+        for(String row: columnUpdates.keySet()) {
+            for(DColumn column: columnUpdates.get(row)) {
+                String columnName = column.getName();
+                byte[] columnValue = column.getRawValue();
+                if(columnValue.length > 1024) {
+                    // the value is logged and saved to the data store when the mutation is applied,
+                    // so saves and deletes of the same column reach the data store in log order
+                    FsMutation mutation = new FsMutation(FsMutation.UPDATE_LARGE_COLUMN, row, columnName, columnValue);
+                    mutations.add(mutation);
+                } else {
+                    FsMutation mutation = new FsMutation(FsMutation.UPDATE_COLUMN, row, columnName, columnValue);
                     mutations.add(mutation);
                 }
             }
-            for(String row: rowDeletes) {
-                FsMutation mutation = new FsMutation(FsMutation.DELETE_ROW, row, "", FileUtils.EMPTY_BYTES);
+        }
+        for(String row: columnDeletes.keySet()) {
+            for(String columnName: columnDeletes.get(row)) {
+                FsMutation mutation = new FsMutation(FsMutation.DELETE_COLUMN, row, columnName, FileUtils.EMPTY_BYTES);
                 mutations.add(mutation);
             }
-            
-            MemoryStream ms = new MemoryStream();
-            for(FsMutation mutation: mutations) {
-                mutation.write(ms);
-            }
-            
-            synchronized (m_sync) {
-                FileUtils.append(m_logFile, ms.toArray());
-                for(FsMutation mutation: mutations) {
-                    m_memTable.applyMutation(mutation);
-                }
-                if(m_logFile.length() > LOGFILE_THRESHOLD) {
-                    flushTable();
-                }
-                
-                //delete all files after we committed the transactions
-                for(String row: columnDeletes.keySet()) {
-                    for(String columnName: columnDeletes.get(row)) {
-                        m_dataStore.delete(row, columnName);
+        }
+        for(String row: rowDeletes) {
+            FsMutation mutation = new FsMutation(FsMutation.DELETE_ROW, row, "", FileUtils.EMPTY_BYTES);
+            mutations.add(mutation);
+        }
+        
+        MemoryStream ms = new MemoryStream();
+        for(FsMutation mutation: mutations) {
+            mutation.write(ms);
+        }
+        
+        // the commit log applies transactions in log order on its writer thread
+        final List<FsMutation> logMutations = mutations;
+        m_commitLog.commit(ms.toArray(), new Runnable() {
+            @Override public void run() {
+                synchronized (m_sync) {
+                    for(FsMutation mutation: logMutations) {
+                        applyMutation(mutation);
                     }
                 }
-                for(String row: rowDeletes) {
-                    m_dataStore.deleteRow(row);
-                }
             }
-            
+        });
+    }
+    
+    // Applies a logged mutation to the memtable and the data store of large values.
+    // Called in log order, both on commit and on replay.
+    private void applyMutation(FsMutation mutation) {
+        int operation = mutation.getOperation();
+        // logs written before large values were logged have an empty value: the data store already has it
+        if(operation == FsMutation.UPDATE_LARGE_COLUMN && mutation.getValue().length > 0) {
+            m_dataStore.save(mutation.getRow().toString(), mutation.getColumn().toString(), mutation.getValue());
+        }
+        m_memTable.applyMutation(mutation);
+        if(operation == FsMutation.DELETE_COLUMN) {
+            m_dataStore.delete(mutation.getRow().toString(), mutation.getColumn().toString());
+        } else if(operation == FsMutation.DELETE_ROW) {
+            m_dataStore.deleteRow(mutation.getRow().toString());
+        }
+    }
+    
+    // called by the commit log after each batch
+    private void checkFlush() {
+        if(m_commitLog.getSize() <= LOGFILE_THRESHOLD) return;
+        try {
+            synchronized (m_sync) {
+                flushTable();
+            }
         }catch(IOException e) {
             throw new RuntimeException(e);
         }
-        
     }
     
     public void replayLog() throws IOException {
@@ -126,45 +219,128 @@ public class FsStore {
         FsMutation mutation = new FsMutation();
         while(!ms.end()) {
             mutation.read(ms);
-            m_memTable.applyMutation(mutation);
+            applyMutation(mutation);
         }
         m_log.info("Store {} replayed log in {}", m_name, t);
     }
 
-    public void flushTable() throws IOException {
+    private void flushTable() throws IOException {
         Timer t = new Timer();
-        File tableFile = new File(m_root, "table-" + m_tables.size());
+        File tableFile = new File(m_root, FsTable.getTableName(m_nextGeneration, m_nextGeneration));
+        m_nextGeneration++;
         File indexFile = new File(tableFile.getPath() + ".idx");
         FsTableWriter writer = new FsTableWriter(tableFile);
         m_memTable.write(writer);
         writer.close();
         FsTableIndex index = writer.getIndex();
         index.write(indexFile);
-        m_tables.add(new FsTable(tableFile, m_dataStore));
-        m_logFile.delete();
+        FsTable table = new FsTable(tableFile, m_dataStore);
+        synchronized (m_tablesSync) {
+            List<FsTable> tables = new ArrayList<>(m_tables);
+            tables.add(table);
+            m_tables = Collections.unmodifiableList(tables);
+        }
+        m_commitLog.reset();
         m_memTable = new FsMemTable(m_name);
         m_log.info("Store {} flushed table in {}", m_name, t);
+        scheduleCompaction();
+    }
+    
+    private void scheduleCompaction() {
+        if(m_bClosed || !m_compactionScheduled.compareAndSet(false, true)) return;
+        COMPACTION_EXECUTOR.execute(new Runnable() {
+            @Override public void run() {
+                m_compactionScheduled.set(false);
+                try {
+                    compact();
+                } catch(Throwable e) {
+                    m_log.error("Store " + m_name + " compaction failed", e);
+                }
+            }
+        });
+    }
+    
+    // Size-tiered compaction restricted to adjacent generations: starting from the newest table,
+    // older tables are added while they are not much larger than the tables already selected
+    private int[] selectCompaction(List<FsTable> tables) {
+        long totalSize = 0;
+        int count = 0;
+        for(int i = tables.size() - 1; i >= 0; i--) {
+            long size = tables.get(i).getSize();
+            if(count > 0 && size > COMPACTION_SIZE_RATIO * (totalSize / count)) break;
+            totalSize += size;
+            count++;
+        }
+        if(count < COMPACTION_THRESHOLD) return null;
+        return new int[] { tables.size() - count, count };
+    }
+    
+    public void compact() throws IOException {
+        synchronized (m_compactionSync) {
+            while(!m_bClosed) {
+                // only compaction removes tables, and flushes only append them,
+                // so the positions of the selected tables stay valid until the swap
+                List<FsTable> tables = m_tables;
+                int[] selection = selectCompaction(tables);
+                if(selection == null) return;
+                Timer t = new Timer();
+                int start = selection[0];
+                List<FsTable> merged = new ArrayList<>(tables.subList(start, start + selection[1]));
+                String tableName = FsTable.getTableName(merged.get(0).getFirstGeneration(), merged.get(merged.size() - 1).getLastGeneration());
+                File tempTableFile = new File(m_root, "compact-" + tableName);
+                File tempIndexFile = new File(m_root, "compact-" + tableName + ".idx");
+                FsTableWriter writer = new FsTableWriter(tempTableFile);
+                FsTableMerger.merge(merged, start == 0, writer);
+                writer.close();
+                writer.getIndex().write(tempIndexFile);
+                File tableFile = new File(m_root, tableName);
+                File indexFile = new File(m_root, tableName + ".idx");
+                // the table file is what makes the new table visible, so it is renamed last
+                if(!tempIndexFile.renameTo(indexFile) || !tempTableFile.renameTo(tableFile)) {
+                    throw new IOException("Cannot rename compacted table " + tableName);
+                }
+                FsTable table = new FsTable(tableFile, m_dataStore);
+                synchronized (m_tablesSync) {
+                    List<FsTable> current = new ArrayList<>(m_tables);
+                    current.subList(start, start + merged.size()).clear();
+                    current.add(start, table);
+                    m_tables = Collections.unmodifiableList(current);
+                }
+                for(FsTable mergedTable: merged) mergedTable.retire();
+                m_log.info("Store {} compacted {} tables into {} in {}", new Object[] {m_name, merged.size(), tableName, t});
+            }
+        }
+    }
+
+    // Readers do not lock the store. A flush first adds the new table and then replaces
+    // the memtable, so reading the memtable before the tables never misses a flushed row.
+    private FsMemTable getMemTable() {
+        return m_memTable;
     }
 
     public List<String> getRows(String continuationToken, int count) {
         Timer t = new Timer();
         Set<FsRow> rows = new HashSet<>();
         BSTR cont = continuationToken == null ? null : new BSTR(continuationToken);
-        synchronized (m_sync) {
-            m_memTable.getRows(rows, cont);
-            for(FsTable table: m_tables) {
-                table.getRows(rows, cont);
+        FsMemTable memTable = getMemTable();
+        List<FsTable> tables = acquireTables();
+        try {
+            memTable.getRows(rows, cont);
+            for(int i = tables.size() - 1; i >= 0; i--) {
+                tables.get(i).getRows(rows, cont);
             }
             List<String> list = new ArrayList<>();
             List<FsRow> allRows = new ArrayList<>(rows);
             Collections.sort(allRows);
             for(FsRow row: allRows) {
-                if(row.isDeleted() && row.getColumnsCount() == 0) continue;
+                if(row.isDeleted() && !row.hasColumns()) continue;
                 list.add(row.getName().toString());
                 if(list.size() >= count) break;
             }
             m_log.debug("Store {} get rows in {}", m_name, t);
             return list;
+        } finally {
+            releaseTables(tables);
         }
     }
 
@@ -174,38 +350,44 @@ public class FsStore {
         BSTR start = startColumn == null ? null : new BSTR(startColumn);
         BSTR end = endColumn == null ? null : new BSTR(endColumn);
         
-        MergedColumnSequence mergedSequence = new MergedColumnSequence();
-        IColumnSequence memSequence = m_memTable.getColumnSequence(rowKey, start, end);
-        if(memSequence != null) {
-            mergedSequence.add(m_tables.size(), memSequence);
-        }
-        if(memSequence == null || !memSequence.isRowDeleted()) {
-            for(int i = m_tables.size() - 1; i >= 0; i--) {
-                IColumnSequence tableSequence = m_tables.get(i).getColumnsSequence(rowKey, start, end);
-                if(tableSequence == null) continue;
-                mergedSequence.add(i, tableSequence);
-                if(tableSequence.isRowDeleted()) break;
+        FsMemTable memTable = getMemTable();
+        List<FsTable> tables = acquireTables();
+        try {
+            MergedColumnSequence mergedSequence = new MergedColumnSequence();
+            IColumnSequence memSequence = memTable.getColumnSequence(rowKey, start, end);
+            if(memSequence != null) {
+                mergedSequence.add(tables.size(), memSequence);
             }
-        }
-        
-        List<DColumn> list = new ArrayList<>();
-        while(true) {
-            FsColumn column = mergedSequence.next();
-            if(column == null) break;
-            if(column.isColumnDelete()) continue;
-            String columnName = column.getName().toString();
-            byte[] value = column.getValue();
-            if(column.isExternalValue()) {
-                synchronized (m_sync) {
-                    value = m_dataStore.load(row, columnName);
+            if(memSequence == null || !memSequence.isRowDeleted()) {
+                for(int i = tables.size() - 1; i >= 0; i--) {
+                    IColumnSequence tableSequence = tables.get(i).getColumnsSequence(rowKey, start, end);
+                    if(tableSequence == null) continue;
+                    mergedSequence.add(i, tableSequence);
+                    if(tableSequence.isRowDeleted()) break;
                 }
             }
-            list.add(new DColumn(columnName, value));
-            if(list.size() >= count) break;
+            
+            List<DColumn> list = new ArrayList<>();
+            while(true) {
+                FsColumn column = mergedSequence.next();
+                if(column == null) break;
+                if(column.isColumnDelete()) continue;
+                String columnName = column.getName().toString();
+                byte[] value = column.getValue();
+                if(column.isExternalValue()) {
+                    synchronized (m_sync) {
+                        value = m_dataStore.load(row, columnName);
+                    }
+                }
+                list.add(new DColumn(columnName, value));
+                if(list.size() >= count) break;
+            }
+            
+            m_log.debug("Store {} get columns slice for {} in {}", new Object[] {m_name, row, t});
+            return list;
+        } finally {
+            releaseTables(tables);
         }
-        
-        m_log.debug("Store {} get columns slice for {} in {}", new Object[] {m_name, row, t});
-        return list;
     }
 
     public List<DColumn> getColumns(String row, Collection<String> columnNames) {
@@ -214,14 +396,18 @@ public class FsStore {
         Set<BSTR> colNames = new HashSet<BSTR>();
         for(String columnName: columnNames) colNames.add(new BSTR(columnName));
         BSTR rowKey = new BSTR(row);
-        synchronized (m_sync) {
-            m_memTable.getColumns(rowKey, readColumns, colNames);
+        FsMemTable memTable = getMemTable();
+        List<FsTable> tables = acquireTables();
+        try {
+            memTable.getColumns(rowKey, readColumns, colNames);
             for(FsColumn c: readColumns.getColumns()) {
                 if(c.isColumnDelete()) continue;
                 colNames.remove(c.getName());
             }
-            for(FsTable table: m_tables) {
-                table.getColumns(rowKey, readColumns, colNames);
+            // newer tables first: the first version of a column found wins,
+            // and tables older than a row deletion are not read
+            for(int i = tables.size() - 1; i >= 0 && !readColumns.isRowDeleted(); i--) {
+                tables.get(i).getColumns(rowKey, readColumns, colNames);
                 for(FsColumn c: readColumns.getColumns()) {
                     if(c.isColumnDelete()) continue;
                     colNames.remove(c.getName());
@@ -235,11 +421,17 @@ public class FsStore {
                 if(c.isColumnDelete()) continue;
                 String columnName = c.getName().toString();
                 byte[] value = c.getValue();
-                if(c.isExternalValue()) value = m_dataStore.load(row, columnName);
+                if(c.isExternalValue()) {
+                    synchronized (m_sync) {
+                        value = m_dataStore.load(row, columnName);
+                    }
+                }
                 list.add(new DColumn(columnName, value));
             }
             m_log.debug("Store {} get columns for {} in {}", new Object[] {m_name, row, t});
             return list;
+        } finally {
+            releaseTables(tables);
         }
     }
 
@@ -285,8 +477,13 @@ public class FsStore {
     }*/
     
     public void close() {
-        for(FsTable table: m_tables) {
-            table.close();
+        m_commitLog.close();
+        m_bClosed = true;
+        // wait for a running compaction to stop
+        synchronized (m_compactionSync) {
+            for(FsTable table: m_tables) {
+                table.close();
+            }
         }
     }
 }
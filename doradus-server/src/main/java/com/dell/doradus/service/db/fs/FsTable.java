@@ -3,26 +3,89 @@ package com.dell.doradus.service.db.fs;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.dell.doradus.olap.collections.MemoryStream;
 import com.dell.doradus.olap.io.BSTR;
 import com.dell.doradus.olap.io.Compressor;
+import com.dell.doradus.search.util.LRUSizeCache;
 
 public class FsTable {
+    // decoded column ranges of all tables, shared by all readers
+    public static long RANGE_CACHE_SIZE = 16 * 1024 * 1024; // 16Mb
+    private static volatile LRUSizeCache<RangeKey, List<FsColumn>> m_rangeCache;
+    
     private FsTableIndex m_index;
     private File m_tableFile;
-    
-    private List<FsColumn> m_lastRead;
-    private long m_lastPosition = -1;
+    private File m_indexFile;
+    // table files are named table-N for flushed tables and table-N-M for tables
+    // compacted from generations N..M; later generations shadow earlier ones
+    private int m_firstGeneration;
+    private int m_lastGeneration;
+    // the store holds one reference; readers acquire the table while they use it
+    // so a compacted table is deleted only after the last reader releases it
+    private AtomicInteger m_refs = new AtomicInteger(1);
+    private volatile boolean m_bRetired;
+    // positional reads on one channel are safe from many threads
+    private FileChannel m_channel;
     
     public FsTable(File tableFile, FsDataStore m_dataStore) {
         m_tableFile = tableFile;
-        File indexFile = new File(tableFile.getPath() + ".idx");
-        m_index = FsTableIndex.read(indexFile);
+        m_indexFile = new File(tableFile.getPath() + ".idx");
+        m_index = FsTableIndex.read(m_indexFile);
+        try {
+            m_channel = new RandomAccessFile(tableFile, "r").getChannel();
+        } catch(IOException e) {
+            throw new RuntimeException(e);
+        }
+        String[] parts = tableFile.getName().split("-");
+        m_firstGeneration = Integer.parseInt(parts[1]);
+        m_lastGeneration = parts.length > 2 ? Integer.parseInt(parts[2]) : m_firstGeneration;
+    }
+    
+    public static String getTableName(int firstGeneration, int lastGeneration) {
+        if(firstGeneration == lastGeneration) return "table-" + firstGeneration;
+        else return "table-" + firstGeneration + "-" + lastGeneration;
+    }
+    
+    public File getFile() { return m_tableFile; }
+    public int getFirstGeneration() { return m_firstGeneration; }
+    public int getLastGeneration() { return m_lastGeneration; }
+    public long getSize() { return m_tableFile.length(); }
+    public Collection<FsTableIndex.Row> getRows() { return m_index.getRows(); }
+    
+    public boolean acquire() {
+        while(true) {
+            int refs = m_refs.get();
+            if(refs == 0) return false;
+            if(m_refs.compareAndSet(refs, refs + 1)) return true;
+        }
+    }
+    
+    public void release() {
+        if(m_refs.decrementAndGet() == 0 && m_bRetired) delete();
+    }
+    
+    // called when the table has been replaced by a compacted one
+    public void retire() {
+        m_bRetired = true;
+        invalidate();
+        release();
+    }
+    
+    public void delete() {
+        // ranges read by the last readers of a retired table
+        invalidate();
+        close();
+        m_indexFile.delete();
+        m_tableFile.delete();
     }
     
     public IColumnSequence getColumnsSequence(BSTR rowKey, BSTR start, BSTR end) {
@@ -34,6 +97,7 @@ public class FsTable {
     public void getColumns(BSTR rowKey, FsReadColumns columns, Set<BSTR> columnNames) {
         FsTableIndex.Row row = m_index.getRow(rowKey);
         if(row == null) return;
+        if(row.isDeleted()) columns.setRowDeleted();
         ArrayList<BSTR> cols = new ArrayList<>(columnNames);
         Collections.sort(cols);
         for(FsTableIndex.ColumnRange range: row.getRanges()) {
@@ -82,8 +146,7 @@ public class FsTable {
     
     public void getRows(Set<FsRow> rows, BSTR continuationToken) {
         for(FsTableIndex.Row row: m_index.getRows()) {
-            FsRow fsr = new FsRow(row.getKey());
-            if(row.isDeleted()) fsr.deleteRow();
+            FsRow fsr = new FsRow(row.getKey(), row.isDeleted());
             if(rows.contains(fsr)) continue;
             if(continuationToken != null && continuationToken.compareTo(fsr.getName()) >= 0) continue;
             rows.add(fsr);
@@ -92,15 +155,20 @@ public class FsTable {
     
     
     public List<FsColumn> read(FsTableIndex.ColumnRange range) {
-        if(m_lastPosition == range.getOffset()) return m_lastRead;
+        LRUSizeCache<RangeKey, List<FsColumn>> cache = getRangeCache();
+        RangeKey key = new RangeKey(this, range.getOffset());
+        List<FsColumn> columns = cache == null ? null : cache.get(key);
+        if(columns != null) return columns;
         
-        try (RandomAccessFile raf = new RandomAccessFile(m_tableFile, "r")) {
-            raf.seek(range.getOffset());
-            byte[] data = new byte[range.getLength()];
-            int len = raf.read(data);
-            if(len != data.length) throw new RuntimeException("File read failed");
-            data = Compressor.uncompress(data);
-            List<FsColumn> columns = new ArrayList<>();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(range.getLength());
+            long position = range.getOffset();
+            while(buffer.hasRemaining()) {
+                int len = m_channel.read(buffer, position + buffer.position());
+                if(len < 0) throw new RuntimeException("File read failed");
+            }
+            byte[] data = Compressor.uncompress(buffer.array());
+            columns = new ArrayList<>();
             MemoryStream stream = new MemoryStream(data);
             BSTR lastCol = new BSTR();
             for(int i = 0; i < range.getCount(); i++) {
@@ -116,17 +184,66 @@ public class FsTable {
             }
             if(!stream.end()) throw new RuntimeException("Invalid columns range");
             
-            m_lastPosition = range.getOffset();
-            m_lastRead = columns;
-            
+            if(cache != null && !m_bRetired) cache.put(key, columns, data.length + 32L * columns.size());
             return columns;
         }catch(IOException e) {
             throw new RuntimeException(e);
         }
     }
     
+    // removes the cached ranges of this table so that the cache does not keep it after it is replaced
+    private void invalidate() {
+        LRUSizeCache<RangeKey, List<FsColumn>> cache = m_rangeCache;
+        if(cache == null) return;
+        for(FsTableIndex.Row row: m_index.getRows()) {
+            for(FsTableIndex.ColumnRange range: row.getRanges()) {
+                cache.remove(new RangeKey(this, range.getOffset()));
+            }
+        }
+    }
+    
+    // used by tests
+    static int getCachedRangesCount() {
+        LRUSizeCache<RangeKey, List<FsColumn>> cache = m_rangeCache;
+        return cache == null ? 0 : cache.size();
+    }
+    
+    private static LRUSizeCache<RangeKey, List<FsColumn>> getRangeCache() {
+        if(m_rangeCache == null && RANGE_CACHE_SIZE > 0) {
+            synchronized(FsTable.class) {
+                if(m_rangeCache == null) m_rangeCache = new LRUSizeCache<RangeKey, List<FsColumn>>(0, RANGE_CACHE_SIZE);
+            }
+        }
+        return m_rangeCache;
+    }
+    
     public void close() {
+        try {
+            m_channel.close();
+        } catch(IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    private static class RangeKey {
+        private final FsTable m_table;
+        private final long m_offset;
+        
+        RangeKey(FsTable table, long offset) {
+            m_table = table;
+            m_offset = offset;
+        }
         
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(m_table) * 31 + (int)(m_offset ^ (m_offset >>> 32));
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            RangeKey other = (RangeKey)obj;
+            return m_table == other.m_table && m_offset == other.m_offset;
+        }
     }
     
     public class ColumnSequence implements IColumnSequence {
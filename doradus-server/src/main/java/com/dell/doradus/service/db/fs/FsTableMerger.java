@@ -0,0 +1,56 @@
+package com.dell.doradus.service.db.fs;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import com.dell.doradus.olap.io.BSTR;
+
+/**
+ * Merges adjacent generations of FsTable into one table. For every row only the latest
+ * version of each column is kept, and tables older than a row deletion are skipped.
+ * Tombstones (deleted rows and columns) can be dropped only when the oldest table of
+ * the store takes part in the merge, because otherwise they still shadow older tables.
+ */
+public class FsTableMerger {
+
+    // tables should be ordered from the oldest to the newest
+    public static void merge(List<FsTable> tables, boolean dropTombstones, FsTableWriter writer) {
+        TreeSet<BSTR> rowKeys = new TreeSet<>();
+        for(FsTable table: tables) {
+            for(FsTableIndex.Row row: table.getRows()) {
+                rowKeys.add(row.getKey());
+            }
+        }
+
+        for(BSTR rowKey: rowKeys) {
+            MergedColumnSequence sequence = new MergedColumnSequence();
+            boolean isDeleted = false;
+            for(int i = tables.size() - 1; i >= 0; i--) {
+                IColumnSequence tableSequence = tables.get(i).getColumnsSequence(rowKey, null, null);
+                if(tableSequence == null) continue;
+                sequence.add(i, tableSequence);
+                if(tableSequence.isRowDeleted()) {
+                    isDeleted = true;
+                    break;
+                }
+            }
+            if(dropTombstones) isDeleted = false;
+
+            boolean rowAdded = false;
+            if(isDeleted) {
+                writer.addRow(rowKey, true);
+                rowAdded = true;
+            }
+            while(true) {
+                FsColumn column = sequence.next();
+                if(column == null) break;
+                if(dropTombstones && column.isColumnDelete()) continue;
+                if(!rowAdded) {
+                    writer.addRow(rowKey, false);
+                    rowAdded = true;
+                }
+                writer.addColumn(column.getName(), column.getOperation(), column.getValue());
+            }
+        }
+    }
+}
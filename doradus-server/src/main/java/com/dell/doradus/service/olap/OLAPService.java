@@ -296,7 +296,8 @@ public class OLAPService extends StorageService {
     
     /**
      * Get detailed shard statistics for the given shard. This command is mostly used for
-     * development and diagnostics.
+     * development and diagnostics. If the shard has delta cubes, statistics are listed
+     * per cube.
      *   
      * @param appDef    {@link ApplicationDefinition} of application to query.
      * @param shard     Name of shard to query.
@@ -305,14 +306,17 @@ public class OLAPService extends StorageService {
      */
     public UNode getStatistics(ApplicationDefinition appDef, String shard, Map<String, String> paramMap) {
         checkServiceState();
-        CubeSearcher searcher = m_olap.getSearcher(appDef, shard);
         String file = paramMap.get("file");
         if(file != null) {
+            // files are read from the base cube unless a delta cube is named
+            String cube = paramMap.get("cube");
+            CubeSearcher searcher = cube == null ?
+                m_olap.getSearcher(appDef, shard) : m_olap.getSearcher(appDef, shard, cube);
             return OlapStatistics.getFileData(searcher, file);
         }
         String sort = paramMap.get("sort");
         boolean memStats = !"false".equals(paramMap.get("mem"));
-        return OlapStatistics.getStatistics(searcher, sort, memStats);
+        return OlapStatistics.getStatistics(m_olap.getSearchers(appDef, shard), sort, memStats);
     }   // getStats
     
     /**
@@ -16,13 +16,15 @@
 
 package com.dell.doradus.service.olap;
 
+import java.io.OutputStream;
+
 import com.dell.doradus.common.ApplicationDefinition;
 import com.dell.doradus.common.HttpMethod;
 import com.dell.doradus.common.TableDefinition;
-import com.dell.doradus.common.UNode;
 import com.dell.doradus.olap.OlapQuery;
 import com.dell.doradus.search.SearchResultList;
-import com.dell.doradus.service.rest.UNodeOutCallback;
+import com.dell.doradus.search.SearchResultWriter;
+import com.dell.doradus.service.rest.StreamOutCallback;
 import com.dell.doradus.service.rest.annotation.Description;
 
 @Description(
@@ -34,16 +36,17 @@ import com.dell.doradus.service.rest.annotation.Description;
     outputEntity = "results",
     visible = false
 )
-public class QueryURICmd extends UNodeOutCallback {
+public class QueryURICmd extends StreamOutCallback {
 
     @Override
-    public UNode invokeUNodeOut() {
+    public void invokeStreamOut(OutputStream stream) {
         ApplicationDefinition appDef = m_request.getAppDef();
         TableDefinition tableDef = m_request.getTableDef(appDef);
         String params = m_request.getVariable("params");    // leave encoded
         OlapQuery olapQuery = new OlapQuery(params);
+        SearchResultWriter writer = new SearchResultWriter(stream, m_request.getOutputContentType());
         SearchResultList searchResult = OLAPService.instance().objectQuery(tableDef, olapQuery);
-        return searchResult.toDoc();
+        writer.write(searchResult);
     }   // invoke
 
 }   // class QueryURICmd
@@ -39,6 +39,7 @@ public class ShardStatisticsCmd extends UNodeOutCallback {
     public static RESTParameter describeParams() {
         return new RESTParameter("params", null, false)
                         .add("file", "text")
+                        .add("cube", "text")
                         .add("sort", "text")
                         .add("mem", "boolean");
     }
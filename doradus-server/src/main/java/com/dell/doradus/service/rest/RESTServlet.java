@@ -67,13 +67,17 @@ public class RESTServlet extends HttpServlet {
         try {
             long startNano = System.nanoTime();
             RESTService.instance().onNewrequest();
-            RESTResponse restResponse = validateAndExecuteRequest(request);
-            if (restResponse.getCode().getCode() >= 300) {
+            RESTResponse restResponse = validateAndExecuteRequest(request, response);
+            if (restResponse == null) {
+                // Response was streamed by the command
+                RESTService.instance().onRequestSuccess(startNano);
+            } else if (restResponse.getCode().getCode() >= 300) {
                 RESTService.instance().onRequestRejected(restResponse.getCode().toString());
+                sendResponse(response, restResponse);
             } else {
                 RESTService.instance().onRequestSuccess(startNano);
+                sendResponse(response, restResponse);
             }
-            sendResponse(response, restResponse);
             m_logger.debug("Elapsed time: {} millis; request={}",
                            (float)(System.nanoTime() - startNano)/1000000, getFullURI(request));
         } catch (IllegalArgumentException e) {
@@ -167,7 +171,9 @@ public class RESTServlet extends HttpServlet {
     }
     
     // Execute the given request and return a RESTResponse or throw an appropriate error.
-    private RESTResponse validateAndExecuteRequest(HttpServletRequest request) {
+    // Null is returned if the command has written the response itself.
+    private RESTResponse validateAndExecuteRequest(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
         Map<String, String> variableMap = new HashMap<String, String>();
         String query = extractQueryParam(request, variableMap);
         Tenant tenant = getTenant(variableMap);
@@ -193,6 +199,12 @@ public class RESTServlet extends HttpServlet {
         
         RESTCallback callback = cmd.getNewCallback();
         callback.setRequest(new RESTRequest(tenant, appDef, request, variableMap));
+        if (callback instanceof StreamOutCallback) {
+            response.setStatus(HttpCode.OK.getCode());
+            response.setContentType(callback.getRequest().getOutputContentType().toString());
+            ((StreamOutCallback)callback).invokeStreamOut(response.getOutputStream());
+            return null;
+        }
         return callback.invoke();
     }
     
@@ -269,6 +281,12 @@ public class RESTServlet extends HttpServlet {
     // and/or additional response headers. If the body is non-empty, we automatically add
     // the Content-Length and a Content-Type of Text/plain.
     private void sendResponse(HttpServletResponse servletResponse, RESTResponse restResponse) throws IOException {
+        if (servletResponse.isCommitted()) {
+            // A streamed response failed after part of it was sent: the error can only
+            // be logged, and the client sees a truncated response.
+            return;
+        }
+        servletResponse.reset();
         servletResponse.setStatus(restResponse.getCode().getCode());
         
         Map<String, String> responseHeaders = restResponse.getHeaders();
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.service.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.dell.doradus.common.HttpCode;
+import com.dell.doradus.common.HttpDefs;
+import com.dell.doradus.common.RESTResponse;
+
+/**
+ * Specializes the {@link RESTCallback} class for REST commands that expect no input
+ * entity and write their output directly to the response stream, so that large results
+ * do not have to be held in memory before they are sent. {@link RESTServlet} sets the
+ * status and content type and then calls {@link #invokeStreamOut(OutputStream)}.
+ * Exceptions thrown before the response has been committed are reported to the client
+ * as usual; after that the client receives a truncated response.
+ * 
+ * @see UNodeOutCallback
+ */
+public abstract class StreamOutCallback extends RESTCallback {
+
+    // Used when the command is not invoked by RESTServlet: the output is buffered.
+    @Override
+    public final RESTResponse invoke() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        invokeStreamOut(stream);
+        Map<String, String> headers = new HashMap<>();
+        headers.put(HttpDefs.CONTENT_TYPE, m_request.getOutputContentType().toString());
+        return new RESTResponse(HttpCode.OK, stream.toByteArray(), headers);
+    }   // invoke
+
+    /**
+     * The subclass must implement this method and either throw an exception or write
+     * the response entity, in the format given by the request's output content type, to
+     * the given stream.
+     * 
+     * @param stream    Stream to which the response entity is written. It is not closed.
+     */
+    public abstract void invokeStreamOut(OutputStream stream);
+    
+}   // abstract class StreamOutCallback
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dell.doradus.olap.io.GZipCodec;
+import com.dell.doradus.olap.io.ICodec;
+import com.dell.doradus.olap.io.LZ4Codec;
+
+/**
+ * Compares OLAP chunk codecs on real segment data. Arguments are files or directories
+ * containing uncompressed OLAP files (for example, shard files copied out with
+ * VInputStream); every file is split into 1 MB chunks, the same way VDirectory stores
+ * them, and each chunk is compressed and decompressed by every codec.
+ * <pre>
+ *      CodecBenchmark [-iterations N] path...
+ * </pre>
+ * For every codec the compression ratio and compress/decompress throughput in MB/s
+ * of uncompressed data are printed.
+ */
+public class CodecBenchmark {
+	private static final int CHUNK_SIZE = 1024 * 1024;
+
+	public static void main(String[] args) throws IOException {
+		int iterations = 5;
+		List<byte[]> chunks = new ArrayList<>();
+		for(int i = 0; i < args.length; i++) {
+			if("-iterations".equals(args[i])) iterations = Integer.parseInt(args[++i]);
+			else readChunks(new File(args[i]), chunks);
+		}
+		if(chunks.size() == 0) {
+			System.out.println("Usage: CodecBenchmark [-iterations N] path...");
+			return;
+		}
+		long totalLength = 0;
+		for(byte[] chunk: chunks) totalLength += chunk.length;
+		System.out.println(String.format("%d chunks, %d bytes", chunks.size(), totalLength));
+		
+		ICodec[] codecs = new ICodec[] {
+				new GZipCodec(-1), new LZ4Codec(false), new LZ4Codec(true) };
+		for(ICodec codec: codecs) {
+			run(codec, chunks, totalLength, iterations);
+		}
+	}
+	
+	private static void run(ICodec codec, List<byte[]> chunks, long totalLength, int iterations) {
+		List<byte[]> compressed = new ArrayList<>(chunks.size());
+		long compressedLength = 0;
+		long start = System.nanoTime();
+		for(byte[] chunk: chunks) {
+			byte[] data = codec.compress(chunk);
+			compressedLength += data.length;
+			compressed.add(data);
+		}
+		long compressTime = System.nanoTime() - start;
+		
+		// first pass verifies the round trip and warms up the decoder
+		for(int i = 0; i < chunks.size(); i++) {
+			byte[] data = codec.uncompress(compressed.get(i));
+			if(!java.util.Arrays.equals(data, chunks.get(i))) {
+				throw new RuntimeException("Codec " + codec.getName() + " failed on chunk " + i);
+			}
+		}
+		start = System.nanoTime();
+		for(int iter = 0; iter < iterations; iter++) {
+			for(byte[] data: compressed) codec.uncompress(data);
+		}
+		long uncompressTime = (System.nanoTime() - start) / iterations;
+		
+		System.out.println(String.format("%-6s ratio %5.2f  compress %8.1f MB/s  uncompress %8.1f MB/s",
+				codec.getName(),
+				1.0 * totalLength / compressedLength,
+				mbPerSec(totalLength, compressTime),
+				mbPerSec(totalLength, uncompressTime)));
+	}
+	
+	private static double mbPerSec(long length, long nanos) {
+		return length / 1048576.0 / Math.max(nanos, 1) * 1e9;
+	}
+	
+	private static void readChunks(File file, List<byte[]> chunks) throws IOException {
+		if(file.isDirectory()) {
+			File[] children = file.listFiles();
+			if(children == null) return;
+			for(File child: children) readChunks(child, chunks);
+			return;
+		}
+		byte[] data = Files.readAllBytes(file.toPath());
+		for(int offset = 0; offset < data.length; offset += CHUNK_SIZE) {
+			int length = Math.min(CHUNK_SIZE, data.length - offset);
+			byte[] chunk = new byte[length];
+			System.arraycopy(data, offset, chunk, 0, length);
+			chunks.add(chunk);
+		}
+	}
+	
+}
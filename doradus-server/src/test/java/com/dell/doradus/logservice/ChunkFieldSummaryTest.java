@@ -0,0 +1,216 @@
+package com.dell.doradus.logservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.common.Utils;
+import com.dell.doradus.core.ServerParams;
+import com.dell.doradus.logservice.search.filter.FilterField;
+import com.dell.doradus.logservice.search.filter.FilterPattern;
+import com.dell.doradus.logservice.store.BatchWriter;
+import com.dell.doradus.olap.OlapBatch;
+import com.dell.doradus.olap.OlapDocument;
+import com.dell.doradus.olap.collections.MemoryStream;
+import com.dell.doradus.olap.io.BSTR;
+
+public class ChunkFieldSummaryTest {
+
+    @BeforeClass
+    public static void loadConfig() throws Exception {
+        // chunks are compressed with the OLAP compressor, which reads its settings
+        ServerParams.load(new String[0]);
+    }
+
+    private static ChunkFieldSummary summary(String field, List<String> values) {
+        List<BSTR> sorted = new ArrayList<>();
+        for(String value: values) sorted.add(new BSTR(value));
+        Collections.sort(sorted);
+        ChunkFieldSummary summary = new ChunkFieldSummary(new BSTR(field), sorted.size());
+        for(BSTR value: sorted) summary.add(value);
+        return summary;
+    }
+
+    private static List<String> values(String prefix, int count) {
+        List<String> values = new ArrayList<>();
+        for(int i = 0; i < count; i++) values.add(prefix + i);
+        return values;
+    }
+
+    @Test
+    public void testMinMaxAndCount() {
+        ChunkFieldSummary summary = summary("f", values("v", 100));
+        assertEquals("f", summary.getField().toString());
+        assertEquals(100, summary.getDistinctCount());
+        assertEquals("v0", summary.getMin().toString());
+        assertEquals("v99", summary.getMax().toString());
+    }
+
+    @Test
+    public void testBloomHasNoFalseNegatives() {
+        List<String> values = values("Value-", 500);
+        ChunkFieldSummary summary = summary("f", values);
+        for(String value: values) {
+            // values are summarized lower-cased
+            assertTrue(value, summary.mightContain(Utils.toBytes(value.toLowerCase())));
+        }
+    }
+
+    @Test
+    public void testBloomFalsePositiveRate() {
+        ChunkFieldSummary summary = summary("f", values("value-", 500));
+        int falsePositives = 0;
+        for(int i = 0; i < 10000; i++) {
+            if(summary.mightContain(Utils.toBytes("other-" + i))) falsePositives++;
+        }
+        // 10 bits per value gives about 1% false positives
+        assertTrue("false positives: " + falsePositives, falsePositives < 300);
+    }
+
+    @Test
+    public void testNoBloomForManyValues() {
+        ChunkFieldSummary summary = summary("f", values("v", ChunkFieldSummary.MAX_BLOOM_BITS / 4 + 1));
+        assertTrue(summary.mightContain(Utils.toBytes("absent")));
+        // min and max still prune
+        assertFalse(summary.mightContainRange(new BSTR("w"), null));
+    }
+
+    @Test
+    public void testEmptySummary() {
+        ChunkFieldSummary summary = summary("f", new ArrayList<String>());
+        assertFalse(summary.mightContain(Utils.toBytes("a")));
+        assertFalse(summary.mightContainRange(null, null));
+    }
+
+    @Test
+    public void testRange() {
+        ChunkFieldSummary summary = summary("f", values("m", 10));
+        assertTrue(summary.mightContainRange(null, null));
+        assertTrue(summary.mightContainRange(new BSTR("m5"), new BSTR("m6")));
+        assertTrue(summary.mightContainRange(new BSTR("a"), new BSTR("z")));
+        assertTrue(summary.mightContainRange(new BSTR("m9"), null));
+        assertTrue(summary.mightContainRange(null, new BSTR("m0")));
+        assertFalse(summary.mightContainRange(new BSTR("n"), null));
+        assertFalse(summary.mightContainRange(null, new BSTR("l")));
+        assertFalse(summary.mightContainRange(new BSTR("a"), new BSTR("b")));
+    }
+
+    @Test
+    public void testTruncatedMaxIsNotAnUpperBound() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < ChunkFieldSummary.MAX_VALUE_LENGTH; i++) sb.append('x');
+        String prefix = sb.toString();
+        List<String> values = new ArrayList<>();
+        values.add("a");
+        values.add(prefix + "zzz");
+        ChunkFieldSummary summary = summary("f", values);
+        assertEquals(ChunkFieldSummary.MAX_VALUE_LENGTH, summary.getMax().length);
+        // the real maximum is above the truncated one, so it must not be pruned
+        assertTrue(summary.mightContainRange(new BSTR(prefix + "zz"), null));
+        // a truncated min is a prefix of the real one and still a lower bound
+        values.set(0, prefix + "b");
+        summary = summary("f", values);
+        assertFalse(summary.mightContainRange(null, new BSTR(prefix.substring(1))));
+    }
+
+    @Test
+    public void testWriteRead() {
+        ChunkFieldSummary summary = summary("field", values("v", 200));
+        MemoryStream ms = new MemoryStream();
+        summary.write(ms);
+        ChunkFieldSummary read = ChunkFieldSummary.read(new MemoryStream(ms.toArray()));
+        assertEquals("field", read.getField().toString());
+        assertEquals(200, read.getDistinctCount());
+        assertEquals(summary.getMin(), read.getMin());
+        assertEquals(summary.getMax(), read.getMax());
+        for(int i = 0; i < 200; i++) {
+            assertTrue(read.mightContain(Utils.toBytes("v" + i)));
+        }
+        for(int i = 0; i < 1000; i++) {
+            byte[] value = Utils.toBytes("other-" + i);
+            assertEquals(summary.mightContain(value), read.mightContain(value));
+        }
+    }
+
+    private static ChunkInfo writeChunk(OlapBatch batch) {
+        BatchWriter writer = new BatchWriter();
+        writer.writeChunk(batch);
+        ChunkInfo info = new ChunkInfo();
+        info.set("20150101", "chunk", writer.getWriter());
+        ChunkInfo read = new ChunkInfo();
+        read.set("20150101", "chunk", info.getByteData());
+        return read;
+    }
+
+    @Test
+    public void testChunkInfoCarriesSummaries() {
+        OlapBatch batch = new OlapBatch();
+        for(int i = 0; i < 100; i++) {
+            OlapDocument doc = batch.addDoc();
+            doc.setId(String.format("2015-01-01 10:%02d:00", i % 60));
+            doc.addField("Level", i % 2 == 0 ? "Info" : "Error");
+            doc.addField("Host", "host" + (i % 10));
+        }
+        ChunkInfo info = writeChunk(batch);
+        assertTrue(info.hasFieldSummaries());
+        assertEquals(100, info.getEventsCount());
+        ChunkFieldSummary level = info.getFieldSummary(new BSTR("Level"));
+        assertNotNull(level);
+        assertEquals(2, level.getDistinctCount());
+        assertEquals("Error", level.getMin().toString());
+        assertEquals("Info", level.getMax().toString());
+        assertEquals(10, info.getFieldSummary(new BSTR("Host")).getDistinctCount());
+        assertNull(info.getFieldSummary(new BSTR("Missing")));
+
+        // a copy keeps the summaries through another write
+        ChunkInfo copy = new ChunkInfo();
+        copy.set("20150101", "chunk", new ChunkInfo(info).getByteData());
+        assertEquals(10, copy.getFieldSummary(new BSTR("Host")).getDistinctCount());
+    }
+
+    @Test
+    public void testFilterPrunesChunks() {
+        OlapBatch batch = new OlapBatch();
+        for(int i = 0; i < 10; i++) {
+            OlapDocument doc = batch.addDoc();
+            doc.setId("2015-01-01 10:00:00");
+            doc.addField("Level", "Info");
+        }
+        ChunkInfo info = writeChunk(batch);
+        assertEquals(0, new FilterField("Level", new FilterPattern("info")).check(info));
+        assertEquals(0, new FilterField("Level", new FilterPattern("INFO")).check(info));
+        assertEquals(-1, new FilterField("Level", new FilterPattern("Error")).check(info));
+        // wildcards are never pruned
+        assertEquals(0, new FilterField("Level", new FilterPattern("Err*")).check(info));
+        // documents without the field have an empty value, so the chunk is not pruned
+        assertEquals(0, new FilterField("Host", new FilterPattern("x")).check(info));
+    }
+
+    @Test
+    public void testVersion1ChunkInfoHasNoSummaries() {
+        MemoryStream ms = new MemoryStream();
+        ms.writeByte((byte)1);
+        ms.writeInt(5);
+        ms.writeLong(1000);
+        ms.writeLong(2000);
+        ChunkInfo info = new ChunkInfo();
+        info.set("20150101", "chunk", ms.toArray());
+        assertFalse(info.hasFieldSummaries());
+        assertEquals(5, info.getEventsCount());
+        assertEquals(1000, info.getMinTimestamp());
+        assertEquals(2000, info.getMaxTimestamp());
+        assertNull(info.getFieldSummary(new BSTR("Level")));
+        assertEquals(0, new FilterField("Level", new FilterPattern("Error")).check(info));
+        // rewriting keeps version 1
+        assertEquals(1, info.getByteData()[0]);
+    }
+}
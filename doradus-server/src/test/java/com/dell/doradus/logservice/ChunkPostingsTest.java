@@ -0,0 +1,133 @@
+package com.dell.doradus.logservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.core.ServerParams;
+import com.dell.doradus.logservice.search.filter.FilterField;
+import com.dell.doradus.logservice.search.filter.FilterPattern;
+import com.dell.doradus.logservice.search.filter.IFilter;
+import com.dell.doradus.logservice.store.BatchWriter;
+import com.dell.doradus.olap.OlapBatch;
+import com.dell.doradus.olap.OlapDocument;
+import com.dell.doradus.olap.io.BSTR;
+import com.dell.doradus.olap.store.BitVector;
+
+public class ChunkPostingsTest {
+
+    @BeforeClass
+    public static void loadConfig() throws Exception {
+        // chunks are compressed with the OLAP compressor, which reads its settings
+        ServerParams.load(new String[0]);
+    }
+
+    // events with a high-cardinality "User" field, missing in some events, and a "Level" field
+    private static OlapBatch batch(int size) {
+        Random random = new Random(size);
+        OlapBatch batch = new OlapBatch();
+        for(int i = 0; i < size; i++) {
+            OlapDocument doc = batch.addDoc();
+            doc.setId(String.format("2015-01-01 10:%02d:%02d", i / 60 % 60, i % 60));
+            if(random.nextInt(10) > 0) doc.addField("User", "user" + random.nextInt(size / 3 + 1));
+            doc.addField("Level", random.nextInt(10) == 0 ? "ERROR" : "INFO");
+        }
+        return batch;
+    }
+
+    private static ChunkReader read(OlapBatch batch, String... postingsFields) {
+        BatchWriter writer = new BatchWriter();
+        Set<BSTR> fields = new HashSet<>();
+        for(String field: postingsFields) fields.add(new BSTR(field));
+        writer.getWriter().setPostingsFields(fields);
+        byte[] data = writer.writeChunk(batch);
+        assertEquals(postingsFields.length == 0 ? 1 : 2, data[0]);
+        ChunkReader reader = new ChunkReader();
+        reader.read(data);
+        return reader;
+    }
+
+    private static ChunkField field(ChunkReader reader, String name) {
+        return reader.getField(reader.getFieldIndex(new BSTR(name)));
+    }
+
+    @Test
+    public void testPostingsMatchIndexes() {
+        for(int size: new int[] { 1, 9, 1000, 5000 }) {
+            ChunkReader reader = read(batch(size), "User");
+            ChunkField user = field(reader, "User");
+            assertTrue(user.hasPostings());
+            assertFalse(field(reader, "Level").hasPostings());
+            int[] indexes = user.getIndexes();
+            int total = 0;
+            for(int value = 0; value < user.getValuesCount(); value++) {
+                BitVector docs = new BitVector(reader.size());
+                user.getPostings(value, docs);
+                for(int doc = 0; doc < reader.size(); doc++) {
+                    assertEquals("size " + size + " value " + value + " doc " + doc, indexes[doc] == value, docs.get(doc));
+                }
+                int count = docs.bitsSet();
+                // one byte per document for the deltas of a dense list
+                assertTrue(user.getPostingsSize(value) >= count);
+                total += count;
+            }
+            assertEquals(reader.size(), total);
+        }
+    }
+
+    @Test
+    public void testVersion1ChunksHaveNoPostings() {
+        ChunkReader reader = read(batch(100));
+        assertFalse(field(reader, "User").hasPostings());
+        assertFalse(field(reader, "Level").hasPostings());
+    }
+
+    @Test
+    public void testVersion2ReadsLikeVersion1() {
+        OlapBatch batch = batch(777);
+        ChunkReader v1 = read(batch);
+        ChunkReader v2 = read(batch, "User", "Level");
+        assertEquals(v1.size(), v2.size());
+        assertEquals(v1.fieldsCount(), v2.fieldsCount());
+        for(int doc = 0; doc < v1.size(); doc++) {
+            assertEquals(v1.getTimestamp(doc), v2.getTimestamp(doc));
+            for(int f = 0; f < v1.fieldsCount(); f++) {
+                assertEquals(v1.getFieldValue(doc, f), v2.getFieldValue(doc, f));
+            }
+        }
+    }
+
+    @Test
+    public void testFilterUsesPostings() {
+        OlapBatch batch = batch(3000);
+        ChunkReader v1 = read(batch);
+        ChunkReader v2 = read(batch, "User");
+        // rare values are read from the postings, frequent ones from the indexes
+        for(String value: new String[] { "user1", "user17", "user*1", "", "nobody" }) {
+            IFilter filter1 = new FilterField("User", new FilterPattern(value));
+            IFilter filter2 = new FilterField("User", new FilterPattern(value));
+            BitVector expected = new BitVector(v1.size());
+            BitVector actual = new BitVector(v2.size());
+            filter1.check(v1, expected);
+            filter2.check(v2, actual);
+            assertEquals(value, expected.bitsSet(), actual.bitsSet());
+            for(int doc = 0; doc < v1.size(); doc++) {
+                assertEquals(value + " doc " + doc, expected.get(doc), actual.get(doc));
+            }
+        }
+    }
+
+    @Test
+    public void testPostingsFieldMissingFromChunk() {
+        ChunkReader reader = read(batch(50), "Missing");
+        assertFalse(field(reader, "User").hasPostings());
+        assertEquals(-1, reader.getFieldIndex(new BSTR("Missing")));
+    }
+}
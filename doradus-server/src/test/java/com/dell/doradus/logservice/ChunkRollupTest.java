@@ -0,0 +1,190 @@
+package com.dell.doradus.logservice;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.common.TenantDefinition;
+import com.dell.doradus.core.ServerParams;
+import com.dell.doradus.logservice.search.AggregateCollector;
+import com.dell.doradus.logservice.search.AggregateCollectorField;
+import com.dell.doradus.logservice.search.AggregateCollectorTimestamp;
+import com.dell.doradus.logservice.search.filter.FilterAll;
+import com.dell.doradus.logservice.store.BatchWriter;
+import com.dell.doradus.olap.OlapBatch;
+import com.dell.doradus.olap.OlapDocument;
+import com.dell.doradus.olap.aggregate.AggregationResult;
+import com.dell.doradus.olap.io.BSTR;
+import com.dell.doradus.service.db.Tenant;
+
+public class ChunkRollupTest {
+    private static Tenant TENANT;
+
+    @BeforeClass
+    public static void loadConfig() throws Exception {
+        // chunks are compressed with the OLAP compressor, which reads its settings
+        ServerParams.load(new String[0]);
+        TenantDefinition tenantDef = new TenantDefinition();
+        tenantDef.setName("test");
+        TENANT = new Tenant(tenantDef);
+    }
+
+    private static List<BSTR> fields(String... names) {
+        List<BSTR> fields = new ArrayList<>();
+        for(String name: names) fields.add(new BSTR(name));
+        return fields;
+    }
+
+    // events of one day with random hours, levels and users; some events have no user
+    private static OlapBatch batch(int size, long seed) {
+        Random random = new Random(seed);
+        OlapBatch batch = new OlapBatch();
+        for(int i = 0; i < size; i++) {
+            int hour = random.nextInt(24);
+            int minute = random.nextInt(60);
+            OlapDocument doc = batch.addDoc();
+            doc.setId(String.format("2015-01-01 %02d:%02d:00", hour, minute));
+            doc.addField("Level", random.nextInt(10) == 0 ? "ERROR" : "INFO");
+            if(random.nextInt(5) > 0) doc.addField("User", "u" + random.nextInt(20));
+        }
+        return batch;
+    }
+
+    private static byte[] chunk(int size, long seed) {
+        return new BatchWriter().writeChunk(batch(size, seed));
+    }
+
+    private static ChunkReader reader(byte[] data) {
+        ChunkReader reader = new ChunkReader();
+        reader.read(data);
+        return reader;
+    }
+
+    @Test
+    public void testCounts() {
+        ChunkReader reader = reader(chunk(1000, 1));
+        ChunkRollup rollup = ChunkRollup.create(reader, fields("Level", "User"));
+        assertEquals(1000, rollup.getEventsCount());
+
+        Map<Long, Integer> buckets = new HashMap<>();
+        for(int i = 0; i < reader.size(); i++) {
+            long bucket = reader.getTimestamp(i) / ChunkRollup.BUCKET;
+            Integer count = buckets.get(bucket);
+            buckets.put(bucket, count == null ? 1 : count + 1);
+        }
+        assertEquals(buckets.size(), rollup.getBucketsCount());
+        int total = 0;
+        for(int i = 0; i < rollup.getBucketsCount(); i++) {
+            if(i > 0) assertTrue(rollup.getBucket(i) > rollup.getBucket(i - 1));
+            assertEquals(buckets.get(rollup.getBucket(i)).intValue(), rollup.getBucketCount(i));
+            total += rollup.getBucketCount(i);
+        }
+        assertEquals(1000, total);
+
+        int user = rollup.getFieldIndex(new BSTR("User"));
+        int userField = reader.getFieldIndex(new BSTR("User"));
+        Map<String, Integer> values = new HashMap<>();
+        for(int i = 0; i < reader.size(); i++) {
+            String value = reader.getFieldValue(i, userField);
+            Integer count = values.get(value);
+            values.put(value, count == null ? 1 : count + 1);
+        }
+        // events without the field are counted under the empty value
+        assertTrue(values.containsKey(""));
+        assertEquals(values.size(), rollup.getValuesCount(user));
+        for(int i = 0; i < rollup.getValuesCount(user); i++) {
+            String value = rollup.getValue(user, i).toString();
+            assertEquals(value, values.get(value).intValue(), rollup.getValueCount(user, i));
+        }
+    }
+
+    @Test
+    public void testMissingField() {
+        ChunkRollup rollup = ChunkRollup.create(reader(chunk(100, 2)), fields("Host"));
+        int host = rollup.getFieldIndex(new BSTR("Host"));
+        assertEquals(0, host);
+        assertEquals(0, rollup.getValuesCount(host));
+        assertEquals(-1, rollup.getFieldIndex(new BSTR("Level")));
+        assertTrue(rollup.hasFields(fields("Host")));
+        assertFalse(rollup.hasFields(fields("Host", "Level")));
+    }
+
+    @Test
+    public void testWriteRead() {
+        ChunkRollup rollup = ChunkRollup.create(reader(chunk(500, 3)), fields("Level", "User"));
+        ChunkRollup read = ChunkRollup.read(rollup.getByteData());
+        assertEquals(rollup.getEventsCount(), read.getEventsCount());
+        assertEquals(rollup.getBucketsCount(), read.getBucketsCount());
+        for(int i = 0; i < rollup.getBucketsCount(); i++) {
+            assertEquals(rollup.getBucket(i), read.getBucket(i));
+            assertEquals(rollup.getBucketCount(i), read.getBucketCount(i));
+        }
+        for(String field: new String[] { "Level", "User" }) {
+            int f = rollup.getFieldIndex(new BSTR(field));
+            assertEquals(f, read.getFieldIndex(new BSTR(field)));
+            assertEquals(rollup.getValuesCount(f), read.getValuesCount(f));
+            for(int i = 0; i < rollup.getValuesCount(f); i++) {
+                assertEquals(rollup.getValue(f, i), read.getValue(f, i));
+                assertEquals(rollup.getValueCount(f, i), read.getValueCount(f, i));
+            }
+        }
+        assertArrayEquals(rollup.getByteData(), read.getByteData());
+    }
+
+    private static Map<String, Long> groups(AggregationResult result) {
+        Map<String, Long> groups = new HashMap<>();
+        for(AggregationResult.AggregationGroup group: result.groups) {
+            Long count = groups.get(group.name);
+            long metric = Long.parseLong(group.metricSet.values[0].toString());
+            groups.put(group.name, count == null ? metric : count + metric);
+        }
+        return groups;
+    }
+
+    // aggregating rollups gives the same result as scanning the chunks
+    private static void assertSameAsScan(AggregateCollector scan, AggregateCollector rolled, List<BSTR> fields) {
+        scan.setContext(null, TENANT, "app", "table", null);
+        rolled.setContext(null, TENANT, "app", "table", null);
+        assertTrue(rolled.supportsRollups());
+        for(int c = 0; c < 5; c++) {
+            BatchWriter writer = new BatchWriter();
+            byte[] data = writer.writeChunk(batch(300 + c, 10 + c));
+            ChunkInfo info = new ChunkInfo();
+            info.set("20150101", "chunk" + c, writer.getWriter());
+            scan.addChunk(info, data);
+            ChunkRollup rollup = ChunkRollup.read(ChunkRollup.create(reader(data), fields).getByteData());
+            assertTrue(rolled.addRollup(rollup));
+        }
+        AggregationResult expected = scan.getResult();
+        AggregationResult actual = rolled.getResult();
+        assertEquals(expected.documentsCount, actual.documentsCount);
+        assertEquals(groups(expected), groups(actual));
+    }
+
+    @Test
+    public void testFieldAggregate() {
+        assertSameAsScan(new AggregateCollectorField(new FilterAll(), "User"),
+                new AggregateCollectorField(new FilterAll(), "User"), fields("User"));
+        AggregateCollectorField notRolled = new AggregateCollectorField(new FilterAll(), "Level");
+        assertFalse(notRolled.addRollup(ChunkRollup.create(reader(chunk(10, 4)), fields("User"))));
+    }
+
+    @Test
+    public void testTimestampAggregate() {
+        for(String truncate: new String[] { "HOUR", "DAY" }) {
+            assertSameAsScan(new AggregateCollectorTimestamp(new FilterAll(), truncate, null),
+                    new AggregateCollectorTimestamp(new FilterAll(), truncate, null), fields());
+        }
+        assertFalse(new AggregateCollectorTimestamp(new FilterAll(), "MINUTE", null).supportsRollups());
+    }
+}
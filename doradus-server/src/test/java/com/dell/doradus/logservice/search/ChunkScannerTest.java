@@ -0,0 +1,153 @@
+package com.dell.doradus.logservice.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dell.doradus.logservice.ChunkInfo;
+import com.dell.doradus.olap.collections.MemoryStream;
+
+public class ChunkScannerTest {
+    private static final int THREADS = 4;
+    private ExecutorService m_executor;
+
+    @Before
+    public void setUp() {
+        m_executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        m_executor.shutdownNow();
+    }
+
+    private static class CountingCollector implements IChunkCollector {
+        int count;
+        long timestamps;
+        @Override public void addChunk(ChunkInfo info, byte[] data) {
+            count++;
+            timestamps += info.getMinTimestamp();
+        }
+    }
+
+    private static class FailingCollector implements IChunkCollector {
+        @Override public void addChunk(ChunkInfo info, byte[] data) {
+            throw new IllegalStateException("collector failed");
+        }
+    }
+
+    private static ChunkInfo chunk(String partition, long timestamp) {
+        MemoryStream ms = new MemoryStream();
+        ms.writeByte((byte)1);
+        ms.writeInt(1);
+        ms.writeLong(timestamp);
+        ms.writeLong(timestamp);
+        ChunkInfo info = new ChunkInfo();
+        info.set(partition, "chunk" + timestamp, ms.toArray());
+        return info;
+    }
+
+    private static List<CountingCollector> collectors(int count) {
+        List<CountingCollector> collectors = new ArrayList<>();
+        for(int i = 0; i < count; i++) collectors.add(new CountingCollector());
+        return collectors;
+    }
+
+    // true if every pool thread is free again: the tasks can only finish by running at the same time
+    private boolean poolIsFree() throws Exception {
+        final CountDownLatch running = new CountDownLatch(THREADS);
+        for(int i = 0; i < THREADS; i++) {
+            m_executor.execute(new Runnable() {
+                @Override public void run() {
+                    running.countDown();
+                    try {
+                        running.await();
+                    } catch (InterruptedException e) {
+                        // the pool is shut down
+                    }
+                }
+            });
+        }
+        return running.await(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testParallelScanProcessesEveryChunk() throws Exception {
+        List<CountingCollector> collectors = collectors(THREADS);
+        ChunkScanner scanner = new ChunkScanner(null, null, "app", "table", m_executor, collectors, null, 0);
+        long expected = 0;
+        try {
+            for(int i = 0; i < 10000; i++) {
+                scanner.add(chunk("2015010" + (i % 3), i), false);
+                expected += i;
+            }
+            scanner.finish();
+        } finally {
+            scanner.close();
+        }
+        int count = 0;
+        long timestamps = 0;
+        for(CountingCollector collector: collectors) {
+            count += collector.count;
+            timestamps += collector.timestamps;
+        }
+        assertEquals(10000, count);
+        assertEquals(expected, timestamps);
+        assertTrue(poolIsFree());
+    }
+
+    @Test
+    public void testScanOnCallingThread() {
+        List<CountingCollector> collectors = collectors(1);
+        ChunkScanner scanner = new ChunkScanner(null, null, "app", "table", null, collectors, null, 0);
+        for(int i = 0; i < 100; i++) scanner.add(chunk("20150101", i), false);
+        scanner.finish();
+        scanner.close();
+        assertEquals(100, collectors.get(0).count);
+    }
+
+    @Test
+    public void testCloseWithoutFinishStopsWorkers() throws Exception {
+        List<CountingCollector> collectors = collectors(THREADS);
+        ChunkScanner scanner = new ChunkScanner(null, null, "app", "table", m_executor, collectors, null, 0);
+        try {
+            for(int i = 0; i < 100; i++) scanner.add(chunk("20150101", i), false);
+            throw new IllegalStateException("listing chunks failed");
+        } catch(IllegalStateException e) {
+            // expected
+        } finally {
+            scanner.close();
+        }
+        // without close() the workers would wait for more chunks forever
+        assertTrue(poolIsFree());
+    }
+
+    @Test
+    public void testCollectorFailureIsReported() throws Exception {
+        List<IChunkCollector> collectors = new ArrayList<>();
+        collectors.add(new FailingCollector());
+        for(int i = 1; i < THREADS; i++) collectors.add(new CountingCollector());
+        ChunkScanner scanner = new ChunkScanner(null, null, "app", "table", m_executor, collectors, null, 0);
+        try {
+            for(int i = 0; i < 10000; i++) scanner.add(chunk("20150101", i), false);
+            scanner.finish();
+            fail("finish should report the failure");
+        } catch(IllegalStateException e) {
+            assertEquals("collector failed", e.getMessage());
+        } finally {
+            scanner.close();
+        }
+        assertTrue(poolIsFree());
+    }
+}
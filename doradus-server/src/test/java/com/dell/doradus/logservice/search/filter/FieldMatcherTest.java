@@ -0,0 +1,162 @@
+package com.dell.doradus.logservice.search.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.core.ServerParams;
+import com.dell.doradus.logservice.ChunkField;
+import com.dell.doradus.logservice.ChunkReader;
+import com.dell.doradus.logservice.store.BatchWriter;
+import com.dell.doradus.olap.OlapBatch;
+import com.dell.doradus.olap.OlapDocument;
+import com.dell.doradus.olap.store.BitVector;
+
+public class FieldMatcherTest {
+
+    @BeforeClass
+    public static void loadConfig() throws Exception {
+        // chunks are compressed with the OLAP compressor, which reads its settings
+        ServerParams.load(new String[0]);
+    }
+
+    // chunk with one field "F" having {values} distinct values; some documents do not have the field
+    private static ChunkReader chunk(int docs, int values, long seed) {
+        Random random = new Random(seed);
+        OlapBatch batch = new OlapBatch();
+        for(int i = 0; i < docs; i++) {
+            OlapDocument doc = batch.addDoc();
+            doc.setId("2015-01-01 10:00:00");
+            if(random.nextInt(10) == 0) continue;
+            doc.addField("F", "Value" + random.nextInt(values));
+        }
+        ChunkReader reader = new ChunkReader();
+        reader.read(new BatchWriter().writeChunk(batch));
+        return reader;
+    }
+
+    private static void assertMatches(ChunkReader reader, Pattern expected, FieldMatcher matcher) {
+        ChunkField field = reader.getField(0);
+        BitVector docs = new BitVector(reader.size());
+        matcher.check(field, docs);
+        for(int doc = 0; doc < reader.size(); doc++) {
+            String value = reader.getFieldValue(doc, 0);
+            assertEquals("doc " + doc + ": " + value, expected.matcher(value).matches(), docs.get(doc));
+        }
+    }
+
+    @Test
+    public void testMapsMatchedValuesToDocuments() {
+        // sizes that are not multiples of eight exercise the tail of the byte mapping
+        for(int docs: new int[] { 1, 7, 8, 9, 100, 1003 }) {
+            ChunkReader reader = chunk(docs, 50, docs);
+            FieldMatcher matcher = new FieldMatcher(new FilterRegex("Value1.*"));
+            assertMatches(reader, Pattern.compile("Value1.*"), matcher);
+        }
+    }
+
+    @Test
+    public void testReusesScratchBuffersAcrossChunks() {
+        FieldMatcher matcher = new FieldMatcher(new FilterPatternSlow("Value2*"));
+        Pattern expected = Pattern.compile("Value2.*");
+        // dictionaries grow and shrink, so stale bits of a larger dictionary must not leak
+        for(int values: new int[] { 5, 500, 30, 2000, 3, 100 }) {
+            assertMatches(chunk(777, values, values), expected, matcher);
+        }
+    }
+
+    @Test
+    public void testNoValueMatches() {
+        ChunkReader reader = chunk(100, 20, 1);
+        BitVector docs = new BitVector(reader.size());
+        new FieldMatcher(new FilterRegex("Other.*")).check(reader.getField(0), docs);
+        assertEquals(0, docs.bitsSet());
+    }
+
+    @Test
+    public void testEveryValueMatches() {
+        ChunkReader reader = chunk(100, 20, 1);
+        BitVector docs = new BitVector(reader.size());
+        new FieldMatcher(new FilterRegex("(Value.*)?")).check(reader.getField(0), docs);
+        // documents without the field have the empty value, which matches as well
+        assertTrue(docs.isAllBitsSet());
+    }
+
+    @Test
+    public void testAddsToExistingDocuments() {
+        ChunkReader reader = chunk(200, 20, 2);
+        BitVector docs = new BitVector(reader.size());
+        docs.set(0);
+        docs.set(199);
+        new FieldMatcher(new FilterRegex("Value3")).check(reader.getField(0), docs);
+        assertTrue(docs.get(0));
+        assertTrue(docs.get(199));
+        for(int doc = 1; doc < 199; doc++) {
+            assertEquals("Value3".equals(reader.getFieldValue(doc, 0)), docs.get(doc));
+        }
+    }
+
+    @Test
+    public void testRegexAndSlowPatternRememberResults() {
+        FilterRegex regex = new FilterRegex("Value(1|2)");
+        FilterPatternSlow pattern = new FilterPatternSlow("value?");
+        Pattern expectedRegex = Pattern.compile("Value(1|2)");
+        Pattern expectedPattern = Pattern.compile("Value.");
+        FieldMatcher regexMatcher = new FieldMatcher(regex);
+        FieldMatcher patternMatcher = new FieldMatcher(pattern);
+        // the same values repeat in the dictionaries of every chunk
+        for(int i = 0; i < 5; i++) {
+            ChunkReader reader = chunk(300, 40, i);
+            assertMatches(reader, expectedRegex, regexMatcher);
+            assertMatches(reader, expectedPattern, patternMatcher);
+        }
+    }
+
+    @Test
+    public void testExactPatternChecksSliceOfDictionary() {
+        String[] values = { "ABC", "Abc", "aBc", "abc", "ab", "abd", "abcd", "AB_C", "x", "Abc\u00e9" };
+        OlapBatch batch = new OlapBatch();
+        for(int i = 0; i < 500; i++) {
+            OlapDocument doc = batch.addDoc();
+            doc.setId("2015-01-01 10:00:00");
+            if(i % 13 == 0) continue;
+            doc.addField("F", values[i % values.length]);
+        }
+        ChunkReader reader = new ChunkReader();
+        reader.read(new BatchWriter().writeChunk(batch));
+        ChunkField field = reader.getField(0);
+        FilterPattern pattern = new FilterPattern("aBC");
+        // the slice holds the case variants and the values sorted between them,
+        // but not the empty value, "abcd", "abd" and "x"
+        int[] range = pattern.getRange(field);
+        assertEquals(11, field.getValuesCount());
+        assertEquals(7, range[1] - range[0]);
+        assertMatches(reader, Pattern.compile("abc", Pattern.CASE_INSENSITIVE), new FieldMatcher(pattern));
+        // values that sort before or after all non-empty values
+        range = new FilterPattern("0").getRange(field);
+        assertEquals(range[0], range[1]);
+        assertMatches(reader, Pattern.compile("0"), new FieldMatcher(new FilterPattern("0")));
+        range = new FilterPattern("~").getRange(field);
+        assertEquals(field.getValuesCount(), range[0]);
+        assertEquals(field.getValuesCount(), range[1]);
+        assertMatches(reader, Pattern.compile("x", Pattern.CASE_INSENSITIVE), new FieldMatcher(new FilterPattern("X")));
+        // patterns with wildcards check the whole dictionary
+        assertNull(new FilterPattern("ab*").getRange(field));
+        assertMatches(reader, Pattern.compile("ab.*", Pattern.CASE_INSENSITIVE), new FieldMatcher(new FilterPattern("ab*")));
+    }
+
+    @Test
+    public void testExactPatternAcrossChunks() {
+        FieldMatcher matcher = new FieldMatcher(new FilterPattern("value7"));
+        Pattern expected = Pattern.compile("Value7");
+        for(int values: new int[] { 5, 500, 30, 2000, 3, 100 }) {
+            assertMatches(chunk(777, values, values), expected, matcher);
+        }
+    }
+}
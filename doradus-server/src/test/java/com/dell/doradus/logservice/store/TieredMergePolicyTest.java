@@ -0,0 +1,123 @@
+package com.dell.doradus.logservice.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.dell.doradus.logservice.ChunkInfo;
+import com.dell.doradus.olap.collections.MemoryStream;
+
+public class TieredMergePolicyTest {
+    private TieredMergePolicy m_policy = new TieredMergePolicy(new int[] { 100, 1000 }, 3, 2000);
+
+    private static ChunkInfo chunk(String id, int eventsCount, long minTimestamp) {
+        MemoryStream ms = new MemoryStream();
+        ms.writeByte((byte)1);
+        ms.writeInt(eventsCount);
+        ms.writeLong(minTimestamp);
+        ms.writeLong(minTimestamp + 1000);
+        ChunkInfo info = new ChunkInfo();
+        info.set("20150101", id, ms.toArray());
+        return info;
+    }
+
+    private static String ids(List<ChunkInfo> infos) {
+        StringBuilder sb = new StringBuilder();
+        for(ChunkInfo info: infos) {
+            if(sb.length() > 0) sb.append(',');
+            sb.append(info.getChunkId());
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testTiers() {
+        assertEquals(0, m_policy.getTier(1));
+        assertEquals(0, m_policy.getTier(99));
+        assertEquals(1, m_policy.getTier(100));
+        assertEquals(1, m_policy.getTier(999));
+        assertEquals(-1, m_policy.getTier(1000));
+        assertEquals(-1, m_policy.getTier(50000));
+    }
+
+    @Test
+    public void testTierIsMergedOnceFull() {
+        List<ChunkInfo> infos = new ArrayList<>();
+        infos.add(chunk("a", 10, 0));
+        infos.add(chunk("b", 10, 1));
+        assertEquals(0, m_policy.select(infos).size());
+        infos.add(chunk("c", 10, 2));
+        List<List<ChunkInfo>> merges = m_policy.select(infos);
+        assertEquals(1, merges.size());
+        assertEquals("a,b,c", ids(merges.get(0)));
+    }
+
+    @Test
+    public void testTiersAreMergedSeparately() {
+        List<ChunkInfo> infos = new ArrayList<>();
+        infos.add(chunk("s1", 10, 0));
+        infos.add(chunk("m1", 500, 1));
+        infos.add(chunk("s2", 10, 2));
+        infos.add(chunk("m2", 500, 3));
+        infos.add(chunk("s3", 10, 4));
+        infos.add(chunk("big", 5000, 5));
+        List<List<ChunkInfo>> merges = m_policy.select(infos);
+        // the middle tier has only two chunks and the large chunk is never merged
+        assertEquals(1, merges.size());
+        assertEquals("s1,s2,s3", ids(merges.get(0)));
+        infos.add(chunk("m3", 500, 6));
+        merges = m_policy.select(infos);
+        assertEquals(2, merges.size());
+        assertEquals("m1,m2,m3", ids(merges.get(1)));
+    }
+
+    @Test
+    public void testMergesFollowTimestampOrder() {
+        List<ChunkInfo> infos = new ArrayList<>();
+        for(int i = 0; i < 5; i++) infos.add(chunk("c" + i, 10, i * 100));
+        Collections.reverse(infos);
+        assertEquals("c0,c1,c2,c3,c4", ids(m_policy.select(infos).get(0)));
+    }
+
+    @Test
+    public void testMergedChunksAreLimited() {
+        List<ChunkInfo> infos = new ArrayList<>();
+        for(int i = 0; i < 9; i++) infos.add(chunk("c" + i, 900, i));
+        List<List<ChunkInfo>> merges = m_policy.select(infos);
+        // at most two chunks of 900 events fit into 2000 events; the last chunk stays alone
+        assertEquals(4, merges.size());
+        for(List<ChunkInfo> merge: merges) {
+            int events = 0;
+            for(ChunkInfo info: merge) events += info.getEventsCount();
+            assertTrue(events <= 2000);
+            assertEquals(2, merge.size());
+        }
+        assertEquals("c6,c7", ids(merges.get(3)));
+    }
+
+    @Test
+    public void testRejectsInvalidSettings() {
+        try {
+            new TieredMergePolicy(new int[0], 3, 2000);
+            fail();
+        } catch(IllegalArgumentException e) { }
+        try {
+            new TieredMergePolicy(new int[] { 1000, 100 }, 3, 2000);
+            fail();
+        } catch(IllegalArgumentException e) { }
+        try {
+            new TieredMergePolicy(new int[] { 100 }, 1, 2000);
+            fail();
+        } catch(IllegalArgumentException e) { }
+        try {
+            new TieredMergePolicy(new int[] { 100, 1000 }, 3, 500);
+            fail();
+        } catch(IllegalArgumentException e) { }
+    }
+}
@@ -0,0 +1,133 @@
+package com.dell.doradus.olap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.core.ServerParams;
+import com.dell.doradus.olap.io.BSTR;
+import com.dell.doradus.olap.io.MemoryIO;
+import com.dell.doradus.olap.io.VDirectory;
+import com.dell.doradus.olap.store.BitVector;
+import com.dell.doradus.olap.store.IdReader;
+import com.dell.doradus.olap.store.IdSearcher;
+import com.dell.doradus.olap.store.IdWriter;
+import com.dell.doradus.olap.store.SegmentStats;
+
+public class OlapDeltaTest {
+    private VDirectory m_root;
+
+    @BeforeClass
+    public static void loadConfig() throws Exception {
+        // files are compressed with the OLAP compressor, which reads its settings
+        ServerParams.load(new String[0]);
+    }
+
+    @Before
+    public void setUp() {
+        m_root = new VDirectory(new MemoryIO(), "test", "OLAP");
+    }
+
+    private static List<String> ids(String prefix, int from, int to) {
+        List<String> ids = new ArrayList<>();
+        for(int i = from; i < to; i++) ids.add(String.format("%s%05d", prefix, i));
+        return ids;
+    }
+
+    // ids must be sorted, as segments and cubes keep them
+    private VDirectory write(String name, List<String> ids, int... deleted) {
+        VDirectory dir = m_root.getDirectory(name);
+        IdWriter writer = new IdWriter(dir, "Msg");
+        for(String id: ids) writer.add(new BSTR(id));
+        writer.close();
+        if(deleted.length > 0) {
+            BitVector bv = new BitVector(ids.size());
+            for(int doc: deleted) bv.set(doc);
+            writer.setDeletedVector(bv);
+        }
+        // flushes the files, as a merge does with the new cube
+        dir.create();
+        return dir;
+    }
+
+    private IdSearcher cube(String name, List<String> ids) {
+        VDirectory dir = write(name, ids);
+        SegmentStats stats = new SegmentStats();
+        stats.addTable("Msg", ids.size());
+        return new IdSearcher(dir, stats.getTable("Msg"));
+    }
+
+    private boolean addsObjectsOnly(VDirectory segment, IdSearcher... cubes) {
+        return Olap.addsObjectsOnly(new IdReader(segment, "Msg"), Arrays.asList(cubes));
+    }
+
+    @Test
+    public void testNewObjects() {
+        // more ids than one index span of the cube
+        IdSearcher base = cube("base", ids("m", 0, 3000));
+        IdSearcher delta = cube("delta", ids("m", 3000, 3100));
+        assertTrue(addsObjectsOnly(write("seg", ids("m", 3100, 3200)), base, delta));
+        assertTrue(addsObjectsOnly(write("seg2", ids("a", 0, 10)), base, delta));
+        assertTrue(addsObjectsOnly(write("seg3", ids("z", 0, 10)), base, delta));
+    }
+
+    @Test
+    public void testEmptySegment() {
+        IdSearcher base = cube("base", ids("m", 0, 100));
+        assertTrue(addsObjectsOnly(m_root.getDirectoryCreate("empty"), base));
+    }
+
+    @Test
+    public void testUpdatedObjectsAreNotDisjoint() {
+        IdSearcher base = cube("base", ids("m", 0, 3000));
+        IdSearcher delta = cube("delta", ids("m", 3000, 3100));
+        // an object of the base cube, in the middle of an index span
+        List<String> ids = ids("m", 5000, 5010);
+        ids.add(0, "m01500");
+        assertFalse(addsObjectsOnly(write("seg", ids), base, delta));
+        // an object of a delta cube, e.g. a link target added by an earlier merge
+        assertFalse(addsObjectsOnly(write("seg2", Arrays.asList("m03099", "m09999")), base, delta));
+        // first and last ids of the base cube
+        assertFalse(addsObjectsOnly(write("seg3", Arrays.asList("m00000")), base));
+        assertFalse(addsObjectsOnly(write("seg4", Arrays.asList("m02999")), base));
+    }
+
+    @Test
+    public void testDeletedObjectsAreNotAdded() {
+        IdSearcher base = cube("base", ids("m", 0, 100));
+        assertFalse(addsObjectsOnly(write("seg", ids("m", 200, 210), 5), base));
+    }
+
+    @Test
+    public void testKeepDelta() {
+        assertEquals(Olap.DELTA_KEEP, Olap.deltaAction(10000, 100, 1, 4, 10));
+        assertEquals(Olap.DELTA_KEEP, Olap.deltaAction(10000, 400, 4, 4, 10));
+        // exactly at the percent limit
+        assertEquals(Olap.DELTA_KEEP, Olap.deltaAction(10000, 1000, 2, 4, 10));
+    }
+
+    @Test
+    public void testCombineDeltas() {
+        assertEquals(Olap.DELTA_COMBINE, Olap.deltaAction(10000, 500, 5, 4, 10));
+        assertEquals(Olap.DELTA_COMBINE, Olap.deltaAction(10000, 10, 2, 1, 10));
+    }
+
+    @Test
+    public void testRewriteShard() {
+        assertEquals(Olap.DELTA_REWRITE, Olap.deltaAction(10000, 1001, 2, 4, 10));
+        // large deltas rewrite the shard even if there are too many of them
+        assertEquals(Olap.DELTA_REWRITE, Olap.deltaAction(10000, 5000, 9, 4, 10));
+        // an empty base cube
+        assertEquals(Olap.DELTA_REWRITE, Olap.deltaAction(0, 1, 1, 4, 10));
+        // large base cubes do not overflow
+        assertEquals(Olap.DELTA_KEEP, Olap.deltaAction(Integer.MAX_VALUE, 1000, 1, 4, 10));
+    }
+}
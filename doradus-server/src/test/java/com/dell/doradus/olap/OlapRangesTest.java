@@ -0,0 +1,179 @@
+package com.dell.doradus.olap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.common.ApplicationDefinition;
+import com.dell.doradus.common.TableDefinition;
+import com.dell.doradus.common.UNode;
+import com.dell.doradus.core.ServerParams;
+import com.dell.doradus.olap.aggregate.AggregationRequest;
+import com.dell.doradus.olap.aggregate.AggregationRequestData;
+import com.dell.doradus.olap.aggregate.mr.AggregationResultBuilder;
+import com.dell.doradus.olap.aggregate.mr.MFAggregationBuilder;
+import com.dell.doradus.olap.io.MemoryIO;
+import com.dell.doradus.olap.io.VDirectory;
+import com.dell.doradus.olap.merge.Merger;
+import com.dell.doradus.olap.search.DocRanges;
+import com.dell.doradus.olap.search.Result;
+import com.dell.doradus.olap.search.ResultBuilder;
+import com.dell.doradus.olap.search.SearchResultComparer;
+import com.dell.doradus.olap.store.CubeSearcher;
+import com.dell.doradus.olap.store.IntIterator;
+import com.dell.doradus.search.parser.AggregationQueryBuilder;
+import com.dell.doradus.search.parser.DoradusQueryBuilder;
+
+public class OlapRangesTest {
+    private static final int DOCS = 3000;
+
+    private static ApplicationDefinition appDef;
+    private static TableDefinition msgDef;
+    private static CubeSearcher searcher;
+
+    @BeforeClass
+    public static void buildCube() throws Exception {
+        // cubes are compressed with the OLAP compressor, which reads its settings
+        ServerParams.load(new String[0]);
+        String schema = "{'OApp': {'options': {'StorageService': 'OLAPService'}, 'tables': {" +
+                "'Msg': {'fields': {'Size': {'type': 'INTEGER'}, 'User': {'type': 'TEXT'}," +
+                " 'Tags': {'type': 'TEXT', 'collection': 'true'}," +
+                " 'Sender': {'type': 'LINK', 'table': 'Person', 'inverse': 'Sent'}}}," +
+                "'Person': {'fields': {'Name': {'type': 'TEXT'}," +
+                " 'Sent': {'type': 'LINK', 'table': 'Msg', 'inverse': 'Sender'}}}}}}";
+        appDef = new ApplicationDefinition();
+        appDef.parse(UNode.parseJSON(schema.replace('\'', '"')));
+        msgDef = appDef.getTableDef("Msg");
+
+        Random r = new Random(1);
+        StringBuilder docs = new StringBuilder();
+        for(int i = 0; i < DOCS; i++) {
+            docs.append(String.format("{'doc': {'_table': 'Msg', '_ID': 'm%05d', 'Size': '%d', 'User': 'u%d'," +
+                    " 'Tags': {'add': ['t%d', 't%d']}, 'Sender': {'add': ['p%d']}}},",
+                    i, r.nextInt(100), r.nextInt(20), r.nextInt(5), r.nextInt(5), r.nextInt(50)));
+        }
+        for(int i = 0; i < 50; i++) {
+            docs.append(String.format("{'doc': {'_table': 'Person', '_ID': 'p%d', 'Name': 'n%d'}},", i, i % 10));
+        }
+        docs.setLength(docs.length() - 1);
+        OlapBatch batch = OlapBatch.parseJSON(("{'batch': {'docs': [" + docs + "]}}").replace('\'', '"'));
+
+        VDirectory root = new VDirectory(new MemoryIO(), "test", "OLAP");
+        VDirectory segment = root.getDirectory("segment");
+        batch.flushSegment(appDef, segment);
+        segment.create();
+        VDirectory cube = root.getDirectory("cube");
+        Merger.mergeApplication(appDef, Arrays.asList(segment), cube);
+        cube.create();
+        searcher = new CubeSearcher(cube, new FieldsCache(100 * 1024 * 1024));
+    }
+
+    @After
+    public void tearDown() {
+        Olap.setRangeThreads(0, 65536);
+    }
+
+    private static String aggregate(String query, String fields, String metrics) {
+        AggregationRequestData data = new AggregationRequestData();
+        data.application = appDef.getAppName();
+        data.table = msgDef.getTableName();
+        data.shards = new ArrayList<String>();
+        data.xshards = new ArrayList<String>();
+        data.parts = new AggregationRequestData.Part[] { new AggregationRequestData.Part() };
+        data.parts[0].query = query;
+        data.parts[0].field = fields;
+        data.parts[0].metrics = metrics;
+        AggregationRequest request = new AggregationRequest(null, appDef, data);
+        return AggregationResultBuilder.build(request, MFAggregationBuilder.aggregate(searcher, request)).toUNode().toJSON();
+    }
+
+    private static int[] sort(String query, String order, int size) {
+        Result result = ResultBuilder.search(msgDef, DoradusQueryBuilder.Build(query, msgDef), searcher);
+        IntIterator docs = SearchResultComparer.sort(searcher, result,
+                AggregationQueryBuilder.BuildSortOrders(order, msgDef), size);
+        int[] res = new int[docs.count()];
+        for(int i = 0; i < res.length; i++) res[i] = docs.get(i);
+        return res;
+    }
+
+    private static final String[][] AGGREGATES = {
+        { "*", null, "COUNT(*)" },
+        { "*", "User", "SUM(Size),MIN(Size),MAX(Size)" },
+        { "*", "Tags", "COUNT(*),AVERAGE(Size)" },
+        { "Size:[10 TO 50]", "Sender.Name", "COUNT(*)" },
+        { "*", null, "DISTINCT(User)" },
+        { "*", "TOP(3,User)", "AVERAGE(Size)" },
+        { "NOT Tags:t2", "User,Tags", "COUNT(*),MIN(Size)" },
+        { "*", "BATCH(Size,10,20,50)", "COUNT(*)" },
+        { "Size:[0 TO 40]", "TOP(2,Sender.Name),Tags", "MAX(Size)" },
+        { "*", "Tags", "DISTINCT_APPROX(User),DISTINCT_APPROX(Sender)" },
+    };
+
+    private static final Object[][] SORTS = {
+        { "*", "Size", 7 },
+        { "*", "Size DESC", 40 },
+        { "Tags:t1", "User,Size DESC", 25 },
+        { "User:u3 AND NOT Tags:t2", "Size DESC", 2 },
+        // ties on Size are ordered by document
+        { "*", "Size", 500 },
+    };
+
+    private static List<String> aggregateAll() {
+        List<String> results = new ArrayList<String>();
+        for(String[] a: AGGREGATES) results.add(aggregate(a[0], a[1], a[2]));
+        return results;
+    }
+
+    private static List<int[]> sortAll() {
+        List<int[]> results = new ArrayList<int[]>();
+        for(Object[] s: SORTS) results.add(sort((String)s[0], (String)s[1], (Integer)s[2]));
+        return results;
+    }
+
+    @Test
+    public void testAggregateIsSameForOneAndSeveralRanges() {
+        assertEquals(2, DocRanges.split(DOCS).length);
+        List<String> one = aggregateAll();
+        Olap.setRangeThreads(3, 64);
+        assertEquals(5, DocRanges.split(DOCS).length);
+        List<String> several = aggregateAll();
+        for(int i = 0; i < one.size(); i++) {
+            assertEquals(Arrays.toString(AGGREGATES[i]), one.get(i), several.get(i));
+        }
+    }
+
+    @Test
+    public void testSortIsSameForOneAndSeveralRanges() {
+        List<int[]> one = sortAll();
+        Olap.setRangeThreads(3, 64);
+        List<int[]> several = sortAll();
+        for(int i = 0; i < one.size(); i++) {
+            assertTrue(one.get(i).length > 0);
+            assertArrayEquals(Arrays.toString(SORTS[i]), one.get(i), several.get(i));
+        }
+    }
+
+    @Test
+    public void testRangesAreAligned() {
+        Olap.setRangeThreads(7, 100);
+        int[] bounds = DocRanges.split(DOCS);
+        assertEquals(9, bounds.length);
+        assertEquals(0, bounds[0]);
+        assertEquals(DOCS, bounds[bounds.length - 1]);
+        for(int i = 1; i < bounds.length - 1; i++) {
+            assertEquals(0, bounds[i] % 64);
+            assertTrue(bounds[i] > bounds[i - 1]);
+        }
+        // small cubes are not split
+        assertEquals(2, DocRanges.split(150).length);
+    }
+}
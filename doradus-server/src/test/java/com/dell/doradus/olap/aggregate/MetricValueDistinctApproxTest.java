@@ -0,0 +1,123 @@
+package com.dell.doradus.olap.aggregate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.common.Utils;
+import com.dell.doradus.core.ServerParams;
+import com.dell.doradus.search.util.HyperLogLog;
+
+public class MetricValueDistinctApproxTest {
+
+    @BeforeClass
+    public static void loadConfig() throws Exception {
+        // the sketch precision is read from the server parameters
+        ServerParams.load(new String[0]);
+    }
+
+    // adds the values of one document to the group, as the metric collector does
+    private static void addDocument(IMetricValue group, IMetricValue doc, long... values) {
+        for(long value: values) doc.add(value);
+        group.add(doc);
+        doc.reset();
+    }
+
+    private static MetricValueDistinctApprox group(long from, long to) {
+        MetricValueDistinctApprox group = new MetricValueDistinctApprox();
+        IMetricValue doc = group.newInstance();
+        for(long i = from; i < to; i++) addDocument(group, doc, i, i % 100);
+        return group;
+    }
+
+    private static void assertEstimate(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * 0.05);
+    }
+
+    @Test
+    public void testEmptyGroup() {
+        MetricValueDistinctApprox group = new MetricValueDistinctApprox();
+        assertEquals(0, group.getValue());
+        assertEquals("0", group.toString());
+        assertEquals(0, group.newInstance().compareTo(group));
+    }
+
+    @Test
+    public void testDistinctNumbers() {
+        MetricValueDistinctApprox group = new MetricValueDistinctApprox();
+        IMetricValue doc = group.newInstance();
+        for(int i = 0; i < 30000; i++) addDocument(group, doc, i % 10000);
+        assertEstimate(10000, group.getValue());
+        // the document value keeps no sketch
+        assertEquals(0, ((MetricValueDistinctApprox)doc).getValue());
+    }
+
+    @Test
+    public void testMergeOfGroupsEqualsSingleGroup() {
+        // groups of two shards with overlapping values
+        MetricValueDistinctApprox merged = group(0, 60000);
+        merged.add(group(40000, 100000));
+        MetricValueDistinctApprox single = group(0, 100000);
+        assertEquals(single.getValue(), merged.getValue());
+        assertEstimate(100000, merged.getValue());
+        // merging into a group that has no sketch yet
+        MetricValueDistinctApprox empty = new MetricValueDistinctApprox();
+        empty.add(single);
+        assertEquals(single.getValue(), empty.getValue());
+    }
+
+    @Test
+    public void testCompareTo() {
+        MetricValueDistinctApprox small = group(0, 100);
+        MetricValueDistinctApprox large = group(0, 5000);
+        assertTrue(small.compareTo(large) < 0);
+        assertTrue(large.compareTo(small) > 0);
+        assertEquals(0, large.compareTo(group(0, 5000)));
+    }
+
+    @Test
+    public void testReset() {
+        MetricValueDistinctApprox group = group(0, 5000);
+        group.reset();
+        assertEquals(0, group.getValue());
+        IMetricValue doc = group.newInstance();
+        addDocument(group, doc, 1, 2, 3);
+        assertEquals(3, group.getValue());
+    }
+
+    @Test
+    public void testTextIsHashedWhenAdded() {
+        // text and link ids are local to the segment; the hashes of their values are added to the sketch
+        long[] hashes = new long[10];
+        for(int i = 0; i < hashes.length; i++) {
+            byte[] value = Utils.toBytes("value" + i);
+            hashes[i] = HyperLogLog.hash(value, 0, value.length);
+        }
+        MetricValueDistinctApprox.Text group = new MetricValueDistinctApprox.Text();
+        group.setHashes(hashes);
+        IMetricValue doc = group.newInstance();
+        assertTrue(doc instanceof MetricValueDistinctApprox.Text);
+        addDocument(group, doc, 1, 2);
+        addDocument(group, doc, 2, 3);
+        // documents without values
+        addDocument(group, doc, -1);
+        assertEquals(0, group.m_LongValues.size());
+        assertEquals(3, group.getValue());
+        assertTrue(group.convert(null) == group);
+        // same as the values of another segment with other ids
+        HyperLogLog sketch = new HyperLogLog();
+        for(int i = 1; i <= 3; i++) {
+            byte[] value = Utils.toBytes("value" + i);
+            sketch.add(value, 0, value.length);
+        }
+        MetricValueDistinctApprox.Text other = new MetricValueDistinctApprox.Text();
+        other.setHashes(new long[] { hashes[3], hashes[2], hashes[1] });
+        addDocument(other, other.newInstance(), 0, 1, 2);
+        group.add(other);
+        assertEquals(3, group.getValue());
+        assertEquals(sketch.cardinality(), group.getValue());
+        assertTrue(new MetricValueDistinctApprox.Id().newInstance() instanceof MetricValueDistinctApprox.Id);
+    }
+}
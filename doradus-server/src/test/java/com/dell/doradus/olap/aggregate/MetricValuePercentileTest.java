@@ -0,0 +1,150 @@
+package com.dell.doradus.olap.aggregate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.dell.doradus.olap.XType;
+
+public class MetricValuePercentileTest {
+
+    private static MetricValuePercentile group(MetricValuePercentile prototype, double percentile) {
+        prototype.setPercentile(percentile);
+        return (MetricValuePercentile)prototype.newInstance();
+    }
+
+    // adds one document per value, as the metric collector does
+    private static void addDocuments(IMetricValue group, long... values) {
+        IMetricValue doc = group.newInstance();
+        for(long value: values) {
+            doc.add(value);
+            group.add(doc);
+            doc.reset();
+        }
+    }
+
+    private static long[] range(long from, long to) {
+        long[] values = new long[(int)(to - from)];
+        for(long i = from; i < to; i++) values[(int)(i - from)] = i;
+        return values;
+    }
+
+    @Test
+    public void testEmptyGroup() {
+        MetricValuePercentile group = group(new MetricValuePercentile.Num(), 50);
+        assertEquals(Double.NEGATIVE_INFINITY, group.getValue(), 0);
+        assertNull(group.toString());
+        // an empty document does not create the sketch
+        group.add(group.newInstance());
+        assertNull(group.toString());
+    }
+
+    @Test
+    public void testNumPercentiles() {
+        for(double p: new double[] { 0, 50, 90, 99.9, 100 }) {
+            MetricValuePercentile group = group(new MetricValuePercentile.Num(), p);
+            addDocuments(group, range(1, 1001));
+            long expected = 1 + (long)(p / 100 * 999);
+            assertEquals("p" + p, expected, group.getValue(), expected * 0.01);
+        }
+    }
+
+    @Test
+    public void testP0AndP100AreExact() {
+        MetricValuePercentile p0 = group(new MetricValuePercentile.Num(), 0);
+        MetricValuePercentile p100 = group(new MetricValuePercentile.Num(), 100);
+        addDocuments(p0, 12345, -678, 999999);
+        addDocuments(p100, 12345, -678, 999999);
+        assertEquals("-678", p0.toString());
+        assertEquals("999999", p100.toString());
+    }
+
+    @Test
+    public void testMultiValuedDocument() {
+        MetricValuePercentile group = group(new MetricValuePercentile.Num(), 100);
+        IMetricValue doc = group.newInstance();
+        // more values than the initial buffer of the document
+        for(long i = 0; i < 10; i++) doc.add(i * 10);
+        group.add(doc);
+        assertEquals("90", group.toString());
+    }
+
+    @Test
+    public void testNegativeAndZeroDoubles() {
+        MetricValuePercentile group = group(new MetricValuePercentile.DoubleValue(), 50);
+        IMetricValue doc = group.newInstance();
+        for(double value: new double[] { -2.5, -1.5, 0, 0, 0, 1.5, 2.5 }) {
+            doc.add(Double.doubleToRawLongBits(value));
+            group.add(doc);
+            doc.reset();
+        }
+        assertEquals(0, group.getValue(), 0);
+        MetricValuePercentile p0 = group(new MetricValuePercentile.DoubleValue(), 0);
+        p0.add(group);
+        assertEquals(-2.5, p0.getValue(), 0);
+    }
+
+    @Test
+    public void testFloats() {
+        MetricValuePercentile group = group(new MetricValuePercentile.FloatValue(), 25);
+        IMetricValue doc = group.newInstance();
+        for(int i = -50; i < 50; i++) {
+            doc.add(Float.floatToRawIntBits(i * 0.5f));
+            group.add(doc);
+            doc.reset();
+        }
+        assertEquals(-13, group.getValue(), 13 * 0.01);
+    }
+
+    @Test
+    public void testDates() {
+        MetricValuePercentile group = group(new MetricValuePercentile.DateValue(), 100);
+        long time = 1400000000000L;
+        addDocuments(group, time - 86400000L, time);
+        assertEquals(XType.toString(new Date(time)), group.toString());
+    }
+
+    @Test
+    public void testMergeOrderOfGroups() {
+        MetricValuePercentile a = group(new MetricValuePercentile.Num(), 99);
+        MetricValuePercentile b = (MetricValuePercentile)a.newInstance();
+        MetricValuePercentile c = (MetricValuePercentile)a.newInstance();
+        addDocuments(a, range(-500, 0));
+        addDocuments(b, range(0, 3000));
+        addDocuments(c, range(100000, 100100));
+        MetricValuePercentile abc = (MetricValuePercentile)a.newInstance();
+        abc.add(a);
+        abc.add(b);
+        abc.add(c);
+        MetricValuePercentile cba = (MetricValuePercentile)a.newInstance();
+        cba.add(c);
+        cba.add(b);
+        cba.add(a);
+        assertEquals(abc.getValue(), cba.getValue(), 0);
+        assertEquals(99, abc.m_percentile, 0);
+    }
+
+    @Test
+    public void testReset() {
+        MetricValuePercentile group = group(new MetricValuePercentile.Num(), 50);
+        addDocuments(group, range(0, 100));
+        group.reset();
+        assertNull(group.toString());
+        addDocuments(group, 7);
+        assertEquals("7", group.toString());
+    }
+
+    @Test
+    public void testPercentileRange() {
+        for(double p: new double[] { -1, 100.1, -0.001 }) {
+            try {
+                new MetricValuePercentile.Num().setPercentile(p);
+                fail("percentile " + p + " accepted");
+            } catch(IllegalArgumentException e) { }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.dell.doradus.olap.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory storage for VDirectory tests.
+ */
+public class MemoryIO implements IO {
+    private Map<String, TreeMap<String, byte[]>> m_rows = new HashMap<>();
+
+    private synchronized TreeMap<String, byte[]> row(String app, String key) {
+        TreeMap<String, byte[]> row = m_rows.get(app + "/" + key);
+        if(row == null) {
+            row = new TreeMap<>();
+            m_rows.put(app + "/" + key, row);
+        }
+        return row;
+    }
+
+    @Override public synchronized byte[] getValue(String app, String key, String column) {
+        return row(app, key).get(column);
+    }
+
+    @Override public synchronized List<ColumnValue> get(String app, String key, String prefix) {
+        List<ColumnValue> result = new ArrayList<>();
+        for(Map.Entry<String, byte[]> e: row(app, key).subMap(prefix, prefix + "\uFFFF").entrySet()) {
+            result.add(new ColumnValue(e.getKey().substring(prefix.length()), e.getValue()));
+        }
+        return result;
+    }
+
+    @Override public void createCF(String name) { }
+
+    @Override public void deleteCF(String name) { }
+
+    @Override public synchronized void write(String app, String key, List<ColumnValue> values) {
+        for(ColumnValue v: values) row(app, key).put(v.columnName, v.columnValue);
+    }
+
+    @Override public synchronized void delete(String columnFamily, String key, String columnName) {
+        if(columnName == null) m_rows.remove(columnFamily + "/" + key);
+        else row(columnFamily, key).remove(columnName);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.dell.doradus.olap.store.BitVector;
+import com.dell.doradus.olap.store.CompactBitVector;
+import com.dell.doradus.olap.store.IntIterator;
+
+public class ResultTest {
+	private static final int SIZE = 200000;
+	
+	private static CompactBitVector everyThird() {
+		BitVector bv = new BitVector(SIZE);
+		for(int i = 0; i < SIZE; i += 3) bv.set(i);
+		return new CompactBitVector(bv);
+	}
+	
+	@Test
+	public void testSharedBitmapIsNotModified() {
+		CompactBitVector shared = everyThird();
+		Result r1 = new Result(shared);
+		Result r2 = new Result(r1);
+		r1.not();
+		r2.clear(0);
+		assertFalse(r1.get(0));
+		assertTrue(r1.get(1));
+		assertFalse(r2.get(0));
+		assertTrue(r2.get(3));
+		// the cached bitmap and a fresh result over it are unchanged
+		assertTrue(shared.get(0));
+		assertFalse(shared.get(1));
+		assertEquals(shared.bitsSet(), new Result(shared).countSet());
+	}
+	
+	@Test
+	public void testOperationsWithCompactOperand() {
+		Result compact = new Result(everyThird());
+		Result dense = new Result(SIZE);
+		for(int i = 0; i < SIZE; i += 2) dense.set(i);
+		
+		Result and = new Result(dense);
+		and.and(compact);
+		Result or = new Result(dense);
+		or.or(compact);
+		Result andNot = new Result(dense);
+		andNot.andNot(compact);
+		for(int i = 0; i < SIZE; i++) {
+			boolean a = i % 2 == 0;
+			boolean b = i % 3 == 0;
+			assertEquals(a && b, and.get(i));
+			assertEquals(a || b, or.get(i));
+			assertEquals(a && !b, andNot.get(i));
+		}
+	}
+	
+	@Test
+	public void testIterateAndCountWithoutInflating() {
+		Result r = new Result(everyThird());
+		assertEquals((SIZE + 2) / 3, r.countSet());
+		assertEquals(SIZE, r.size());
+		IntIterator iter = r.iterate();
+		assertEquals((SIZE + 2) / 3, iter.count());
+		for(int i = 0; i < iter.count(); i++) assertEquals(i * 3, iter.get(i));
+	}
+	
+	@Test
+	public void testConcurrentGetOnSharedFilter() throws Exception {
+		final Result r = new Result(everyThird());
+		final AtomicInteger errors = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		for(int t = 0; t < 8; t++) {
+			threads.add(new Thread(new Runnable() {
+				@Override public void run() {
+					for(int i = 0; i < SIZE; i++) {
+						if(r.get(i) != (i % 3 == 0)) errors.incrementAndGet();
+					}
+				}
+			}));
+		}
+		for(Thread thread: threads) thread.start();
+		for(Thread thread: threads) thread.join();
+		assertEquals(0, errors.get());
+	}
+	
+}
@@ -0,0 +1,153 @@
+package com.dell.doradus.olap.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.core.ServerParams;
+import com.dell.doradus.olap.io.IBufferReader;
+import com.dell.doradus.olap.io.VInputStream;
+
+public class ColumnStorageTest {
+    private static final long[] VALUES = { 0, 1, -1, 127, -128, 300, -300, 65535, Integer.MAX_VALUE, Integer.MIN_VALUE };
+
+    @BeforeClass
+    public static void loadConfig() throws Exception {
+        // the storage mode is read from the OLAP service parameters
+        ServerParams.load(new String[0]);
+    }
+
+    @After
+    public void restoreHeap() {
+        ColumnStorage.setMode(ColumnStorage.HEAP, null);
+    }
+
+    private static File tempDir() throws IOException {
+        File dir = Files.createTempDirectory("colstore").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    // little-endian values as read by VInputStream
+    private static VInputStream input(long[] values, int bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(long value: values) {
+            for(int b = 0; b < bytes; b++) out.write((int)(value >>> (8 * b)));
+        }
+        final byte[] data = out.toByteArray();
+        return new VInputStream(new IBufferReader() {
+            @Override public byte[] readBuffer(int bufferNumber) { return data; }
+        }, data.length);
+    }
+
+    // expected value of a number truncated to the given size
+    private static long truncate(long value, int bytes) {
+        if(bytes == 1) return (byte)value;
+        else if(bytes == 2) return (short)value;
+        else if(bytes == 4) return (int)value;
+        else return value;
+    }
+
+    private static void checkIntArray(boolean onHeap) {
+        IntArray array = new IntArray(1000);
+        assertEquals(1000, array.length());
+        assertEquals(onHeap, array.getArray() != null);
+        assertEquals(0, array.get(999));
+        array.fill(-7);
+        for(int i = 0; i < 1000; i += 3) array.set(i, i * 1000003);
+        for(int i = 0; i < 1000; i++) assertEquals(i % 3 == 0 ? i * 1000003 : -7, array.get(i));
+        assertEquals(onHeap ? 0 : 4000, array.offHeapSize());
+        assertEquals(onHeap ? 16 + 4000 : 16, array.cacheSize());
+    }
+
+    private static void checkBufferA() {
+        for(int bytes: new int[] { 1, 2, 4, 8 }) {
+            NumArray.BufferA array = new NumArray.BufferA(VALUES.length, bytes * 8, input(VALUES, bytes));
+            assertEquals(VALUES.length, array.size());
+            assertEquals(VALUES.length * bytes, array.offHeapSize());
+            for(int i = 0; i < VALUES.length; i++) {
+                assertEquals("bytes=" + bytes + " i=" + i, truncate(VALUES[i], bytes), array.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testHeap() {
+        ColumnStorage.setMode(ColumnStorage.HEAP, null);
+        assertTrue(ColumnStorage.isHeap());
+        checkIntArray(true);
+    }
+
+    @Test
+    public void testOffHeap() {
+        ColumnStorage.setMode(ColumnStorage.OFFHEAP, null);
+        assertFalse(ColumnStorage.isHeap());
+        checkIntArray(false);
+        checkBufferA();
+        assertFalse(ColumnStorage.allocate(16).isReadOnly());
+    }
+
+    @Test
+    public void testMemoryMapped() throws Exception {
+        File dir = tempDir();
+        ColumnStorage.setMode(ColumnStorage.MMAP, dir.getAbsolutePath());
+        checkIntArray(false);
+        checkBufferA();
+        // mapped files are deleted once mapped, or at least on exit
+        String[] files = dir.list();
+        assertNotNull(files);
+        for(String file: files) assertTrue(file, file.matches("col-\\d+\\.bin"));
+    }
+
+    @Test
+    public void testSpillDirectoryKeepsOtherFiles() throws Exception {
+        File dir = tempDir();
+        File old = new File(dir, "col-17.bin");
+        File other = new File(dir, "data.bin");
+        File similar = new File(dir, "col-17.bin.bak");
+        File subdir = new File(dir, "col-3.bin");
+        assertTrue(old.createNewFile());
+        assertTrue(other.createNewFile());
+        assertTrue(similar.createNewFile());
+        assertTrue(subdir.mkdir());
+        ColumnStorage.setMode(ColumnStorage.MMAP, dir.getAbsolutePath());
+        assertFalse(old.exists());
+        assertTrue(other.exists());
+        assertTrue(similar.exists());
+        assertTrue(subdir.isDirectory());
+        other.delete();
+        similar.delete();
+        subdir.delete();
+    }
+
+    @Test
+    public void testLargeAllocationIsRejected() {
+        ColumnStorage.setMode(ColumnStorage.OFFHEAP, null);
+        try {
+            ColumnStorage.allocate(Integer.MAX_VALUE + 1L);
+            fail("allocation over 2Gb accepted");
+        } catch(RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("too large"));
+        }
+        // element counts are multiplied as longs, so the size does not wrap around
+        try {
+            new IntArray(600 * 1000 * 1000);
+            fail("array over 2Gb accepted");
+        } catch(RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("too large"));
+        }
+        assertNull(new IntArray(0).getArray());
+    }
+}
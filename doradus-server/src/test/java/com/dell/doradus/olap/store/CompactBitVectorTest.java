@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 Dell, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompactBitVectorTest {
+	// three chunks of 65536 bits plus a partial one
+	private static final int SIZE = 3 * 65536 + 1000;
+
+	// chunk 0: sparse (array), chunk 1: empty, chunk 2: long runs, chunk 3: dense random (bitmap)
+	private static BitVector mixed() {
+		BitVector bv = new BitVector(SIZE);
+		for(int i = 0; i < 65536; i += 997) bv.set(i);
+		for(int i = 2 * 65536 + 100; i < 2 * 65536 + 30000; i++) bv.set(i);
+		for(int i = 2 * 65536 + 40000; i < 2 * 65536 + 40010; i++) bv.set(i);
+		Random r = new Random(5);
+		for(int i = 3 * 65536; i < SIZE; i++) {
+			if(r.nextBoolean()) bv.set(i);
+		}
+		return bv;
+	}
+	
+	private static BitVector random(int size, double density, long seed) {
+		BitVector bv = new BitVector(size);
+		Random r = new Random(seed);
+		for(int i = 0; i < size; i++) {
+			if(r.nextDouble() < density) bv.set(i);
+		}
+		return bv;
+	}
+	
+	private static BitVector copy(BitVector bv) {
+		BitVector copy = new BitVector(bv.size());
+		copy.or(bv);
+		return copy;
+	}
+	
+	@Test
+	public void testGetMatchesSource() {
+		BitVector bv = mixed();
+		CompactBitVector cbv = new CompactBitVector(bv);
+		assertEquals(SIZE, cbv.size());
+		assertEquals(bv.bitsSet(), cbv.bitsSet());
+		for(int i = 0; i < SIZE; i++) {
+			assertEquals("bit " + i, bv.get(i), cbv.get(i));
+		}
+	}
+	
+	@Test
+	public void testToBitVectorRoundTrip() {
+		for(double density: new double[] { 0, 0.0001, 0.01, 0.3, 0.9, 1 }) {
+			BitVector bv = random(SIZE, density, 11);
+			assertArrayEquals("density " + density, bv.getBuffer(), new CompactBitVector(bv).toBitVector().getBuffer());
+		}
+		BitVector bv = mixed();
+		assertArrayEquals(bv.getBuffer(), new CompactBitVector(bv).toBitVector().getBuffer());
+	}
+	
+	@Test
+	public void testEmptyAndFull() {
+		BitVector empty = new BitVector(SIZE);
+		CompactBitVector cbv = new CompactBitVector(empty);
+		assertEquals(0, cbv.bitsSet());
+		assertEquals(0, cbv.getList().size());
+		assertFalse(cbv.get(0));
+		assertFalse(cbv.get(SIZE - 1));
+		
+		BitVector full = new BitVector(SIZE);
+		full.setAll();
+		cbv = new CompactBitVector(full);
+		assertEquals(SIZE, cbv.bitsSet());
+		assertTrue(cbv.get(0));
+		assertTrue(cbv.get(SIZE - 1));
+		// runs of a full chunk take a few bytes instead of an 8K bitmap
+		assertTrue(cbv.sizeInBytes() < 1024);
+	}
+	
+	@Test
+	public void testSelectiveResultIsSmall() {
+		BitVector bv = new BitVector(SIZE);
+		for(int i = 0; i < SIZE; i += 5000) bv.set(i);
+		assertTrue(new CompactBitVector(bv).sizeInBytes() < bv.getBuffer().length / 10);
+	}
+	
+	@Test
+	public void testGetList() {
+		BitVector bv = mixed();
+		IntList expected = bv.getList();
+		IntList actual = new CompactBitVector(bv).getList();
+		assertEquals(expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i), actual.get(i));
+		}
+	}
+	
+	@Test
+	public void testOrAndAndNotMatchBitVector() {
+		BitVector source = mixed();
+		CompactBitVector cbv = new CompactBitVector(source);
+		for(long seed = 1; seed <= 3; seed++) {
+			BitVector other = random(SIZE, 0.5, seed);
+			
+			BitVector expected = copy(other);
+			expected.or(source);
+			BitVector actual = copy(other);
+			cbv.orInto(actual);
+			assertArrayEquals("or", expected.getBuffer(), actual.getBuffer());
+			
+			expected = copy(other);
+			expected.and(source);
+			actual = copy(other);
+			cbv.andInto(actual);
+			assertArrayEquals("and", expected.getBuffer(), actual.getBuffer());
+			
+			expected = copy(other);
+			expected.andNot(source);
+			actual = copy(other);
+			cbv.andNotInto(actual);
+			assertArrayEquals("andNot", expected.getBuffer(), actual.getBuffer());
+		}
+	}
+	
+	@Test
+	public void testRunsAtChunkEdges() {
+		BitVector bv = new BitVector(SIZE);
+		// runs touching the first and the last bit of a chunk
+		for(int i = 65536 - 50; i < 65536 + 50; i++) bv.set(i);
+		for(int i = 0; i < 20; i++) bv.set(i);
+		CompactBitVector cbv = new CompactBitVector(bv);
+		assertArrayEquals(bv.getBuffer(), cbv.toBitVector().getBuffer());
+		assertFalse(cbv.get(20));
+		assertTrue(cbv.get(65535));
+		assertTrue(cbv.get(65536));
+		assertFalse(cbv.get(65536 + 50));
+	}
+	
+}
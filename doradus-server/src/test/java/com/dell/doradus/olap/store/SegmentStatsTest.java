@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 Dell, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dell.doradus.olap.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SegmentStatsTest {
+
+	private static SegmentStats cube(int documents, long min, long max, long min_pos, int bits, boolean sv) {
+		SegmentStats stats = new SegmentStats();
+		stats.totalStoreSize = 100;
+		stats.addTable("Msg", documents);
+		SegmentStats.Table t = stats.getTable("Msg");
+		SegmentStats.Table.NumField num = t.new NumField("Size");
+		num.type = "INTEGER";
+		num.min = min;
+		num.max = max;
+		num.min_pos = min_pos;
+		num.bits = bits;
+		num.doclistSize = documents;
+		num.isSingleValued = sv;
+		t.numFields.put(num.name, num);
+		SegmentStats.Table.TextField txt = t.new TextField("User");
+		txt.valuesCount = 10;
+		txt.doclistSize = documents;
+		txt.isSingleValued = sv;
+		t.textFields.put(txt.name, txt);
+		SegmentStats.Table.LinkField lnk = t.new LinkField("Sender");
+		lnk.linkedTableName = "Person";
+		lnk.inverseLink = "Sent";
+		lnk.doclistSize = documents;
+		lnk.isSingleValued = true;
+		t.linkFields.put(lnk.name, lnk);
+		return stats;
+	}
+
+	@Test
+	public void testAddSumsCounts() {
+		SegmentStats stats = new SegmentStats();
+		stats.add(cube(1000, 0, 99, 1, 7, true));
+		stats.add(cube(50, 5, 300, 5, 9, false));
+		assertEquals(200, stats.totalStoreSize);
+		assertEquals(1050, stats.totalObjects());
+		assertEquals(1050, stats.getTable("Msg").documents);
+		assertEquals(1050, stats.getNumField("Msg", "Size").doclistSize);
+		assertEquals(20, stats.getTextField("Msg", "User").valuesCount);
+		assertEquals(1050, stats.getTextField("Msg", "User").doclistSize);
+		assertEquals(1050, stats.getLinkField("Msg", "Sender").doclistSize);
+		assertEquals("Person", stats.getLinkField("Msg", "Sender").linkedTableName);
+	}
+
+	@Test
+	public void testAddWidensNumRange() {
+		SegmentStats stats = new SegmentStats();
+		stats.add(cube(10, -3, 99, 2, 7, true));
+		stats.add(cube(10, 5, 300, 5, 9, true));
+		SegmentStats.Table.NumField num = stats.getNumField("Msg", "Size");
+		assertEquals(-3, num.min);
+		assertEquals(300, num.max);
+		assertEquals(2, num.min_pos);
+		assertEquals(9, num.bits);
+		assertEquals("INTEGER", num.type);
+	}
+
+	@Test
+	public void testMinPosIgnoresCubesWithoutPositiveValues() {
+		SegmentStats stats = new SegmentStats();
+		stats.add(cube(10, -5, 0, 0, 3, true));
+		stats.add(cube(10, 4, 8, 4, 4, true));
+		assertEquals(4, stats.getNumField("Msg", "Size").min_pos);
+		stats.add(cube(10, -9, -1, 0, 4, true));
+		assertEquals(4, stats.getNumField("Msg", "Size").min_pos);
+	}
+
+	@Test
+	public void testSingleValuedOnlyIfAllCubesAre() {
+		SegmentStats stats = new SegmentStats();
+		stats.add(cube(10, 0, 1, 1, 1, true));
+		assertTrue(stats.getNumField("Msg", "Size").isSingleValued);
+		stats.add(cube(10, 0, 1, 1, 1, false));
+		assertFalse(stats.getNumField("Msg", "Size").isSingleValued);
+		assertFalse(stats.getTextField("Msg", "User").isSingleValued);
+	}
+
+	@Test
+	public void testAddDoesNotChangeSource() {
+		SegmentStats base = cube(1000, 0, 99, 1, 7, true);
+		SegmentStats stats = new SegmentStats();
+		stats.add(base);
+		stats.add(cube(50, 5, 300, 5, 9, false));
+		assertEquals(1000, base.totalObjects());
+		assertEquals(99, base.getNumField("Msg", "Size").max);
+		assertNotNull(stats.getLinkField("Msg", "Sender"));
+		assertEquals(1050, stats.getLinkField("Msg", "Sender").documents());
+	}
+}
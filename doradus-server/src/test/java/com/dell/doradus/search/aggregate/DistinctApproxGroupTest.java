@@ -0,0 +1,63 @@
+package com.dell.doradus.search.aggregate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.common.FieldType;
+import com.dell.doradus.core.ServerParams;
+
+public class DistinctApproxGroupTest {
+
+    @BeforeClass
+    public static void loadConfig() throws Exception {
+        // the sketch precision is read from the server parameters
+        ServerParams.load(new String[0]);
+    }
+
+    @Test
+    public void testGetGroup() {
+        assertTrue(Group.getGroup("DISTINCT_APPROX", FieldType.TEXT) instanceof DistinctApproxGroup);
+        assertTrue(Group.getGroup("DISTINCT_APPROX", FieldType.INTEGER) instanceof DistinctApproxGroup);
+        assertTrue(Group.getGroup("DISTINCT_APPROX", null) instanceof DistinctApproxGroup);
+    }
+
+    @Test
+    public void testEmptyGroup() {
+        assertEquals(0L, Group.getGroup("DISTINCT_APPROX", FieldType.TEXT).getMetric());
+    }
+
+    @Test
+    public void testEstimate() {
+        Group group = Group.getGroup("DISTINCT_APPROX", FieldType.TEXT);
+        for(int i = 0; i < 30000; i++) group.update("user" + (i % 10000));
+        long estimate = (Long)group.getMetric();
+        assertTrue("" + estimate, Math.abs(estimate - 10000) <= 500);
+    }
+
+    @Test
+    public void testNullIsOneValue() {
+        Group group = Group.getGroup("DISTINCT_APPROX", FieldType.TEXT);
+        group.update(null);
+        group.update(null);
+        group.update("a");
+        assertEquals(2L, group.getMetric());
+    }
+
+    @Test
+    public void testSubgroupsCountSeparately() {
+        Group group = Group.getGroup("DISTINCT_APPROX", FieldType.TEXT);
+        Group a = group.subgroup("a");
+        Group b = group.subgroup("b");
+        assertTrue(a instanceof DistinctApproxGroup);
+        assertNotSame(a, b);
+        for(int i = 0; i < 10; i++) a.update("v" + i);
+        b.update("v0");
+        assertEquals(10L, a.getMetric());
+        assertEquals(1L, b.getMetric());
+        assertEquals(0L, group.getMetric());
+    }
+}
@@ -0,0 +1,101 @@
+package com.dell.doradus.search.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.common.ApplicationDefinition;
+import com.dell.doradus.common.TableDefinition;
+import com.dell.doradus.common.UNode;
+import com.dell.doradus.olap.aggregate.MetricCollector;
+import com.dell.doradus.olap.aggregate.MetricCollectorFactory;
+import com.dell.doradus.olap.aggregate.MetricValuePercentile;
+import com.dell.doradus.search.aggregate.AggregationMetric;
+import com.dell.doradus.search.aggregate.MetricExpression;
+
+public class PercentileParserTest {
+    private static TableDefinition s_table;
+
+    @BeforeClass
+    public static void defineTable() {
+        String schema = "{\"App\":{\"options\":{\"StorageService\":\"OLAPService\"},\"tables\":{\"Msg\":{\"fields\":{" +
+                "\"Size\":{\"type\":\"INTEGER\"},\"Ratio\":{\"type\":\"DOUBLE\"},\"User\":{\"type\":\"TEXT\"}}}}}}";
+        ApplicationDefinition appDef = new ApplicationDefinition();
+        appDef.parse(UNode.parseJSON(schema));
+        s_table = appDef.getTableDef("Msg");
+    }
+
+    // metrics of OLAP aggregate queries are parsed as expressions
+    private static AggregationMetric parse(String metric) {
+        List<MetricExpression> metrics = AggregationQueryBuilder.BuildAggregationMetricsExpression(metric, s_table);
+        assertEquals(1, metrics.size());
+        assertTrue(metrics.get(0) instanceof AggregationMetric);
+        return (AggregationMetric)metrics.get(0);
+    }
+
+    // parsed metrics are checked when the collector is created
+    private static MetricCollector collector(String metric) {
+        return MetricCollectorFactory.create(null, parse(metric));
+    }
+
+    @Test
+    public void testPercentile() {
+        AggregationMetric metric = parse("PERCENTILE(Size, 99.9)");
+        assertEquals("PERCENTILE", metric.function.toUpperCase());
+        assertEquals(Arrays.asList("99.9"), metric.functionParameters);
+        assertEquals("Size", metric.items.get(metric.items.size() - 1).fieldDef.getName());
+        assertTrue(collector("PERCENTILE(Size, 99.9)").get() instanceof MetricValuePercentile.Num);
+    }
+
+    @Test
+    public void testSpacesAndIntegerPercentile() {
+        AggregationMetric metric = parse(" PERCENTILE ( Ratio ,50 ) ");
+        assertEquals(Arrays.asList("50"), metric.functionParameters);
+        assertTrue(collector("PERCENTILE(Ratio, 50)").get() instanceof MetricValuePercentile.DoubleValue);
+    }
+
+    @Test
+    public void testPercentileWithOtherMetrics() {
+        List<MetricExpression> metrics = AggregationQueryBuilder.BuildAggregationMetricsExpression(
+                "COUNT(*),PERCENTILE(Size, 95),MAX(Size)", s_table);
+        assertEquals(3, metrics.size());
+        assertEquals(Arrays.asList("95"), ((AggregationMetric)metrics.get(1)).functionParameters);
+        assertNull(((AggregationMetric)metrics.get(2)).functionParameters);
+    }
+
+    @Test
+    public void testRejectedSyntax() {
+        for(String metric: new String[] { "PERCENTILE(Size)", "PERCENTILE(Size,)", "PERCENTILE(Size, abc)",
+                "PERCENTILE(Size, 1, 2)", "PERCENTILE(, 50)", "PERCENTILE(Size, 50" }) {
+            try {
+                collector(metric);
+                fail(metric + " accepted");
+            } catch(IllegalArgumentException e) { }
+        }
+    }
+
+    @Test
+    public void testRejectedPercentile() {
+        for(String metric: new String[] { "PERCENTILE(Size, 100.5)", "PERCENTILE(Size, -1)" }) {
+            try {
+                collector(metric);
+                fail(metric + " accepted");
+            } catch(IllegalArgumentException e) { }
+        }
+    }
+
+    @Test
+    public void testRejectedFieldType() {
+        try {
+            collector("PERCENTILE(User, 50)");
+            fail("PERCENTILE of a text field accepted");
+        } catch(IllegalArgumentException e) { }
+    }
+}
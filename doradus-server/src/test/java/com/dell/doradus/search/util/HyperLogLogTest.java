@@ -0,0 +1,141 @@
+package com.dell.doradus.search.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.common.Utils;
+import com.dell.doradus.core.ServerParams;
+
+public class HyperLogLogTest {
+
+    @BeforeClass
+    public static void loadConfig() throws Exception {
+        // the default precision is read from the server parameters
+        ServerParams.load(new String[0]);
+    }
+
+    // three standard errors of the given precision
+    private static void assertEstimate(long expected, HyperLogLog sketch) {
+        double error = 3 * 1.04 / Math.sqrt(1 << sketch.getPrecision());
+        long actual = sketch.cardinality();
+        assertTrue("expected " + expected + " +/- " + (int)(error * 100) + "% but was " + actual,
+                Math.abs(actual - expected) <= expected * error);
+    }
+
+    private static HyperLogLog numbers(int precision, long from, long to) {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for(long i = from; i < to; i++) sketch.add(i);
+        return sketch;
+    }
+
+    @Test
+    public void testEstimateOfKnownCardinalities() {
+        for(int count: new int[] { 1000, 10000, 100000, 1000000 }) {
+            assertEstimate(count, numbers(12, 0, count));
+            assertEstimate(count, numbers(14, 0, count));
+        }
+    }
+
+    @Test
+    public void testSmallCardinalitiesAreNearlyExact() {
+        assertEquals(0, new HyperLogLog(12).cardinality());
+        assertEquals(1, numbers(12, 0, 1).cardinality());
+        long estimate = numbers(12, 0, 100).cardinality();
+        assertTrue("" + estimate, Math.abs(estimate - 100) <= 2);
+    }
+
+    @Test
+    public void testDuplicatesAreNotCounted() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for(int repeat = 0; repeat < 10; repeat++) {
+            for(long i = 0; i < 5000; i++) sketch.add(i);
+        }
+        assertEquals(numbers(12, 0, 5000).cardinality(), sketch.cardinality());
+    }
+
+    @Test
+    public void testTextValues() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for(int i = 0; i < 20000; i++) {
+            byte[] value = Utils.toBytes("value" + (i % 10000));
+            sketch.add(value, 0, value.length);
+        }
+        assertEstimate(10000, sketch);
+        // only the given range of the buffer is hashed
+        byte[] buffer = Utils.toBytes("xxvalue7xx");
+        HyperLogLog one = new HyperLogLog(12);
+        one.add(buffer, 2, 6);
+        byte[] value = Utils.toBytes("value7");
+        one.add(value, 0, value.length);
+        assertEquals(1, one.cardinality());
+    }
+
+    @Test
+    public void testCachedHashes() {
+        HyperLogLog values = new HyperLogLog(12);
+        HyperLogLog hashes = new HyperLogLog(12);
+        for(int i = 0; i < 5000; i++) {
+            byte[] value = Utils.toBytes("value" + i);
+            values.add(value, 0, value.length);
+            hashes.add(HyperLogLog.hash(value, 0, value.length));
+        }
+        assertEquals(values.cardinality(), hashes.cardinality());
+    }
+
+    @Test
+    public void testMergeEqualsCombinedSketch() {
+        // overlapping ranges, as when the same values occur in several shards
+        HyperLogLog a = numbers(12, 0, 60000);
+        HyperLogLog b = numbers(12, 40000, 100000);
+        HyperLogLog combined = numbers(12, 0, 100000);
+        a.merge(b);
+        assertEquals(combined.cardinality(), a.cardinality());
+        assertEstimate(100000, a);
+        // merging is idempotent
+        a.merge(b);
+        assertEquals(combined.cardinality(), a.cardinality());
+    }
+
+    @Test
+    public void testMergeIntoEmptySketch() {
+        HyperLogLog sketch = new HyperLogLog(10);
+        HyperLogLog other = numbers(10, 0, 3000);
+        sketch.merge(other);
+        assertEquals(other.cardinality(), sketch.cardinality());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeOfDifferentPrecisionFails() {
+        new HyperLogLog(12).merge(new HyperLogLog(13));
+    }
+
+    @Test
+    public void testClear() {
+        HyperLogLog sketch = numbers(12, 0, 10000);
+        sketch.clear();
+        assertEquals(0, sketch.cardinality());
+        for(long i = 0; i < 10; i++) sketch.add(i);
+        assertEquals(10, sketch.cardinality());
+    }
+
+    @Test
+    public void testPrecisionBounds() {
+        assertEstimate(10000, numbers(HyperLogLog.MIN_PRECISION, 0, 10000));
+        assertEstimate(10000, numbers(HyperLogLog.MAX_PRECISION, 0, 10000));
+        for(int precision: new int[] { HyperLogLog.MIN_PRECISION - 1, HyperLogLog.MAX_PRECISION + 1, -1 }) {
+            try {
+                new HyperLogLog(precision);
+                fail("precision " + precision + " accepted");
+            } catch(IllegalArgumentException e) { }
+        }
+    }
+
+    @Test
+    public void testDefaultPrecision() {
+        assertEquals(HyperLogLog.DEFAULT_PRECISION, new HyperLogLog().getPrecision());
+    }
+}
@@ -0,0 +1,178 @@
+package com.dell.doradus.search.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantileSketchTest {
+    private static final double[] QUANTILES = { 0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999, 1 };
+
+    private static QuantileSketch sketch(double[] values) {
+        QuantileSketch sketch = new QuantileSketch();
+        for(double value: values) sketch.add(value);
+        return sketch;
+    }
+
+    private static double[] range(int from, int to) {
+        double[] values = new double[to - from];
+        for(int i = from; i < to; i++) values[i - from] = i;
+        return values;
+    }
+
+    // the sketch returns the value of the same rank within the relative accuracy
+    private static void assertQuantiles(double[] values, QuantileSketch sketch) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for(double q: QUANTILES) {
+            double expected = sorted[(int)(q * (sorted.length - 1))];
+            double actual = sketch.quantile(q);
+            assertTrue("q=" + q + ": expected " + expected + " but was " + actual,
+                    Math.abs(actual - expected) <= Math.abs(expected) * QuantileSketch.ACCURACY + 1e-12);
+        }
+    }
+
+    @Test
+    public void testEmptySketch() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertEquals(0, sketch.count());
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+    }
+
+    @Test
+    public void testPositiveValues() {
+        double[] values = range(1, 10001);
+        QuantileSketch sketch = sketch(values);
+        assertEquals(10000, sketch.count());
+        assertQuantiles(values, sketch);
+    }
+
+    @Test
+    public void testNegativeValues() {
+        double[] values = range(-10000, 0);
+        assertQuantiles(values, sketch(values));
+    }
+
+    @Test
+    public void testMixedSignValues() {
+        Random r = new Random(5);
+        double[] values = new double[20001];
+        for(int i = 0; i < values.length; i++) values[i] = (r.nextDouble() - 0.5) * Math.pow(10, r.nextInt(12));
+        values[0] = 0;
+        assertQuantiles(values, sketch(values));
+    }
+
+    @Test
+    public void testZeros() {
+        QuantileSketch sketch = sketch(new double[] { 0, 0, 0, 1e-12, -1e-12 });
+        assertEquals(5, sketch.count());
+        assertEquals(0, sketch.quantile(0.5), 0);
+        double[] values = { -3, -2, -1, 0, 0, 0, 0, 0, 1, 2, 3 };
+        sketch = sketch(values);
+        assertEquals(0, sketch.quantile(0.5), 0);
+        assertEquals(0, sketch.quantile(0.3), 0);
+        assertQuantiles(values, sketch);
+    }
+
+    @Test
+    public void testMinAndMaxAreExact() {
+        double[] values = { 3.14159, 17, -2.71828, 1000.5, 42 };
+        QuantileSketch sketch = sketch(values);
+        assertEquals(-2.71828, sketch.quantile(0), 0);
+        assertEquals(1000.5, sketch.quantile(1), 0);
+        // out of range quantiles are clamped
+        assertEquals(-2.71828, sketch.quantile(-1), 0);
+        assertEquals(1000.5, sketch.quantile(2), 0);
+        // a single value is returned exactly
+        assertEquals(123.456, sketch(new double[] { 123.456 }).quantile(0.5), 0);
+    }
+
+    @Test
+    public void testNaNIsIgnored() {
+        QuantileSketch sketch = sketch(new double[] { 1, Double.NaN, 2 });
+        assertEquals(2, sketch.count());
+        assertEquals(2, sketch.quantile(1), 0);
+    }
+
+    @Test
+    public void testMergeDoesNotDependOnOrder() {
+        Random r = new Random(11);
+        List<QuantileSketch> parts = new ArrayList<>();
+        List<Double> all = new ArrayList<>();
+        for(int p = 0; p < 5; p++) {
+            QuantileSketch part = new QuantileSketch();
+            // parts with different ranges so that merging has to grow the buckets both ways
+            double scale = Math.pow(100, p - 2);
+            for(int i = 0; i < 2000; i++) {
+                double value = (r.nextDouble() - 0.2) * scale;
+                part.add(value);
+                all.add(value);
+            }
+            parts.add(part);
+        }
+        parts.add(new QuantileSketch());
+        QuantileSketch forward = new QuantileSketch();
+        for(QuantileSketch part: parts) forward.merge(part);
+        Collections.reverse(parts);
+        QuantileSketch backward = new QuantileSketch();
+        for(QuantileSketch part: parts) backward.merge(part);
+        // ((p0 + p1) + (p2 + p3)) + p4
+        QuantileSketch tree = new QuantileSketch();
+        QuantileSketch left = new QuantileSketch();
+        left.merge(parts.get(5));
+        left.merge(parts.get(4));
+        QuantileSketch right = new QuantileSketch();
+        right.merge(parts.get(3));
+        right.merge(parts.get(2));
+        tree.merge(left);
+        tree.merge(right);
+        tree.merge(parts.get(1));
+        double[] values = new double[all.size()];
+        for(int i = 0; i < values.length; i++) values[i] = all.get(i);
+        QuantileSketch single = sketch(values);
+        assertEquals(single.count(), forward.count());
+        for(double q: QUANTILES) {
+            assertEquals(single.quantile(q), forward.quantile(q), 0);
+            assertEquals(single.quantile(q), backward.quantile(q), 0);
+            assertEquals(single.quantile(q), tree.quantile(q), 0);
+        }
+        assertQuantiles(values, forward);
+    }
+
+    @Test
+    public void testCollapseToMaxBuckets() {
+        // 1e-6 to 1e200 needs far more than MAX_BUCKETS buckets
+        QuantileSketch sketch = new QuantileSketch();
+        for(int i = 0; i < 1000; i++) sketch.add(1e-6 * (1 + i / 1000.0));
+        for(int i = 0; i < 1000; i++) sketch.add(1e200 * (1 + i / 1000.0));
+        // the largest magnitudes keep their accuracy
+        assertEquals(1.5e200, sketch.quantile(0.75), 1.5e200 * QuantileSketch.ACCURACY);
+        assertEquals(1e-6, sketch.quantile(0), 0);
+        assertEquals(1e200 * (1 + 999 / 1000.0), sketch.quantile(1), 0);
+        // the smallest magnitudes are collapsed into the lowest bucket, but stay in range
+        double low = sketch.quantile(0.25);
+        assertTrue("" + low, low > 1e-6 * 2 && low < 1e200);
+        // merging into a sketch of small values collapses the same way
+        QuantileSketch small = new QuantileSketch();
+        small.add(1e-6);
+        small.merge(sketch);
+        assertEquals(sketch.quantile(0.75), small.quantile(0.75), 0);
+    }
+
+    @Test
+    public void testClear() {
+        QuantileSketch sketch = sketch(range(-100, 100));
+        sketch.clear();
+        assertEquals(0, sketch.count());
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+        sketch.add(7);
+        assertEquals(7, sketch.quantile(0), 0);
+        assertEquals(7, sketch.quantile(1), 0);
+    }
+}
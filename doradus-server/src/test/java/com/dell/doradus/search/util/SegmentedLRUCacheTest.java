@@ -0,0 +1,72 @@
+package com.dell.doradus.search.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SegmentedLRUCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        SegmentedLRUCache<String, String> cache = new SegmentedLRUCache<>(30, 1);
+        cache.put("a", "A", 10);
+        cache.put("b", "B", 10);
+        cache.put("c", "C", 10);
+        assertEquals("A", cache.get("a"));
+        cache.put("d", "D", 10);
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        assertEquals("D", cache.get("d"));
+        assertEquals(30, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testReplaceUpdatesSize() {
+        SegmentedLRUCache<String, String> cache = new SegmentedLRUCache<>(100, 1);
+        cache.put("a", "A", 10);
+        cache.put("a", "AA", 40);
+        assertEquals("AA", cache.get("a"));
+        assertEquals(40, cache.getSize());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void testOversizedEntryIsNotKept() {
+        SegmentedLRUCache<String, String> cache = new SegmentedLRUCache<>(100, 1);
+        cache.put("a", "A", 10);
+        cache.put("big", "BIG", 200);
+        assertNull(cache.get("big"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        SegmentedLRUCache<String, String> cache = new SegmentedLRUCache<>(100, 4);
+        cache.put("a", "A", 1);
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testSegmentsShareCapacity() {
+        SegmentedLRUCache<Integer, Integer> cache = new SegmentedLRUCache<>(16 * 100, 16);
+        for(int i = 0; i < 10000; i++) cache.put(i, i, 10);
+        // each segment holds 1/16 of the capacity
+        assertTrue(cache.getSize() <= 16 * 100);
+        assertTrue(cache.getSize() > 16 * 50);
+        assertEquals(Integer.valueOf(9999), cache.get(9999));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSegmentsCountIsPowerOfTwo() {
+        new SegmentedLRUCache<String, String>(100, 3);
+    }
+}
@@ -0,0 +1,216 @@
+package com.dell.doradus.service.db.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FsCommitLogTest {
+    private File m_dir;
+    private File m_logFile;
+
+    @Before
+    public void setUp() throws Exception {
+        m_dir = Files.createTempDirectory("fscommitlog").toFile();
+        m_logFile = new File(m_dir, "Log");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteDirectory(m_dir);
+    }
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override public void run() {}
+    };
+
+    @Test
+    public void testAppliesInLogOrder() throws Exception {
+        final List<Integer> applied = Collections.synchronizedList(new ArrayList<Integer>());
+        final FsCommitLog log = new FsCommitLog(m_logFile, "test", NOTHING);
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < 8; t++) {
+            final int f_t = t;
+            threads.add(new Thread(new Runnable() {
+                @Override public void run() {
+                    for(int i = 0; i < 50; i++) {
+                        final int value = f_t * 1000 + i;
+                        log.commit(new byte[] { (byte)f_t, (byte)i }, new Runnable() {
+                            @Override public void run() { applied.add(value); }
+                        });
+                    }
+                }
+            }));
+        }
+        for(Thread thread: threads) thread.start();
+        for(Thread thread: threads) thread.join();
+        log.close();
+
+        assertEquals(400, applied.size());
+        // the log holds two bytes per transaction, in the order the transactions were applied
+        byte[] data = FileUtils.read(m_logFile);
+        assertEquals(800, data.length);
+        for(int i = 0; i < applied.size(); i++) {
+            int value = applied.get(i);
+            assertEquals(value / 1000, data[i * 2]);
+            assertEquals(value % 1000, data[i * 2 + 1]);
+        }
+    }
+
+    @Test
+    public void testCommitReturnsAfterApply() {
+        final AtomicInteger applied = new AtomicInteger();
+        FsCommitLog log = new FsCommitLog(m_logFile, "test", NOTHING);
+        for(int i = 1; i <= 10; i++) {
+            log.commit(new byte[] { 1 }, new Runnable() {
+                @Override public void run() { applied.incrementAndGet(); }
+            });
+            assertEquals(i, applied.get());
+        }
+        log.close();
+    }
+
+    @Test
+    public void testConcurrentCommitsAreGrouped() throws Exception {
+        final AtomicInteger batches = new AtomicInteger();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final FsCommitLog log = new FsCommitLog(m_logFile, "test", new Runnable() {
+            @Override public void run() { batches.incrementAndGet(); }
+        });
+        // the first transaction holds the writer while the others queue up
+        Thread first = new Thread(new Runnable() {
+            @Override public void run() {
+                log.commit(new byte[] { 0 }, new Runnable() {
+                    @Override public void run() {
+                        blocked.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+            }
+        });
+        first.start();
+        blocked.await();
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < 10; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override public void run() { log.commit(new byte[] { 1 }, NOTHING); }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        while(threadsWaiting(threads) < threads.size()) Thread.sleep(10);
+        Thread.sleep(100);
+        release.countDown();
+        first.join();
+        for(Thread thread: threads) thread.join();
+        log.close();
+        assertTrue("batches: " + batches.get(), batches.get() < 11);
+        assertEquals(11, FileUtils.read(m_logFile).length);
+    }
+
+    private static int threadsWaiting(List<Thread> threads) {
+        int count = 0;
+        for(Thread thread: threads) {
+            if(thread.getState() == Thread.State.WAITING) count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testFailedApplyFailsOnlyItsCommit() {
+        final AtomicInteger applied = new AtomicInteger();
+        FsCommitLog log = new FsCommitLog(m_logFile, "test", NOTHING);
+        try {
+            log.commit(new byte[] { 1 }, new Runnable() {
+                @Override public void run() { throw new IllegalStateException("apply failed"); }
+            });
+            fail("commit should fail");
+        } catch(RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        log.commit(new byte[] { 2 }, new Runnable() {
+            @Override public void run() { applied.incrementAndGet(); }
+        });
+        assertEquals(1, applied.get());
+        log.close();
+    }
+
+    @Test
+    public void testCommitAfterCloseFails() {
+        FsCommitLog log = new FsCommitLog(m_logFile, "test", NOTHING);
+        log.commit(new byte[] { 1 }, NOTHING);
+        log.close();
+        // closing twice is harmless
+        log.close();
+        try {
+            log.commit(new byte[] { 2 }, NOTHING);
+            fail("commit after close should fail");
+        } catch(RuntimeException e) {
+            assertTrue(e.getMessage().contains("closed"));
+        }
+        assertArrayEquals(new byte[] { 1 }, FileUtils.read(m_logFile));
+    }
+
+    @Test
+    public void testCommitsRacingWithCloseDoNotHang() throws Exception {
+        final FsCommitLog log = new FsCommitLog(m_logFile, "test", NOTHING);
+        final AtomicInteger committed = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < 8; t++) {
+            threads.add(new Thread(new Runnable() {
+                @Override public void run() {
+                    for(int i = 0; i < 1000; i++) {
+                        try {
+                            log.commit(new byte[] { 1 }, NOTHING);
+                            committed.incrementAndGet();
+                        } catch(RuntimeException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+        for(Thread thread: threads) thread.start();
+        Thread.sleep(20);
+        log.close();
+        for(Thread thread: threads) {
+            thread.join(10000);
+            assertFalse("commit is hanging after close", thread.isAlive());
+        }
+        assertEquals(8000, committed.get() + rejected.get());
+        // every acknowledged commit is in the log
+        assertEquals(committed.get(), FileUtils.read(m_logFile).length);
+    }
+
+    @Test
+    public void testResetDeletesLog() {
+        final FsCommitLog[] log = new FsCommitLog[1];
+        log[0] = new FsCommitLog(m_logFile, "test", new Runnable() {
+            @Override public void run() {
+                if(log[0].getSize() >= 3) log[0].reset();
+            }
+        });
+        for(int i = 0; i < 5; i++) log[0].commit(new byte[] { (byte)i }, NOTHING);
+        log[0].close();
+        assertArrayEquals(new byte[] { 3, 4 }, FileUtils.read(m_logFile));
+    }
+}
@@ -0,0 +1,194 @@
+package com.dell.doradus.service.db.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.core.ServerParams;
+import com.dell.doradus.service.db.DColumn;
+
+public class FsStoreCompactionTest {
+    private File m_dir;
+    private int m_logThreshold;
+    private int m_compactionThreshold;
+    private int m_compactionRatio;
+
+    @BeforeClass
+    public static void loadConfig() throws Exception {
+        // table ranges are compressed with the OLAP compressor, which reads its settings
+        ServerParams.load(new String[0]);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        m_dir = Files.createTempDirectory("fsstore").toFile();
+        m_logThreshold = FsStore.LOGFILE_THRESHOLD;
+        m_compactionThreshold = FsStore.COMPACTION_THRESHOLD;
+        m_compactionRatio = FsStore.COMPACTION_SIZE_RATIO;
+        // every transaction is flushed to its own table; compaction runs only when called
+        FsStore.LOGFILE_THRESHOLD = 0;
+        FsStore.COMPACTION_THRESHOLD = Integer.MAX_VALUE;
+        FsStore.COMPACTION_SIZE_RATIO = 1000;
+    }
+
+    @After
+    public void tearDown() {
+        FsStore.LOGFILE_THRESHOLD = m_logThreshold;
+        FsStore.COMPACTION_THRESHOLD = m_compactionThreshold;
+        FsStore.COMPACTION_SIZE_RATIO = m_compactionRatio;
+        FileUtils.deleteDirectory(m_dir);
+    }
+
+    private static void update(FsStore store, String row, String... columnsAndValues) {
+        Map<String, List<DColumn>> updates = new HashMap<>();
+        List<DColumn> columns = new ArrayList<>();
+        for(int i = 0; i < columnsAndValues.length; i += 2) {
+            columns.add(new DColumn(columnsAndValues[i], columnsAndValues[i + 1]));
+        }
+        updates.put(row, columns);
+        store.addMutations(updates, null, null);
+    }
+
+    private static String read(FsStore store, String row) {
+        StringBuilder sb = new StringBuilder();
+        for(DColumn column: store.getColumns(row, null, null, 100)) {
+            if(sb.length() > 0) sb.append(',');
+            sb.append(column.getName()).append('=').append(column.getValue());
+        }
+        return sb.toString();
+    }
+
+    private int tablesCount(FsStore store) {
+        int count = 0;
+        for(File f: new File(m_dir, store.getStoreName()).listFiles()) {
+            if(f.getName().startsWith("table") && !f.getName().endsWith(".idx")) count++;
+        }
+        return count;
+    }
+
+    private void fill(FsStore store) {
+        for(int i = 0; i < 6; i++) {
+            update(store, "r" + i, "a", "a" + i, "b", "b" + i);
+        }
+        update(store, "r1", "a", "new");
+        Map<String, List<String>> columnDeletes = new HashMap<>();
+        List<String> deleted = new ArrayList<>();
+        deleted.add("b");
+        columnDeletes.put("r2", deleted);
+        store.addMutations(null, columnDeletes, null);
+        List<String> rowDeletes = new ArrayList<>();
+        rowDeletes.add("r3");
+        store.addMutations(null, null, rowDeletes);
+        update(store, "r4", "c", "c4");
+    }
+
+    private static void check(FsStore store) {
+        assertEquals("a=a0,b=b0", read(store, "r0"));
+        assertEquals("a=new,b=b1", read(store, "r1"));
+        assertEquals("a=a2", read(store, "r2"));
+        assertEquals("", read(store, "r3"));
+        assertEquals("a=a4,b=b4,c=c4", read(store, "r4"));
+        assertEquals("a=a5,b=b5", read(store, "r5"));
+        List<String> rows = store.getRows(null, 1000);
+        for(int i = 0; i < 6; i++) {
+            assertEquals("row r" + i, i != 3, rows.contains("r" + i));
+        }
+    }
+
+    @Test
+    public void testCompactionKeepsLatestVersions() throws Exception {
+        FsStore store = new FsStore(m_dir, "store");
+        fill(store);
+        assertEquals(10, tablesCount(store));
+        check(store);
+
+        FsStore.COMPACTION_THRESHOLD = 4;
+        store.compact();
+        assertEquals(1, tablesCount(store));
+        check(store);
+        store.close();
+
+        // the compacted table is all that is left after a restart
+        store = new FsStore(m_dir, "store");
+        check(store);
+        store.close();
+    }
+
+    @Test
+    public void testCompactionDropsCachedRanges() throws Exception {
+        FsStore store = new FsStore(m_dir, "store");
+        int cached = FsTable.getCachedRangesCount();
+        fill(store);
+        check(store);
+        assertTrue(FsTable.getCachedRangesCount() > cached);
+
+        // the range cache does not keep the replaced tables
+        FsStore.COMPACTION_THRESHOLD = 4;
+        store.compact();
+        assertEquals(cached, FsTable.getCachedRangesCount());
+        check(store);
+        store.close();
+    }
+
+    @Test
+    public void testPartialCompactionKeepsTombstones() throws Exception {
+        FsStore store = new FsStore(m_dir, "store");
+        // the oldest table is much larger than the newer ones, so it is not merged with them
+        FsStore.COMPACTION_SIZE_RATIO = 2;
+        FsStore.LOGFILE_THRESHOLD = Integer.MAX_VALUE;
+        update(store, "r3", "a", "old");
+        Random random = new Random(1);
+        for(int i = 0; i < 100; i++) {
+            StringBuilder value = new StringBuilder();
+            for(int j = 0; j < 1000; j++) value.append((char)('a' + random.nextInt(26)));
+            if(i == 99) FsStore.LOGFILE_THRESHOLD = 0;
+            update(store, "big" + i, "v", value.toString());
+        }
+        assertEquals(1, tablesCount(store));
+        fill(store);
+        int before = tablesCount(store);
+
+        FsStore.COMPACTION_THRESHOLD = 4;
+        store.compact();
+        int after = tablesCount(store);
+        assertTrue("tables: " + before + " -> " + after, after > 1 && after < before);
+        // the row deletion still hides the value kept in the oldest table
+        check(store);
+        store.close();
+    }
+
+    @Test
+    public void testTablesSurviveConcurrentReadsDuringCompaction() throws Exception {
+        final FsStore store = new FsStore(m_dir, "store");
+        fill(store);
+        final List<Throwable> errors = new ArrayList<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    for(int i = 0; i < 200; i++) check(store);
+                } catch(Throwable e) {
+                    synchronized(errors) { errors.add(e); }
+                }
+            }
+        });
+        reader.start();
+        FsStore.COMPACTION_THRESHOLD = 2;
+        store.compact();
+        reader.join();
+        assertEquals(0, errors.size());
+        check(store);
+        store.close();
+    }
+}
@@ -0,0 +1,130 @@
+package com.dell.doradus.service.db.fs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.dell.doradus.core.ServerParams;
+import com.dell.doradus.service.db.DColumn;
+
+public class FsStoreLargeValueTest {
+    private File m_dir;
+    private int m_logThreshold;
+
+    @BeforeClass
+    public static void loadConfig() throws Exception {
+        ServerParams.load(new String[0]);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        m_dir = Files.createTempDirectory("fsstore").toFile();
+        m_logThreshold = FsStore.LOGFILE_THRESHOLD;
+        // keep everything in the commit log so reopening the store replays it
+        FsStore.LOGFILE_THRESHOLD = Integer.MAX_VALUE;
+    }
+
+    @After
+    public void tearDown() {
+        FsStore.LOGFILE_THRESHOLD = m_logThreshold;
+        FileUtils.deleteDirectory(m_dir);
+    }
+
+    private static String largeValue(char c) {
+        char[] value = new char[2000];
+        Arrays.fill(value, c);
+        return new String(value);
+    }
+
+    private static void update(FsStore store, String row, String column, String value) {
+        Map<String, List<DColumn>> updates = new HashMap<>();
+        List<DColumn> columns = new ArrayList<>();
+        columns.add(new DColumn(column, value));
+        updates.put(row, columns);
+        store.addMutations(updates, null, null);
+    }
+
+    private static void deleteColumn(FsStore store, String row, String column) {
+        Map<String, List<String>> deletes = new HashMap<>();
+        deletes.put(row, Arrays.asList(column));
+        store.addMutations(null, deletes, null);
+    }
+
+    private static String read(FsStore store, String row, String column) {
+        List<DColumn> columns = store.getColumns(row, Arrays.asList(column));
+        if(columns.size() == 0) return null;
+        return columns.get(0).getValue();
+    }
+
+    @Test
+    public void testRewriteAfterDelete() {
+        FsStore store = new FsStore(m_dir, "store");
+        update(store, "r1", "c", largeValue('a'));
+        deleteColumn(store, "r1", "c");
+        update(store, "r1", "c", largeValue('b'));
+        assertEquals(largeValue('b'), read(store, "r1", "c"));
+        store.close();
+
+        store = new FsStore(m_dir, "store");
+        assertEquals(largeValue('b'), read(store, "r1", "c"));
+        store.close();
+    }
+
+    @Test
+    public void testDeleteAfterUpdateSurvivesReplay() {
+        FsStore store = new FsStore(m_dir, "store");
+        update(store, "r1", "c", largeValue('a'));
+        update(store, "r2", "c", largeValue('x'));
+        deleteColumn(store, "r1", "c");
+        store.addMutations(null, null, Arrays.asList("r2"));
+        assertEquals(null, read(store, "r1", "c"));
+        assertEquals(null, read(store, "r2", "c"));
+        store.close();
+
+        store = new FsStore(m_dir, "store");
+        assertEquals(null, read(store, "r1", "c"));
+        assertEquals(null, read(store, "r2", "c"));
+        update(store, "r2", "c", largeValue('y'));
+        assertEquals(largeValue('y'), read(store, "r2", "c"));
+        store.close();
+    }
+
+    @Test
+    public void testConcurrentUpdatesAndDeletes() throws Exception {
+        final FsStore store = new FsStore(m_dir, "store");
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < 4; t++) {
+            final char c = (char)('a' + t);
+            threads.add(new Thread(new Runnable() {
+                @Override public void run() {
+                    for(int i = 0; i < 50; i++) {
+                        update(store, "r", "c", largeValue(c));
+                        deleteColumn(store, "r", "c");
+                        update(store, "r", "c", largeValue(c));
+                    }
+                }
+            }));
+        }
+        for(Thread thread: threads) thread.start();
+        for(Thread thread: threads) thread.join();
+        // whatever update was applied last, its value must be in the data store
+        String value = read(store, "r", "c");
+        assertEquals(2000, value.length());
+        store.close();
+
+        FsStore reopened = new FsStore(m_dir, "store");
+        assertEquals(value, read(reopened, "r", "c"));
+        reopened.close();
+    }
+}
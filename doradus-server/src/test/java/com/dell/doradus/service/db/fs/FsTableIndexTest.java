@@ -0,0 +1,38 @@
+package com.dell.doradus.service.db.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.dell.doradus.olap.io.BSTR;
+
+public class FsTableIndexTest {
+
+    private static FsTableIndex createIndex() {
+        FsTableIndex index = new FsTableIndex();
+        for(int i = 0; i < 100; i++) {
+            FsTableIndex.Row row = index.addRow(new BSTR("row" + i), i % 10 == 0);
+            row.addColumnRange(new BSTR("a"), new BSTR("z"), i, i * 1000L, 500 + i);
+        }
+        return index;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        FsTableIndex index = new FsTableIndex();
+        index.read(createIndex().write());
+        assertEquals(100, index.getRows().size());
+        for(int i = 0; i < 100; i++) {
+            FsTableIndex.Row row = index.getRow(new BSTR("row" + i));
+            assertNotNull(row);
+            assertEquals(i % 10 == 0, row.isDeleted());
+            FsTableIndex.ColumnRange range = row.getRanges().get(0);
+            assertEquals(i, range.getCount());
+            assertEquals(i * 1000L, range.getOffset());
+            assertEquals(500 + i, range.getLength());
+        }
+        assertNull(index.getRow(new BSTR("missing")));
+    }
+}